@@ -3,11 +3,9 @@ package am.ik.translation;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
 import org.springframework.boot.context.properties.ConfigurationPropertiesScan;
-import org.springframework.scheduling.annotation.EnableAsync;
 
 @SpringBootApplication
 @ConfigurationPropertiesScan
-@EnableAsync
 public class TranslationApiApplication {
 
 	public static void main(String[] args) {
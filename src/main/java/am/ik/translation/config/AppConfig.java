@@ -2,17 +2,26 @@ package am.ik.translation.config;
 
 import am.ik.spring.http.client.RetryableClientHttpRequestInterceptor;
 import am.ik.translation.github.GithubProps;
+import am.ik.translation.http.EventStreamAwareStrategy;
+import am.ik.translation.http.HttpClientProps;
+import am.ik.translation.http.InstrumentedSslContext;
+import am.ik.translation.resilience.Downstreams;
 import am.ik.webhook.spring.WebhookVerifierRequestBodyAdvice;
+import io.micrometer.core.instrument.MeterRegistry;
+import java.net.http.HttpClient;
 import java.util.Set;
+import java.util.concurrent.Executors;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.web.client.RestClientCustomizer;
 import org.springframework.boot.web.reactive.function.client.WebClientCustomizer;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.core.task.support.ContextPropagatingTaskDecorator;
 import org.springframework.http.HttpHeaders;
-import org.springframework.http.client.SimpleClientHttpRequestFactory;
+import org.springframework.http.client.JdkClientHttpRequestFactory;
 import org.springframework.util.backoff.ExponentialBackOff;
 import org.zalando.logbook.Logbook;
+import org.zalando.logbook.Strategy;
 import org.zalando.logbook.spring.LogbookClientHttpRequestInterceptor;
 import org.zalando.logbook.spring.webflux.LogbookExchangeFilterFunction;
 
@@ -25,14 +34,37 @@ public class AppConfig {
 		this.githubProps = githubProps;
 	}
 
+	/**
+	 * A single client shared by all {@link org.springframework.web.client.RestClient}s,
+	 * so that connections to GitHub and the entry API are kept alive in per-host pools
+	 * and multiplexed over HTTP/2 where the server supports it.
+	 */
 	@Bean
-	public RestClientCustomizer restClientCustomizer(
-			LogbookClientHttpRequestInterceptor logbookClientHttpRequestInterceptor) {
+	public HttpClient httpClient(HttpClientProps httpClientProps, MeterRegistry meterRegistry) {
+		return HttpClient.newBuilder()
+			.version(httpClientProps.version())
+			.connectTimeout(httpClientProps.connectTimeout())
+			.followRedirects(HttpClient.Redirect.NORMAL)
+			.sslContext(InstrumentedSslContext.wrapDefault(meterRegistry))
+			.executor(Executors.newVirtualThreadPerTaskExecutor())
+			.build();
+	}
+
+	/**
+	 * The bulkhead of a downstream wraps the whole call including its retries, while the
+	 * circuit breaker records every attempt and stops the retries once the circuit opens.
+	 */
+	@Bean
+	public RestClientCustomizer restClientCustomizer(HttpClient httpClient, HttpClientProps httpClientProps,
+			LogbookClientHttpRequestInterceptor logbookClientHttpRequestInterceptor, Downstreams downstreams) {
 		ExponentialBackOff backOff = new ExponentialBackOff();
 		backOff.setInitialInterval(3_000L);
 		backOff.setMaxInterval(60_000L);
 		backOff.setMultiplier(2);
-		return builder -> builder.requestFactory(new SimpleClientHttpRequestFactory())
+		JdkClientHttpRequestFactory requestFactory = new JdkClientHttpRequestFactory(httpClient);
+		requestFactory.setReadTimeout(httpClientProps.readTimeout());
+		return builder -> builder.requestFactory(requestFactory)
+			.requestInterceptor(downstreams.bulkheadInterceptor())
 			.requestInterceptor(logbookClientHttpRequestInterceptor)
 			.requestInterceptor(new RetryableClientHttpRequestInterceptor(backOff, Set.of( //
 					408 /* Request Timeout */, //
@@ -45,7 +77,17 @@ public class AppConfig {
 					529 /* Overloaded Error */
 			), options -> options.sensitiveHeaders(Set.of(HttpHeaders.AUTHORIZATION.toLowerCase(),
 					HttpHeaders.PROXY_AUTHENTICATE.toLowerCase(), HttpHeaders.COOKIE.toLowerCase(),
-					HttpHeaders.SET_COOKIE.toLowerCase(), "x-amz-security-token"))));
+					HttpHeaders.SET_COOKIE.toLowerCase(), "x-amz-security-token"))))
+			.requestInterceptor(downstreams.circuitBreakerInterceptor());
+	}
+
+	/**
+	 * The streamed chat completions are sent by the {@code WebClient}, whose responses
+	 * must not be buffered by Logbook.
+	 */
+	@Bean
+	public Strategy logbookStrategy(@Value("${logbook.minimum-status:400}") int minimumStatus) {
+		return new EventStreamAwareStrategy(minimumStatus);
 	}
 
 	@Bean
@@ -0,0 +1,81 @@
+package am.ik.translation.config;
+
+import am.ik.translation.translation.TranslationProps;
+import am.ik.translation.translation.ratelimit.RateLimiter;
+import am.ik.translation.translation.routing.ModelRouter;
+import io.micrometer.observation.ObservationRegistry;
+import java.net.URI;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import org.springframework.ai.chat.client.ChatClient;
+import org.springframework.ai.openai.OpenAiChatModel;
+import org.springframework.ai.openai.OpenAiChatOptions;
+import org.springframework.ai.openai.api.OpenAiApi;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.web.reactive.function.client.ExchangeFilterFunction;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.publisher.Mono;
+
+@Configuration(proxyBeanMethods = false)
+public class ModelRouterConfig {
+
+	/**
+	 * Build a target for each endpoint in {@code translation.routing} from the
+	 * auto-configured OpenAI client, so that the targets share its options, retry and
+	 * observation settings except for the model, the base url and the api key.
+	 */
+	@Bean
+	public ModelRouter modelRouter(TranslationProps translationProps, OpenAiChatModel openAiChatModel,
+			OpenAiApi openAiApi, ObjectProvider<WebClient.Builder> webClientBuilder,
+			ObjectProvider<ObservationRegistry> observationRegistry) {
+		TranslationProps.Routing routing = translationProps.routing();
+		OpenAiChatOptions defaultOptions = (OpenAiChatOptions) openAiChatModel.getDefaultOptions();
+		Map<TranslationProps.Endpoint, ModelRouter.Target> targets = new LinkedHashMap<>();
+		List<TranslationProps.Route> routes = routing.routes().isEmpty()
+				? List.of(new TranslationProps.Route(Integer.MAX_VALUE,
+						new TranslationProps.Endpoint(defaultOptions.getModel(), null, null)))
+				: routing.routes();
+		for (TranslationProps.Route route : routes) {
+			targets.computeIfAbsent(route.endpoint(), endpoint -> this.target(endpoint, translationProps,
+					openAiChatModel, openAiApi, webClientBuilder.getObject(), observationRegistry));
+		}
+		for (TranslationProps.Endpoint fallback : routing.fallbacks()) {
+			targets.computeIfAbsent(fallback, endpoint -> this.target(endpoint, translationProps, openAiChatModel,
+					openAiApi, webClientBuilder.getObject(), observationRegistry));
+		}
+		return new ModelRouter(routes.stream()
+			.map(route -> new ModelRouter.Route(route.maxTokens(), targets.get(route.endpoint())))
+			.toList(), routing.fallbacks().stream().map(targets::get).toList(), routing.latencyBudget());
+	}
+
+	ModelRouter.Target target(TranslationProps.Endpoint endpoint, TranslationProps translationProps,
+			OpenAiChatModel openAiChatModel, OpenAiApi openAiApi, WebClient.Builder webClientBuilder,
+			ObjectProvider<ObservationRegistry> observationRegistry) {
+		RateLimiter rateLimiter = new RateLimiter(translationProps);
+		// WebClient is used by the streaming calls. the responses feed the rate limiter
+		OpenAiApi.Builder api = openAiApi.mutate()
+			.webClientBuilder(webClientBuilder.filter(ExchangeFilterFunction.ofResponseProcessor(response -> {
+				rateLimiter.update(response.statusCode().value(), response.headers().asHttpHeaders());
+				return Mono.just(response);
+			})));
+		if (endpoint.baseUrl() != null) {
+			api.baseUrl(endpoint.baseUrl());
+		}
+		if (endpoint.apiKey() != null) {
+			api.apiKey(endpoint.apiKey());
+		}
+		OpenAiChatOptions options = OpenAiChatOptions
+			.fromOptions((OpenAiChatOptions) openAiChatModel.getDefaultOptions());
+		options.setModel(endpoint.model());
+		OpenAiChatModel chatModel = openAiChatModel.mutate().openAiApi(api.build()).defaultOptions(options).build();
+		String name = endpoint.baseUrl() == null ? endpoint.model()
+				: endpoint.model() + "@" + URI.create(endpoint.baseUrl()).getHost();
+		return new ModelRouter.Target(name,
+				ChatClient.create(chatModel, observationRegistry.getIfUnique(() -> ObservationRegistry.NOOP)),
+				rateLimiter);
+	}
+
+}
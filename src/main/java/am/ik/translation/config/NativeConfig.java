@@ -5,14 +5,23 @@ import am.ik.translation.entry.Category;
 import am.ik.translation.entry.Entry;
 import am.ik.translation.entry.FrontMatter;
 import am.ik.translation.entry.Tag;
-import am.ik.translation.github.Commit;
+import am.ik.translation.github.Branch;
 import am.ik.translation.github.Committer;
 import am.ik.translation.github.CreateBranchRequest;
-import am.ik.translation.github.CreateBranchResponse;
-import am.ik.translation.github.CreateContentRequest;
+import am.ik.translation.github.CreateCommitRequest;
 import am.ik.translation.github.CreatePullRequest;
 import am.ik.translation.github.CreatePullResponse;
+import am.ik.translation.github.CreateTreeRequest;
+import am.ik.translation.github.GitCommit;
+import am.ik.translation.github.GitObject;
 import am.ik.translation.github.IssueEvent;
+import am.ik.translation.translation.batch.Batch;
+import am.ik.translation.translation.batch.OpenAiBatchClient;
+import am.ik.translation.translation.job.JobEvent;
+import am.ik.translation.translation.job.TranslationJob;
+import am.ik.translation.translation.scheduler.FairScheduler;
+import am.ik.translation.translation.scheduler.TranslationQueueEndpoint;
+import am.ik.translation.util.ResponseParser;
 import org.springframework.ai.openai.OpenAiChatOptions;
 import org.springframework.aot.hint.MemberCategory;
 import org.springframework.aot.hint.RuntimeHints;
@@ -39,16 +48,10 @@ public class NativeConfig {
 						MemberCategory.INVOKE_PUBLIC_CONSTRUCTORS)
 				.registerType(Tag.class, MemberCategory.INVOKE_PUBLIC_METHODS,
 						MemberCategory.INVOKE_PUBLIC_CONSTRUCTORS)
-				.registerType(Commit.class, MemberCategory.INVOKE_PUBLIC_METHODS,
-						MemberCategory.INVOKE_PUBLIC_CONSTRUCTORS)
 				.registerType(Committer.class, MemberCategory.INVOKE_PUBLIC_METHODS,
 						MemberCategory.INVOKE_PUBLIC_CONSTRUCTORS)
 				.registerType(CreateBranchRequest.class, MemberCategory.INVOKE_PUBLIC_METHODS,
 						MemberCategory.INVOKE_PUBLIC_CONSTRUCTORS)
-				.registerType(CreateBranchResponse.class, MemberCategory.INVOKE_PUBLIC_METHODS,
-						MemberCategory.INVOKE_PUBLIC_CONSTRUCTORS)
-				.registerType(CreateContentRequest.class, MemberCategory.INVOKE_PUBLIC_METHODS,
-						MemberCategory.INVOKE_PUBLIC_CONSTRUCTORS)
 				.registerType(CreatePullRequest.class, MemberCategory.INVOKE_PUBLIC_METHODS,
 						MemberCategory.INVOKE_PUBLIC_CONSTRUCTORS)
 				.registerType(CreatePullResponse.class, MemberCategory.INVOKE_PUBLIC_METHODS,
@@ -59,6 +62,38 @@ public class NativeConfig {
 						MemberCategory.INVOKE_PUBLIC_CONSTRUCTORS)
 				.registerType(IssueEvent.Repository.class, MemberCategory.INVOKE_PUBLIC_METHODS,
 						MemberCategory.INVOKE_PUBLIC_CONSTRUCTORS)
+				.registerType(Branch.class, MemberCategory.INVOKE_PUBLIC_METHODS,
+						MemberCategory.INVOKE_PUBLIC_CONSTRUCTORS)
+				.registerType(Branch.Commit.class, MemberCategory.INVOKE_PUBLIC_METHODS,
+						MemberCategory.INVOKE_PUBLIC_CONSTRUCTORS)
+				.registerType(CreateCommitRequest.class, MemberCategory.INVOKE_PUBLIC_METHODS,
+						MemberCategory.INVOKE_PUBLIC_CONSTRUCTORS)
+				.registerType(CreateTreeRequest.class, MemberCategory.INVOKE_PUBLIC_METHODS,
+						MemberCategory.INVOKE_PUBLIC_CONSTRUCTORS)
+				.registerType(CreateTreeRequest.Entry.class, MemberCategory.INVOKE_PUBLIC_METHODS,
+						MemberCategory.INVOKE_PUBLIC_CONSTRUCTORS)
+				.registerType(GitCommit.class, MemberCategory.INVOKE_PUBLIC_METHODS,
+						MemberCategory.INVOKE_PUBLIC_CONSTRUCTORS)
+				.registerType(GitObject.class, MemberCategory.INVOKE_PUBLIC_METHODS,
+						MemberCategory.INVOKE_PUBLIC_CONSTRUCTORS)
+				.registerType(Batch.class, MemberCategory.INVOKE_PUBLIC_METHODS,
+						MemberCategory.INVOKE_PUBLIC_CONSTRUCTORS)
+				.registerType(OpenAiBatchClient.OpenAiBatch.class, MemberCategory.INVOKE_PUBLIC_METHODS,
+						MemberCategory.INVOKE_PUBLIC_CONSTRUCTORS)
+				.registerType(OpenAiBatchClient.FileObject.class, MemberCategory.INVOKE_PUBLIC_METHODS,
+						MemberCategory.INVOKE_PUBLIC_CONSTRUCTORS)
+				.registerType(TranslationJob.class, MemberCategory.INVOKE_PUBLIC_METHODS,
+						MemberCategory.INVOKE_PUBLIC_CONSTRUCTORS)
+				.registerType(JobEvent.class, MemberCategory.INVOKE_PUBLIC_METHODS,
+						MemberCategory.INVOKE_PUBLIC_CONSTRUCTORS)
+				.registerType(FairScheduler.Snapshot.class, MemberCategory.INVOKE_PUBLIC_METHODS,
+						MemberCategory.INVOKE_PUBLIC_CONSTRUCTORS)
+				.registerType(FairScheduler.Ticket.class, MemberCategory.INVOKE_PUBLIC_METHODS,
+						MemberCategory.INVOKE_PUBLIC_CONSTRUCTORS)
+				.registerType(TranslationQueueEndpoint.TranslationQueue.class, MemberCategory.INVOKE_PUBLIC_METHODS,
+						MemberCategory.INVOKE_PUBLIC_CONSTRUCTORS)
+				.registerType(ResponseParser.TranslatedContent.class, MemberCategory.INVOKE_PUBLIC_METHODS,
+						MemberCategory.INVOKE_PUBLIC_CONSTRUCTORS)
 				.registerType(OpenAiChatOptions.class, MemberCategory.DECLARED_FIELDS,
 						MemberCategory.INVOKE_DECLARED_CONSTRUCTORS, MemberCategory.INVOKE_PUBLIC_METHODS);
 		}
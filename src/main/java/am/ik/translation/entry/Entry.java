@@ -1,5 +1,12 @@
 package am.ik.translation.entry;
 
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.util.List;
+import java.util.function.Function;
+
 import com.fasterxml.jackson.annotation.JsonIgnore;
 import org.jilt.Builder;
 
@@ -7,20 +14,60 @@ import org.jilt.Builder;
 public record Entry(Long entryId, FrontMatter frontMatter, String content, Author created, Author updated) {
 
 	public String toMarkdown() {
-		return """
-				---
-				title: %s
-				tags: %s
-				categories: %s%s%s%s
-				---
+		StringWriter writer = new StringWriter(content.length() + 512);
+		try {
+			writeMarkdown(writer);
+		}
+		catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+		return writer.toString();
+	}
+
+	/**
+	 * Write the markdown of {@link #toMarkdown()} without building it as a string.
+	 */
+	public void writeMarkdown(Writer writer) throws IOException {
+		writer.write("---\ntitle: ");
+		writer.write(frontMatter.title());
+		writer.write("\ntags: ");
+		writeList(writer, frontMatter.tags(), Tag::name);
+		writer.write("\ncategories: ");
+		writeList(writer, frontMatter.categories(), Category::name);
+		if (frontMatter.summary() != null) {
+			writer.write("\nsummary: ");
+			writer.write(frontMatter.summary());
+		}
+		if (created.date() != null) {
+			writer.write("\ndate: ");
+			writer.write(created.date().toString());
+		}
+		if (updated.date() != null) {
+			writer.write("\nupdated: ");
+			writer.write(updated.date().toString());
+		}
+		writer.write("\n---\n\n");
+		// Writer#write(String) copies the whole string into a new char array
+		char[] buffer = new char[Math.min(content.length(), 4096)];
+		for (int i = 0; i < content.length(); i += buffer.length) {
+			int end = Math.min(i + buffer.length, content.length());
+			content.getChars(i, end, buffer, 0);
+			writer.write(buffer, 0, end - i);
+		}
+		writer.write('\n');
+	}
 
-				%s
-				""".formatted(frontMatter.title(),
-				frontMatter.tags().stream().map(t -> "\"%s\"".formatted(t.name())).toList(),
-				frontMatter.categories().stream().map(c -> "\"%s\"".formatted(c.name())).toList(),
-				frontMatter.summary() == null ? "" : "%nsummary: %s".formatted(frontMatter.summary()),
-				created.date() == null ? "" : "%ndate: %s".formatted(created.date()),
-				updated.date() == null ? "" : "%nupdated: %s".formatted(updated.date()), content);
+	private static <T> void writeList(Writer writer, List<T> values, Function<T, String> name) throws IOException {
+		writer.write('[');
+		for (int i = 0; i < values.size(); i++) {
+			if (i > 0) {
+				writer.write(", ");
+			}
+			writer.write('"');
+			writer.write(name.apply(values.get(i)));
+			writer.write('"');
+		}
+		writer.write(']');
 	}
 
 	@JsonIgnore
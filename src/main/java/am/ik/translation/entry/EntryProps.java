@@ -1,7 +1,17 @@
 package am.ik.translation.entry;
 
+import java.time.Duration;
 import org.springframework.boot.context.properties.ConfigurationProperties;
 
 @ConfigurationProperties(prefix = "entry")
-public record EntryProps(String apiUrl) {
+public record EntryProps(String apiUrl, Cache cache) {
+
+	/**
+	 * @param maxEntries maximum number of cached entries
+	 * @param maxAge how long a cached entry is served without revalidation
+	 * @param ttl how long a cached entry is kept after it was last validated
+	 */
+	public record Cache(int maxEntries, Duration maxAge, Duration ttl) {
+	}
+
 }
@@ -0,0 +1,18 @@
+package am.ik.translation.github;
+
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * Content of a file to publish, written as text when the request body is sent.
+ */
+@FunctionalInterface
+public interface BlobContent {
+
+	void writeTo(Writer writer) throws IOException;
+
+	static BlobContent of(String content) {
+		return writer -> writer.write(content);
+	}
+
+}
@@ -0,0 +1,9 @@
+package am.ik.translation.github;
+
+public record Branch(String name, Commit commit) {
+
+	public record Commit(String sha, GitCommit commit) {
+
+	}
+
+}
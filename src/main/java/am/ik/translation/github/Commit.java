@@ -1,4 +0,0 @@
-package am.ik.translation.github;
-
-public record Commit(String sha) {
-}
@@ -0,0 +1,39 @@
+package am.ik.translation.github;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+import org.springframework.util.StreamUtils;
+
+/**
+ * Request body of the create blob API. The content is encoded as UTF-8 and Base64 while
+ * it is written to the body, without the markdown, its UTF-8 bytes and the Base64 string
+ * as intermediate copies. Base64 needs no escaping in JSON.
+ * <p>
+ * The interceptors of the shared {@code RestClient} still buffer the written body once,
+ * as the retry has to send it again, so the body is on the heap as a single byte array.
+ */
+public final class CreateBlobRequest {
+
+	private static final byte[] PREFIX = "{\"encoding\":\"base64\",\"content\":\"".getBytes(StandardCharsets.US_ASCII);
+
+	private static final byte[] SUFFIX = "\"}".getBytes(StandardCharsets.US_ASCII);
+
+	private CreateBlobRequest() {
+	}
+
+	public static void write(BlobContent content, OutputStream body) throws IOException {
+		body.write(PREFIX);
+		try (Writer writer = new OutputStreamWriter(Base64.getEncoder().wrap(StreamUtils.nonClosing(body)),
+				StandardCharsets.UTF_8)) {
+			content.writeTo(writer);
+		}
+		// closing the writer wrote the padding but left the body open
+		body.write(SUFFIX);
+	}
+
+}
@@ -1,4 +0,0 @@
-package am.ik.translation.github;
-
-public record CreateBranchResponse(String name, Commit commit) {
-}
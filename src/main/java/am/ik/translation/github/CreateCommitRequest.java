@@ -0,0 +1,6 @@
+package am.ik.translation.github;
+
+import java.util.List;
+
+public record CreateCommitRequest(String message, String tree, List<String> parents, Committer committer) {
+}
@@ -0,0 +1,15 @@
+package am.ik.translation.github;
+
+import java.util.List;
+
+public record CreateTreeRequest(String base_tree, List<Entry> tree) {
+
+	public record Entry(String path, String mode, String type, String sha) {
+
+		public static Entry blob(String path, String sha) {
+			return new Entry(path, "100644", "blob", sha);
+		}
+
+	}
+
+}
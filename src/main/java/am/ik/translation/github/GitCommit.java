@@ -0,0 +1,4 @@
+package am.ik.translation.github;
+
+public record GitCommit(String sha, GitObject tree) {
+}
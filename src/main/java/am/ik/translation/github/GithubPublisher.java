@@ -0,0 +1,175 @@
+package am.ik.translation.github;
+
+import jakarta.annotation.Nullable;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+import org.springframework.web.client.HttpClientErrorException;
+import org.springframework.web.client.RestClient;
+
+import static am.ik.translation.github.CreatePullRequestBuilder.createPullRequest;
+
+/**
+ * Publishes files to a repository as a single commit on a new branch and opens a pull
+ * request for it. The commit is built with the Git Data API (blobs, trees and commits),
+ * so that any number of files costs one commit instead of one contents API call per file.
+ * <p>
+ * Publishing is idempotent per branch name. A branch left by an earlier attempt is moved
+ * to the new commit, and if a pull request was already opened from the branch, for
+ * example by an attempt that crashed before recording it, that pull request is returned
+ * instead of opening another one. The pull request is looked up only then, so that a
+ * publish costs no more calls than the commit and the pull request themselves.
+ */
+@Component
+public class GithubPublisher {
+
+	static final String BASE_BRANCH = "main";
+
+	static final Committer COMMITTER = new Committer("Translation Bot", "makingx+bot@gmail.com");
+
+	private final RestClient restClient;
+
+	private final GithubProps githubProps;
+
+	private final Logger logger = LoggerFactory.getLogger(GithubPublisher.class);
+
+	public GithubPublisher(RestClient.Builder restClientBuilder, GithubProps githubProps) {
+		this.githubProps = githubProps;
+		this.restClient = restClientBuilder.clone()
+			.defaultHeader(HttpHeaders.ACCEPT, "application/vnd.github+json")
+			.defaultHeader("X-GitHub-Api-Version", "2022-11-28")
+			.build();
+	}
+
+	/**
+	 * @param repository repository to publish to
+	 * @param branchName name of the branch to create
+	 * @param message commit message, also used as the title of the pull request
+	 * @param body body of the pull request
+	 * @param files contents keyed by the path in the repository
+	 */
+	public CreatePullResponse publish(String repository, String branchName, String message, String body,
+			Map<String, BlobContent> files) {
+		long start = System.currentTimeMillis();
+		Branch base;
+		List<CreateTreeRequest.Entry> tree = new ArrayList<>(files.size());
+		// the base branch and the blobs do not depend on each other
+		try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+			Future<Branch> branchFuture = executor.submit(() -> this.restClient.get()
+				.uri("%s/repos/%s/branches/{branch}".formatted(this.githubProps.apiUrl(), repository), BASE_BRANCH)
+				.header(HttpHeaders.AUTHORIZATION, this.authorization())
+				.retrieve()
+				.body(Branch.class));
+			Map<String, Future<GitObject>> blobFutures = new LinkedHashMap<>();
+			files.forEach((path, content) -> blobFutures.put(path,
+					executor.submit(() -> this.createBlob(repository, content))));
+			base = Objects.requireNonNull(branchFuture.get());
+			for (Map.Entry<String, Future<GitObject>> blob : blobFutures.entrySet()) {
+				tree.add(CreateTreeRequest.Entry.blob(blob.getKey(), blob.getValue().get().sha()));
+			}
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Publishing is interrupted: branch=" + branchName, e);
+		}
+		catch (ExecutionException e) {
+			if (e.getCause() instanceof RuntimeException runtimeException) {
+				throw runtimeException;
+			}
+			throw new IllegalStateException("Publishing failed: branch=" + branchName, e.getCause());
+		}
+		GitObject createdTree = Objects.requireNonNull(this.restClient.post()
+			.uri("%s/repos/%s/git/trees".formatted(this.githubProps.apiUrl(), repository))
+			.header(HttpHeaders.AUTHORIZATION, this.authorization())
+			.body(new CreateTreeRequest(base.commit().commit().tree().sha(), tree))
+			.retrieve()
+			.body(GitObject.class));
+		GitCommit commit = Objects.requireNonNull(this.restClient.post()
+			.uri("%s/repos/%s/git/commits".formatted(this.githubProps.apiUrl(), repository))
+			.header(HttpHeaders.AUTHORIZATION, this.authorization())
+			.body(new CreateCommitRequest(message, createdTree.sha(), List.of(base.commit().sha()), COMMITTER))
+			.retrieve()
+			.body(GitCommit.class));
+		// the branch is created pointing at the finished commit
+		try {
+			this.restClient.post()
+				.uri("%s/repos/%s/git/refs".formatted(this.githubProps.apiUrl(), repository))
+				.header(HttpHeaders.AUTHORIZATION, this.authorization())
+				.body(new CreateBranchRequest("refs/heads/" + branchName, commit.sha()))
+				.retrieve()
+				.toBodilessEntity();
+		}
+		catch (HttpClientErrorException.UnprocessableEntity e) {
+			// the branch was created by an earlier attempt. point it at the commit just
+			// built, as the earlier one may have been built from another translation
+			this.restClient.patch()
+				.uri("%s/repos/%s/git/refs/heads/{branch}".formatted(this.githubProps.apiUrl(), repository), branchName)
+				.header(HttpHeaders.AUTHORIZATION, this.authorization())
+				.body(new UpdateRefRequest(commit.sha(), true))
+				.retrieve()
+				.toBodilessEntity();
+			logger.info("action=reuse_branch branch={} commit={}", branchName, commit.sha());
+		}
+		CreatePullResponse pull;
+		try {
+			pull = Objects.requireNonNull(this.restClient.post()
+				.uri("%s/repos/%s/pulls".formatted(this.githubProps.apiUrl(), repository))
+				.header(HttpHeaders.AUTHORIZATION, this.authorization())
+				.body(createPullRequest().title(message).body(body).head(branchName).base(BASE_BRANCH).build())
+				.retrieve()
+				.body(CreatePullResponse.class));
+		}
+		catch (HttpClientErrorException.UnprocessableEntity e) {
+			// an earlier attempt opened the pull request but crashed before it was
+			// journaled, or a retried request whose first attempt opened it
+			pull = this.findPull(repository, branchName);
+			if (pull == null) {
+				throw e;
+			}
+		}
+		logger.info("action=publish branch={} files={} commit={} duration={}", branchName, files.size(), commit.sha(),
+				System.currentTimeMillis() - start);
+		return pull;
+	}
+
+	/**
+	 * @return the pull request opened from the branch in any state, or null
+	 */
+	@Nullable
+	CreatePullResponse findPull(String repository, String branchName) {
+		String owner = repository.substring(0, repository.indexOf('/'));
+		CreatePullResponse[] pulls = this.restClient.get()
+			.uri("%s/repos/%s/pulls?head={head}&state=all".formatted(this.githubProps.apiUrl(), repository),
+					owner + ":" + branchName)
+			.header(HttpHeaders.AUTHORIZATION, this.authorization())
+			.retrieve()
+			.body(CreatePullResponse[].class);
+		return pulls == null || pulls.length == 0 ? null : pulls[0];
+	}
+
+	GitObject createBlob(String repository, BlobContent content) {
+		return Objects.requireNonNull(this.restClient.post()
+			.uri("%s/repos/%s/git/blobs".formatted(this.githubProps.apiUrl(), repository))
+			.header(HttpHeaders.AUTHORIZATION, this.authorization())
+			.contentType(MediaType.APPLICATION_JSON)
+			.body(outputStream -> CreateBlobRequest.write(content, outputStream))
+			.retrieve()
+			.body(GitObject.class));
+	}
+
+	private String authorization() {
+		return "token %s".formatted(this.githubProps.accessToken());
+	}
+
+}
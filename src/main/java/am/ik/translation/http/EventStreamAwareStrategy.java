@@ -0,0 +1,54 @@
+package am.ik.translation.http;
+
+import java.io.IOException;
+import org.springframework.http.MediaType;
+import org.zalando.logbook.Correlation;
+import org.zalando.logbook.HttpRequest;
+import org.zalando.logbook.HttpResponse;
+import org.zalando.logbook.Precorrelation;
+import org.zalando.logbook.Sink;
+import org.zalando.logbook.Strategy;
+import org.zalando.logbook.core.BodyOnlyIfStatusAtLeastStrategy;
+
+/**
+ * Logs the bodies only of the responses with a status of at least
+ * {@code logbook.minimum-status} as {@code body-only-if-status-at-least} does, but never
+ * buffers a server-sent event stream such as a streamed chat completion. Logbook would
+ * otherwise hold the whole stream back until it ends, and fail to hand it over to the
+ * client afterwards.
+ */
+public class EventStreamAwareStrategy implements Strategy {
+
+	private final Strategy delegate;
+
+	public EventStreamAwareStrategy(int minimumStatus) {
+		this.delegate = new BodyOnlyIfStatusAtLeastStrategy(minimumStatus);
+	}
+
+	@Override
+	public HttpRequest process(HttpRequest request) throws IOException {
+		return this.delegate.process(request);
+	}
+
+	@Override
+	public void write(Precorrelation precorrelation, HttpRequest request, Sink sink) throws IOException {
+		this.delegate.write(precorrelation, request, sink);
+	}
+
+	@Override
+	public HttpResponse process(HttpRequest request, HttpResponse response) throws IOException {
+		String contentType = response.getContentType();
+		if (contentType != null
+				&& MediaType.TEXT_EVENT_STREAM.isCompatibleWith(MediaType.parseMediaType(contentType))) {
+			return response.withoutBody();
+		}
+		return this.delegate.process(request, response);
+	}
+
+	@Override
+	public void write(Correlation correlation, HttpRequest request, HttpResponse response, Sink sink)
+			throws IOException {
+		this.delegate.write(correlation, request, response, sink);
+	}
+
+}
@@ -0,0 +1,15 @@
+package am.ik.translation.http;
+
+import java.net.http.HttpClient;
+import java.time.Duration;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+/**
+ * @param connectTimeout timeout to establish a connection
+ * @param readTimeout timeout to receive the response headers of a request
+ * @param version preferred HTTP version. HTTP/2 falls back to HTTP/1.1 if the server does
+ * not support it.
+ */
+@ConfigurationProperties(prefix = "http-client")
+public record HttpClientProps(Duration connectTimeout, Duration readTimeout, HttpClient.Version version) {
+}
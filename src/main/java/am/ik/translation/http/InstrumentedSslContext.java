@@ -0,0 +1,112 @@
+package am.ik.translation.http;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import java.security.KeyManagementException;
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import javax.net.ssl.KeyManager;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLContextSpi;
+import javax.net.ssl.SSLEngine;
+import javax.net.ssl.SSLParameters;
+import javax.net.ssl.SSLServerSocketFactory;
+import javax.net.ssl.SSLSessionContext;
+import javax.net.ssl.SSLSocketFactory;
+import javax.net.ssl.TrustManager;
+
+/**
+ * {@link SSLContext} that records the TLS connections opened and the time spent on their
+ * handshakes by host. The JDK {@link java.net.http.HttpClient} creates one
+ * {@link SSLEngine} per connection, so {@code http.client.connections} shows the
+ * connection churn and {@code http.client.tls.handshake} its cost.
+ */
+public class InstrumentedSslContext extends SSLContext {
+
+	InstrumentedSslContext(SSLContext delegate, MeterRegistry meterRegistry) {
+		super(new Spi(delegate, meterRegistry), delegate.getProvider(), delegate.getProtocol());
+	}
+
+	public static SSLContext wrapDefault(MeterRegistry meterRegistry) {
+		try {
+			return new InstrumentedSslContext(SSLContext.getDefault(), meterRegistry);
+		}
+		catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	static class Spi extends SSLContextSpi {
+
+		private final SSLContext delegate;
+
+		private final MeterRegistry meterRegistry;
+
+		Spi(SSLContext delegate, MeterRegistry meterRegistry) {
+			this.delegate = delegate;
+			this.meterRegistry = meterRegistry;
+		}
+
+		@Override
+		protected void engineInit(KeyManager[] km, TrustManager[] tm, SecureRandom sr) throws KeyManagementException {
+			this.delegate.init(km, tm, sr);
+		}
+
+		@Override
+		protected SSLSocketFactory engineGetSocketFactory() {
+			return this.delegate.getSocketFactory();
+		}
+
+		@Override
+		protected SSLServerSocketFactory engineGetServerSocketFactory() {
+			return this.delegate.getServerSocketFactory();
+		}
+
+		@Override
+		protected SSLEngine engineCreateSSLEngine() {
+			return this.instrument(this.delegate.createSSLEngine(), "unknown");
+		}
+
+		@Override
+		protected SSLEngine engineCreateSSLEngine(String host, int port) {
+			return this.instrument(this.delegate.createSSLEngine(host, port), host == null ? "unknown" : host);
+		}
+
+		@Override
+		protected SSLSessionContext engineGetServerSessionContext() {
+			return this.delegate.getServerSessionContext();
+		}
+
+		@Override
+		protected SSLSessionContext engineGetClientSessionContext() {
+			return this.delegate.getClientSessionContext();
+		}
+
+		@Override
+		protected SSLParameters engineGetDefaultSSLParameters() {
+			return this.delegate.getDefaultSSLParameters();
+		}
+
+		@Override
+		protected SSLParameters engineGetSupportedSSLParameters() {
+			return this.delegate.getSupportedSSLParameters();
+		}
+
+		private SSLEngine instrument(SSLEngine engine, String host) {
+			Counter.builder("http.client.connections")
+				.description("TLS connections opened")
+				.tag("host", host)
+				.register(this.meterRegistry)
+				.increment();
+			Timer handshakeTimer = Timer.builder("http.client.tls.handshake")
+				.description("Duration of TLS handshakes")
+				.tag("host", host)
+				.publishPercentileHistogram()
+				.register(this.meterRegistry);
+			return new InstrumentedSslEngine(engine, handshakeTimer);
+		}
+
+	}
+
+}
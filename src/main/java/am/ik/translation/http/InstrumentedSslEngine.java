@@ -0,0 +1,210 @@
+package am.ik.translation.http;
+
+import io.micrometer.core.instrument.Timer;
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiFunction;
+import javax.net.ssl.SSLEngine;
+import javax.net.ssl.SSLEngineResult;
+import javax.net.ssl.SSLException;
+import javax.net.ssl.SSLParameters;
+import javax.net.ssl.SSLSession;
+
+/**
+ * {@link SSLEngine} that records the duration from the first handshake message to the
+ * completion of the initial handshake. Everything else is delegated as it is.
+ */
+class InstrumentedSslEngine extends SSLEngine {
+
+	private static final long NOT_STARTED = -1;
+
+	private static final long FINISHED = -2;
+
+	private final SSLEngine delegate;
+
+	private final Timer handshakeTimer;
+
+	private final AtomicLong handshakeStart = new AtomicLong(NOT_STARTED);
+
+	InstrumentedSslEngine(SSLEngine delegate, Timer handshakeTimer) {
+		super(delegate.getPeerHost(), delegate.getPeerPort());
+		this.delegate = delegate;
+		this.handshakeTimer = handshakeTimer;
+	}
+
+	private void startHandshake() {
+		this.handshakeStart.compareAndSet(NOT_STARTED, System.nanoTime());
+	}
+
+	private SSLEngineResult record(SSLEngineResult result) {
+		if (result.getHandshakeStatus() == SSLEngineResult.HandshakeStatus.FINISHED) {
+			long start = this.handshakeStart.getAndSet(FINISHED);
+			if (start >= 0) {
+				this.handshakeTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+			}
+		}
+		return result;
+	}
+
+	@Override
+	public SSLEngineResult wrap(ByteBuffer[] srcs, int offset, int length, ByteBuffer dst) throws SSLException {
+		this.startHandshake();
+		return this.record(this.delegate.wrap(srcs, offset, length, dst));
+	}
+
+	@Override
+	public SSLEngineResult unwrap(ByteBuffer src, ByteBuffer[] dsts, int offset, int length) throws SSLException {
+		this.startHandshake();
+		return this.record(this.delegate.unwrap(src, dsts, offset, length));
+	}
+
+	@Override
+	public void beginHandshake() throws SSLException {
+		this.startHandshake();
+		this.delegate.beginHandshake();
+	}
+
+	@Override
+	public Runnable getDelegatedTask() {
+		return this.delegate.getDelegatedTask();
+	}
+
+	@Override
+	public void closeInbound() throws SSLException {
+		this.delegate.closeInbound();
+	}
+
+	@Override
+	public boolean isInboundDone() {
+		return this.delegate.isInboundDone();
+	}
+
+	@Override
+	public void closeOutbound() {
+		this.delegate.closeOutbound();
+	}
+
+	@Override
+	public boolean isOutboundDone() {
+		return this.delegate.isOutboundDone();
+	}
+
+	@Override
+	public String[] getSupportedCipherSuites() {
+		return this.delegate.getSupportedCipherSuites();
+	}
+
+	@Override
+	public String[] getEnabledCipherSuites() {
+		return this.delegate.getEnabledCipherSuites();
+	}
+
+	@Override
+	public void setEnabledCipherSuites(String[] suites) {
+		this.delegate.setEnabledCipherSuites(suites);
+	}
+
+	@Override
+	public String[] getSupportedProtocols() {
+		return this.delegate.getSupportedProtocols();
+	}
+
+	@Override
+	public String[] getEnabledProtocols() {
+		return this.delegate.getEnabledProtocols();
+	}
+
+	@Override
+	public void setEnabledProtocols(String[] protocols) {
+		this.delegate.setEnabledProtocols(protocols);
+	}
+
+	@Override
+	public SSLSession getSession() {
+		return this.delegate.getSession();
+	}
+
+	@Override
+	public SSLSession getHandshakeSession() {
+		return this.delegate.getHandshakeSession();
+	}
+
+	@Override
+	public SSLEngineResult.HandshakeStatus getHandshakeStatus() {
+		return this.delegate.getHandshakeStatus();
+	}
+
+	@Override
+	public void setUseClientMode(boolean mode) {
+		this.delegate.setUseClientMode(mode);
+	}
+
+	@Override
+	public boolean getUseClientMode() {
+		return this.delegate.getUseClientMode();
+	}
+
+	@Override
+	public void setNeedClientAuth(boolean need) {
+		this.delegate.setNeedClientAuth(need);
+	}
+
+	@Override
+	public boolean getNeedClientAuth() {
+		return this.delegate.getNeedClientAuth();
+	}
+
+	@Override
+	public void setWantClientAuth(boolean want) {
+		this.delegate.setWantClientAuth(want);
+	}
+
+	@Override
+	public boolean getWantClientAuth() {
+		return this.delegate.getWantClientAuth();
+	}
+
+	@Override
+	public void setEnableSessionCreation(boolean flag) {
+		this.delegate.setEnableSessionCreation(flag);
+	}
+
+	@Override
+	public boolean getEnableSessionCreation() {
+		return this.delegate.getEnableSessionCreation();
+	}
+
+	@Override
+	public SSLParameters getSSLParameters() {
+		return this.delegate.getSSLParameters();
+	}
+
+	@Override
+	public void setSSLParameters(SSLParameters params) {
+		// carries the ALPN protocols used to negotiate HTTP/2
+		this.delegate.setSSLParameters(params);
+	}
+
+	@Override
+	public String getApplicationProtocol() {
+		return this.delegate.getApplicationProtocol();
+	}
+
+	@Override
+	public String getHandshakeApplicationProtocol() {
+		return this.delegate.getHandshakeApplicationProtocol();
+	}
+
+	@Override
+	public void setHandshakeApplicationProtocolSelector(BiFunction<SSLEngine, List<String>, String> selector) {
+		this.delegate.setHandshakeApplicationProtocolSelector(selector);
+	}
+
+	@Override
+	public BiFunction<SSLEngine, List<String>, String> getHandshakeApplicationProtocolSelector() {
+		return this.delegate.getHandshakeApplicationProtocolSelector();
+	}
+
+}
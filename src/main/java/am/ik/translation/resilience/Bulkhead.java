@@ -0,0 +1,58 @@
+package am.ik.translation.resilience;
+
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Separate concurrency pool of a downstream service, so that calls hanging on a degraded
+ * service cannot occupy the threads needed for the other services. A call waits at most
+ * {@code maxWait} to be allowed.
+ */
+public class Bulkhead {
+
+	private final String name;
+
+	private final DownstreamProps.Settings settings;
+
+	private final Semaphore permits;
+
+	public Bulkhead(String name, DownstreamProps.Settings settings) {
+		this.name = name;
+		this.settings = settings;
+		this.permits = new Semaphore(settings.maxConcurrency(), true);
+	}
+
+	/**
+	 * Allow a call, which has to be followed by {@link #release()}.
+	 * @throws DownstreamUnavailableException if the call is not allowed within
+	 * {@code maxWait}
+	 */
+	public void acquire() throws InterruptedException {
+		if (!this.permits.tryAcquire(this.settings.maxWait().toNanos(), TimeUnit.NANOSECONDS)) {
+			throw new DownstreamUnavailableException(this.name, "bulkhead_full", this.settings.maxWait());
+		}
+	}
+
+	/**
+	 * Allow a call only if it does not have to wait, such as a hedged call, which is to
+	 * take no capacity from the waiting calls.
+	 * @return whether the call is allowed, which has to be followed by {@link #release()}
+	 */
+	public boolean tryAcquire() throws InterruptedException {
+		// honor the fairness, unlike tryAcquire()
+		return this.permits.tryAcquire(0, TimeUnit.NANOSECONDS);
+	}
+
+	public void release() {
+		this.permits.release();
+	}
+
+	public int active() {
+		return this.settings.maxConcurrency() - this.permits.availablePermits();
+	}
+
+	public int limit() {
+		return this.settings.maxConcurrency();
+	}
+
+}
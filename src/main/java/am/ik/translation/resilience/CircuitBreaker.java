@@ -0,0 +1,146 @@
+package am.ik.translation.resilience;
+
+import java.time.Duration;
+import java.util.function.LongSupplier;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Count-based circuit breaker. The circuit opens when at least {@code minimumCalls} of
+ * the last {@code slidingWindowSize} calls are recorded and the failure rate reaches
+ * {@code failureRateThreshold}. An open circuit rejects calls for {@code openDuration},
+ * after which a single trial call is allowed. The circuit closes if the trial call
+ * succeeds, and opens again otherwise.
+ */
+public class CircuitBreaker {
+
+	public enum State {
+
+		CLOSED, OPEN, HALF_OPEN
+
+	}
+
+	private final String name;
+
+	private final DownstreamProps.Settings settings;
+
+	private final LongSupplier nanoTime;
+
+	private final boolean[] failures;
+
+	private int count = 0;
+
+	private int next = 0;
+
+	private int failed = 0;
+
+	private State state = State.CLOSED;
+
+	private long openedAt = 0;
+
+	private boolean trialInFlight = false;
+
+	private final Logger logger = LoggerFactory.getLogger(CircuitBreaker.class);
+
+	public CircuitBreaker(String name, DownstreamProps.Settings settings) {
+		this(name, settings, System::nanoTime);
+	}
+
+	CircuitBreaker(String name, DownstreamProps.Settings settings, LongSupplier nanoTime) {
+		this.name = name;
+		this.settings = settings;
+		this.nanoTime = nanoTime;
+		this.failures = new boolean[settings.slidingWindowSize()];
+	}
+
+	/**
+	 * Allow a call, which has to be followed by {@link #onSuccess()},
+	 * {@link #onFailure()} or {@link #onIgnored()}.
+	 * @throws DownstreamUnavailableException if the circuit is open
+	 */
+	public synchronized void acquire() {
+		if (this.state == State.OPEN) {
+			long remaining = this.openedAt + this.settings.openDuration().toNanos() - this.nanoTime.getAsLong();
+			if (remaining > 0) {
+				throw new DownstreamUnavailableException(this.name, "circuit_open", Duration.ofNanos(remaining));
+			}
+			this.transition(State.HALF_OPEN);
+		}
+		if (this.state == State.HALF_OPEN) {
+			if (this.trialInFlight) {
+				throw new DownstreamUnavailableException(this.name, "circuit_open", this.settings.openDuration());
+			}
+			this.trialInFlight = true;
+		}
+	}
+
+	public synchronized void onSuccess() {
+		if (this.state == State.HALF_OPEN) {
+			this.trialInFlight = false;
+			this.transition(State.CLOSED);
+		}
+		else if (this.state == State.CLOSED) {
+			this.record(false);
+		}
+	}
+
+	public synchronized void onFailure() {
+		if (this.state == State.HALF_OPEN) {
+			this.trialInFlight = false;
+			this.open();
+		}
+		else if (this.state == State.CLOSED) {
+			this.record(true);
+			if (this.count >= this.settings.minimumCalls()
+					&& this.failed >= this.settings.failureRateThreshold() * this.count) {
+				this.open();
+			}
+		}
+	}
+
+	/**
+	 * Release the call without recording its outcome, such as when it is rejected by the
+	 * bulkhead.
+	 */
+	public synchronized void onIgnored() {
+		if (this.state == State.HALF_OPEN) {
+			this.trialInFlight = false;
+		}
+	}
+
+	public synchronized State state() {
+		return this.state;
+	}
+
+	private void record(boolean failure) {
+		if (this.count == this.failures.length) {
+			if (this.failures[this.next]) {
+				this.failed--;
+			}
+		}
+		else {
+			this.count++;
+		}
+		this.failures[this.next] = failure;
+		if (failure) {
+			this.failed++;
+		}
+		this.next = (this.next + 1) % this.failures.length;
+	}
+
+	private void open() {
+		this.openedAt = this.nanoTime.getAsLong();
+		this.transition(State.OPEN);
+	}
+
+	private void transition(State state) {
+		logger.warn("action=transition_circuit downstream={} from={} to={} failed={} calls={}", this.name, this.state,
+				state, this.failed, this.count);
+		this.state = state;
+		// the failure rate of a new closed period starts over
+		this.count = 0;
+		this.next = 0;
+		this.failed = 0;
+	}
+
+}
@@ -0,0 +1,30 @@
+package am.ik.translation.resilience;
+
+import java.time.Duration;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+/**
+ * Circuit breakers and bulkheads of the downstream services.
+ *
+ * @param github settings of the GitHub API
+ * @param entryApi settings of the entry API
+ * @param openai settings of each model endpoint
+ */
+@ConfigurationProperties(prefix = "downstream")
+public record DownstreamProps(Settings github, Settings entryApi, Settings openai) {
+
+	/**
+	 * @param maxConcurrency maximum number of calls in flight
+	 * @param maxWait maximum time to wait for a call to be allowed under
+	 * {@code maxConcurrency}
+	 * @param slidingWindowSize number of the recent calls the failure rate is computed
+	 * from
+	 * @param minimumCalls minimum number of calls in the window to open the circuit
+	 * @param failureRateThreshold failure rate between 0 and 1 to open the circuit
+	 * @param openDuration time to reject calls before a trial call is allowed
+	 */
+	public record Settings(int maxConcurrency, Duration maxWait, int slidingWindowSize, int minimumCalls,
+			double failureRateThreshold, Duration openDuration) {
+	}
+
+}
@@ -0,0 +1,56 @@
+package am.ik.translation.resilience;
+
+import jakarta.annotation.Nullable;
+import java.time.Duration;
+
+/**
+ * Thrown without calling a downstream service when its circuit is open or its bulkhead is
+ * full.
+ */
+public class DownstreamUnavailableException extends RuntimeException {
+
+	private final String downstream;
+
+	private final String reason;
+
+	private final Duration retryAfter;
+
+	public DownstreamUnavailableException(String downstream, String reason, Duration retryAfter) {
+		super("%s is unavailable (%s)".formatted(downstream, reason));
+		this.downstream = downstream;
+		this.reason = reason;
+		this.retryAfter = retryAfter;
+	}
+
+	public String downstream() {
+		return this.downstream;
+	}
+
+	/**
+	 * @return {@code circuit_open} or {@code bulkhead_full}
+	 */
+	public String reason() {
+		return this.reason;
+	}
+
+	/**
+	 * @return time until the downstream may accept calls again
+	 */
+	public Duration retryAfter() {
+		return this.retryAfter;
+	}
+
+	/**
+	 * @return the exception in the causes of the given exception, or null if not found
+	 */
+	@Nullable
+	public static DownstreamUnavailableException find(Throwable e) {
+		for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+			if (cause instanceof DownstreamUnavailableException unavailable) {
+				return unavailable;
+			}
+		}
+		return null;
+	}
+
+}
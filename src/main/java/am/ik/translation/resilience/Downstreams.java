@@ -0,0 +1,302 @@
+package am.ik.translation.resilience;
+
+import am.ik.translation.entry.EntryProps;
+import am.ik.translation.github.GithubProps;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.Nullable;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.URI;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeoutException;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.client.ClientHttpRequestInterceptor;
+import org.springframework.http.client.ClientHttpResponse;
+import org.springframework.stereotype.Component;
+import org.springframework.web.client.ResourceAccessException;
+import org.springframework.web.client.RestClientResponseException;
+import org.springframework.web.reactive.function.client.WebClientRequestException;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
+
+/**
+ * A {@link CircuitBreaker} and a {@link Bulkhead} per downstream service. The GitHub API
+ * and the entry API are guarded by the interceptors of the
+ * {@link org.springframework.web.client.RestClient}s, which find the service by the host
+ * of the request. Each model endpoint is guarded by
+ * {@link am.ik.translation.translation.TranslationService} as
+ * {@code openai:<target name>}, so that an open circuit falls over to the next target.
+ * <p>
+ * Timeouts, I/O errors and 408 or 5xx responses are failures. 429 responses are not, as
+ * the rate limits are followed by the callers.
+ * <ul>
+ * <li>{@code downstream.circuit.state}: 1 for the current state of the circuit and 0 for
+ * the others</li>
+ * <li>{@code downstream.bulkhead.active} and {@code downstream.bulkhead.limit}: calls in
+ * flight and their limit</li>
+ * <li>{@code downstream.calls}: calls by outcome (success, failure, rejected)</li>
+ * </ul>
+ */
+@Component
+public class Downstreams {
+
+	public static final String GITHUB = "github";
+
+	public static final String ENTRY_API = "entry-api";
+
+	private final DownstreamProps props;
+
+	private final MeterRegistry meterRegistry;
+
+	private final Map<String, String> namesByAuthority;
+
+	private final Map<String, Guard> guards = new ConcurrentHashMap<>();
+
+	@Autowired
+	public Downstreams(DownstreamProps props, GithubProps githubProps, EntryProps entryProps,
+			MeterRegistry meterRegistry) {
+		this(props, meterRegistry, authorities(githubProps.apiUrl(), entryProps.apiUrl()));
+	}
+
+	public Downstreams(DownstreamProps props, MeterRegistry meterRegistry, Map<String, String> namesByAuthority) {
+		this.props = props;
+		this.meterRegistry = meterRegistry;
+		this.namesByAuthority = Map.copyOf(namesByAuthority);
+		this.guard(GITHUB, props.github());
+		this.guard(ENTRY_API, props.entryApi());
+	}
+
+	static Map<String, String> authorities(String githubApiUrl, String entryApiUrl) {
+		Map<String, String> authorities = new LinkedHashMap<>();
+		authorities.putIfAbsent(URI.create(githubApiUrl).getAuthority(), GITHUB);
+		authorities.putIfAbsent(URI.create(entryApiUrl).getAuthority(), ENTRY_API);
+		return authorities;
+	}
+
+	/**
+	 * @return the guard of the model endpoint
+	 */
+	public Guard model(String target) {
+		return this.guard("openai:" + target, this.props.openai());
+	}
+
+	/**
+	 * @return the guard of the service at the authority of the uri, or null if the
+	 * service is not guarded
+	 */
+	@Nullable
+	public Guard of(URI uri) {
+		String name = this.namesByAuthority.get(uri.getAuthority());
+		return name != null ? this.guards.get(name) : null;
+	}
+
+	Guard guard(String name, DownstreamProps.Settings settings) {
+		return this.guards.computeIfAbsent(name, n -> {
+			Guard guard = new Guard(n, new CircuitBreaker(n, settings), new Bulkhead(n, settings), this.meterRegistry);
+			for (CircuitBreaker.State state : CircuitBreaker.State.values()) {
+				Gauge.builder("downstream.circuit.state", guard.circuitBreaker(), c -> c.state() == state ? 1 : 0)
+					.description("Whether the circuit of the downstream is in the state")
+					.tag("downstream", n)
+					.tag("state", state.name().toLowerCase())
+					.register(this.meterRegistry);
+			}
+			Gauge.builder("downstream.bulkhead.active", guard.bulkhead(), Bulkhead::active)
+				.description("Calls to the downstream in flight")
+				.tag("downstream", n)
+				.register(this.meterRegistry);
+			Gauge.builder("downstream.bulkhead.limit", guard.bulkhead(), Bulkhead::limit)
+				.description("Maximum calls to the downstream in flight")
+				.tag("downstream", n)
+				.register(this.meterRegistry);
+			return guard;
+		});
+	}
+
+	/**
+	 * Outermost interceptor that holds a permit of the bulkhead for the whole call
+	 * including its retries.
+	 */
+	public ClientHttpRequestInterceptor bulkheadInterceptor() {
+		return (request, body, execution) -> {
+			Guard guard = this.of(request.getURI());
+			if (guard == null) {
+				return execution.execute(request, body);
+			}
+			try {
+				guard.bulkhead().acquire();
+			}
+			catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new InterruptedIOException("Interrupted while waiting for " + guard.name());
+			}
+			catch (DownstreamUnavailableException e) {
+				guard.count("rejected");
+				throw e;
+			}
+			try {
+				return execution.execute(request, body);
+			}
+			finally {
+				guard.bulkhead().release();
+			}
+		};
+	}
+
+	/**
+	 * Innermost interceptor that records every attempt. An open circuit fails the call
+	 * with a {@link DownstreamUnavailableException}, which is not retried.
+	 */
+	public ClientHttpRequestInterceptor circuitBreakerInterceptor() {
+		return (request, body, execution) -> {
+			Guard guard = this.of(request.getURI());
+			if (guard == null) {
+				return execution.execute(request, body);
+			}
+			guard.acquireCircuit();
+			ClientHttpResponse response;
+			try {
+				response = execution.execute(request, body);
+			}
+			catch (IOException e) {
+				guard.onFailure();
+				throw e;
+			}
+			catch (RuntimeException e) {
+				guard.circuitBreaker().onIgnored();
+				throw e;
+			}
+			if (isFailure(response.getStatusCode().value())) {
+				guard.onFailure();
+			}
+			else {
+				guard.onSuccess();
+			}
+			return response;
+		};
+	}
+
+	static boolean isFailure(int status) {
+		return status == 408 || status >= 500;
+	}
+
+	/**
+	 * @return whether the error of a model call is a failure of the endpoint
+	 */
+	public static boolean isFailure(Throwable e) {
+		for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+			int status = switch (cause) {
+				case WebClientResponseException ex -> ex.getStatusCode().value();
+				case RestClientResponseException ex -> ex.getStatusCode().value();
+				default -> 0;
+			};
+			if (isFailure(status) || cause instanceof TimeoutException || cause instanceof IOException
+					|| cause instanceof WebClientRequestException || cause instanceof ResourceAccessException) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	public static final class Guard {
+
+		private final String name;
+
+		private final CircuitBreaker circuitBreaker;
+
+		private final Bulkhead bulkhead;
+
+		private final MeterRegistry meterRegistry;
+
+		Guard(String name, CircuitBreaker circuitBreaker, Bulkhead bulkhead, MeterRegistry meterRegistry) {
+			this.name = name;
+			this.circuitBreaker = circuitBreaker;
+			this.bulkhead = bulkhead;
+			this.meterRegistry = meterRegistry;
+		}
+
+		public String name() {
+			return this.name;
+		}
+
+		public CircuitBreaker circuitBreaker() {
+			return this.circuitBreaker;
+		}
+
+		public Bulkhead bulkhead() {
+			return this.bulkhead;
+		}
+
+		/**
+		 * Allow a call by the circuit and then by the bulkhead. The call has to be
+		 * followed by {@link #release(Throwable)}.
+		 * @throws DownstreamUnavailableException if the circuit is open or the bulkhead
+		 * is full
+		 */
+		public void acquire() throws InterruptedException {
+			this.acquireCircuit();
+			try {
+				this.bulkhead.acquire();
+			}
+			catch (DownstreamUnavailableException e) {
+				this.circuitBreaker.onIgnored();
+				this.count("rejected");
+				throw e;
+			}
+			catch (InterruptedException e) {
+				this.circuitBreaker.onIgnored();
+				throw e;
+			}
+		}
+
+		/**
+		 * @param error error of the call, or null if succeeded. The outcome of an
+		 * interrupted call is not recorded.
+		 */
+		public void release(@Nullable Throwable error) {
+			this.bulkhead.release();
+			if (error instanceof InterruptedException) {
+				this.circuitBreaker.onIgnored();
+			}
+			else if (error != null && isFailure(error)) {
+				this.onFailure();
+			}
+			else {
+				this.onSuccess();
+			}
+		}
+
+		void acquireCircuit() {
+			try {
+				this.circuitBreaker.acquire();
+			}
+			catch (DownstreamUnavailableException e) {
+				this.count("rejected");
+				throw e;
+			}
+		}
+
+		void onSuccess() {
+			this.circuitBreaker.onSuccess();
+			this.count("success");
+		}
+
+		void onFailure() {
+			this.circuitBreaker.onFailure();
+			this.count("failure");
+		}
+
+		void count(String outcome) {
+			Counter.builder("downstream.calls")
+				.description("Calls to the downstream")
+				.tag("downstream", this.name)
+				.tag("outcome", outcome)
+				.register(this.meterRegistry)
+				.increment();
+		}
+
+	}
+
+}
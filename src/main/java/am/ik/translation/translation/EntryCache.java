@@ -0,0 +1,180 @@
+package am.ik.translation.translation;
+
+import am.ik.translation.entry.Entry;
+import am.ik.translation.entry.EntryProps;
+import jakarta.annotation.Nullable;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Component;
+import org.springframework.web.client.RestClient;
+import org.springframework.web.client.RestClientException;
+
+/**
+ * Cache of the entries fetched from the entry api. A cached entry is served as is for
+ * {@code entry.cache.max-age}, so retried jobs and batches do not fetch the same entry
+ * again. The max age bounds how stale a translated entry can be, so it should be short.
+ * After that it is revalidated with a conditional request using the {@code ETag} and
+ * {@code Last-Modified} of the last response, which costs no body if the entry is
+ * unchanged. Entries not validated for {@code entry.cache.ttl} are evicted, and the least
+ * recently used entries are evicted beyond {@code entry.cache.max-entries}.
+ */
+@Component
+public class EntryCache {
+
+	private final RestClient restClient;
+
+	private final EntryProps entryProps;
+
+	private final TranslationMetrics metrics;
+
+	private final Map<Long, Cached> cache = new LinkedHashMap<>(256, 0.75f, true);
+
+	private final Logger logger = LoggerFactory.getLogger(EntryCache.class);
+
+	public EntryCache(RestClient.Builder restClientBuilder, EntryProps entryProps, TranslationMetrics metrics) {
+		this.restClient = restClientBuilder.build();
+		this.entryProps = entryProps;
+		this.metrics = metrics;
+	}
+
+	public Entry get(Long entryId) {
+		Cached cached = this.lookup(entryId);
+		long now = System.nanoTime();
+		if (cached != null && now - cached.validatedAt() < this.entryProps.cache().maxAge().toNanos()) {
+			this.metrics.countEntryCache("hit");
+			return cached.entry();
+		}
+		ResponseEntity<Entry> response = this.restClient.get()
+			.uri("%s/entries/{entryId}".formatted(this.entryProps.apiUrl()), entryId)
+			.headers(headers -> {
+				if (cached != null && cached.etag() != null) {
+					headers.setIfNoneMatch(cached.etag());
+				}
+				if (cached != null && cached.lastModified() != null) {
+					headers.set(HttpHeaders.IF_MODIFIED_SINCE, cached.lastModified());
+				}
+			})
+			.retrieve()
+			.toEntity(Entry.class);
+		if (cached != null && response.getStatusCode().isSameCodeAs(HttpStatus.NOT_MODIFIED)) {
+			this.metrics.countEntryCache("revalidated");
+			this.put(entryId, new Cached(cached.entry(), cached.etag(), cached.lastModified(), now));
+			return cached.entry();
+		}
+		this.metrics.countEntryCache("miss");
+		Entry entry = Objects.requireNonNull(response.getBody());
+		HttpHeaders headers = response.getHeaders();
+		this.put(entryId, new Cached(entry, headers.getETag(), headers.getFirst(HttpHeaders.LAST_MODIFIED), now));
+		return entry;
+	}
+
+	/**
+	 * Fetch the entries into the cache in advance, with at most {@code concurrency}
+	 * requests in flight. Entries that fail to be fetched are skipped, and the failure is
+	 * left to the subsequent {@link #get(Long)}.
+	 * <p>
+	 * The cached entries may be revalidated or evicted before a long batch reaches them,
+	 * so the caller holds on to the returned entries for the length of the batch.
+	 * @return the entries fetched in the order of the ids
+	 */
+	public Map<Long, Entry> prefetch(Collection<Long> entryIds, int concurrency) throws InterruptedException {
+		Semaphore permits = new Semaphore(concurrency);
+		Map<Long, Entry> fetched = new LinkedHashMap<>();
+		try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+			List<Future<Entry>> futures = new ArrayList<>(entryIds.size());
+			for (Long entryId : entryIds) {
+				futures.add(executor.submit(() -> {
+					permits.acquire();
+					try {
+						return this.get(entryId);
+					}
+					finally {
+						permits.release();
+					}
+				}));
+			}
+			Iterator<Long> ids = entryIds.iterator();
+			for (Future<Entry> future : futures) {
+				Long entryId = ids.next();
+				try {
+					fetched.put(entryId, future.get());
+				}
+				catch (ExecutionException e) {
+					if (!(e.getCause() instanceof RestClientException)) {
+						throw new IllegalStateException(e.getCause());
+					}
+				}
+			}
+		}
+		logger.info("action=prefetch_entries entries={} fetched={}", entryIds.size(), fetched.size());
+		return fetched;
+	}
+
+	public void evict(Long entryId) {
+		synchronized (this.cache) {
+			this.cache.remove(entryId);
+		}
+	}
+
+	public int size() {
+		synchronized (this.cache) {
+			return this.cache.size();
+		}
+	}
+
+	@Nullable
+	private Cached lookup(Long entryId) {
+		synchronized (this.cache) {
+			Cached cached = this.cache.get(entryId);
+			if (cached != null && this.expired(cached, System.nanoTime())) {
+				this.cache.remove(entryId);
+				return null;
+			}
+			return cached;
+		}
+	}
+
+	private void put(Long entryId, Cached cached) {
+		synchronized (this.cache) {
+			this.cache.put(entryId, cached);
+			long now = System.nanoTime();
+			Iterator<Cached> iterator = this.cache.values().iterator();
+			int excess = this.cache.size() - this.entryProps.cache().maxEntries();
+			while (iterator.hasNext()) {
+				Cached next = iterator.next();
+				// least recently used first
+				if (excess > 0 || this.expired(next, now)) {
+					iterator.remove();
+					excess--;
+				}
+			}
+		}
+	}
+
+	private boolean expired(Cached cached, long now) {
+		return now - cached.validatedAt() >= this.entryProps.cache().ttl().toNanos();
+	}
+
+	/**
+	 * @param validatedAt {@link System#nanoTime()} when the entry was last fetched or
+	 * revalidated
+	 */
+	record Cached(Entry entry, @Nullable String etag, @Nullable String lastModified, long validatedAt) {
+	}
+
+}
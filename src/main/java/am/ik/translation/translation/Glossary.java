@@ -0,0 +1,99 @@
+package am.ik.translation.translation;
+
+import am.ik.translation.util.AhoCorasick;
+import jakarta.annotation.Nullable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.stream.Collectors;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+/**
+ * English terms for Japanese terms loaded from {@code translation.glossary-file}. Each
+ * line of the file is a Japanese term and its English term separated by a tab. Blank
+ * lines and lines starting with {@code #} are ignored.
+ * <p>
+ * Only the terms occurring in a chunk are given to the model, so the prompt does not grow
+ * with the glossary.
+ */
+@Component
+public class Glossary {
+
+	private final List<Term> terms;
+
+	private final AhoCorasick automaton;
+
+	private final Logger logger = LoggerFactory.getLogger(Glossary.class);
+
+	@Autowired
+	public Glossary(TranslationProps translationProps) {
+		this(load(translationProps.glossaryFile()));
+		logger.info("action=load_glossary file={} terms={}", translationProps.glossaryFile(), this.terms.size());
+	}
+
+	public Glossary(List<Term> terms) {
+		this.terms = List.copyOf(terms);
+		this.automaton = new AhoCorasick(this.terms.stream().map(Term::japanese).toList());
+	}
+
+	static List<Term> load(@Nullable Path file) {
+		if (file == null) {
+			return List.of();
+		}
+		try {
+			List<Term> terms = new ArrayList<>();
+			for (String line : Files.readAllLines(file, StandardCharsets.UTF_8)) {
+				if (line.isBlank() || line.startsWith("#")) {
+					continue;
+				}
+				String[] columns = line.split("\t");
+				if (columns.length != 2 || columns[0].isBlank() || columns[1].isBlank()) {
+					throw new IllegalArgumentException("Invalid glossary line: " + line);
+				}
+				terms.add(new Term(columns[0].strip(), columns[1].strip()));
+			}
+			return terms;
+		}
+		catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	/**
+	 * @param texts texts to scan. Null texts are skipped.
+	 * @return the terms occurring in any of the texts, in the order of the glossary
+	 */
+	public List<Term> match(@Nullable String... texts) {
+		if (this.terms.isEmpty()) {
+			return List.of();
+		}
+		BitSet matched = new BitSet(this.terms.size());
+		for (String text : texts) {
+			if (text != null) {
+				matched.or(this.automaton.match(text));
+			}
+		}
+		return matched.stream().mapToObj(this.terms::get).toList();
+	}
+
+	/**
+	 * @return the terms as lines of the prompt, or an empty string if no terms are given
+	 */
+	public static String format(List<Term> terms) {
+		return terms.stream()
+			.map(term -> "%s => %s".formatted(term.japanese(), term.english()))
+			.collect(Collectors.joining("\n"));
+	}
+
+	public record Term(String japanese, String english) {
+	}
+
+}
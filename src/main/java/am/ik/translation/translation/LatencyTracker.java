@@ -0,0 +1,50 @@
+package am.ik.translation.translation;
+
+import jakarta.annotation.Nullable;
+import java.time.Duration;
+import java.util.Arrays;
+
+/**
+ * Sliding window of the recent latencies of a model, used to decide when to hedge a call.
+ * Percentiles are not available until {@link #MIN_SAMPLES} latencies are recorded.
+ */
+class LatencyTracker {
+
+	static final int MIN_SAMPLES = 20;
+
+	private final long[] samples;
+
+	private int count = 0;
+
+	private int next = 0;
+
+	LatencyTracker(int size) {
+		this.samples = new long[size];
+	}
+
+	synchronized void record(long nanos) {
+		this.samples[this.next] = nanos;
+		this.next = (this.next + 1) % this.samples.length;
+		this.count = Math.min(this.count + 1, this.samples.length);
+	}
+
+	/**
+	 * @param percentile percentile between 0 and 1
+	 * @return the percentile of the recorded latencies, or null if not enough latencies
+	 * are recorded
+	 */
+	@Nullable
+	Duration percentile(double percentile) {
+		long[] sorted;
+		synchronized (this) {
+			if (this.count < MIN_SAMPLES) {
+				return null;
+			}
+			sorted = Arrays.copyOf(this.samples, this.count);
+		}
+		Arrays.sort(sorted);
+		int index = (int) Math.ceil(percentile * sorted.length) - 1;
+		return Duration.ofNanos(sorted[Math.clamp(index, 0, sorted.length - 1)]);
+	}
+
+}
@@ -0,0 +1,226 @@
+package am.ik.translation.translation;
+
+import am.ik.translation.entry.Entry;
+import am.ik.translation.github.GitObject;
+import am.ik.translation.github.GithubProps;
+import am.ik.translation.util.MarkdownChunker;
+import am.ik.translation.util.ResponseParser;
+import jakarta.annotation.Nullable;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.http.HttpHeaders;
+import org.springframework.stereotype.Component;
+import org.springframework.web.client.HttpClientErrorException;
+import org.springframework.web.client.RestClient;
+import org.springframework.web.client.RestClientException;
+
+/**
+ * Finds the existing translation of an entry in the repository of the language together
+ * with the Japanese source it was translated from, so that only the changed sections of
+ * an updated entry have to be translated.
+ * <p>
+ * The source is the last commit of the entry in {@code making/blog.ik.am} until the
+ * {@code updated} date written in the front matter of the translation. The source and the
+ * translation are aligned by their sections, which is possible only when the model
+ * preserved all the headings.
+ */
+@Component
+public class PreviousTranslations {
+
+	static final String SOURCE_REPOSITORY = "making/blog.ik.am";
+
+	static final Pattern BANNER_MODEL_PATTERN = Pattern.compile("OpenAI API \\((.+?)\\)");
+
+	private final RestClient restClient;
+
+	private final GithubProps githubProps;
+
+	private final Logger logger = LoggerFactory.getLogger(PreviousTranslations.class);
+
+	public PreviousTranslations(RestClient.Builder restClientBuilder, GithubProps githubProps) {
+		this.githubProps = githubProps;
+		this.restClient = restClientBuilder.clone()
+			.defaultHeader(HttpHeaders.ACCEPT, "application/vnd.github.raw+json")
+			.defaultHeader("X-GitHub-Api-Version", "2022-11-28")
+			.build();
+	}
+
+	/**
+	 * @return the previous translation, or null if the entry has not been translated, the
+	 * source cannot be found or the translation is not aligned with the source
+	 */
+	@Nullable
+	public Previous find(Entry entry, TranslationProps.Language language) {
+		String path = "content/%s.md".formatted(entry.formatId());
+		try {
+			String translation = this.raw(language.repository(), path, null);
+			if (translation == null) {
+				return null;
+			}
+			Markdown translated = Markdown.parse(translation);
+			String updated = translated.frontMatter().get("updated");
+			if (updated == null) {
+				return null;
+			}
+			GitObject[] commits = this.restClient.get()
+				.uri("%s/repos/%s/commits?path={path}&until={until}&per_page=1".formatted(this.githubProps.apiUrl(),
+						SOURCE_REPOSITORY), path, updated)
+				.header(HttpHeaders.ACCEPT, "application/vnd.github+json")
+				.header(HttpHeaders.AUTHORIZATION, this.authorization())
+				.retrieve()
+				.body(GitObject[].class);
+			if (commits == null || commits.length == 0) {
+				return null;
+			}
+			String source = this.raw(SOURCE_REPOSITORY, path, commits[0].sha());
+			if (source == null) {
+				return null;
+			}
+			Previous previous = Previous.align(Markdown.parse(source), translated);
+			logger.info("action=find_previous_translation entryId={} language={} source={} aligned={}", entry.entryId(),
+					language.code(), commits[0].sha(), previous != null);
+			return previous;
+		}
+		catch (RestClientException e) {
+			// the entry is translated from scratch
+			logger.warn("action=find_previous_translation entryId={} language={}", entry.entryId(), language.code(), e);
+			return null;
+		}
+	}
+
+	@Nullable
+	private String raw(String repository, String path, @Nullable String ref) {
+		try {
+			byte[] body = this.restClient.get()
+				.uri("%s/repos/%s/contents/%s%s".formatted(this.githubProps.apiUrl(), repository, path,
+						ref == null ? "" : "?ref=" + ref))
+				.header(HttpHeaders.AUTHORIZATION, this.authorization())
+				.retrieve()
+				.body(byte[].class);
+			// raw contents do not always declare the charset
+			return body == null ? null : new String(body, StandardCharsets.UTF_8);
+		}
+		catch (HttpClientErrorException.NotFound e) {
+			return null;
+		}
+	}
+
+	private String authorization() {
+		return "token %s".formatted(this.githubProps.accessToken());
+	}
+
+	/**
+	 * @param title translated title
+	 * @param summary translated summary
+	 * @param sourceTitle title of the source
+	 * @param sourceSummary summary of the source
+	 * @param model models that made the translation, or null if unknown
+	 * @param sections translated sections keyed by the stripped source sections
+	 */
+	public record Previous(String title, @Nullable String summary, String sourceTitle, @Nullable String sourceSummary,
+			@Nullable String model, Map<String, String> sections) {
+
+		@Nullable
+		static Previous align(Markdown source, Markdown translated) {
+			List<String> sourceSections = MarkdownChunker.sections(source.content());
+			List<String> translatedSections = MarkdownChunker.sections(translated.content());
+			if (sourceSections.size() != translatedSections.size()) {
+				return null;
+			}
+			Map<String, String> sections = new HashMap<>();
+			for (int i = 0; i < sourceSections.size(); i++) {
+				sections.put(sourceSections.get(i).strip(), translatedSections.get(i).strip());
+			}
+			Matcher matcher = BANNER_MODEL_PATTERN.matcher(translated.banner());
+			return new Previous(translated.frontMatter().getOrDefault("title", ""),
+					translated.frontMatter().get("summary"), source.frontMatter().getOrDefault("title", ""),
+					source.frontMatter().get("summary"), matcher.find() ? matcher.group(1) : null, sections);
+		}
+
+		/**
+		 * Fill the segments of unchanged sections with their previous translations. A
+		 * section split into several segments is filled as a whole into its first
+		 * segment. The first section is reused only if the title and the summary are
+		 * unchanged, as they are translated together.
+		 * @param entry entry to translate
+		 * @param chunkSize {@code translation.chunk-size} the segments are split by
+		 * @param translatedSegments translations of the segments, null if not translated
+		 * yet
+		 * @return the number of the reused segments
+		 */
+		int reuse(Entry entry, int chunkSize, ResponseParser.TranslatedContent[] translatedSegments) {
+			boolean frontMatterUnchanged = this.sourceTitle.equals(entry.frontMatter().title())
+					&& Objects.equals(this.sourceSummary, entry.frontMatter().summary());
+			int reused = 0;
+			int first = 0;
+			for (String section : MarkdownChunker.sections(entry.content())) {
+				int size = MarkdownChunker.chunk(section, chunkSize).size();
+				String translated = this.sections.get(section.strip());
+				boolean untranslated = true;
+				for (int i = first; i < first + size; i++) {
+					untranslated &= translatedSegments[i] == null;
+				}
+				if (translated != null && untranslated && (first > 0 || frontMatterUnchanged)) {
+					for (int i = first; i < first + size; i++) {
+						translatedSegments[i] = new ResponseParser.TranslatedContent(i == 0 ? this.title : "",
+								i == 0 ? this.summary : null, i == first ? translated : "");
+					}
+					reused += size;
+				}
+				first += size;
+			}
+			return reused;
+		}
+
+	}
+
+	/**
+	 * Markdown with a front matter of simple {@code key: value} lines. The banner is the
+	 * leading block quote added to translations.
+	 */
+	record Markdown(Map<String, String> frontMatter, String banner, String content) {
+
+		static Markdown parse(String markdown) {
+			Map<String, String> frontMatter = new HashMap<>();
+			String body = markdown;
+			if (markdown.startsWith("---\n")) {
+				int end = markdown.indexOf("\n---\n", 3);
+				if (end >= 0) {
+					for (String line : markdown.substring(4, end).split("\n")) {
+						int colon = line.indexOf(':');
+						if (colon > 0) {
+							frontMatter.put(line.substring(0, colon).strip(),
+									unquote(line.substring(colon + 1).strip()));
+						}
+					}
+					body = markdown.substring(end + 5);
+				}
+			}
+			body = body.stripLeading();
+			String banner = "";
+			if (body.startsWith("> ⚠️")) {
+				int end = body.indexOf("\n\n");
+				banner = end < 0 ? body : body.substring(0, end);
+				body = end < 0 ? "" : body.substring(end + 2).stripLeading();
+			}
+			return new Markdown(frontMatter, banner, body);
+		}
+
+		static String unquote(String value) {
+			if (value.length() >= 2 && (value.startsWith("\"") && value.endsWith("\"")
+					|| value.startsWith("'") && value.endsWith("'"))) {
+				return value.substring(1, value.length() - 1);
+			}
+			return value;
+		}
+
+	}
+
+}
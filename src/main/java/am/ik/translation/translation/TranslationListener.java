@@ -0,0 +1,21 @@
+package am.ik.translation.translation;
+
+/**
+ * Receives the progress of a translation. It is called from the translating threads, so
+ * it must return quickly without blocking.
+ */
+@FunctionalInterface
+public interface TranslationListener {
+
+	TranslationListener NOOP = (tokens, chunksDone, chunks) -> {
+	};
+
+	/**
+	 * @param tokens tokens received from the model so far
+	 * @param chunksDone chunks translated so far
+	 * @param chunks chunks to translate. Segments found in the translation memory or the
+	 * previous translation are not included.
+	 */
+	void onProgress(long tokens, int chunksDone, int chunks);
+
+}
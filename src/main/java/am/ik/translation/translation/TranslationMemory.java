@@ -0,0 +1,155 @@
+package am.ik.translation.translation;
+
+import am.ik.translation.util.ResponseParser.TranslatedContent;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.annotation.Nullable;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+
+/**
+ * Content-addressed cache of translated segments. The key is a hash of the source
+ * segment, the model, the prompt version, the target language and the glossary terms
+ * found in the segment. Entries are held in a bounded in-memory LRU tier and, if
+ * {@code translation.memory.directory} is set, in a file-backed tier that survives
+ * restarts.
+ */
+@Component
+public class TranslationMemory {
+
+	private final Map<String, TranslatedContent> cache = new LinkedHashMap<>(256, 0.75f, true);
+
+	private final long maxSize;
+
+	private long size = 0;
+
+	@Nullable
+	private final Path directory;
+
+	private final ObjectMapper objectMapper;
+
+	private final Logger logger = LoggerFactory.getLogger(TranslationMemory.class);
+
+	public TranslationMemory(TranslationProps translationProps, ObjectMapper objectMapper) {
+		this.maxSize = translationProps.memory().maxSize().toBytes();
+		this.directory = translationProps.memory().directory();
+		this.objectMapper = objectMapper;
+	}
+
+	/**
+	 * @param language code of the target language
+	 * @param glossary glossary terms given to the model for the segment
+	 */
+	public static String key(String model, String promptVersion, String language, String glossary,
+			@Nullable String title, @Nullable String summary, String segment) {
+		try {
+			MessageDigest digest = MessageDigest.getInstance("SHA-256");
+			for (String part : new String[] { model, promptVersion, language, glossary, title, summary, segment }) {
+				if (part == null) {
+					digest.update((byte) 0);
+				}
+				else {
+					digest.update((byte) 1);
+					digest.update(part.getBytes(StandardCharsets.UTF_8));
+					// separate the parts so that ("ab", "c") and ("a", "bc") differ
+					digest.update((byte) 0xff);
+				}
+			}
+			return HexFormat.of().formatHex(digest.digest());
+		}
+		catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	@Nullable
+	public TranslatedContent get(String key) {
+		synchronized (this.cache) {
+			TranslatedContent cached = this.cache.get(key);
+			if (cached != null) {
+				return cached;
+			}
+		}
+		Path file = this.file(key);
+		if (file == null || !Files.exists(file)) {
+			return null;
+		}
+		try {
+			TranslatedContent stored = this.objectMapper.readValue(file.toFile(), TranslatedContent.class);
+			this.putInMemory(key, stored);
+			return stored;
+		}
+		catch (IOException e) {
+			logger.warn("action=read_translation_memory file={}", file, e);
+			return null;
+		}
+	}
+
+	public void put(String key, TranslatedContent translated) {
+		this.putInMemory(key, translated);
+		Path file = this.file(key);
+		if (file == null) {
+			return;
+		}
+		try {
+			Files.createDirectories(file.getParent());
+			Path tmp = Files.createTempFile(file.getParent(), key, ".tmp");
+			try {
+				this.objectMapper.writeValue(tmp.toFile(), translated);
+				Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+			}
+			finally {
+				// left behind only if the write or the move failed
+				Files.deleteIfExists(tmp);
+			}
+		}
+		catch (IOException e) {
+			// the translation itself succeeded, so losing the file tier copy only costs a
+			// cache miss after a restart
+			logger.warn("action=write_translation_memory file={}", file, e);
+		}
+	}
+
+	private void putInMemory(String key, TranslatedContent translated) {
+		synchronized (this.cache) {
+			TranslatedContent previous = this.cache.put(key, translated);
+			if (previous != null) {
+				this.size -= sizeOf(previous);
+			}
+			this.size += sizeOf(translated);
+			Iterator<TranslatedContent> iterator = this.cache.values().iterator();
+			while (this.size > this.maxSize && iterator.hasNext()) {
+				this.size -= sizeOf(iterator.next());
+				iterator.remove();
+			}
+		}
+	}
+
+	@Nullable
+	private Path file(String key) {
+		if (this.directory == null) {
+			return null;
+		}
+		return this.directory.resolve(key.substring(0, 2)).resolve(key + ".json");
+	}
+
+	static long sizeOf(TranslatedContent translated) {
+		// approximate the retained heap size with two bytes per char
+		long length = translated.content().length();
+		length += translated.title() == null ? 0 : translated.title().length();
+		length += translated.summary() == null ? 0 : translated.summary().length();
+		return 2 * length;
+	}
+
+}
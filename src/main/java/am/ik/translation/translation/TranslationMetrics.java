@@ -0,0 +1,173 @@
+package am.ik.translation.translation;
+
+import am.ik.translation.translation.job.JobState;
+import am.ik.translation.translation.job.TranslationJobQueue;
+import am.ik.translation.translation.ratelimit.RateLimiter;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.Nullable;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+import org.springframework.ai.chat.metadata.Usage;
+import org.springframework.stereotype.Component;
+
+/**
+ * Meters of the translation pipeline.
+ * <ul>
+ * <li>{@code translation.stage}: duration of each stage of a job (comment, fetch,
+ * translate, publish). The translate stage starts once the translation is admitted by the
+ * scheduler.</li>
+ * <li>{@code translation.scheduler.wait}: time waiting for a slot of the scheduler by
+ * priority</li>
+ * <li>{@code translation.llm.ttft} and {@code translation.llm.duration}: time to the
+ * first token and total time of a model call</li>
+ * <li>{@code translation.parse}: time to finish parsing and unmasking a response</li>
+ * <li>{@code translation.llm.tokens}: input and output tokens reported by the model</li>
+ * <li>{@code translation.llm.fallover}: calls fallen over to the next model</li>
+ * <li>{@code translation.llm.hedge}: hedged calls fired and won by the hedge</li>
+ * <li>{@code translation.chunks.active}, {@code translation.chunks.waiting} and
+ * {@code translation.chunks.limit}: model calls in flight, waiting for the rate limiter
+ * and their concurrency limit</li>
+ * <li>{@code translation.ratelimit.tokens}: tokens available for model calls</li>
+ * <li>{@code translation.jobs}: unfinished jobs by state, and
+ * {@code translation.jobs.queued}: jobs waiting for a worker</li>
+ * </ul>
+ * Each GitHub and entry API call is recorded separately as {@code http.client.requests}.
+ */
+@Component
+public class TranslationMetrics {
+
+	private final MeterRegistry meterRegistry;
+
+	public TranslationMetrics(MeterRegistry meterRegistry) {
+		this.meterRegistry = meterRegistry;
+	}
+
+	public <T> T stage(String stage, Supplier<T> supplier) {
+		Timer.Sample sample = Timer.start(this.meterRegistry);
+		String outcome = "error";
+		try {
+			T result = supplier.get();
+			outcome = "success";
+			return result;
+		}
+		finally {
+			sample.stop(Timer.builder("translation.stage")
+				.description("Duration of a stage of a translation job")
+				.tag("stage", stage)
+				.tag("outcome", outcome)
+				.register(this.meterRegistry));
+		}
+	}
+
+	public void stage(String stage, Runnable runnable) {
+		this.stage(stage, () -> {
+			runnable.run();
+			return null;
+		});
+	}
+
+	void recordTimeToFirstToken(String model, long nanos) {
+		Timer.builder("translation.llm.ttft")
+			.description("Time to the first token of a model call")
+			.tag("model", model)
+			.register(this.meterRegistry)
+			.record(nanos, TimeUnit.NANOSECONDS);
+	}
+
+	void recordGeneration(String model, long nanos, @Nullable Usage usage) {
+		Timer.builder("translation.llm.duration")
+			.description("Total duration of a model call")
+			.tag("model", model)
+			.register(this.meterRegistry)
+			.record(nanos, TimeUnit.NANOSECONDS);
+		if (usage != null) {
+			this.countTokens(model, "input", usage.getPromptTokens());
+			this.countTokens(model, "output", usage.getCompletionTokens());
+		}
+	}
+
+	private void countTokens(String model, String type, @Nullable Integer tokens) {
+		if (tokens != null && tokens > 0) {
+			Counter.builder("translation.llm.tokens")
+				.description("Tokens reported by the model")
+				.tag("model", model)
+				.tag("type", type)
+				.register(this.meterRegistry)
+				.increment(tokens);
+		}
+	}
+
+	void recordParse(long nanos) {
+		Timer.builder("translation.parse")
+			.description("Time to finish parsing and unmasking a response")
+			.register(this.meterRegistry)
+			.record(nanos, TimeUnit.NANOSECONDS);
+	}
+
+	void countEntryCache(String outcome) {
+		Counter.builder("translation.entry.cache")
+			.description("Lookups of the entry cache")
+			.tag("outcome", outcome)
+			.register(this.meterRegistry)
+			.increment();
+	}
+
+	void countHedge(String model, String outcome) {
+		Counter.builder("translation.llm.hedge")
+			.description("Hedged model calls")
+			.tag("model", model)
+			.tag("outcome", outcome)
+			.register(this.meterRegistry)
+			.increment();
+	}
+
+	void countFallover(String from, String to, String reason) {
+		Counter.builder("translation.llm.fallover")
+			.description("Model calls fallen over to the next target")
+			.tag("from", from)
+			.tag("to", to)
+			.tag("reason", reason)
+			.register(this.meterRegistry)
+			.increment();
+	}
+
+	void registerRateLimiterGauges(String model, RateLimiter rateLimiter) {
+		Gauge.builder("translation.chunks.active", rateLimiter, RateLimiter::inFlight)
+			.description("Model calls in flight")
+			.tag("model", model)
+			.register(this.meterRegistry);
+		Gauge.builder("translation.chunks.waiting", rateLimiter, RateLimiter::waiting)
+			.description("Model calls waiting for the rate limiter")
+			.tag("model", model)
+			.register(this.meterRegistry);
+		Gauge.builder("translation.chunks.limit", rateLimiter, RateLimiter::concurrencyLimit)
+			.description("Concurrency limit of model calls")
+			.tag("model", model)
+			.register(this.meterRegistry);
+		Gauge.builder("translation.ratelimit.tokens", rateLimiter, RateLimiter::availableTokens)
+			.description("Tokens available in the tokens-per-minute bucket")
+			.tag("model", model)
+			.register(this.meterRegistry);
+	}
+
+	public void registerJobGauges(TranslationJobQueue jobQueue) {
+		for (JobState state : JobState.values()) {
+			if (state.isTerminal()) {
+				continue;
+			}
+			Gauge
+				.builder("translation.jobs", jobQueue,
+						q -> q.jobs().stream().filter(job -> job.state() == state).count())
+				.description("Unfinished translation jobs")
+				.tag("state", state.name())
+				.register(this.meterRegistry);
+		}
+		Gauge.builder("translation.jobs.queued", jobQueue, TranslationJobQueue::queued)
+			.description("Translation jobs waiting for a worker")
+			.register(this.meterRegistry);
+	}
+
+}
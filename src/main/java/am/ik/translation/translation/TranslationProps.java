@@ -0,0 +1,156 @@
+package am.ik.translation.translation;
+
+import am.ik.translation.translation.scheduler.Priority;
+import jakarta.annotation.Nullable;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import org.jilt.Builder;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+import org.springframework.util.unit.DataSize;
+
+@ConfigurationProperties(prefix = "translation")
+@Builder(toBuilder = "from")
+public record TranslationProps(int chunkSize, int chunkConcurrency, Memory memory, Job job, Webhook webhook,
+		Batch batch, RateLimit rateLimit, @DefaultValue Routing routing, Hedge hedge, boolean incremental,
+		@Nullable Path glossaryFile, Scheduler scheduler, List<Language> languages) {
+
+	/**
+	 * @return the first of the languages, whose repository receives the translation
+	 * requests
+	 */
+	public Language primaryLanguage() {
+		return this.languages.getFirst();
+	}
+
+	/**
+	 * @param maxSize maximum size of the in-memory tier
+	 * @param directory directory of the file-backed tier. The tier is disabled if null.
+	 */
+	public record Memory(DataSize maxSize, @Nullable Path directory) {
+	}
+
+	/**
+	 * @param journalFile append-only journal of the job states
+	 * @param workers number of workers processing jobs concurrently
+	 * @param maxAttempts maximum number of attempts before a job fails
+	 * @param retryBackoff initial delay before a failed job is retried. The delay doubles
+	 * on every attempt.
+	 * @param sync whether to fsync the journal on every append
+	 * @param compactionThreshold size of the journal above which it is compacted
+	 */
+	public record Job(Path journalFile, int workers, int maxAttempts, Duration retryBackoff, boolean sync,
+			DataSize compactionThreshold) {
+	}
+
+	/**
+	 * @param deliveryTtl how long webhook delivery ids are remembered to ignore
+	 * redeliveries
+	 */
+	public record Webhook(Duration deliveryTtl) {
+	}
+
+	/**
+	 * @param concurrency number of entries fetched and translated concurrently in a batch
+	 * @param token bearer token required by the batch endpoint. The endpoint is disabled
+	 * if null.
+	 * @param mode how the chunks of a batch are translated
+	 * @param pollInterval interval to poll the submitted OpenAI batches
+	 * @param model model of the OpenAI batches.
+	 * {@code spring.ai.openai.chat.options.model} is used if null.
+	 */
+	public record Batch(int concurrency, @Nullable String token, Mode mode, Duration pollInterval,
+			@Nullable String model) {
+
+		public enum Mode {
+
+			/**
+			 * Call the model for each chunk as the jobs do.
+			 */
+			INTERACTIVE,
+			/**
+			 * Submit all the chunks as an OpenAI batch, which costs less and does not
+			 * consume the rate limits of the interactive calls but may take up to 24
+			 * hours.
+			 */
+			OPENAI
+
+		}
+
+	}
+
+	/**
+	 * Initial limits of the calls to OpenAI. They are updated by the
+	 * {@code x-ratelimit-*} headers of the responses.
+	 *
+	 * @param requestsPerMinute requests per minute
+	 * @param tokensPerMinute input and output tokens per minute
+	 */
+	public record RateLimit(int requestsPerMinute, int tokensPerMinute) {
+	}
+
+	/**
+	 * @param routes models by the estimated tokens of the entry. If empty,
+	 * {@code spring.ai.openai.chat.options.model} is used for every entry.
+	 * @param fallbacks endpoints tried in order when a call is overloaded (429 or 529) or
+	 * times out
+	 * @param latencyBudget maximum duration of a call before falling over. Unlimited if
+	 * null.
+	 */
+	public record Routing(@DefaultValue List<Route> routes, @DefaultValue List<Endpoint> fallbacks,
+			@Nullable Duration latencyBudget) {
+	}
+
+	/**
+	 * @param maxTokens maximum estimated tokens of the entries routed to the endpoint
+	 * @param endpoint endpoint
+	 */
+	public record Route(int maxTokens, Endpoint endpoint) {
+	}
+
+	/**
+	 * @param model model name
+	 * @param baseUrl base url of an OpenAI compatible API.
+	 * {@code spring.ai.openai.base-url} is used if null.
+	 * @param apiKey api key. {@code spring.ai.openai.api-key} is used if null.
+	 */
+	public record Endpoint(String model, @Nullable String baseUrl, @Nullable String apiKey) {
+	}
+
+	/**
+	 * @param concurrency number of entries translated concurrently by jobs and batches
+	 * @param weights weights of the priority classes. 1 if absent.
+	 */
+	public record Scheduler(int concurrency, @DefaultValue Map<Priority, Integer> weights) {
+	}
+
+	/**
+	 * @param code language code used in the translation memory keys and the logs
+	 * @param name name of the language in the prompt
+	 * @param repository repository to publish the translations to
+	 * @param concurrency maximum number of concurrent model calls for the language
+	 */
+	public record Language(String code, String name, String repository, int concurrency) {
+	}
+
+	/**
+	 * A second call is made to the same model when a call shows no progress for the
+	 * {@code percentile} of the recent times to the first token, bounded by
+	 * {@code minDelay} and {@code maxDelay}. The first call to finish wins and the other
+	 * is cancelled.
+	 *
+	 * @param enabled whether to hedge the calls
+	 * @param percentile percentile of the recent times to the first token
+	 * @param minDelay minimum delay before hedging
+	 * @param maxDelay maximum delay before hedging, also used until enough calls are
+	 * observed
+	 * @param idleTimeout a call fails when no response arrives for this duration, whether
+	 * hedging is enabled or not
+	 */
+	public record Hedge(boolean enabled, double percentile, Duration minDelay, Duration maxDelay,
+			Duration idleTimeout) {
+	}
+
+}
@@ -2,208 +2,1031 @@ package am.ik.translation.translation;
 
 import am.ik.translation.entry.Entry;
 import am.ik.translation.entry.EntryBuilder;
-import am.ik.translation.entry.EntryProps;
+import am.ik.translation.entry.FrontMatter;
 import am.ik.translation.entry.FrontMatterBuilder;
-import am.ik.translation.github.Commit;
-import am.ik.translation.github.Committer;
-import am.ik.translation.github.CreateBranchRequest;
-import am.ik.translation.github.CreateBranchResponse;
-import am.ik.translation.github.CreateContentRequestBuilders;
 import am.ik.translation.github.CreatePullResponse;
 import am.ik.translation.github.GithubProps;
+import am.ik.translation.github.GithubPublisher;
+import am.ik.translation.resilience.Downstreams;
+import am.ik.translation.translation.ratelimit.RateLimiter;
+import am.ik.translation.translation.routing.ModelRouter;
+import am.ik.translation.util.MarkdownChunker;
+import am.ik.translation.util.MarkdownMasker;
 import am.ik.translation.util.ResponseParser;
-import java.nio.charset.StandardCharsets;
-import java.time.Instant;
-import java.util.Base64;
+import am.ik.translation.util.StreamingResponseParser;
+import jakarta.annotation.Nullable;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.stream.Collectors;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.springframework.ai.chat.client.ChatClient;
-import org.springframework.beans.factory.annotation.Value;
+import org.springframework.ai.chat.metadata.Usage;
+import org.springframework.ai.chat.model.ChatResponse;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.MediaType;
-import org.springframework.scheduling.annotation.Async;
 import org.springframework.stereotype.Service;
-import org.springframework.web.client.HttpClientErrorException;
 import org.springframework.web.client.RestClient;
-
-import static am.ik.translation.github.CreateContentRequestBuilder.createContentRequest;
-import static am.ik.translation.github.CreatePullRequestBuilder.createPullRequest;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
 
 @Service
 public class TranslationService {
 
+	/**
+	 * Version of the prompt used as a part of the translation memory key. Increment this
+	 * when the prompt is changed so that stale translations are not reused.
+	 */
+	static final String PROMPT_VERSION = "2";
+
+	static final String SYSTEM_PROMPT = """
+			You are a skilled Japanese-to-%1$s translator, specializing in technical documentation translation.
+
+			Please translate the user's input which is a Japanese blog entry into %1$s. Title, summary (if present), and content are to be translated.
+			The content is written in markdown. The input may be a part of a long entry. In that case, translate only the given part.
+			Please include the <code>and <pre> elements in the markdown content in the result without translating them.
+			The part surrounded by ```` in markdown is the source code, so please do not translate the Japanese in that code.
+			Placeholders such as @@M0@@ stand for code or URLs. Keep every placeholder exactly as it is in the same place.
+			The format of the input and the output should be following format and do not include any explanations.
+			If the input contains a title section, include it in the output. If not, omit the title section.
+			If the input contains a summary section, include it in the output. If not, omit the summary section.
+
+			== title ==
+			translated title (only if present in input)
+
+			== summary ==
+			translated summary (only if present in input)
+
+			== content ==
+			translated content (markdown)
+			""";
+
 	private final RestClient restClient;
 
 	private final GithubProps githubProps;
 
-	private final EntryProps entryProps;
+	private final EntryCache entryCache;
+
+	private final ModelRouter modelRouter;
+
+	private final TranslationProps translationProps;
+
+	private final TranslationMemory translationMemory;
+
+	private final GithubPublisher githubPublisher;
+
+	private final PreviousTranslations previousTranslations;
+
+	private final Glossary glossary;
 
-	private final ChatClient chatClient;
+	private final TranslationMetrics metrics;
 
-	private final String chatModel;
+	private final Downstreams downstreams;
+
+	private final Map<String, LatencyTracker> latencies = new ConcurrentHashMap<>();
+
+	private final Map<String, Semaphore> languagePermits = new HashMap<>();
 
 	private final Logger logger = LoggerFactory.getLogger(TranslationService.class);
 
-	public TranslationService(RestClient.Builder restClientBuilder, GithubProps githubProps, EntryProps entryProps,
-			ChatClient.Builder chatClientBuilder,
-			@Value("${spring.ai.openai.chat.options.model:N/A}") String chatModel) {
+	public TranslationService(RestClient.Builder restClientBuilder, GithubProps githubProps, EntryCache entryCache,
+			ModelRouter modelRouter, TranslationProps translationProps, TranslationMemory translationMemory,
+			GithubPublisher githubPublisher, PreviousTranslations previousTranslations, Glossary glossary,
+			TranslationMetrics metrics, Downstreams downstreams) {
 		this.restClient = restClientBuilder.build();
 		this.githubProps = githubProps;
-		this.entryProps = entryProps;
-		this.chatClient = chatClientBuilder.build();
-		this.chatModel = chatModel;
+		this.entryCache = entryCache;
+		this.modelRouter = modelRouter;
+		this.translationProps = translationProps;
+		this.translationMemory = translationMemory;
+		this.githubPublisher = githubPublisher;
+		this.previousTranslations = previousTranslations;
+		this.glossary = glossary;
+		this.metrics = metrics;
+		this.downstreams = downstreams;
+		modelRouter.targets().forEach(target -> metrics.registerRateLimiterGauges(target.name(), target.rateLimiter()));
+		translationProps.languages()
+			.forEach(language -> this.languagePermits.put(language.code(), new Semaphore(language.concurrency())));
 	}
 
-	@Async
-	public void translateAndSendPullRequest(Long entryId, int issueNumber) {
-		this.sendComment(issueNumber);
-		Entry translated = this.translate(entryId);
-		CreatePullResponse createPullResponse = this.sendPullRequest(translated, issueNumber);
-		logger.info("action=send_pull_request url={}", createPullResponse.html_url());
+	/**
+	 * Tell the requester that the translation has started. The models that serve it,
+	 * after routing and falling over, are known only afterwards and are named in the pull
+	 * requests.
+	 */
+	public void sendComment(int issueNumber) {
+		this.comment(issueNumber,
+				"We will now start translating using OpenAI API (%s). please wait a moment."
+					.formatted(this.modelRouter.targets()
+						.stream()
+						.map(ModelRouter.Target::name)
+						.collect(Collectors.joining(", "))));
 	}
 
-	public void sendComment(int issueNumber) {
-		this.restClient.post()
-			.uri("%s/repos/making/ik.am_en/issues/{issueNumber}/comments".formatted(this.githubProps.apiUrl()),
-					issueNumber)
+	/**
+	 * Close an issue whose request is coalesced onto the unfinished job of another issue,
+	 * which opens the pull request.
+	 */
+	public void closeDuplicate(int issueNumber, long entryId, int originalIssueNumber) {
+		this.comment(issueNumber, "Translation of %d is already in progress in #%d. Closing this issue as a duplicate."
+			.formatted(entryId, originalIssueNumber));
+		this.restClient.patch()
+			.uri("%s/repos/%s/issues/{issueNumber}".formatted(this.githubProps.apiUrl(),
+					this.translationProps.primaryLanguage().repository()), issueNumber)
 			.header(HttpHeaders.AUTHORIZATION, "token %s".formatted(this.githubProps.accessToken()))
 			.header("X-GitHub-Api-Version", "2022-11-28")
 			.header(HttpHeaders.ACCEPT, "application/vnd.github+json")
 			.contentType(MediaType.APPLICATION_JSON)
-			.body(Map.of("body",
-					"We will now start translating using OpenAI API (%s). please wait a moment."
-						.formatted(this.chatModel)))
+			.body(Map.of("state", "closed", "state_reason", "not_planned"))
 			.retrieve()
 			.toBodilessEntity();
+		logger.info("action=close_duplicate issueNumber={} entryId={} original={}", issueNumber, entryId,
+				originalIssueNumber);
 	}
 
-	public Entry translate(Long entryId) {
-		Entry entry = Objects.requireNonNull(this.restClient.get()
-			.uri("%s/entries/{entryId}".formatted(this.entryProps.apiUrl()), entryId)
+	private void comment(int issueNumber, String body) {
+		this.restClient.post()
+			.uri("%s/repos/%s/issues/{issueNumber}/comments".formatted(this.githubProps.apiUrl(),
+					this.translationProps.primaryLanguage().repository()), issueNumber)
+			.header(HttpHeaders.AUTHORIZATION, "token %s".formatted(this.githubProps.accessToken()))
+			.header("X-GitHub-Api-Version", "2022-11-28")
+			.header(HttpHeaders.ACCEPT, "application/vnd.github+json")
+			.contentType(MediaType.APPLICATION_JSON)
+			.body(Map.of("body", body))
 			.retrieve()
-			.body(Entry.class));
-		logger.info("action=start_translation entryId={} model={}", entryId, chatModel);
+			.toBodilessEntity();
+	}
+
+	public Entry fetchEntry(Long entryId) {
+		return this.entryCache.get(entryId);
+	}
+
+	public Translated translate(Long entryId) {
+		return this.translate(this.fetchEntry(entryId));
+	}
+
+	public Translated translate(Entry entry) {
+		return this.translate(entry, TranslationListener.NOOP);
+	}
+
+	/**
+	 * Translate the entry into the primary language.
+	 */
+	public Translated translate(Entry entry, TranslationListener listener) {
+		return this.translate(entry, List.of(this.translationProps.primaryLanguage()), listener).getFirst().get();
+	}
+
+	/**
+	 * Translate the entry into the languages concurrently. The languages share the
+	 * segments of the entry and the masking of the chunks, and the calls of each language
+	 * are capped by its {@code concurrency}. The progress covers the chunks of all the
+	 * languages. A language fails on its first failed chunk, whose remaining chunks are
+	 * cancelled, without failing the other languages.
+	 * @return translations or failures in the order of the languages
+	 */
+	public List<Outcome> translate(Entry entry, List<TranslationProps.Language> languages,
+			TranslationListener listener) {
+		Long entryId = entry.entryId();
+		Source source = new Source(entry, MarkdownChunker.segments(entry.content(), this.translationProps.chunkSize()));
+		List<ModelRouter.Target> targets = this.modelRouter.route(RateLimiter.estimateTokens(entry.content()));
+		List<Plan> plans = languages.stream()
+			.map(language -> this.plan(source, language, targets.getFirst().name()))
+			.toList();
+		int chunks = plans.stream().mapToInt(plan -> plan.chunks.size()).sum();
 		long start = System.currentTimeMillis();
-		String summary = entry.frontMatter().summary();
-		String text = this.chatClient.prompt()
-			.system("""
-					You are a skilled Japanese-to-English translator, specializing in technical documentation translation.
-
-					Please translate the user's input which is a Japanese blog entry into English. Title, summary (if present), and content are to be translated.
-					The content is written in markdown.
-					Please include the <code>and <pre> elements in the markdown content in the result without translating them.
-					The part surrounded by ```` in markdown is the source code, so please do not translate the Japanese in that code.
-					The format of the input and the output should be following format and do not include any explanations.
-					If the input contains a summary section, include it in the output. If not, omit the summary section.
-
-					== title ==
-					translated title
-
-					== summary ==
-					translated summary (only if present in input)
-
-					== content ==
-					translated content (markdown)
-					""")
-			.user(u -> u.text("""
-					== title ==
-					{title}
-					%s
-					== content ==
-					{content}
-					""".formatted(summary != null ? """
-
-					== summary ==
-					{summary}
-
-					""" : """
-
-					"""))
-				.param("title", entry.frontMatter().title())
-				.params(summary != null ? Map.of("summary", summary) : Map.of())
-				.param("content", entry.content()))
-			.stream()
-			.content()
-			.collectList()
-			.map(list -> String.join("", list))
-			.block();
+		Progress progress = new Progress(listener, chunks);
+		listener.onProgress(0, 0, chunks);
+		RuntimeException[] errors = new RuntimeException[plans.size()];
+		try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+			List<List<Future<Served>>> futures = new ArrayList<>(plans.size());
+			for (Plan plan : plans) {
+				Semaphore permits = this.languagePermits.get(plan.language.code());
+				List<Future<Served>> planFutures = new ArrayList<>(plan.chunks.size());
+				for (Chunk chunk : plan.chunks) {
+					planFutures.add(executor.submit(() -> {
+						permits.acquire();
+						try {
+							Served served = this.translateChunk(plan.language, targets, progress,
+									chunk.first() == 0 ? entry.frontMatter() : null, source.chunk(chunk),
+									source.masked(chunk));
+							progress.chunkDone();
+							return served;
+						}
+						finally {
+							permits.release();
+						}
+					}));
+				}
+				futures.add(planFutures);
+			}
+			try {
+				for (int i = 0; i < plans.size(); i++) {
+					Plan plan = plans.get(i);
+					try {
+						for (int j = 0; j < plan.chunks.size(); j++) {
+							this.complete(plan, plan.chunks.get(j), futures.get(i).get(j).get());
+						}
+					}
+					catch (ExecutionException e) {
+						// the rest of the language is not needed, while the others go on
+						futures.get(i).forEach(future -> future.cancel(true));
+						if (e.getCause() instanceof RuntimeException runtimeException) {
+							errors[i] = runtimeException;
+						}
+						else {
+							errors[i] = new IllegalStateException("Translation failed: " + plan.language.code(),
+									e.getCause());
+						}
+					}
+				}
+			}
+			catch (InterruptedException e) {
+				// stop the chunk calls, as closing the executor waits for them
+				futures.forEach(planFutures -> planFutures.forEach(future -> future.cancel(true)));
+				throw e;
+			}
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Translation is interrupted: entryId=" + entryId, e);
+		}
 		long end = System.currentTimeMillis();
-		logger.info("action=finish_translation entryId={} model={} duration={}", entryId, chatModel, end - start);
-		ResponseParser.TranslatedContent translatedContent = ResponseParser.parseText(Objects.requireNonNull(text));
+		List<Outcome> outcomes = new ArrayList<>(plans.size());
+		for (int i = 0; i < plans.size(); i++) {
+			Plan plan = plans.get(i);
+			if (errors[i] != null) {
+				logger.warn("action=fail_translation entryId={} language={} duration={}", entryId, plan.language.code(),
+						end - start, errors[i]);
+				outcomes.add(new Outcome(plan.language, null, errors[i]));
+				continue;
+			}
+			logger.info("action=finish_translation entryId={} language={} models={} segments={} chunks={} duration={}",
+					entryId, plan.language.code(), plan.models, source.segments.size(), plan.chunks.size(),
+					end - start);
+			outcomes.add(new Outcome(plan.language, this.assemble(entry, plan), null));
+		}
+		return outcomes;
+	}
+
+	/**
+	 * Look up the segments in the translation memory and the previous translation, and
+	 * group the rest into chunks.
+	 */
+	Plan plan(Source source, TranslationProps.Language language, String chatModel) {
+		Entry entry = source.entry;
+		FrontMatter frontMatter = entry.frontMatter();
+		List<String> segments = source.segments;
+		Plan plan = new Plan(language, chatModel, segments.size());
+		boolean primary = language.equals(this.translationProps.primaryLanguage());
+		for (int i = 0; i < segments.size(); i++) {
+			// the title and the summary are translated together with the first segment
+			String title = i == 0 ? frontMatter.title() : null;
+			String summary = i == 0 ? frontMatter.summary() : null;
+			String glossary = primary ? Glossary.format(this.glossary.match(title, summary, segments.get(i))) : "";
+			String key = TranslationMemory.key(chatModel, PROMPT_VERSION, language.code(), glossary, title, summary,
+					segments.get(i));
+			plan.keys.add(key);
+			plan.translatedSegments[i] = this.translationMemory.get(key);
+			if (plan.translatedSegments[i] != null) {
+				plan.models.add(chatModel);
+			}
+		}
+		int reused = 0;
+		if (this.translationProps.incremental() && Arrays.asList(plan.translatedSegments).contains(null)) {
+			PreviousTranslations.Previous previous = this.previousTranslations.find(entry, language);
+			if (previous != null) {
+				reused = previous.reuse(entry, this.translationProps.chunkSize(), plan.translatedSegments);
+				if (reused > 0 && previous.model() != null) {
+					plan.models.add(previous.model());
+				}
+			}
+		}
+		plan.chunks.addAll(this.planChunks(segments, plan.translatedSegments));
+		logger.info("action=start_translation entryId={} language={} model={} segments={} reused={} chunks={}",
+				entry.entryId(), language.code(), chatModel, segments.size(), reused, plan.chunks.size());
+		return plan;
+	}
+
+	/**
+	 * Split the translated chunk back into segments and store them in the translation
+	 * memory.
+	 */
+	void complete(Plan plan, Chunk chunk, Served served) {
+		plan.models.add(served.model());
+		ResponseParser.TranslatedContent translatedChunk = served.translated();
+		// translations by a fallback are not stored under the key of the primary model
+		boolean store = served.model().equals(plan.chatModel);
+		List<String> translatedSections = MarkdownChunker.sections(translatedChunk.content());
+		boolean aligned = translatedSections.size() == chunk.size();
+		for (int j = chunk.first(); j <= chunk.last(); j++) {
+			String content;
+			if (aligned) {
+				content = translatedSections.get(j - chunk.first()).trim();
+			}
+			else {
+				// the model did not preserve the headings. the chunk cannot be split into
+				// segments and is not stored in the translation memory
+				content = j == chunk.first() ? translatedChunk.content() : "";
+			}
+			plan.translatedSegments[j] = new ResponseParser.TranslatedContent(j == 0 ? translatedChunk.title() : "",
+					j == 0 ? translatedChunk.summary() : null, content);
+			if (aligned && store) {
+				this.translationMemory.put(plan.keys.get(j), plan.translatedSegments[j]);
+			}
+		}
+	}
+
+	Translated assemble(Entry entry, Plan plan) {
+		ResponseParser.TranslatedContent translatedContent = plan.translatedSegments[0];
+		String content = Arrays.stream(plan.translatedSegments)
+			.map(ResponseParser.TranslatedContent::content)
+			.filter(s -> !s.isEmpty())
+			.collect(Collectors.joining("\n\n"));
 		FrontMatterBuilder frontMatterBuilder = FrontMatterBuilder.from(entry.frontMatter())
 			.title(translatedContent.title());
 		if (translatedContent.summary() != null) {
 			frontMatterBuilder.summary(translatedContent.summary());
 		}
-		return EntryBuilder.from(entry)
+		String model = String.join(", ", plan.models);
+		return new Translated(EntryBuilder.from(entry)
 			.content(
 					"""
 							> ⚠️ This article was automatically translated by OpenAI API (%s).
 							> It may be edited eventually, but please be aware that it may contain incorrect information at this time.
 
 							"""
-						.formatted(this.chatModel) + translatedContent.content())
+						.formatted(model) + content)
 			.frontMatter(frontMatterBuilder.build())
-			.build();
+			.build(), model, plan.language);
 	}
 
-	public CreatePullResponse sendPullRequest(Entry translated, int issueNumber) {
-		CreateBranchResponse branchResponse = this.restClient.get()
-			.uri("%s/repos/making/ik.am_en/branches/main".formatted(this.githubProps.apiUrl()))
-			.retrieve()
-			.body(CreateBranchResponse.class);
-		String latestSha = Objects.requireNonNull(branchResponse).commit().sha();
-		String branchName = "translation-" + translated.entryId() + "-" + Instant.now().getEpochSecond();
-		this.restClient.post()
-			.uri("%s/repos/making/ik.am_en/git/refs".formatted(this.githubProps.apiUrl()))
-			.header(HttpHeaders.ACCEPT, "application/vnd.github+json")
-			.header(HttpHeaders.AUTHORIZATION, "token %s".formatted(this.githubProps.accessToken()))
-			.body(new CreateBranchRequest("refs/heads/" + branchName, latestSha))
-			.retrieve()
-			.toBodilessEntity();
+	/**
+	 * Group consecutive segments that are not found in the translation memory into chunks
+	 * of at most {@code translation.chunk-size} characters. Every segment but the first
+	 * of a chunk starts with a heading, so that the translated chunk can be split back
+	 * into segments at its headings.
+	 */
+	List<Chunk> planChunks(List<String> segments, ResponseParser.TranslatedContent[] translatedSegments) {
+		List<Chunk> chunks = new ArrayList<>();
+		int first = -1;
+		int size = 0;
+		for (int i = 0; i < segments.size(); i++) {
+			String segment = segments.get(i);
+			if (translatedSegments[i] != null) {
+				if (first >= 0) {
+					chunks.add(new Chunk(first, i - 1));
+					first = -1;
+				}
+				continue;
+			}
+			if (first >= 0 && (size + segment.length() > this.translationProps.chunkSize()
+					|| !MarkdownChunker.startsWithHeading(segment))) {
+				chunks.add(new Chunk(first, i - 1));
+				first = -1;
+			}
+			if (first < 0) {
+				first = i;
+				size = 0;
+			}
+			size += segment.length();
+		}
+		if (first >= 0) {
+			chunks.add(new Chunk(first, segments.size() - 1));
+		}
+		return chunks;
+	}
+
+	/**
+	 * Translate a chunk of the content. The title and the summary are included in the
+	 * prompt only if {@code frontMatter} is not null. Code blocks, inline code, image
+	 * links and URLs are masked before the call and restored afterwards. If the model
+	 * drops or makes up a placeholder, the chunk is translated again without masking.
+	 */
+	Served translateChunk(TranslationProps.Language language, List<ModelRouter.Target> targets, Progress progress,
+			@Nullable FrontMatter frontMatter, String content, MarkdownMasker.Masked masked)
+			throws InterruptedException {
+		Served served = this.callWithFallback(language, targets, progress, frontMatter, masked.text());
+		return this.unmask(language, targets, progress, frontMatter, content, masked, served);
+	}
+
+	/**
+	 * Restore the masked parts of the translated chunk. If the model dropped a
+	 * placeholder or made one up, the chunk is translated again without masking.
+	 */
+	Served unmask(TranslationProps.Language language, List<ModelRouter.Target> targets, Progress progress,
+			@Nullable FrontMatter frontMatter, String content, MarkdownMasker.Masked masked, Served served)
+			throws InterruptedException {
+		ResponseParser.TranslatedContent translated = served.translated();
+		long start = System.nanoTime();
+		MarkdownMasker.Unmasked unmasked = masked.unmask(translated.content());
+		this.metrics.recordParse(served.parseNanos() + System.nanoTime() - start);
+		if (!unmasked.complete()) {
+			logger.warn("action=unmask_translation missing={} unknown={} masked={}", unmasked.missing(),
+					unmasked.unknown(), masked.originals().size());
+			Served retried = this.callWithFallback(language, targets, progress, frontMatter, content);
+			this.metrics.recordParse(retried.parseNanos());
+			return retried;
+		}
+		return new Served(
+				new ResponseParser.TranslatedContent(translated.title(), translated.summary(), unmasked.text()),
+				served.model(), served.parseNanos());
+	}
+
+	/**
+	 * Call the targets in order until one of them succeeds. The next target is tried only
+	 * if the call is overloaded or exceeds the latency budget.
+	 */
+	Served callWithFallback(TranslationProps.Language language, List<ModelRouter.Target> targets, Progress progress,
+			@Nullable FrontMatter frontMatter, String content) throws InterruptedException {
+		for (int i = 0;; i++) {
+			ModelRouter.Target target = targets.get(i);
+			try {
+				return this.callChatClient(language, target, progress, frontMatter, content);
+			}
+			catch (RuntimeException e) {
+				String reason = ModelRouter.fallOverReason(e);
+				if (reason == null || i + 1 >= targets.size()) {
+					throw e;
+				}
+				ModelRouter.Target next = targets.get(i + 1);
+				logger.warn("action=fall_over from={} to={} reason={}", target.name(), next.name(), reason);
+				this.metrics.countFallover(target.name(), next.name(), reason);
+			}
+		}
+	}
+
+	/**
+	 * Translate the entry into the primary language with the chunks translated outside of
+	 * this service, such as by the OpenAI Batch API. The translation memory and the
+	 * previous translation are used as usual.
+	 * @param chatModel model that translates the chunks
+	 */
+	public Deferred defer(Entry entry, String chatModel) {
+		Source source = new Source(entry, MarkdownChunker.segments(entry.content(), this.translationProps.chunkSize()));
+		return new Deferred(source, this.plan(source, this.translationProps.primaryLanguage(), chatModel));
+	}
+
+	/**
+	 * Translation whose chunks are requested with {@link #requests()} and completed with
+	 * {@link #complete(int, String)}.
+	 */
+	public final class Deferred {
+
+		private final Source source;
+
+		private final Plan plan;
+
+		Deferred(Source source, Plan plan) {
+			this.source = source;
+			this.plan = plan;
+		}
+
+		public Entry entry() {
+			return this.source.entry;
+		}
+
+		/**
+		 * @return the prompts of the chunks to translate, in the order of the chunks
+		 */
+		public List<Request> requests() {
+			List<Request> requests = new ArrayList<>(this.plan.chunks.size());
+			for (Chunk chunk : this.plan.chunks) {
+				FrontMatter frontMatter = chunk.first() == 0 ? this.source.entry.frontMatter() : null;
+				String title = frontMatter != null ? frontMatter.title() : null;
+				String summary = frontMatter != null ? frontMatter.summary() : null;
+				String masked = this.source.masked(chunk).text();
+				requests.add(new Request(systemPrompt(this.plan.language, title, summary, masked),
+						userMessage(title, summary, masked)));
+			}
+			return requests;
+		}
+
+		/**
+		 * @param index index of the request
+		 * @param response response of the model to the request
+		 */
+		public void complete(int index, String response) throws InterruptedException {
+			Chunk chunk = this.plan.chunks.get(index);
+			FrontMatter frontMatter = chunk.first() == 0 ? this.source.entry.frontMatter() : null;
+			// a chunk that lost its placeholders is translated again interactively
+			List<ModelRouter.Target> targets = modelRouter
+				.route(RateLimiter.estimateTokens(this.source.entry.content()));
+			long parseStart = System.nanoTime();
+			ResponseParser.TranslatedContent translated = ResponseParser.parseText(response);
+			Served served = unmask(this.plan.language, targets, new Progress(TranslationListener.NOOP, 0), frontMatter,
+					this.source.chunk(chunk), this.source.masked(chunk),
+					new Served(translated, this.plan.chatModel, System.nanoTime() - parseStart));
+			TranslationService.this.complete(this.plan, chunk, served);
+		}
+
+		/**
+		 * @return the translation after all the requests are completed
+		 */
+		public Translated translated() {
+			return assemble(this.source.entry, this.plan);
+		}
+
+	}
+
+	/**
+	 * @param system system prompt
+	 * @param user user message
+	 */
+	public record Request(String system, String user) {
+	}
+
+	/**
+	 * @return the user message of both the interactive calls and the batch requests. It
+	 * is not rendered as a template, so the braces in the content are kept as is.
+	 */
+	static String userMessage(@Nullable String title, @Nullable String summary, String content) {
+		StringBuilder message = new StringBuilder(content.length() + 64);
+		if (title != null) {
+			message.append("== title ==\n").append(title).append("\n\n");
+		}
+		if (summary != null) {
+			message.append("== summary ==\n").append(summary).append("\n\n");
+		}
+		return message.append("== content ==\n").append(content).append('\n').toString();
+	}
+
+	/**
+	 * A call waits for a permit from the {@link RateLimiter} of the target first, which
+	 * also caps the number of concurrent calls by {@code translation.chunk-concurrency}.
+	 * It is then allowed by the circuit breaker and the bulkhead of the target, so that a
+	 * failing endpoint is not called until its circuit is closed again, and a call
+	 * waiting for the rate limit does not hold a permit of the bulkhead.
+	 */
+	Served callChatClient(TranslationProps.Language language, ModelRouter.Target target, Progress progress,
+			@Nullable FrontMatter frontMatter, String content) throws InterruptedException {
+		String title = frontMatter != null ? frontMatter.title() : null;
+		String summary = frontMatter != null ? frontMatter.summary() : null;
+		String system = this.systemPrompt(language, title, summary, content);
+		// the output is about as long as the input
+		int estimatedTokens = RateLimiter.estimateTokens(system) + 2 * RateLimiter.estimateTokens(content)
+				+ (title != null ? RateLimiter.estimateTokens(title) : 0)
+				+ (summary != null ? RateLimiter.estimateTokens(summary) : 0);
+		RateLimiter.Permit permit = target.rateLimiter().acquire(estimatedTokens);
+		Downstreams.Guard guard = this.downstreams.model(target.name());
+		try {
+			guard.acquire();
+		}
+		catch (RuntimeException | InterruptedException e) {
+			// nothing was sent
+			permit.release(false, 0);
+			throw e;
+		}
+		Throwable error = null;
+		try {
+			return this.callWithHedge(target, guard, permit, estimatedTokens, progress, system, frontMatter, content);
+		}
+		catch (RuntimeException | InterruptedException e) {
+			error = e;
+			throw e;
+		}
+		finally {
+			guard.release(error);
+		}
+	}
+
+	/**
+	 * When the call shows no progress for the hedge delay of the target, a second call is
+	 * made if the limiter and the bulkhead allow it without waiting. The first call to
+	 * finish wins and the other is cancelled.
+	 */
+	Served callWithHedge(ModelRouter.Target target, Downstreams.Guard guard, RateLimiter.Permit permit,
+			int estimatedTokens, Progress progress, String system, @Nullable FrontMatter frontMatter, String content)
+			throws InterruptedException {
+		Call primary = this.startCall(target, permit, progress, system, frontMatter, content);
+		Call hedged = null;
+		try {
+			if (!this.translationProps.hedge().enabled()) {
+				return primary.join();
+			}
+			long delay = this.hedgeDelay(target).toNanos();
+			long wait = delay;
+			while (!primary.await(wait)) {
+				long idle = System.nanoTime() - primary.lastProgress;
+				if (idle < delay) {
+					wait = delay - idle;
+					continue;
+				}
+				RateLimiter.Permit hedgePermit = target.rateLimiter().tryAcquire(estimatedTokens);
+				if (hedgePermit == null) {
+					// hedge later, as the other calls are not to be delayed by hedges
+					wait = delay;
+					continue;
+				}
+				if (!guard.bulkhead().tryAcquire()) {
+					hedgePermit.release(false, 0);
+					wait = delay;
+					continue;
+				}
+				logger.info("action=hedge model={} idle={}ms", target.name(), TimeUnit.NANOSECONDS.toMillis(idle));
+				this.metrics.countHedge(target.name(), "fired");
+				try {
+					hedged = this.startCall(target, hedgePermit, progress, system, frontMatter, content);
+				}
+				catch (RuntimeException e) {
+					guard.bulkhead().release();
+					throw e;
+				}
+				break;
+			}
+			if (hedged == null) {
+				return primary.join();
+			}
+			try {
+				CompletableFuture.anyOf(primary.result, hedged.result).get();
+			}
+			catch (ExecutionException e) {
+				// the other call may still succeed
+			}
+			Call first = primary.result.isDone() ? primary : hedged;
+			Call winner = first.result.isCompletedExceptionally() ? (first == primary ? hedged : primary) : first;
+			Served translated = winner.join();
+			if (winner == hedged) {
+				this.metrics.countHedge(target.name(), "won");
+			}
+			return translated;
+		}
+		finally {
+			primary.cancel();
+			if (hedged != null) {
+				hedged.cancel();
+				guard.bulkhead().release();
+			}
+		}
+	}
+
+	/**
+	 * Append the glossary terms occurring in the input to the static system prompt of the
+	 * language. The static part stays a common prefix of all the calls. The glossary is
+	 * of the primary language.
+	 */
+	String systemPrompt(TranslationProps.Language language, @Nullable String title, @Nullable String summary,
+			String content) {
+		String prompt = systemPrompt(language);
+		if (!language.equals(this.translationProps.primaryLanguage())) {
+			return prompt;
+		}
+		String glossary = Glossary.format(this.glossary.match(title, summary, content));
+		if (glossary.isEmpty()) {
+			return prompt;
+		}
+		return prompt + """
+
+				Translate the following Japanese terms into the given %s terms.
+
+				%s
+				""".formatted(language.name(), glossary);
+	}
+
+	static String systemPrompt(TranslationProps.Language language) {
+		return SYSTEM_PROMPT.formatted(language.name());
+	}
+
+	Call startCall(ModelRouter.Target target, RateLimiter.Permit permit, Progress progress, String system,
+			@Nullable FrontMatter frontMatter, String content) {
+		String title = frontMatter != null ? frontMatter.title() : null;
+		String summary = frontMatter != null ? frontMatter.summary() : null;
+		long start = System.nanoTime();
+		Flux<ChatResponse> stream;
+		try {
+			stream = target.chatClient()
+				.prompt()
+				.system(system)
+				.user(userMessage(title, summary, content))
+				.stream()
+				.chatResponse()
+				// fail with a TimeoutException when the stream stalls
+				.timeout(this.translationProps.hedge().idleTimeout());
+		}
+		catch (RuntimeException e) {
+			permit.release(false, permit.reservedTokens());
+			throw e;
+		}
+		Duration latencyBudget = this.modelRouter.latencyBudget();
+		if (latencyBudget != null) {
+			long deadline = start + latencyBudget.toNanos();
+			// fail with a TimeoutException once the whole call exceeds the budget
+			stream = stream.timeout(Mono.delay(latencyBudget),
+					response -> Mono.delay(Duration.ofNanos(Math.max(0, deadline - System.nanoTime()))));
+		}
+		return new Call(target, permit, progress, start, new StreamingResponseParser(content.length() * 2), stream);
+	}
+
+	/**
+	 * @return the percentile of the recent times to the first token of the target,
+	 * bounded by {@code translation.hedge.min-delay} and
+	 * {@code translation.hedge.max-delay}
+	 */
+	Duration hedgeDelay(ModelRouter.Target target) {
+		TranslationProps.Hedge hedge = this.translationProps.hedge();
+		Duration delay = this.latencyTracker(target).percentile(hedge.percentile());
+		if (delay == null || delay.compareTo(hedge.maxDelay()) > 0) {
+			return hedge.maxDelay();
+		}
+		return delay.compareTo(hedge.minDelay()) < 0 ? hedge.minDelay() : delay;
+	}
+
+	private LatencyTracker latencyTracker(ModelRouter.Target target) {
+		return this.latencies.computeIfAbsent(target.name(), name -> new LatencyTracker(200));
+	}
+
+	/**
+	 * A streaming call to a model. The response is parsed as it arrives, and the permit
+	 * is released when the call finishes or is cancelled. The time to the first token,
+	 * the total time and the token usage of the call are recorded in
+	 * {@link TranslationMetrics}.
+	 */
+	final class Call {
+
+		private final ModelRouter.Target target;
+
+		private final RateLimiter.Permit permit;
+
+		private final long start;
+
+		private final StreamingResponseParser parser;
+
+		private final AtomicReference<Usage> usage = new AtomicReference<>();
+
+		private final CompletableFuture<Served> result = new CompletableFuture<>();
+
+		private final Progress progress;
+
+		private final Disposable subscription;
+
+		private volatile long lastProgress;
+
+		private boolean firstToken = true;
+
+		Call(ModelRouter.Target target, RateLimiter.Permit permit, Progress progress, long start,
+				StreamingResponseParser parser, Flux<ChatResponse> stream) {
+			this.progress = progress;
+			this.target = target;
+			this.permit = permit;
+			this.start = start;
+			this.parser = parser;
+			this.lastProgress = start;
+			this.subscription = stream.subscribe(this::onNext, this::onError, this::onComplete);
+		}
+
+		private void onNext(ChatResponse response) {
+			long now = System.nanoTime();
+			this.lastProgress = now;
+			this.progress.token();
+			if (this.firstToken) {
+				this.firstToken = false;
+				metrics.recordTimeToFirstToken(this.target.name(), now - this.start);
+				latencyTracker(this.target).record(now - this.start);
+			}
+			if (response.getMetadata().getUsage() != null && response.getMetadata().getUsage().getTotalTokens() > 0) {
+				this.usage.set(response.getMetadata().getUsage());
+			}
+			if (response.getResult() != null && response.getResult().getOutput().getText() != null) {
+				this.parser.append(response.getResult().getOutput().getText());
+			}
+		}
+
+		private void onError(Throwable e) {
+			this.permit.release(false, this.usedTokens());
+			this.result.completeExceptionally(e);
+		}
+
+		private void onComplete() {
+			metrics.recordGeneration(this.target.name(), System.nanoTime() - this.start, this.usage.get());
+			try {
+				long parseStart = System.nanoTime();
+				ResponseParser.TranslatedContent translated = this.parser.finish();
+				long parseNanos = System.nanoTime() - parseStart;
+				this.permit.release(true, this.usedTokens());
+				this.result.complete(new Served(translated, this.target.name(), parseNanos));
+			}
+			catch (RuntimeException e) {
+				this.onError(e);
+			}
+		}
+
+		private int usedTokens() {
+			Usage usage = this.usage.get();
+			return usage != null ? usage.getTotalTokens() : this.permit.reservedTokens();
+		}
+
+		/**
+		 * @return whether the call finished within the given time
+		 */
+		boolean await(long nanos) throws InterruptedException {
+			try {
+				this.result.get(nanos, TimeUnit.NANOSECONDS);
+			}
+			catch (ExecutionException | TimeoutException ignored) {
+			}
+			return this.result.isDone();
+		}
+
+		Served join() throws InterruptedException {
+			try {
+				return this.result.get();
+			}
+			catch (ExecutionException e) {
+				if (e.getCause() instanceof RuntimeException runtimeException) {
+					throw runtimeException;
+				}
+				throw new IllegalStateException(e.getCause().getMessage(), e.getCause());
+			}
+		}
+
+		void cancel() {
+			if (this.result.cancel(false)) {
+				this.subscription.dispose();
+				this.permit.release(false, this.usedTokens());
+			}
+		}
+
+	}
+
+	/**
+	 * Open a pull request of the translation in the repository of its language. Only the
+	 * pull request of the primary language closes the issue, which is in the repository
+	 * of the primary language. The branch is named after the job, so that a job resumed
+	 * or retried after opening the pull request gets the same pull request back.
+	 */
+	public CreatePullResponse sendPullRequest(Translated translation, int issueNumber, String jobId) {
+		Entry translated = translation.entry();
+		TranslationProps.Language language = translation.language();
 		String fileName = "%s.md".formatted(translated.formatId());
+		String reference = language.equals(this.translationProps.primaryLanguage())
+				? "closes gh-%d".formatted(issueNumber)
+				: "requested in %s#%d".formatted(this.translationProps.primaryLanguage().repository(), issueNumber);
 		String commitMessage = """
 				Translate %s by OpenAI (%s)
 
-				closes gh-%d
-				""".formatted(fileName, this.chatModel, issueNumber).trim();
-		CreateContentRequestBuilders.Optionals ccrBuilder = createContentRequest().message(commitMessage)
-			.branch(branchName)
-			.content(Base64.getEncoder().encodeToString(translated.toMarkdown().getBytes(StandardCharsets.UTF_8)))
-			.committer(new Committer("Translation Bot", "makingx+bot@gmail.com"));
-		try {
-			Commit latestCommit = this.restClient.get()
-				.uri("%s/repos/making/ik.am_en/contents/content/{fileName}".formatted(this.githubProps.apiUrl()),
-						fileName)
-				.header(HttpHeaders.ACCEPT, "application/vnd.github+json")
-				.header(HttpHeaders.AUTHORIZATION, "token %s".formatted(this.githubProps.accessToken()))
-				.retrieve()
-				.body(Commit.class);
-			ccrBuilder.sha(Objects.requireNonNull(latestCommit).sha());
-		}
-		catch (HttpClientErrorException.NotFound notFound) {
-			// ignore
-		}
-		this.restClient.put()
-			.uri("%s/repos/making/ik.am_en/contents/content/{fileName}".formatted(this.githubProps.apiUrl()), fileName)
-			.header(HttpHeaders.ACCEPT, "application/vnd.github+json")
-			.header(HttpHeaders.AUTHORIZATION, "token %s".formatted(this.githubProps.accessToken()))
-			.body(ccrBuilder.build())
-			.retrieve()
-			.toBodilessEntity();
-		return this.restClient.post()
-			.uri("%s/repos/making/ik.am_en/pulls".formatted(this.githubProps.apiUrl()))
-			.header(HttpHeaders.ACCEPT, "application/vnd.github+json")
-			.header(HttpHeaders.AUTHORIZATION, "token %s".formatted(this.githubProps.accessToken()))
-			.body(createPullRequest().title(commitMessage).body("""
-					translated https://github.com/making/blog.ik.am/blob/master/content/%s.md
+				%s
+				""".formatted(fileName, translation.model(), reference).trim();
+		return this.githubPublisher.publish(language.repository(), "translation-" + translated.entryId() + "-" + jobId,
+				commitMessage, """
+						translated https://github.com/making/blog.ik.am/blob/master/content/%s.md
+						by OpenAI API (%s)
+
+						%s
+						""".formatted(translated.formatId(), translation.model(), reference),
+				Map.of("content/" + fileName, translated::writeMarkdown));
+	}
+
+	/**
+	 * @param entry translated entry
+	 * @param model models that served the translation
+	 * @param language language of the translation
+	 */
+	public record Translated(Entry entry, String model, TranslationProps.Language language) {
+	}
+
+	/**
+	 * @param language language of the translation
+	 * @param translated translation if it succeeded
+	 * @param error failure of the translation otherwise
+	 */
+	public record Outcome(TranslationProps.Language language, @Nullable Translated translated,
+			@Nullable RuntimeException error) {
+
+		/**
+		 * @return the translation, or throw the failure
+		 */
+		public Translated get() {
+			if (this.error != null) {
+				throw this.error;
+			}
+			return Objects.requireNonNull(this.translated);
+		}
+
+	}
+
+	/**
+	 * @param translated parsed translation
+	 * @param model model that served the translation
+	 * @param parseNanos time to finish parsing the response, recorded together with the
+	 * unmasking
+	 */
+	record Served(ResponseParser.TranslatedContent translated, String model, long parseNanos) {
+	}
+
+	/**
+	 * Counts the tokens and the chunks of a translation and reports them to the
+	 * {@link TranslationListener} on every chunk and every {@link #TOKENS_PER_REPORT}
+	 * tokens. Tokens of hedged and fallen over calls are counted too.
+	 */
+	static final class Progress {
+
+		static final int TOKENS_PER_REPORT = 50;
+
+		private final TranslationListener listener;
+
+		private final int chunks;
+
+		private final AtomicLong tokens = new AtomicLong();
+
+		private final AtomicInteger chunksDone = new AtomicInteger();
+
+		Progress(TranslationListener listener, int chunks) {
+			this.listener = listener;
+			this.chunks = chunks;
+		}
+
+		void token() {
+			long tokens = this.tokens.incrementAndGet();
+			if (tokens % TOKENS_PER_REPORT == 0) {
+				this.listener.onProgress(tokens, this.chunksDone.get(), this.chunks);
+			}
+		}
+
+		void chunkDone() {
+			this.listener.onProgress(this.tokens.get(), this.chunksDone.incrementAndGet(), this.chunks);
+		}
+
+	}
+
+	/**
+	 * Entry to translate and the work shared by the languages.
+	 */
+	static final class Source {
+
+		private final Entry entry;
+
+		private final List<String> segments;
+
+		private final Map<Chunk, MarkdownMasker.Masked> masked = new ConcurrentHashMap<>();
+
+		Source(Entry entry, List<String> segments) {
+			this.entry = entry;
+			this.segments = segments;
+		}
+
+		String chunk(Chunk chunk) {
+			return String.join("", this.segments.subList(chunk.first(), chunk.last() + 1));
+		}
+
+		/**
+		 * @return the chunk masked once for all the languages with the same chunk
+		 */
+		MarkdownMasker.Masked masked(Chunk chunk) {
+			return this.masked.computeIfAbsent(chunk, c -> MarkdownMasker.mask(this.chunk(c)));
+		}
+
+	}
+
+	/**
+	 * Translation of an entry into a language in progress.
+	 */
+	static final class Plan {
+
+		private final TranslationProps.Language language;
+
+		private final String chatModel;
+
+		private final List<String> keys;
+
+		private final ResponseParser.TranslatedContent[] translatedSegments;
+
+		private final Set<String> models = new LinkedHashSet<>();
+
+		private final List<Chunk> chunks = new ArrayList<>();
+
+		Plan(TranslationProps.Language language, String chatModel, int segments) {
+			this.language = language;
+			this.chatModel = chatModel;
+			this.keys = new ArrayList<>(segments);
+			this.translatedSegments = new ResponseParser.TranslatedContent[segments];
+		}
+
+	}
+
+	record Chunk(int first, int last) {
+
+		int size() {
+			return last - first + 1;
+		}
 
-					closes gh-%d
-					""".formatted(translated.formatId(), issueNumber)).head(branchName).base("main").build())
-			.retrieve()
-			.body(CreatePullResponse.class);
 	}
 
 }
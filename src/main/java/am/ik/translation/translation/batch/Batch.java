@@ -0,0 +1,26 @@
+package am.ik.translation.translation.batch;
+
+import jakarta.annotation.Nullable;
+import java.time.Instant;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * @param batchId id of the batch
+ * @param entryIds entries requested to translate
+ * @param state current state
+ * @param translated entries translated successfully
+ * @param skipped entries that do not exist
+ * @param failed entries failed to translate
+ * @param url url of the pull request if created
+ */
+public record Batch(String batchId, List<Long> entryIds, BatchState state, List<Long> translated, List<Long> skipped,
+		List<Long> failed, @Nullable String url, Instant createdAt, Instant updatedAt) {
+
+	Batch finish(BatchState state, Collection<Long> translated, List<Long> skipped, List<Long> failed,
+			@Nullable String url) {
+		return new Batch(this.batchId, this.entryIds, state, List.copyOf(translated), List.copyOf(skipped),
+				List.copyOf(failed), url, this.createdAt, Instant.now());
+	}
+
+}
@@ -0,0 +1,7 @@
+package am.ik.translation.translation.batch;
+
+public enum BatchState {
+
+	RUNNING, PR_CREATED, FAILED
+
+}
@@ -0,0 +1,268 @@
+package am.ik.translation.translation.batch;
+
+import am.ik.translation.entry.Entry;
+import am.ik.translation.github.BlobContent;
+import am.ik.translation.github.CreatePullResponse;
+import am.ik.translation.github.GithubPublisher;
+import am.ik.translation.translation.EntryCache;
+import am.ik.translation.translation.TranslationProps;
+import am.ik.translation.translation.TranslationService;
+import am.ik.translation.translation.ratelimit.RateLimiter;
+import am.ik.translation.translation.scheduler.FairScheduler;
+import am.ik.translation.translation.scheduler.Priority;
+import jakarta.annotation.Nullable;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.stream.Collectors;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+import org.springframework.web.client.HttpClientErrorException;
+
+/**
+ * Translates many entries at once for backfilling. Entries are fetched and translated
+ * with at most {@code translation.batch.concurrency} entries in flight, while the calls
+ * to the model are still capped by {@code translation.chunk-concurrency}. Translations of
+ * batches run as {@link Priority#BACKFILL}, so they yield to the jobs of new entries. All
+ * translations are committed to one branch and published as a single pull request.
+ * Batches backfill only the primary language.
+ * <p>
+ * With {@code translation.batch.mode=openai}, the chunks of all entries are submitted to
+ * the OpenAI Batch API through {@link OpenAiBatches} instead, which is cheaper but may
+ * take up to a day.
+ * <p>
+ * Unlike {@link am.ik.translation.translation.job.TranslationJobQueue}, batches are not
+ * journaled. A batch interrupted by a restart has to be submitted again, and entries
+ * translated before the restart are served by the translation memory. Running batches and
+ * the latest {@link #RECENT_BATCHES} finished batches are kept in memory to be looked up.
+ */
+@Component
+public class BatchTranslator {
+
+	static final int RECENT_BATCHES = 256;
+
+	private final TranslationService translationService;
+
+	private final GithubPublisher githubPublisher;
+
+	private final TranslationProps.Batch props;
+
+	private final FairScheduler fairScheduler;
+
+	private final EntryCache entryCache;
+
+	private final TranslationProps.Language primaryLanguage;
+
+	private final OpenAiBatches openAiBatches;
+
+	private final Map<String, Batch> batches = new ConcurrentHashMap<>();
+
+	private final Map<String, Batch> finished = new LinkedHashMap<>() {
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<String, Batch> eldest) {
+			return size() > RECENT_BATCHES;
+		}
+	};
+
+	private final Logger logger = LoggerFactory.getLogger(BatchTranslator.class);
+
+	public BatchTranslator(TranslationService translationService, GithubPublisher githubPublisher,
+			TranslationProps translationProps, FairScheduler fairScheduler, EntryCache entryCache,
+			OpenAiBatches openAiBatches) {
+		this.translationService = translationService;
+		this.githubPublisher = githubPublisher;
+		this.props = translationProps.batch();
+		this.fairScheduler = fairScheduler;
+		this.entryCache = entryCache;
+		this.primaryLanguage = translationProps.primaryLanguage();
+		this.openAiBatches = openAiBatches;
+	}
+
+	public Batch submit(List<Long> entryIds) {
+		Batch batch = new Batch(UUID.randomUUID().toString(), List.copyOf(entryIds), BatchState.RUNNING, List.of(),
+				List.of(), List.of(), null, Instant.now(), Instant.now());
+		this.batches.put(batch.batchId(), batch);
+		logger.info("action=submit_batch batchId={} entries={}", batch.batchId(), entryIds.size());
+		Thread.ofVirtual().name("batch-" + batch.batchId()).start(() -> this.run(batch));
+		return batch;
+	}
+
+	/**
+	 * @return the running or recently finished batch
+	 */
+	@Nullable
+	public Batch get(String batchId) {
+		Batch batch = this.batches.get(batchId);
+		if (batch != null) {
+			return batch;
+		}
+		synchronized (this.finished) {
+			return this.finished.get(batchId);
+		}
+	}
+
+	void run(Batch batch) {
+		Map<Long, TranslationService.Translated> translated = new LinkedHashMap<>();
+		List<Long> skipped = new ArrayList<>();
+		List<Long> failed = new ArrayList<>();
+		Semaphore permits = new Semaphore(this.props.concurrency());
+		Map<Long, Entry> prefetched;
+		try {
+			// fetch all entries upfront so that the translations do not wait for them.
+			// The prefetched entries are used for the whole batch, as the cache would
+			// revalidate them before a large batch reaches them.
+			prefetched = this.entryCache.prefetch(batch.entryIds(), this.props.concurrency());
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			this.update(batch.finish(BatchState.FAILED, translated.keySet(), skipped, failed, null));
+			return;
+		}
+		if (this.props.mode() == TranslationProps.Batch.Mode.OPENAI) {
+			this.submitOpenAi(batch, prefetched, skipped, failed);
+			return;
+		}
+		try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+			List<Future<TranslationService.Translated>> futures = new ArrayList<>(batch.entryIds().size());
+			for (Long entryId : batch.entryIds()) {
+				futures.add(executor.submit(() -> {
+					permits.acquire();
+					try {
+						Entry entry = this.entry(prefetched, entryId);
+						return this.fairScheduler.run(Priority.BACKFILL, RateLimiter.estimateTokens(entry.content()),
+								"batch-" + batch.batchId(), () -> this.translationService.translate(entry));
+					}
+					finally {
+						permits.release();
+					}
+				}));
+			}
+			for (int i = 0; i < futures.size(); i++) {
+				Long entryId = batch.entryIds().get(i);
+				try {
+					translated.put(entryId, futures.get(i).get());
+				}
+				catch (ExecutionException e) {
+					if (e.getCause() instanceof HttpClientErrorException.NotFound) {
+						// ranges may contain ids that do not exist
+						skipped.add(entryId);
+					}
+					else {
+						logger.warn("action=fail_batch_entry batchId={} entryId={}", batch.batchId(), entryId,
+								e.getCause());
+						failed.add(entryId);
+					}
+				}
+			}
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			this.update(batch.finish(BatchState.FAILED, translated.keySet(), skipped, failed, null));
+			return;
+		}
+		this.finish(batch, translated, skipped, failed);
+	}
+
+	private void submitOpenAi(Batch batch, Map<Long, Entry> prefetched, List<Long> skipped, List<Long> failed) {
+		List<Entry> entries = new ArrayList<>(batch.entryIds().size());
+		for (Long entryId : batch.entryIds()) {
+			try {
+				entries.add(this.entry(prefetched, entryId));
+			}
+			catch (HttpClientErrorException.NotFound e) {
+				skipped.add(entryId);
+			}
+			catch (RuntimeException e) {
+				logger.warn("action=fail_batch_entry batchId={} entryId={}", batch.batchId(), entryId, e);
+				failed.add(entryId);
+			}
+		}
+		try {
+			this.openAiBatches.submit(batch.batchId(), entries, (translatedEntries, failedEntries) -> {
+				Map<Long, TranslationService.Translated> translated = new LinkedHashMap<>();
+				translatedEntries.forEach(t -> translated.put(t.entry().entryId(), t));
+				List<Long> allFailed = new ArrayList<>(failed);
+				allFailed.addAll(failedEntries);
+				this.finish(batch, translated, skipped, allFailed);
+			});
+		}
+		catch (RuntimeException e) {
+			logger.error("action=fail_batch batchId={}", batch.batchId(), e);
+			this.update(batch.finish(BatchState.FAILED, List.of(), skipped, failed, null));
+		}
+	}
+
+	/**
+	 * @return the prefetched entry, or the entry fetched again to report why prefetching
+	 * failed
+	 */
+	private Entry entry(Map<Long, Entry> prefetched, Long entryId) {
+		Entry entry = prefetched.get(entryId);
+		return entry != null ? entry : this.translationService.fetchEntry(entryId);
+	}
+
+	void finish(Batch batch, Map<Long, TranslationService.Translated> translated, List<Long> skipped,
+			List<Long> failed) {
+		if (translated.isEmpty()) {
+			this.update(batch.finish(BatchState.FAILED, translated.keySet(), skipped, failed, null));
+			return;
+		}
+		try {
+			CreatePullResponse pull = this.publish(batch, translated, failed);
+			this.update(batch.finish(BatchState.PR_CREATED, translated.keySet(), skipped, failed, pull.html_url()));
+			logger.info("action=finish_batch batchId={} translated={} skipped={} failed={} url={}", batch.batchId(),
+					translated.size(), skipped.size(), failed.size(), pull.html_url());
+		}
+		catch (RuntimeException e) {
+			logger.error("action=fail_batch batchId={}", batch.batchId(), e);
+			this.update(batch.finish(BatchState.FAILED, translated.keySet(), skipped, failed, null));
+		}
+	}
+
+	CreatePullResponse publish(Batch batch, Map<Long, TranslationService.Translated> translated, List<Long> failed) {
+		Map<String, BlobContent> files = new LinkedHashMap<>();
+		translated.values()
+			.stream()
+			.map(TranslationService.Translated::entry)
+			.forEach(entry -> files.put("content/%s.md".formatted(entry.formatId()), entry::writeMarkdown));
+		String models = translated.values()
+			.stream()
+			.map(TranslationService.Translated::model)
+			.distinct()
+			.collect(Collectors.joining(", "));
+		String message = "Translate %d entries by OpenAI (%s)".formatted(translated.size(), models);
+		String body = translated.values()
+			.stream()
+			.map(TranslationService.Translated::entry)
+			.map(entry -> "translated https://github.com/making/blog.ik.am/blob/master/content/%s.md"
+				.formatted(entry.formatId()))
+			.collect(Collectors.joining("\n"));
+		if (!failed.isEmpty()) {
+			body += "\n\nfailed to translate " + failed;
+		}
+		return this.githubPublisher.publish(this.primaryLanguage.repository(), "translation-batch-" + batch.batchId(),
+				message, body, files);
+	}
+
+	private void update(Batch batch) {
+		if (batch.state() == BatchState.RUNNING) {
+			this.batches.put(batch.batchId(), batch);
+			return;
+		}
+		synchronized (this.finished) {
+			this.finished.put(batch.batchId(), batch);
+		}
+		this.batches.remove(batch.batchId());
+	}
+
+}
@@ -0,0 +1,189 @@
+package am.ik.translation.translation.batch;
+
+import am.ik.translation.translation.TranslationProps;
+import am.ik.translation.translation.TranslationService;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.annotation.Nullable;
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.function.Consumer;
+import org.springframework.ai.model.openai.autoconfigure.OpenAiChatProperties;
+import org.springframework.ai.model.openai.autoconfigure.OpenAiConnectionProperties;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.io.ByteArrayResource;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+import org.springframework.util.LinkedMultiValueMap;
+import org.springframework.util.MultiValueMap;
+import org.springframework.util.StringUtils;
+import org.springframework.web.client.DefaultResponseErrorHandler;
+import org.springframework.web.client.RestClient;
+
+/**
+ * Client of the OpenAI Batch API. The requests are uploaded as a JSONL file of chat
+ * completions, and the results are downloaded as JSONL files once the batch is completed.
+ */
+@Component
+public class OpenAiBatchClient {
+
+	static final String ENDPOINT = "/v1/chat/completions";
+
+	private final RestClient restClient;
+
+	private final String model;
+
+	private final ObjectMapper objectMapper;
+
+	@Autowired
+	public OpenAiBatchClient(RestClient.Builder restClientBuilder, OpenAiConnectionProperties connectionProperties,
+			OpenAiChatProperties chatProperties, TranslationProps translationProps, ObjectMapper objectMapper) {
+		this(restClientBuilder,
+				StringUtils.hasText(chatProperties.getBaseUrl()) ? chatProperties.getBaseUrl()
+						: connectionProperties.getBaseUrl(),
+				StringUtils.hasText(chatProperties.getApiKey()) ? chatProperties.getApiKey()
+						: connectionProperties.getApiKey(),
+				translationProps.batch().model() != null ? translationProps.batch().model()
+						: chatProperties.getOptions().getModel(),
+				objectMapper);
+	}
+
+	public OpenAiBatchClient(RestClient.Builder restClientBuilder, String baseUrl, String apiKey, String model,
+			ObjectMapper objectMapper) {
+		this.restClient = restClientBuilder.clone()
+			.baseUrl(baseUrl)
+			.defaultHeader(HttpHeaders.AUTHORIZATION, "Bearer " + apiKey)
+			.build();
+		this.model = model;
+		this.objectMapper = objectMapper;
+	}
+
+	public String model() {
+		return this.model;
+	}
+
+	/**
+	 * Upload the requests and create a batch of them.
+	 * @param customIds ids of the requests to identify the outputs
+	 */
+	public OpenAiBatch create(List<String> customIds, List<TranslationService.Request> requests) {
+		ByteArrayOutputStream jsonl = new ByteArrayOutputStream();
+		try {
+			for (int i = 0; i < requests.size(); i++) {
+				TranslationService.Request request = requests.get(i);
+				this.objectMapper.writeValue(jsonl,
+						Map.of("custom_id", customIds.get(i), "method", "POST", "url", ENDPOINT, "body",
+								Map.of("model", this.model, "temperature", 0, "messages",
+										List.of(Map.of("role", "system", "content", request.system()),
+												Map.of("role", "user", "content", request.user())))));
+				jsonl.write('\n');
+			}
+		}
+		catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+		MultiValueMap<String, Object> form = new LinkedMultiValueMap<>();
+		form.add("purpose", "batch");
+		form.add("file", new ByteArrayResource(jsonl.toByteArray()) {
+			@Override
+			public String getFilename() {
+				return "batch.jsonl";
+			}
+		});
+		FileObject file = Objects.requireNonNull(this.restClient.post()
+			.uri("/v1/files")
+			.contentType(MediaType.MULTIPART_FORM_DATA)
+			.body(form)
+			.retrieve()
+			.body(FileObject.class));
+		return Objects.requireNonNull(this.restClient.post()
+			.uri("/v1/batches")
+			.contentType(MediaType.APPLICATION_JSON)
+			.body(Map.of("input_file_id", file.id(), "endpoint", ENDPOINT, "completion_window", "24h"))
+			.retrieve()
+			.body(OpenAiBatch.class));
+	}
+
+	public OpenAiBatch retrieve(String batchId) {
+		return Objects.requireNonNull(
+				this.restClient.get().uri("/v1/batches/{batchId}", batchId).retrieve().body(OpenAiBatch.class));
+	}
+
+	/**
+	 * Read the output or the error file line by line.
+	 */
+	public void outputs(String fileId, Consumer<Output> consumer) {
+		this.restClient.get().uri("/v1/files/{fileId}/content", fileId).exchange((request, response) -> {
+			if (response.getStatusCode().isError()) {
+				// fail as retrieve() does, so that the outputs are downloaded again
+				new DefaultResponseErrorHandler().handleError(request.getURI(), request.getMethod(), response);
+			}
+			try (BufferedReader reader = new BufferedReader(
+					new InputStreamReader(response.getBody(), StandardCharsets.UTF_8))) {
+				String line;
+				while ((line = reader.readLine()) != null) {
+					if (!line.isBlank()) {
+						consumer.accept(this.output(this.objectMapper.readTree(line)));
+					}
+				}
+			}
+			return null;
+		});
+	}
+
+	Output output(JsonNode line) {
+		String customId = line.path("custom_id").asText();
+		JsonNode response = line.path("response");
+		if (response.path("status_code").asInt() == 200) {
+			JsonNode content = response.at("/body/choices/0/message/content");
+			if (content.isTextual()) {
+				return new Output(customId, content.asText(), null);
+			}
+		}
+		JsonNode error = line.path("error");
+		String message = error.hasNonNull("message") ? error.path("message").asText()
+				: "status " + response.path("status_code").asText();
+		return new Output(customId, null, message);
+	}
+
+	/**
+	 * @param id batch id
+	 * @param status {@code validating}, {@code in_progress}, {@code finalizing},
+	 * {@code completed}, {@code failed}, {@code expired}, {@code cancelling} or
+	 * {@code cancelled}
+	 * @param output_file_id file of the successful outputs
+	 * @param error_file_id file of the failed outputs
+	 */
+	public record OpenAiBatch(String id, String status, @Nullable String output_file_id,
+			@Nullable String error_file_id) {
+
+		boolean completed() {
+			return "completed".equals(this.status);
+		}
+
+		boolean terminated() {
+			return "failed".equals(this.status) || "expired".equals(this.status) || "cancelled".equals(this.status);
+		}
+
+	}
+
+	public record FileObject(String id) {
+	}
+
+	/**
+	 * @param customId id of the request
+	 * @param content response of the model, or null if failed
+	 * @param error reason of the failure
+	 */
+	public record Output(String customId, @Nullable String content, @Nullable String error) {
+	}
+
+}
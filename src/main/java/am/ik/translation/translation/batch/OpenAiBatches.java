@@ -0,0 +1,208 @@
+package am.ik.translation.translation.batch;
+
+import am.ik.translation.entry.Entry;
+import am.ik.translation.translation.TranslationProps;
+import am.ik.translation.translation.TranslationService;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.stereotype.Component;
+
+/**
+ * Translates the chunks of many entries as a single OpenAI batch. The submitted batches
+ * are polled every {@code translation.batch.poll-interval}, and the outputs are completed
+ * through the same parsing and unmasking as the interactive calls.
+ * <p>
+ * Submitted batches are kept only in memory. The outputs of a batch submitted before a
+ * restart are not collected.
+ */
+@Component
+public class OpenAiBatches implements SmartLifecycle {
+
+	private final OpenAiBatchClient client;
+
+	private final TranslationService translationService;
+
+	private final TranslationProps.Batch props;
+
+	private final Map<String, Submission> submissions = new ConcurrentHashMap<>();
+
+	private volatile ScheduledExecutorService poller;
+
+	private final Logger logger = LoggerFactory.getLogger(OpenAiBatches.class);
+
+	public OpenAiBatches(OpenAiBatchClient client, TranslationService translationService,
+			TranslationProps translationProps) {
+		this.client = client;
+		this.translationService = translationService;
+		this.props = translationProps.batch();
+	}
+
+	/**
+	 * Submit the chunks of the entries that are not found in the translation memory nor
+	 * in the previous translations. The callback is called by the poller once the batch
+	 * is finished, or immediately if there is nothing to submit.
+	 */
+	public void submit(String batchId, List<Entry> entries, Callback callback) {
+		List<TranslationService.Deferred> deferreds = entries.stream()
+			.map(entry -> this.translationService.defer(entry, this.client.model()))
+			.toList();
+		List<String> customIds = new ArrayList<>();
+		List<TranslationService.Request> requests = new ArrayList<>();
+		for (int i = 0; i < deferreds.size(); i++) {
+			List<TranslationService.Request> entryRequests = deferreds.get(i).requests();
+			for (int j = 0; j < entryRequests.size(); j++) {
+				customIds.add("%d-%d".formatted(i, j));
+				requests.add(entryRequests.get(j));
+			}
+		}
+		Submission submission = new Submission(batchId, deferreds, callback);
+		if (requests.isEmpty()) {
+			this.finish(submission);
+			return;
+		}
+		OpenAiBatchClient.OpenAiBatch created = this.client.create(customIds, requests);
+		submission.pending.addAll(customIds);
+		this.submissions.put(created.id(), submission);
+		logger.info("action=submit_openai_batch batchId={} openaiBatchId={} entries={} requests={}", batchId,
+				created.id(), entries.size(), requests.size());
+	}
+
+	void poll() {
+		for (Map.Entry<String, Submission> entry : this.submissions.entrySet()) {
+			String openaiBatchId = entry.getKey();
+			Submission submission = entry.getValue();
+			try {
+				OpenAiBatchClient.OpenAiBatch batch = this.client.retrieve(openaiBatchId);
+				if (!batch.completed() && !batch.terminated()) {
+					continue;
+				}
+				// an expired batch still has the outputs finished in time. a failed
+				// download is retried on the next poll, which skips the outputs already
+				// completed
+				for (String fileId : new String[] { batch.output_file_id(), batch.error_file_id() }) {
+					if (fileId != null) {
+						this.client.outputs(fileId, output -> this.complete(submission, output));
+					}
+				}
+				logger.info("action=finish_openai_batch batchId={} openaiBatchId={} status={}", submission.batchId,
+						openaiBatchId, batch.status());
+				try {
+					this.finish(submission);
+				}
+				finally {
+					this.submissions.remove(openaiBatchId);
+				}
+			}
+			catch (RuntimeException e) {
+				// retried on the next poll
+				logger.warn("action=poll_openai_batch batchId={} openaiBatchId={}", submission.batchId, openaiBatchId,
+						e);
+			}
+		}
+	}
+
+	void complete(Submission submission, OpenAiBatchClient.Output output) {
+		if (!submission.pending.contains(output.customId())) {
+			// completed by an earlier poll
+			return;
+		}
+		String[] indices = output.customId().split("-");
+		int entryIndex = Integer.parseInt(indices[0]);
+		TranslationService.Deferred deferred = submission.deferreds.get(entryIndex);
+		if (output.content() == null) {
+			logger.warn("action=fail_openai_batch_request batchId={} entryId={} error={}", submission.batchId,
+					deferred.entry().entryId(), output.error());
+			return;
+		}
+		try {
+			deferred.complete(Integer.parseInt(indices[1]), output.content());
+			submission.pending.remove(output.customId());
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException(e);
+		}
+		catch (RuntimeException e) {
+			logger.warn("action=fail_openai_batch_request batchId={} entryId={}", submission.batchId,
+					deferred.entry().entryId(), e);
+		}
+	}
+
+	void finish(Submission submission) {
+		List<TranslationService.Translated> translated = new ArrayList<>();
+		List<Long> failed = new ArrayList<>();
+		for (int i = 0; i < submission.deferreds.size(); i++) {
+			TranslationService.Deferred deferred = submission.deferreds.get(i);
+			String prefix = i + "-";
+			if (submission.pending.stream().anyMatch(customId -> customId.startsWith(prefix))) {
+				failed.add(deferred.entry().entryId());
+			}
+			else {
+				translated.add(deferred.translated());
+			}
+		}
+		submission.callback.complete(translated, failed);
+	}
+
+	@Override
+	public void start() {
+		ScheduledExecutorService poller = Executors
+			.newSingleThreadScheduledExecutor(Thread.ofVirtual().name("openai-batch-poller").factory());
+		long interval = this.props.pollInterval().toMillis();
+		poller.scheduleWithFixedDelay(this::poll, interval, interval, TimeUnit.MILLISECONDS);
+		this.poller = poller;
+	}
+
+	@Override
+	public void stop() {
+		ScheduledExecutorService poller = this.poller;
+		this.poller = null;
+		if (poller != null) {
+			poller.shutdownNow();
+		}
+	}
+
+	@Override
+	public boolean isRunning() {
+		return this.poller != null;
+	}
+
+	@FunctionalInterface
+	public interface Callback {
+
+		/**
+		 * @param translated translations of the entries whose chunks are all completed
+		 * @param failed entries with a failed chunk
+		 */
+		void complete(List<TranslationService.Translated> translated, List<Long> failed);
+
+	}
+
+	static final class Submission {
+
+		private final String batchId;
+
+		private final List<TranslationService.Deferred> deferreds;
+
+		private final Callback callback;
+
+		private final Set<String> pending = ConcurrentHashMap.newKeySet();
+
+		Submission(String batchId, List<TranslationService.Deferred> deferreds, Callback callback) {
+			this.batchId = batchId;
+			this.deferreds = deferreds;
+			this.callback = callback;
+		}
+
+	}
+
+}
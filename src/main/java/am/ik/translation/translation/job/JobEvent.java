@@ -0,0 +1,33 @@
+package am.ik.translation.translation.job;
+
+import jakarta.annotation.Nullable;
+import java.time.Instant;
+
+/**
+ * State transition or translation progress of a job published to {@link JobEvents}.
+ *
+ * @param sequence position in the stream of all events
+ * @param jobId job id
+ * @param entryId entry of the job
+ * @param type {@code state} or {@code progress}
+ * @param state state after the transition, or the state during the progress
+ * @param tokens tokens received from the model so far
+ * @param chunksDone chunks translated so far
+ * @param chunks chunks to translate
+ * @param message detail of the state transition
+ * @param timestamp time of the event
+ */
+public record JobEvent(long sequence, String jobId, long entryId, String type, JobState state, long tokens,
+		int chunksDone, int chunks, @Nullable String message, Instant timestamp) {
+
+	static JobEvent state(long sequence, TranslationJob job) {
+		return new JobEvent(sequence, job.jobId(), job.entryId(), "state", job.state(), 0, 0, 0, job.message(),
+				job.updatedAt());
+	}
+
+	static JobEvent progress(long sequence, String jobId, long entryId, long tokens, int chunksDone, int chunks) {
+		return new JobEvent(sequence, jobId, entryId, "progress", JobState.TRANSLATING, tokens, chunksDone, chunks,
+				null, Instant.now());
+	}
+
+}
@@ -0,0 +1,93 @@
+package am.ik.translation.translation.job;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
+import org.springframework.stereotype.Component;
+
+/**
+ * Lock-free ring buffer of the latest {@link JobEvent}s. Publishing never blocks nor
+ * waits for readers, so the translating threads are not slowed down by observers. Each
+ * reader keeps its own cursor, and a reader that falls behind by more than
+ * {@link #CAPACITY} events skips the overwritten ones. A reader is woken up only by the
+ * events of the jobs it follows.
+ */
+@Component
+public class JobEvents {
+
+	static final int CAPACITY = 4096;
+
+	private final AtomicReferenceArray<JobEvent> ring = new AtomicReferenceArray<>(CAPACITY);
+
+	private final AtomicLong next = new AtomicLong();
+
+	private final Map<String, Set<Thread>> readers = new ConcurrentHashMap<>();
+
+	public void publishState(TranslationJob job) {
+		long sequence = this.next.getAndIncrement();
+		this.publish(sequence, job.jobId(), JobEvent.state(sequence, job));
+	}
+
+	public void publishProgress(String jobId, long entryId, long tokens, int chunksDone, int chunks) {
+		long sequence = this.next.getAndIncrement();
+		this.publish(sequence, jobId, JobEvent.progress(sequence, jobId, entryId, tokens, chunksDone, chunks));
+	}
+
+	private void publish(long sequence, String jobId, JobEvent event) {
+		this.ring.set((int) (sequence % CAPACITY), event);
+		Set<Thread> readers = this.readers.get(jobId);
+		if (readers != null) {
+			readers.forEach(LockSupport::unpark);
+		}
+	}
+
+	/**
+	 * Register the thread to unpark on every publish of the job, which has to be followed
+	 * by {@link #stopWakingUp(String, Thread)}.
+	 */
+	public void wakeUp(String jobId, Thread reader) {
+		this.readers.compute(jobId, (id, readers) -> {
+			Set<Thread> added = readers != null ? readers : ConcurrentHashMap.newKeySet();
+			added.add(reader);
+			return added;
+		});
+	}
+
+	public void stopWakingUp(String jobId, Thread reader) {
+		this.readers.computeIfPresent(jobId, (id, readers) -> {
+			readers.remove(reader);
+			return readers.isEmpty() ? null : readers;
+		});
+	}
+
+	/**
+	 * @return the cursor of the oldest event still in the ring
+	 */
+	public long oldest() {
+		return Math.max(0, this.next.get() - CAPACITY);
+	}
+
+	/**
+	 * Read the events from the cursor up to the latest event.
+	 * @return the cursor to read the following events from
+	 */
+	public long read(long cursor, Consumer<JobEvent> consumer) {
+		long head = this.next.get();
+		for (long sequence = Math.max(cursor, head - CAPACITY); sequence < head; sequence++) {
+			JobEvent event = this.ring.get((int) (sequence % CAPACITY));
+			if (event == null || event.sequence() < sequence) {
+				// the sequence is taken but the event is not stored yet
+				return sequence;
+			}
+			if (event.sequence() == sequence) {
+				consumer.accept(event);
+			}
+		}
+		return head;
+	}
+
+}
@@ -0,0 +1,162 @@
+package am.ik.translation.translation.job;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Append-only journal of {@link TranslationJob} snapshots stored as JSON lines. The last
+ * snapshot of a job wins when the journal is replayed. The journal is compacted on replay
+ * so that only unfinished jobs are kept, and again whenever it grows past the compaction
+ * threshold and twice its size after the last compaction.
+ */
+public class JobJournal implements AutoCloseable {
+
+	private final Path file;
+
+	private final ObjectMapper objectMapper;
+
+	private final boolean sync;
+
+	private final long compactionThreshold;
+
+	/**
+	 * The last snapshots of the unfinished jobs, which are kept on compaction
+	 */
+	private final Map<String, TranslationJob> unfinished = new LinkedHashMap<>();
+
+	private FileChannel channel;
+
+	private long size = 0;
+
+	private long compactedSize = 0;
+
+	private final Logger logger = LoggerFactory.getLogger(JobJournal.class);
+
+	public JobJournal(Path file, ObjectMapper objectMapper, boolean sync, long compactionThreshold) {
+		this.file = file;
+		this.objectMapper = objectMapper;
+		this.sync = sync;
+		this.compactionThreshold = compactionThreshold;
+	}
+
+	/**
+	 * Read the journal, compact it and open it for appending.
+	 * @return unfinished jobs in the order they were queued
+	 */
+	public synchronized Collection<TranslationJob> replay() {
+		try {
+			Files.createDirectories(this.file.toAbsolutePath().getParent());
+			if (Files.exists(this.file)) {
+				try (BufferedReader reader = Files.newBufferedReader(this.file, StandardCharsets.UTF_8)) {
+					String line;
+					while ((line = reader.readLine()) != null) {
+						if (line.isBlank()) {
+							continue;
+						}
+						try {
+							TranslationJob job = this.objectMapper.readValue(line, TranslationJob.class);
+							this.unfinished.put(job.jobId(), job);
+						}
+						catch (IOException e) {
+							// a torn write at crash. skip it
+							logger.warn("Skip a broken journal line: {}", line, e);
+						}
+					}
+				}
+			}
+			this.unfinished.values().removeIf(job -> job.state().isTerminal());
+			this.compact();
+		}
+		catch (IOException e) {
+			throw new UncheckedIOException("Failed to replay the journal " + this.file, e);
+		}
+		return List.copyOf(this.unfinished.values());
+	}
+
+	public synchronized void append(TranslationJob job) {
+		if (this.channel == null) {
+			throw new IllegalStateException("The journal is not opened yet");
+		}
+		try {
+			this.size += write(this.channel, job);
+			if (this.sync) {
+				this.channel.force(false);
+			}
+			if (job.state().isTerminal()) {
+				this.unfinished.remove(job.jobId());
+			}
+			else {
+				this.unfinished.put(job.jobId(), job);
+			}
+			if (this.size > Math.max(this.compactionThreshold, 2 * this.compactedSize)) {
+				long size = this.size;
+				this.compact();
+				logger.info("action=compact_journal file={} before={} after={} jobs={}", this.file, size, this.size,
+						this.unfinished.size());
+			}
+		}
+		catch (IOException e) {
+			throw new UncheckedIOException("Failed to append to the journal " + this.file, e);
+		}
+	}
+
+	/**
+	 * Replace the journal with the last snapshots of the unfinished jobs and open it for
+	 * appending.
+	 */
+	private void compact() throws IOException {
+		Path tmp = Files.createTempFile(this.file.toAbsolutePath().getParent(), this.file.getFileName().toString(),
+				".tmp");
+		long size = 0;
+		try (FileChannel compacted = FileChannel.open(tmp, StandardOpenOption.WRITE)) {
+			for (TranslationJob job : this.unfinished.values()) {
+				size += write(compacted, job);
+			}
+			compacted.force(true);
+		}
+		Files.move(tmp, this.file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		if (this.channel != null) {
+			this.channel.close();
+		}
+		this.channel = FileChannel.open(this.file, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+		this.size = size;
+		this.compactedSize = size;
+	}
+
+	synchronized long size() {
+		return this.size;
+	}
+
+	private int write(FileChannel channel, TranslationJob job) throws IOException {
+		byte[] json = this.objectMapper.writeValueAsBytes(job);
+		ByteBuffer buffer = ByteBuffer.allocate(json.length + 1).put(json).put((byte) '\n').flip();
+		while (buffer.hasRemaining()) {
+			channel.write(buffer);
+		}
+		return json.length + 1;
+	}
+
+	@Override
+	public synchronized void close() throws IOException {
+		if (this.channel != null) {
+			this.channel.close();
+			this.channel = null;
+		}
+	}
+
+}
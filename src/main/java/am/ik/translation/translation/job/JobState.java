@@ -0,0 +1,11 @@
+package am.ik.translation.translation.job;
+
+public enum JobState {
+
+	QUEUED, FETCHING, TRANSLATING, PUBLISHING, PR_CREATED, FAILED;
+
+	public boolean isTerminal() {
+		return this == PR_CREATED || this == FAILED;
+	}
+
+}
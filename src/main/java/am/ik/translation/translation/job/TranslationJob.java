@@ -0,0 +1,65 @@
+package am.ik.translation.translation.job;
+
+import jakarta.annotation.Nullable;
+import java.time.Instant;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Snapshot of a translation job. Every state transition is appended to the
+ * {@link JobJournal} as a new snapshot.
+ *
+ * @param jobId job id
+ * @param entryId entry to translate
+ * @param issueNumber issue that requested the translation
+ * @param state current state
+ * @param attempts number of failed attempts so far
+ * @param createdAt time when the job was queued
+ * @param updatedAt time of the last state transition
+ * @param model models that served the translation
+ * @param message detail of the last state transition such as a pull request url or an
+ * error message
+ * @param pulls urls of the pull requests opened so far keyed by the language code
+ * @param duplicates issues whose requests are coalesced onto the job and are not closed
+ * yet
+ */
+public record TranslationJob(String jobId, long entryId, int issueNumber, JobState state, int attempts,
+		Instant createdAt, Instant updatedAt, @Nullable String model, @Nullable String message,
+		Map<String, String> pulls, List<Integer> duplicates) {
+
+	public TranslationJob {
+		// absent in the journals written before the pull requests and the duplicates were
+		// journaled
+		pulls = pulls == null ? Map.of() : Map.copyOf(pulls);
+		duplicates = duplicates == null ? List.of() : List.copyOf(duplicates);
+	}
+
+	public TranslationJob transition(JobState state, @Nullable String message) {
+		return new TranslationJob(this.jobId, this.entryId, this.issueNumber, state, this.attempts, this.createdAt,
+				Instant.now(), this.model, message, this.pulls, this.duplicates);
+	}
+
+	public TranslationJob retry(String message) {
+		return new TranslationJob(this.jobId, this.entryId, this.issueNumber, JobState.QUEUED, this.attempts + 1,
+				this.createdAt, Instant.now(), this.model, message, this.pulls, this.duplicates);
+	}
+
+	public TranslationJob withModel(String model) {
+		return new TranslationJob(this.jobId, this.entryId, this.issueNumber, this.state, this.attempts, this.createdAt,
+				this.updatedAt, model, this.message, this.pulls, this.duplicates);
+	}
+
+	public TranslationJob withPull(String language, String url) {
+		Map<String, String> pulls = new LinkedHashMap<>(this.pulls);
+		pulls.put(language, url);
+		return new TranslationJob(this.jobId, this.entryId, this.issueNumber, this.state, this.attempts, this.createdAt,
+				Instant.now(), this.model, url, pulls, this.duplicates);
+	}
+
+	public TranslationJob withDuplicates(List<Integer> duplicates) {
+		return new TranslationJob(this.jobId, this.entryId, this.issueNumber, this.state, this.attempts, this.createdAt,
+				this.updatedAt, this.model, this.message, this.pulls, duplicates);
+	}
+
+}
@@ -0,0 +1,336 @@
+package am.ik.translation.translation.job;
+
+import am.ik.translation.translation.TranslationProps;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.annotation.Nullable;
+import java.io.IOException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.DelayQueue;
+import java.util.concurrent.Delayed;
+import java.util.concurrent.TimeUnit;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.stereotype.Component;
+
+/**
+ * Persistent queue of translation jobs. Every state transition is recorded in the
+ * {@link JobJournal} and unfinished jobs are queued again when the application restarts.
+ * Transitions are also published to {@link JobEvents}, and the latest
+ * {@link #RECENT_JOBS} finished jobs are kept in memory to be looked up.
+ * <p>
+ * The issues of the requests coalesced onto a job are journaled on the job and queued to
+ * be closed apart from the job, so that the webhook does not wait for GitHub. A duplicate
+ * left unclosed when its job finishes is not resumed after a restart.
+ */
+@Component
+public class TranslationJobQueue implements DisposableBean {
+
+	static final int RECENT_JOBS = 256;
+
+	private final JobJournal journal;
+
+	private final JobEvents events;
+
+	private final DelayQueue<Scheduled> queue = new DelayQueue<>();
+
+	private final DelayQueue<Duplicate> duplicates = new DelayQueue<>();
+
+	private final Map<String, TranslationJob> jobs = new ConcurrentHashMap<>();
+
+	private final Map<Long, String> jobIdsByEntry = new ConcurrentHashMap<>();
+
+	private final Map<String, TranslationJob> finished = new LinkedHashMap<>() {
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<String, TranslationJob> eldest) {
+			return size() > RECENT_JOBS;
+		}
+	};
+
+	private final Logger logger = LoggerFactory.getLogger(TranslationJobQueue.class);
+
+	public TranslationJobQueue(TranslationProps translationProps, ObjectMapper objectMapper, JobEvents events) {
+		TranslationProps.Job props = translationProps.job();
+		this.events = events;
+		this.journal = new JobJournal(props.journalFile(), objectMapper, props.sync(),
+				props.compactionThreshold().toBytes());
+		for (TranslationJob job : this.journal.replay()) {
+			// resume from the beginning of the pipeline. the translated segments come
+			// from the translation memory, the languages whose pull requests are
+			// journaled are skipped, and publishing returns the pull request if the job
+			// crashed after opening it
+			TranslationJob resumed = job;
+			if (job.state() != JobState.QUEUED) {
+				resumed = job.transition(JobState.QUEUED, "resumed");
+				this.journal.append(resumed);
+			}
+			logger.info("action=resume_job jobId={} entryId={} state={}", job.jobId(), job.entryId(), job.state());
+			this.jobs.put(resumed.jobId(), resumed);
+			this.jobIdsByEntry.putIfAbsent(resumed.entryId(), resumed.jobId());
+			this.queue.add(new Scheduled(resumed.jobId(), Instant.now()));
+			for (int duplicate : resumed.duplicates()) {
+				this.duplicates.add(new Duplicate(resumed.jobId(), resumed.entryId(), duplicate, resumed.issueNumber(),
+						0, Instant.now()));
+			}
+		}
+	}
+
+	/**
+	 * Queue a new job for the entry. If an unfinished job for the same entry exists, the
+	 * request is coalesced onto that job instead, and the issue of the request is queued
+	 * to be closed as a duplicate. The job or the duplicate is journaled before it is
+	 * queued, and it is not queued if journaling fails. The requests for an entry are
+	 * serialized, so that no request is coalesced onto a job before it is journaled.
+	 */
+	public Enqueued enqueue(long entryId, int issueNumber) {
+		TranslationJob[] enqueued = new TranslationJob[1];
+		boolean[] created = { false };
+		boolean[] duplicate = { false };
+		// serialized per entry, so that a job is journaled before a request is coalesced
+		// onto it
+		this.jobIdsByEntry.compute(entryId, (id, inFlightJobId) -> {
+			if (inFlightJobId != null) {
+				TranslationJob inFlight = this.jobs.computeIfPresent(inFlightJobId, (jobId, current) -> {
+					if (current.issueNumber() == issueNumber || current.duplicates().contains(issueNumber)) {
+						return current;
+					}
+					List<Integer> duplicates = new ArrayList<>(current.duplicates());
+					duplicates.add(issueNumber);
+					TranslationJob withDuplicate = current.withDuplicates(duplicates);
+					this.journal.append(withDuplicate);
+					duplicate[0] = true;
+					return withDuplicate;
+				});
+				if (inFlight != null) {
+					enqueued[0] = inFlight;
+					return inFlightJobId;
+				}
+				// the in-flight job has just finished. queue a new one
+			}
+			Instant now = Instant.now();
+			TranslationJob job = new TranslationJob(UUID.randomUUID().toString(), entryId, issueNumber, JobState.QUEUED,
+					0, now, now, null, null, Map.of(), List.of());
+			this.journal.append(job);
+			this.jobs.put(job.jobId(), job);
+			enqueued[0] = job;
+			created[0] = true;
+			return job.jobId();
+		});
+		TranslationJob job = enqueued[0];
+		if (created[0]) {
+			this.events.publishState(job);
+			this.queue.add(new Scheduled(job.jobId(), job.createdAt()));
+			return new Enqueued(job, false);
+		}
+		if (duplicate[0]) {
+			this.duplicates.add(new Duplicate(job.jobId(), entryId, issueNumber, job.issueNumber(), 0, Instant.now()));
+		}
+		logger.info("action=coalesce_job jobId={} entryId={} issueNumber={}", job.jobId(), entryId, issueNumber);
+		return new Enqueued(job, true);
+	}
+
+	/**
+	 * Wait for the next job that is ready to run.
+	 */
+	public TranslationJob take() throws InterruptedException {
+		while (true) {
+			Scheduled scheduled = this.queue.take();
+			TranslationJob job = this.jobs.get(scheduled.jobId());
+			if (job != null) {
+				return job;
+			}
+		}
+	}
+
+	public TranslationJob transition(TranslationJob job, JobState state, @Nullable String message) {
+		TranslationJob transitioned = this.record(job.transition(state, message));
+		if (state.isTerminal()) {
+			this.jobIdsByEntry.remove(job.entryId(), job.jobId());
+		}
+		this.events.publishState(transitioned);
+		return transitioned;
+	}
+
+	/**
+	 * Journal the snapshot of the job with the duplicates recorded so far, as the
+	 * snapshot held by the worker misses those coalesced since it was taken. A finished
+	 * job is moved to the recently finished jobs.
+	 */
+	private TranslationJob record(TranslationJob snapshot) {
+		TranslationJob[] recorded = new TranslationJob[1];
+		this.jobs.compute(snapshot.jobId(), (id, current) -> {
+			TranslationJob merged = current == null ? snapshot : snapshot.withDuplicates(current.duplicates());
+			this.journal.append(merged);
+			recorded[0] = merged;
+			if (!merged.state().isTerminal()) {
+				return merged;
+			}
+			synchronized (this.finished) {
+				this.finished.put(id, merged);
+			}
+			return null;
+		});
+		return recorded[0];
+	}
+
+	/**
+	 * Journal the pull request opened for a language of a publishing job, so that a retry
+	 * of the job does not open it again. Pull requests of the languages of a job may be
+	 * recorded concurrently.
+	 * @return the job with the pull request
+	 */
+	public TranslationJob recordPull(String jobId, String language, String url) {
+		TranslationJob recorded = this.jobs.computeIfPresent(jobId, (id, job) -> {
+			TranslationJob withPull = job.withPull(language, url);
+			this.journal.append(withPull);
+			return withPull;
+		});
+		if (recorded == null) {
+			throw new IllegalStateException("Job not found: " + jobId);
+		}
+		this.events.publishState(recorded);
+		return recorded;
+	}
+
+	/**
+	 * Queue the job again after the given delay.
+	 */
+	public TranslationJob retry(TranslationJob job, String message, Duration delay) {
+		TranslationJob retried = this.record(job.retry(message));
+		this.events.publishState(retried);
+		this.queue.add(new Scheduled(job.jobId(), Instant.now().plus(delay)));
+		return retried;
+	}
+
+	/**
+	 * @return the unfinished or recently finished job
+	 */
+	@Nullable
+	public TranslationJob job(String jobId) {
+		TranslationJob job = this.jobs.get(jobId);
+		if (job != null) {
+			return job;
+		}
+		synchronized (this.finished) {
+			return this.finished.get(jobId);
+		}
+	}
+
+	/**
+	 * @return the unfinished job of the entry, or the latest recently finished one
+	 */
+	@Nullable
+	public TranslationJob jobOfEntry(long entryId) {
+		String jobId = this.jobIdsByEntry.get(entryId);
+		TranslationJob job = jobId != null ? this.jobs.get(jobId) : null;
+		if (job != null) {
+			return job;
+		}
+		synchronized (this.finished) {
+			TranslationJob latest = null;
+			for (TranslationJob finished : this.finished.values()) {
+				if (finished.entryId() == entryId) {
+					latest = finished;
+				}
+			}
+			return latest;
+		}
+	}
+
+	/**
+	 * Unfinished jobs
+	 */
+	public List<TranslationJob> jobs() {
+		return List.copyOf(this.jobs.values());
+	}
+
+	public int queued() {
+		return this.queue.size();
+	}
+
+	/**
+	 * Wait for the next duplicate that is ready to be closed.
+	 */
+	public Duplicate takeDuplicate() throws InterruptedException {
+		return this.duplicates.take();
+	}
+
+	/**
+	 * Queue the duplicate again after the given delay.
+	 */
+	public void retryDuplicate(Duplicate duplicate, Duration delay) {
+		this.duplicates.add(new Duplicate(duplicate.jobId(), duplicate.entryId(), duplicate.issueNumber(),
+				duplicate.originalIssueNumber(), duplicate.attempts() + 1, Instant.now().plus(delay)));
+	}
+
+	/**
+	 * Journal that the duplicate is closed or given up, so that it is not closed again
+	 * after a restart.
+	 */
+	public void removeDuplicate(Duplicate duplicate) {
+		this.jobs.computeIfPresent(duplicate.jobId(), (id, job) -> {
+			List<Integer> duplicates = new ArrayList<>(job.duplicates());
+			duplicates.remove(Integer.valueOf(duplicate.issueNumber()));
+			TranslationJob withoutDuplicate = job.withDuplicates(duplicates);
+			this.journal.append(withoutDuplicate);
+			return withoutDuplicate;
+		});
+	}
+
+	@Override
+	public void destroy() throws IOException {
+		this.journal.close();
+	}
+
+	/**
+	 * @param job queued job
+	 * @param coalesced whether the request is coalesced onto an unfinished job
+	 */
+	public record Enqueued(TranslationJob job, boolean coalesced) {
+	}
+
+	/**
+	 * @param jobId job the request is coalesced onto
+	 * @param entryId entry of the job
+	 * @param issueNumber issue to close
+	 * @param originalIssueNumber issue of the job
+	 * @param attempts number of failed attempts to close the issue so far
+	 * @param runAt time when the issue is to be closed
+	 */
+	public record Duplicate(String jobId, long entryId, int issueNumber, int originalIssueNumber, int attempts,
+			Instant runAt) implements Delayed {
+
+		@Override
+		public long getDelay(TimeUnit unit) {
+			return unit.convert(Duration.between(Instant.now(), this.runAt));
+		}
+
+		@Override
+		public int compareTo(Delayed o) {
+			return this.runAt.compareTo(((Duplicate) o).runAt);
+		}
+
+	}
+
+	record Scheduled(String jobId, Instant runAt) implements Delayed {
+
+		@Override
+		public long getDelay(TimeUnit unit) {
+			return unit.convert(Duration.between(Instant.now(), this.runAt));
+		}
+
+		@Override
+		public int compareTo(Delayed o) {
+			return this.runAt.compareTo(((Scheduled) o).runAt);
+		}
+
+	}
+
+}
@@ -0,0 +1,293 @@
+package am.ik.translation.translation.job;
+
+import am.ik.translation.entry.Entry;
+import am.ik.translation.github.CreatePullResponse;
+import am.ik.translation.resilience.DownstreamUnavailableException;
+import am.ik.translation.translation.TranslationMetrics;
+import am.ik.translation.translation.TranslationProps;
+import am.ik.translation.translation.TranslationService;
+import am.ik.translation.translation.ratelimit.RateLimiter;
+import am.ik.translation.translation.scheduler.FairScheduler;
+import am.ik.translation.translation.scheduler.Priority;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Collectors;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.stereotype.Component;
+
+/**
+ * Runs {@code translation.job.workers} workers that take jobs from the
+ * {@link TranslationJobQueue} and drive them through the translation pipeline.
+ * <p>
+ * A job acknowledges the request on the issue when it starts, translates the entry into
+ * all of {@code translation.languages} concurrently, records which models served the
+ * translation in the job, and opens a pull request per language, which names the models
+ * too. The pull request of the primary language is opened first, as a failure before it
+ * retries the whole job. The pull requests of the other languages are opened concurrently
+ * afterwards, and their failures are reported in the message of the job without retrying.
+ * A failed translation is handled the same way: one of the primary language retries the
+ * whole job, and one of another language is reported in the message while the other
+ * languages are still published. Each pull request is journaled as soon as it is opened,
+ * and a job resumed after a crash translates and publishes only the remaining languages.
+ * <p>
+ * A job failing fast on an open circuit of a downstream service is retried no earlier
+ * than the circuit allows a call again.
+ * <p>
+ * Another worker closes the issues of the requests coalesced onto the jobs, retrying a
+ * failed close with the same backoff as the jobs.
+ */
+@Component
+public class TranslationJobWorker implements SmartLifecycle {
+
+	private final TranslationJobQueue jobQueue;
+
+	private final TranslationService translationService;
+
+	private final TranslationProps.Job props;
+
+	private final List<TranslationProps.Language> languages;
+
+	private final TranslationMetrics metrics;
+
+	private final FairScheduler fairScheduler;
+
+	private final JobEvents events;
+
+	private final List<Thread> workers = new ArrayList<>();
+
+	private volatile boolean running = false;
+
+	private final Logger logger = LoggerFactory.getLogger(TranslationJobWorker.class);
+
+	public TranslationJobWorker(TranslationJobQueue jobQueue, TranslationService translationService,
+			TranslationProps translationProps, TranslationMetrics metrics, FairScheduler fairScheduler,
+			JobEvents events) {
+		this.jobQueue = jobQueue;
+		this.translationService = translationService;
+		this.props = translationProps.job();
+		this.languages = translationProps.languages();
+		this.metrics = metrics;
+		this.fairScheduler = fairScheduler;
+		this.events = events;
+		metrics.registerJobGauges(jobQueue);
+	}
+
+	void process(TranslationJob job) {
+		try {
+			job = this.jobQueue.transition(job, JobState.FETCHING, null);
+			int issueNumber = job.issueNumber();
+			long entryId = job.entryId();
+			if (job.attempts() == 0 && job.model() == null) {
+				// neither a retry nor a job resumed after translating acknowledges again
+				this.metrics.stage("comment", () -> this.translationService.sendComment(issueNumber));
+			}
+			Entry entry = this.metrics.stage("fetch", () -> this.translationService.fetchEntry(entryId));
+			job = this.jobQueue.transition(job, JobState.TRANSLATING, null);
+			Priority priority = Priority.of(entry);
+			String jobId = job.jobId();
+			// the languages published by an earlier attempt are skipped
+			Map<String, String> pulls = job.pulls();
+			List<TranslationProps.Language> languages = this.languages.stream()
+				.filter(language -> !pulls.containsKey(language.code()))
+				.toList();
+			Map<String, String> results = new HashMap<>(pulls);
+			List<TranslationService.Translated> translations = new ArrayList<>();
+			if (!languages.isEmpty()) {
+				// the wait for the scheduler is recorded by the scheduler, not as the
+				// stage
+				List<TranslationService.Outcome> outcomes = this.fairScheduler.run(priority,
+						(long) RateLimiter.estimateTokens(entry.content()) * languages.size(), "job-" + entryId,
+						() -> this.metrics.stage("translate",
+								() -> this.translationService.translate(entry, languages,
+										(tokens, chunksDone, chunks) -> this.events.publishProgress(jobId, entryId,
+												tokens, chunksDone, chunks))));
+				for (TranslationService.Outcome outcome : outcomes) {
+					String code = outcome.language().code();
+					if (outcome.error() == null || code.equals(this.languages.getFirst().code())) {
+						// a failure of the primary language retries the whole job
+						translations.add(outcome.get());
+					}
+					else {
+						logger.error("action=fail_translation jobId={} language={} entryId={}", jobId, code, entryId,
+								outcome.error());
+						results.put(code, "%s failed: %s".formatted(code, outcome.error().getMessage()));
+					}
+				}
+			}
+			if (!translations.isEmpty()) {
+				TranslationService.Translated translated = translations.getFirst();
+				String models = translations.size() == 1 ? translated.model()
+						: translations.stream()
+							.map(t -> t.language().code() + ": " + t.model())
+							.collect(Collectors.joining("; "));
+				job = this.jobQueue.transition(job.withModel(models), JobState.PUBLISHING, null);
+				List<TranslationService.Translated> secondaries = translations;
+				if (translated.language().code().equals(this.languages.getFirst().code())) {
+					CreatePullResponse createPullResponse = this.metrics.stage("publish",
+							() -> this.translationService.sendPullRequest(translated, issueNumber, jobId));
+					logger.info("action=send_pull_request jobId={} language={} model={} url={}", jobId,
+							translated.language().code(), job.model(), createPullResponse.html_url());
+					job = this.jobQueue.recordPull(jobId, translated.language().code(), createPullResponse.html_url());
+					results.put(translated.language().code(), createPullResponse.html_url());
+					secondaries = translations.subList(1, translations.size());
+				}
+				if (!secondaries.isEmpty()) {
+					List<TranslationService.Translated> published = secondaries;
+					List<String> urls = this.metrics.stage("publish",
+							() -> this.sendPullRequests(published, issueNumber, jobId));
+					for (int i = 0; i < published.size(); i++) {
+						results.put(published.get(i).language().code(), urls.get(i));
+					}
+					job = this.jobQueue.job(jobId);
+				}
+			}
+			this.jobQueue.transition(job, JobState.PR_CREATED,
+					this.languages.stream()
+						.map(language -> results.get(language.code()))
+						.collect(Collectors.joining(", ")));
+		}
+		catch (RuntimeException e) {
+			if (!this.running) {
+				// interrupted by shutdown. the job is resumed on the next start
+				logger.info("action=interrupt_job jobId={} entryId={} state={}", job.jobId(), job.entryId(),
+						job.state());
+				return;
+			}
+			String message = "%s at %s".formatted(e.getMessage(), job.state());
+			if (job.attempts() + 1 < this.props.maxAttempts()) {
+				Duration delay = this.props.retryBackoff().multipliedBy(1L << job.attempts());
+				DownstreamUnavailableException unavailable = DownstreamUnavailableException.find(e);
+				if (unavailable != null && unavailable.retryAfter().compareTo(delay) > 0) {
+					delay = unavailable.retryAfter();
+				}
+				logger.warn("action=retry_job jobId={} entryId={} attempts={} delay={}", job.jobId(), job.entryId(),
+						job.attempts() + 1, delay, e);
+				this.jobQueue.retry(job, message, delay);
+			}
+			else {
+				logger.error("action=fail_job jobId={} entryId={} attempts={}", job.jobId(), job.entryId(),
+						job.attempts() + 1, e);
+				this.jobQueue.transition(job, JobState.FAILED, message);
+			}
+		}
+	}
+
+	/**
+	 * @return the url of the pull request or the failure per translation
+	 */
+	List<String> sendPullRequests(List<TranslationService.Translated> translations, int issueNumber, String jobId) {
+		try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+			List<Future<CreatePullResponse>> futures = translations.stream().map(translated -> executor.submit(() -> {
+				CreatePullResponse createPullResponse = this.translationService.sendPullRequest(translated, issueNumber,
+						jobId);
+				// journaled as soon as it is opened, as the others may still fail
+				this.jobQueue.recordPull(jobId, translated.language().code(), createPullResponse.html_url());
+				return createPullResponse;
+			})).toList();
+			List<String> results = new ArrayList<>(translations.size());
+			for (int i = 0; i < translations.size(); i++) {
+				TranslationService.Translated translated = translations.get(i);
+				try {
+					String url = futures.get(i).get().html_url();
+					logger.info("action=send_pull_request language={} model={} url={}", translated.language().code(),
+							translated.model(), url);
+					results.add(url);
+				}
+				catch (ExecutionException e) {
+					logger.error("action=fail_pull_request language={} entryId={}", translated.language().code(),
+							translated.entry().entryId(), e.getCause());
+					results.add("%s failed: %s".formatted(translated.language().code(), e.getCause().getMessage()));
+				}
+			}
+			return results;
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Publishing is interrupted", e);
+		}
+	}
+
+	void closeDuplicate(TranslationJobQueue.Duplicate duplicate) {
+		try {
+			this.translationService.closeDuplicate(duplicate.issueNumber(), duplicate.entryId(),
+					duplicate.originalIssueNumber());
+			this.jobQueue.removeDuplicate(duplicate);
+		}
+		catch (RuntimeException e) {
+			if (!this.running) {
+				// the duplicate stays in the journal and is closed on the next start
+				return;
+			}
+			if (duplicate.attempts() + 1 < this.props.maxAttempts()) {
+				Duration delay = this.props.retryBackoff().multipliedBy(1L << duplicate.attempts());
+				logger.warn("action=retry_close_duplicate issueNumber={} entryId={} attempts={} delay={}",
+						duplicate.issueNumber(), duplicate.entryId(), duplicate.attempts() + 1, delay, e);
+				this.jobQueue.retryDuplicate(duplicate, delay);
+			}
+			else {
+				logger.error("action=fail_close_duplicate issueNumber={} entryId={} attempts={}",
+						duplicate.issueNumber(), duplicate.entryId(), duplicate.attempts() + 1, e);
+				this.jobQueue.removeDuplicate(duplicate);
+			}
+		}
+	}
+
+	void closeDuplicates() {
+		while (this.running) {
+			try {
+				this.closeDuplicate(this.jobQueue.takeDuplicate());
+			}
+			catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				return;
+			}
+		}
+	}
+
+	void work() {
+		while (this.running) {
+			try {
+				this.process(this.jobQueue.take());
+			}
+			catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				return;
+			}
+		}
+	}
+
+	@Override
+	public synchronized void start() {
+		this.running = true;
+		for (int i = 0; i < this.props.workers(); i++) {
+			this.workers.add(Thread.ofVirtual().name("translation-worker-" + i).start(this::work));
+		}
+		if (this.props.workers() > 0) {
+			this.workers.add(Thread.ofVirtual().name("translation-duplicate-closer").start(this::closeDuplicates));
+		}
+	}
+
+	@Override
+	public synchronized void stop() {
+		this.running = false;
+		// interrupted jobs stay unfinished in the journal and are resumed on the next
+		// start
+		this.workers.forEach(Thread::interrupt);
+		this.workers.clear();
+	}
+
+	@Override
+	public boolean isRunning() {
+		return this.running;
+	}
+
+}
@@ -0,0 +1,319 @@
+package am.ik.translation.translation.ratelimit;
+
+import am.ik.translation.translation.TranslationProps;
+import jakarta.annotation.Nullable;
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.http.HttpHeaders;
+
+/**
+ * Client-side limiter for the calls to OpenAI. A call has to obtain a request from the
+ * requests-per-minute bucket, its estimated tokens from the tokens-per-minute bucket and
+ * a slot under the concurrency limit.
+ * <p>
+ * The buckets start with {@code translation.rate-limit.*} and follow the
+ * {@code x-ratelimit-*} headers of the responses. The concurrency limit is adjusted in
+ * the AIMD manner: it grows by {@code 1 / limit} on every successful call up to
+ * {@code translation.chunk-concurrency}, and it is halved on a 429 response, after which
+ * no call is made until the rate limit resets.
+ * <p>
+ * Rate limits apply per model and per endpoint, so each
+ * {@link am.ik.translation.translation.routing.ModelRouter.Target} has its own limiter.
+ */
+public class RateLimiter {
+
+	static final Pattern DURATION_PATTERN = Pattern.compile("(\\d+(?:\\.\\d+)?)(ms|s|m|h)");
+
+	private final ReentrantLock lock = new ReentrantLock();
+
+	private final Condition changed = this.lock.newCondition();
+
+	private final int maxConcurrency;
+
+	private final Bucket requests;
+
+	private final Bucket tokens;
+
+	private double concurrencyLimit;
+
+	private int inFlight = 0;
+
+	private int waiting = 0;
+
+	private long blockedUntil = 0;
+
+	private final Logger logger = LoggerFactory.getLogger(RateLimiter.class);
+
+	public RateLimiter(TranslationProps translationProps) {
+		this.maxConcurrency = translationProps.chunkConcurrency();
+		this.concurrencyLimit = this.maxConcurrency;
+		long now = System.nanoTime();
+		this.requests = new Bucket(translationProps.rateLimit().requestsPerMinute(), now);
+		this.tokens = new Bucket(translationProps.rateLimit().tokensPerMinute(), now);
+	}
+
+	/**
+	 * Estimate the number of tokens of the given text conservatively. Japanese text is
+	 * about one token per character while English text is about four characters per
+	 * token.
+	 */
+	public static int estimateTokens(CharSequence text) {
+		return text.length();
+	}
+
+	/**
+	 * Block until the call is allowed.
+	 * @param estimatedTokens tokens reserved for the call
+	 */
+	public Permit acquire(int estimatedTokens) throws InterruptedException {
+		this.lock.lock();
+		this.waiting++;
+		try {
+			while (true) {
+				// a call larger than the whole bucket would never be allowed otherwise
+				double reserved = Math.min(estimatedTokens, this.tokens.capacity);
+				long wait = this.reserve(reserved);
+				if (wait == 0) {
+					return new Permit(reserved);
+				}
+				if (wait < 0) {
+					this.changed.await();
+				}
+				else {
+					this.changed.awaitNanos(wait);
+				}
+			}
+		}
+		finally {
+			this.waiting--;
+			this.lock.unlock();
+		}
+	}
+
+	/**
+	 * Obtain a permit only if the call is allowed right now. Used for optional calls that
+	 * should neither wait nor take capacity from the other calls.
+	 * @param estimatedTokens tokens reserved for the call
+	 * @return the permit, or null if the call is not allowed now
+	 */
+	@Nullable
+	public Permit tryAcquire(int estimatedTokens) {
+		this.lock.lock();
+		try {
+			double reserved = Math.min(estimatedTokens, this.tokens.capacity);
+			return this.reserve(reserved) == 0 ? new Permit(reserved) : null;
+		}
+		finally {
+			this.lock.unlock();
+		}
+	}
+
+	/**
+	 * Reserve a call if it is allowed. Must be called with the lock held.
+	 * @return 0 if reserved, nanos to wait for the buckets or the rate limit reset, or -1
+	 * to wait for a release
+	 */
+	private long reserve(double reserved) {
+		long now = System.nanoTime();
+		this.requests.refill(now);
+		this.tokens.refill(now);
+		if (now - this.blockedUntil < 0) {
+			return this.blockedUntil - now;
+		}
+		if (this.inFlight >= (int) this.concurrencyLimit) {
+			return -1;
+		}
+		long wait = Math.max(this.requests.nanosUntil(1), this.tokens.nanosUntil(reserved));
+		if (wait > 0) {
+			return wait;
+		}
+		this.requests.available -= 1;
+		this.tokens.available -= reserved;
+		this.inFlight++;
+		return 0;
+	}
+
+	/**
+	 * Update the limiter with a response from OpenAI.
+	 */
+	public void update(int statusCode, HttpHeaders headers) {
+		this.lock.lock();
+		try {
+			this.requests.update(headers.getFirst("x-ratelimit-limit-requests"),
+					headers.getFirst("x-ratelimit-remaining-requests"));
+			this.tokens.update(headers.getFirst("x-ratelimit-limit-tokens"),
+					headers.getFirst("x-ratelimit-remaining-tokens"));
+			if (statusCode == 429) {
+				this.concurrencyLimit = Math.max(1, this.concurrencyLimit / 2);
+				Duration retryAfter = retryAfter(headers);
+				this.blockedUntil = System.nanoTime() + retryAfter.toNanos();
+				logger.warn("action=throttle concurrencyLimit={} retryAfter={}", (int) this.concurrencyLimit,
+						retryAfter);
+			}
+			this.changed.signalAll();
+		}
+		finally {
+			this.lock.unlock();
+		}
+	}
+
+	static Duration retryAfter(HttpHeaders headers) {
+		String retryAfter = headers.getFirst(HttpHeaders.RETRY_AFTER);
+		if (retryAfter != null && retryAfter.matches("\\d+")) {
+			return Duration.ofSeconds(Long.parseLong(retryAfter));
+		}
+		Duration requests = parseDuration(headers.getFirst("x-ratelimit-reset-requests"));
+		Duration tokens = parseDuration(headers.getFirst("x-ratelimit-reset-tokens"));
+		Duration reset = requests.compareTo(tokens) > 0 ? requests : tokens;
+		return reset.isZero() ? Duration.ofSeconds(1) : reset;
+	}
+
+	/**
+	 * Parse durations such as {@code 6m0s}, {@code 1.5s} or {@code 20ms} in the
+	 * {@code x-ratelimit-reset-*} headers.
+	 */
+	static Duration parseDuration(@Nullable String value) {
+		if (value == null) {
+			return Duration.ZERO;
+		}
+		Matcher matcher = DURATION_PATTERN.matcher(value);
+		double millis = 0;
+		while (matcher.find()) {
+			double amount = Double.parseDouble(matcher.group(1));
+			millis += switch (matcher.group(2)) {
+				case "ms" -> amount;
+				case "s" -> amount * 1_000;
+				case "m" -> amount * 60_000;
+				default -> amount * 3_600_000;
+			};
+		}
+		return Duration.ofMillis((long) Math.ceil(millis));
+	}
+
+	public int inFlight() {
+		return this.locked(() -> this.inFlight);
+	}
+
+	public int waiting() {
+		return this.locked(() -> this.waiting);
+	}
+
+	public double concurrencyLimit() {
+		return this.locked(() -> this.concurrencyLimit);
+	}
+
+	public double availableTokens() {
+		return this.locked(() -> {
+			this.tokens.refill(System.nanoTime());
+			return this.tokens.available;
+		});
+	}
+
+	private <T> T locked(Supplier<T> supplier) {
+		this.lock.lock();
+		try {
+			return supplier.get();
+		}
+		finally {
+			this.lock.unlock();
+		}
+	}
+
+	/**
+	 * Permission for a single call. {@link #release(boolean, int)} must be called once
+	 * the call finishes.
+	 */
+	public final class Permit {
+
+		private final double reservedTokens;
+
+		private boolean released = false;
+
+		Permit(double reservedTokens) {
+			this.reservedTokens = reservedTokens;
+		}
+
+		/**
+		 * @param success whether the call succeeded
+		 * @param actualTokens tokens actually used. The difference from the reserved
+		 * tokens is returned to or taken from the bucket.
+		 */
+		public void release(boolean success, int actualTokens) {
+			lock.lock();
+			try {
+				if (this.released) {
+					return;
+				}
+				this.released = true;
+				inFlight--;
+				tokens.available += this.reservedTokens - actualTokens;
+				if (success) {
+					concurrencyLimit = Math.min(maxConcurrency, concurrencyLimit + 1 / concurrencyLimit);
+				}
+				changed.signalAll();
+			}
+			finally {
+				lock.unlock();
+			}
+		}
+
+		public int reservedTokens() {
+			return (int) this.reservedTokens;
+		}
+
+	}
+
+	static final class Bucket {
+
+		private static final double NANOS_PER_MINUTE = TimeUnit.MINUTES.toNanos(1);
+
+		double capacity;
+
+		double available;
+
+		private long lastRefill;
+
+		Bucket(double capacity, long now) {
+			this.capacity = capacity;
+			this.available = capacity;
+			this.lastRefill = now;
+		}
+
+		void refill(long now) {
+			this.available = Math.min(this.capacity,
+					this.available + (now - this.lastRefill) * this.capacity / NANOS_PER_MINUTE);
+			this.lastRefill = now;
+		}
+
+		long nanosUntil(double amount) {
+			if (this.available >= amount) {
+				return 0;
+			}
+			return (long) Math.ceil((amount - this.available) * NANOS_PER_MINUTE / this.capacity);
+		}
+
+		void update(@Nullable String limit, @Nullable String remaining) {
+			try {
+				if (limit != null) {
+					this.capacity = Double.parseDouble(limit);
+				}
+				if (remaining != null) {
+					// the server does not know the calls reserved locally but not sent
+					// yet
+					this.available = Math.min(this.available, Double.parseDouble(remaining));
+				}
+			}
+			catch (NumberFormatException ignored) {
+			}
+		}
+
+	}
+
+}
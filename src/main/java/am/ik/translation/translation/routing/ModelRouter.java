@@ -0,0 +1,116 @@
+package am.ik.translation.translation.routing;
+
+import am.ik.translation.resilience.DownstreamUnavailableException;
+import am.ik.translation.translation.ratelimit.RateLimiter;
+import jakarta.annotation.Nullable;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeoutException;
+import org.springframework.ai.chat.client.ChatClient;
+import org.springframework.web.client.RestClientResponseException;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
+
+/**
+ * Chooses the model for an entry by its estimated number of tokens. The first route whose
+ * {@code maxTokens} is not less than the size of the entry is the primary target, or the
+ * largest route if the entry exceeds all of them. The fallbacks follow the primary target
+ * and are used in order when a call is overloaded, times out or the circuit of the target
+ * is open.
+ */
+public class ModelRouter {
+
+	private final List<Route> routes;
+
+	private final List<Target> fallbacks;
+
+	@Nullable
+	private final Duration latencyBudget;
+
+	public ModelRouter(List<Route> routes, List<Target> fallbacks, @Nullable Duration latencyBudget) {
+		if (routes.isEmpty()) {
+			throw new IllegalArgumentException("At least one route is required");
+		}
+		this.routes = routes.stream().sorted(Comparator.comparingInt(Route::maxTokens)).toList();
+		this.fallbacks = List.copyOf(fallbacks);
+		this.latencyBudget = latencyBudget;
+	}
+
+	public static ModelRouter single(Target target) {
+		return new ModelRouter(List.of(new Route(Integer.MAX_VALUE, target)), List.of(), null);
+	}
+
+	/**
+	 * @return the primary target followed by the fallbacks
+	 */
+	public List<Target> route(int estimatedTokens) {
+		Target primary = this.routes.stream()
+			.filter(route -> route.maxTokens() >= estimatedTokens)
+			.findFirst()
+			.orElse(this.routes.getLast())
+			.target();
+		List<Target> targets = new ArrayList<>(1 + this.fallbacks.size());
+		targets.add(primary);
+		this.fallbacks.stream().filter(target -> target != primary).forEach(targets::add);
+		return targets;
+	}
+
+	/**
+	 * @return all the targets without duplicates
+	 */
+	public Set<Target> targets() {
+		Set<Target> targets = new LinkedHashSet<>();
+		this.routes.forEach(route -> targets.add(route.target()));
+		targets.addAll(this.fallbacks);
+		return targets;
+	}
+
+	@Nullable
+	public Duration latencyBudget() {
+		return this.latencyBudget;
+	}
+
+	/**
+	 * @return the reason to fall over to the next target, or null if the error is not
+	 * caused by the capacity of the model
+	 */
+	@Nullable
+	public static String fallOverReason(Throwable e) {
+		for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+			int status = switch (cause) {
+				case WebClientResponseException ex -> ex.getStatusCode().value();
+				case RestClientResponseException ex -> ex.getStatusCode().value();
+				default -> 0;
+			};
+			if (status == 429 || status == 529) {
+				return "overloaded";
+			}
+			if (cause instanceof TimeoutException) {
+				return "timeout";
+			}
+			if (cause instanceof DownstreamUnavailableException ex) {
+				return ex.reason();
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * @param maxTokens maximum estimated tokens of the entries routed to the target
+	 * @param target target
+	 */
+	public record Route(int maxTokens, Target target) {
+	}
+
+	/**
+	 * @param name name of the target used in logs, metrics and pull requests
+	 * @param chatClient client of the model
+	 * @param rateLimiter limiter of the calls to the endpoint
+	 */
+	public record Target(String name, ChatClient chatClient, RateLimiter rateLimiter) {
+	}
+
+}
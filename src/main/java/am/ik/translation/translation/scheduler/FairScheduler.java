@@ -0,0 +1,174 @@
+package am.ik.translation.translation.scheduler;
+
+import am.ik.translation.translation.TranslationProps;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+
+/**
+ * Admits at most {@code translation.scheduler.concurrency} translations at a time, from
+ * both jobs and batches, in the order of weighted fair queuing.
+ * <p>
+ * Every translation is tagged with a virtual finish time of
+ * {@code max(virtual time, finish time of the last translation of its flow) + cost / weight},
+ * where a flow is the translations with the same label, such as the jobs of an entry or
+ * the entries of a batch, the cost is the estimated tokens of the entry and the weight is
+ * that of its class. The smallest tag runs first. The virtual time is the tag of the last
+ * admitted translation (self-clocked fair queuing). The entries of a batch queue behind
+ * each other, so a post requested after a large backfill only waits for the part of the
+ * backfill tagged before it. A job has a single translation waiting, so a short
+ * translation is tagged before a long one queued earlier in the same class, and a class
+ * with a higher weight is tagged ahead of a lower one. The tags of the waiting
+ * translations do not change, so a long translation or a backlog of a lower class still
+ * progresses as the virtual time passes its tag.
+ * <p>
+ * The time a translation waits for its slot is recorded as
+ * {@code translation.scheduler.wait} by priority, apart from the time it runs.
+ */
+@Component
+public class FairScheduler {
+
+	private final ReentrantLock lock = new ReentrantLock();
+
+	private final Condition changed = this.lock.newCondition();
+
+	private final int concurrency;
+
+	private final Map<Priority, Integer> weights;
+
+	private final PriorityQueue<Ticket> waiting = new PriorityQueue<>(
+			Comparator.comparingDouble(Ticket::finishTag).thenComparingLong(Ticket::sequence));
+
+	private final Set<Ticket> running = new LinkedHashSet<>();
+
+	private final Map<String, Double> lastFinishTags = new HashMap<>();
+
+	private double virtualTime = 0;
+
+	private long sequence = 0;
+
+	private final MeterRegistry meterRegistry;
+
+	private final Logger logger = LoggerFactory.getLogger(FairScheduler.class);
+
+	public FairScheduler(TranslationProps translationProps, MeterRegistry meterRegistry) {
+		this.meterRegistry = meterRegistry;
+		this.concurrency = translationProps.scheduler().concurrency();
+		this.weights = new EnumMap<>(Priority.class);
+		for (Priority priority : Priority.values()) {
+			this.weights.put(priority, Math.max(1, translationProps.scheduler().weights().getOrDefault(priority, 1)));
+		}
+	}
+
+	/**
+	 * Run the task once it is admitted.
+	 * @param priority priority class of the task
+	 * @param cost estimated cost of the task
+	 * @param label label of the task shown in the queue, which identifies its flow
+	 */
+	public <T> T run(Priority priority, long cost, String label, Supplier<T> task) {
+		Ticket ticket = this.admit(priority, cost, label);
+		try {
+			return task.get();
+		}
+		finally {
+			this.lock.lock();
+			try {
+				this.running.remove(ticket);
+				this.changed.signalAll();
+			}
+			finally {
+				this.lock.unlock();
+			}
+		}
+	}
+
+	Ticket admit(Priority priority, long cost, String label) {
+		this.lock.lock();
+		try {
+			double start = Math.max(this.virtualTime, this.lastFinishTags.getOrDefault(label, 0.0));
+			Ticket ticket = new Ticket(this.sequence++, label, priority, cost,
+					start + (double) Math.max(1, cost) / this.weights.get(priority), Instant.now());
+			this.lastFinishTags.put(label, ticket.finishTag());
+			this.waiting.add(ticket);
+			try {
+				while (this.running.size() >= this.concurrency || this.waiting.peek() != ticket) {
+					this.changed.await();
+				}
+			}
+			catch (InterruptedException e) {
+				this.waiting.remove(ticket);
+				Double lastFinishTag = this.lastFinishTags.get(label);
+				if (lastFinishTag != null && lastFinishTag == ticket.finishTag()) {
+					// the next translation of the flow does not wait for the removed one
+					this.lastFinishTags.put(label, start);
+				}
+				this.changed.signalAll();
+				Thread.currentThread().interrupt();
+				throw new IllegalStateException("Scheduling is interrupted: " + label, e);
+			}
+			this.waiting.remove();
+			this.virtualTime = ticket.finishTag();
+			// a flow whose tag is behind the virtual time starts at the virtual time
+			// anyway
+			this.lastFinishTags.values().removeIf(tag -> tag <= this.virtualTime);
+			this.running.add(ticket);
+			// the next ticket may also fit in the remaining slots
+			this.changed.signalAll();
+			Duration waited = Duration.between(ticket.queuedAt(), Instant.now());
+			Timer.builder("translation.scheduler.wait")
+				.tag("priority", priority.name().toLowerCase())
+				.register(this.meterRegistry)
+				.record(waited);
+			logger.debug("action=admit label={} priority={} cost={} waited={}", label, priority, cost, waited);
+			return ticket;
+		}
+		finally {
+			this.lock.unlock();
+		}
+	}
+
+	/**
+	 * @return the running tasks followed by the waiting tasks in the order they run
+	 */
+	public Snapshot snapshot() {
+		this.lock.lock();
+		try {
+			List<Ticket> waiting = new ArrayList<>(this.waiting);
+			waiting.sort(this.waiting.comparator());
+			return new Snapshot(this.concurrency, Map.copyOf(this.weights), this.virtualTime, List.copyOf(this.running),
+					waiting);
+		}
+		finally {
+			this.lock.unlock();
+		}
+	}
+
+	/**
+	 * @param finishTag virtual finish time. Tasks run in the ascending order of the tags.
+	 */
+	public record Ticket(long sequence, String label, Priority priority, long cost, double finishTag,
+			Instant queuedAt) {
+	}
+
+	public record Snapshot(int concurrency, Map<Priority, Integer> weights, double virtualTime, List<Ticket> running,
+			List<Ticket> waiting) {
+	}
+
+}
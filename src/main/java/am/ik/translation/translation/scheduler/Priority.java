@@ -0,0 +1,38 @@
+package am.ik.translation.translation.scheduler;
+
+import am.ik.translation.entry.Entry;
+import java.time.Duration;
+import java.time.OffsetDateTime;
+
+/**
+ * Priority classes of translations. Each class gets a share of the translation slots in
+ * proportion to its weight in {@code translation.scheduler.weights}.
+ */
+public enum Priority {
+
+	/**
+	 * Entries posted recently
+	 */
+	NEW,
+	/**
+	 * Updates of older entries
+	 */
+	UPDATE,
+	/**
+	 * Bulk translations by the batch endpoint
+	 */
+	BACKFILL;
+
+	/**
+	 * An entry is new if it has not been updated a day after it was created.
+	 */
+	public static Priority of(Entry entry) {
+		OffsetDateTime created = entry.created().date();
+		OffsetDateTime updated = entry.updated().date();
+		if (created == null || updated == null || updated.isBefore(created.plus(Duration.ofDays(1)))) {
+			return NEW;
+		}
+		return UPDATE;
+	}
+
+}
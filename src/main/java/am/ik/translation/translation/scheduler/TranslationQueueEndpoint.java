@@ -0,0 +1,37 @@
+package am.ik.translation.translation.scheduler;
+
+import am.ik.translation.translation.job.TranslationJob;
+import am.ik.translation.translation.job.TranslationJobQueue;
+import java.util.Comparator;
+import java.util.List;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.stereotype.Component;
+
+/**
+ * Exposes the unfinished jobs and the translations admitted or waiting in the
+ * {@link FairScheduler} at {@code /actuator/translationqueue}.
+ */
+@Component
+@Endpoint(id = "translationqueue")
+public class TranslationQueueEndpoint {
+
+	private final FairScheduler fairScheduler;
+
+	private final TranslationJobQueue jobQueue;
+
+	public TranslationQueueEndpoint(FairScheduler fairScheduler, TranslationJobQueue jobQueue) {
+		this.fairScheduler = fairScheduler;
+		this.jobQueue = jobQueue;
+	}
+
+	@ReadOperation
+	public TranslationQueue queue() {
+		return new TranslationQueue(this.fairScheduler.snapshot(),
+				this.jobQueue.jobs().stream().sorted(Comparator.comparing(TranslationJob::createdAt)).toList());
+	}
+
+	public record TranslationQueue(FairScheduler.Snapshot scheduler, List<TranslationJob> jobs) {
+	}
+
+}
@@ -0,0 +1,96 @@
+package am.ik.translation.translation.web;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.List;
+import java.util.stream.LongStream;
+
+import am.ik.translation.translation.TranslationProps;
+import am.ik.translation.translation.batch.Batch;
+import am.ik.translation.translation.batch.BatchTranslator;
+import jakarta.annotation.Nullable;
+
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
+import org.springframework.web.bind.annotation.RestController;
+
+@RestController
+public class BatchTranslationController {
+
+	static final int MAX_ENTRIES = 1000;
+
+	private final BatchTranslator batchTranslator;
+
+	@Nullable
+	private final String token;
+
+	public BatchTranslationController(BatchTranslator batchTranslator, TranslationProps translationProps) {
+		this.batchTranslator = batchTranslator;
+		this.token = translationProps.batch().token();
+	}
+
+	@PostMapping(path = "batch")
+	public ResponseEntity<?> batch(
+			@RequestHeader(name = HttpHeaders.AUTHORIZATION, required = false) String authorization,
+			@RequestBody BatchRequest request) {
+		ResponseEntity<?> unauthorized = this.authorize(authorization);
+		if (unauthorized != null) {
+			return unauthorized;
+		}
+		List<Long> entryIds = request.entryIds();
+		if (entryIds.isEmpty() || entryIds.size() > MAX_ENTRIES) {
+			return ResponseEntity.badRequest()
+				.body("Specify 1 to %d entries with entryIds or from and to".formatted(MAX_ENTRIES));
+		}
+		return ResponseEntity.status(HttpStatus.ACCEPTED).body(this.batchTranslator.submit(entryIds));
+	}
+
+	@GetMapping(path = "batch/{batchId}")
+	public ResponseEntity<?> batch(
+			@RequestHeader(name = HttpHeaders.AUTHORIZATION, required = false) String authorization,
+			@PathVariable String batchId) {
+		ResponseEntity<?> unauthorized = this.authorize(authorization);
+		if (unauthorized != null) {
+			return unauthorized;
+		}
+		Batch batch = this.batchTranslator.get(batchId);
+		return batch == null ? ResponseEntity.notFound().build() : ResponseEntity.ok(batch);
+	}
+
+	@Nullable
+	ResponseEntity<?> authorize(@Nullable String authorization) {
+		if (this.token == null) {
+			return ResponseEntity.status(HttpStatus.FORBIDDEN).body("Batch translation is disabled");
+		}
+		if (authorization == null || !MessageDigest.isEqual(authorization.getBytes(StandardCharsets.UTF_8),
+				("Bearer " + this.token).getBytes(StandardCharsets.UTF_8))) {
+			return ResponseEntity.status(HttpStatus.UNAUTHORIZED).body("Invalid token");
+		}
+		return null;
+	}
+
+	/**
+	 * Either {@code entryIds} or the inclusive range from {@code from} to {@code to}.
+	 */
+	public record BatchRequest(@Nullable List<Long> entryIds, @Nullable Long from, @Nullable Long to) {
+
+		@Override
+		public List<Long> entryIds() {
+			if (this.entryIds != null) {
+				return this.entryIds.stream().distinct().toList();
+			}
+			if (this.from == null || this.to == null || this.from > this.to || this.to - this.from >= MAX_ENTRIES) {
+				return List.of();
+			}
+			return LongStream.rangeClosed(this.from, this.to).boxed().toList();
+		}
+
+	}
+
+}
@@ -0,0 +1,57 @@
+package am.ik.translation.translation.web;
+
+import am.ik.translation.translation.job.TranslationJob;
+import am.ik.translation.translation.job.TranslationJobQueue;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+/**
+ * Status of the translation jobs. The event streams publish the state transitions and the
+ * progress of the translation (tokens received and chunks done) as server-sent events.
+ */
+@RestController
+public class JobController {
+
+	private final TranslationJobQueue jobQueue;
+
+	private final JobEventStreams eventStreams;
+
+	public JobController(TranslationJobQueue jobQueue, JobEventStreams eventStreams) {
+		this.jobQueue = jobQueue;
+		this.eventStreams = eventStreams;
+	}
+
+	@GetMapping(path = "/jobs/{jobId}")
+	public TranslationJob job(@PathVariable String jobId) {
+		TranslationJob job = this.jobQueue.job(jobId);
+		if (job == null) {
+			throw new ResponseStatusException(HttpStatus.NOT_FOUND, "Job not found: " + jobId);
+		}
+		return job;
+	}
+
+	@GetMapping(path = "/entries/{entryId}/job")
+	public TranslationJob jobOfEntry(@PathVariable long entryId) {
+		TranslationJob job = this.jobQueue.jobOfEntry(entryId);
+		if (job == null) {
+			throw new ResponseStatusException(HttpStatus.NOT_FOUND, "Job not found for entry: " + entryId);
+		}
+		return job;
+	}
+
+	@GetMapping(path = "/jobs/{jobId}/events")
+	public SseEmitter jobEvents(@PathVariable String jobId) {
+		return this.eventStreams.open(this.job(jobId));
+	}
+
+	@GetMapping(path = "/entries/{entryId}/job/events")
+	public SseEmitter entryEvents(@PathVariable long entryId) {
+		// the events of the current job, not of an earlier job of the same entry
+		return this.eventStreams.open(this.jobOfEntry(entryId));
+	}
+
+}
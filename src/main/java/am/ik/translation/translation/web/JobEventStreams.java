@@ -0,0 +1,141 @@
+package am.ik.translation.translation.web;
+
+import am.ik.translation.translation.job.JobEvent;
+import am.ik.translation.translation.job.JobEvents;
+import am.ik.translation.translation.job.TranslationJob;
+import java.io.IOException;
+import java.time.Duration;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.LockSupport;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.stereotype.Component;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+/**
+ * Sends {@link JobEvents} to server-sent event streams. Each stream reads the ring buffer
+ * from its own virtual thread, woken up only by the events of its job, so a client that
+ * stops reading blocks neither the translation nor the other streams. A stream starts
+ * with the events of its job still in the ring buffer and completes once the job
+ * finishes. A stream of a job that has already finished completes at once, as its events
+ * may have left the ring buffer.
+ */
+@Component
+public class JobEventStreams implements SmartLifecycle {
+
+	static final Duration TIMEOUT = Duration.ofMinutes(30);
+
+	static final Duration POLL_INTERVAL = Duration.ofSeconds(1);
+
+	private final JobEvents events;
+
+	private final Set<Stream> streams = ConcurrentHashMap.newKeySet();
+
+	private volatile boolean running = false;
+
+	private final Logger logger = LoggerFactory.getLogger(JobEventStreams.class);
+
+	public JobEventStreams(JobEvents events) {
+		this.events = events;
+	}
+
+	public SseEmitter open(TranslationJob job) {
+		SseEmitter emitter = new SseEmitter(TIMEOUT.toMillis());
+		if (job.state().isTerminal()) {
+			emitter.complete();
+			return emitter;
+		}
+		// a job finishing in the meantime is still caught, as its terminal event is newer
+		// than the oldest event
+		Stream stream = new Stream(emitter, job.jobId(), this.events.oldest());
+		emitter.onCompletion(() -> this.remove(stream));
+		emitter.onTimeout(() -> this.remove(stream));
+		emitter.onError(e -> this.remove(stream));
+		this.streams.add(stream);
+		stream.thread.start();
+		return emitter;
+	}
+
+	private void remove(Stream stream) {
+		if (this.streams.remove(stream)) {
+			LockSupport.unpark(stream.thread);
+		}
+	}
+
+	@Override
+	public void start() {
+		this.running = true;
+	}
+
+	@Override
+	public void stop() {
+		this.running = false;
+		for (Stream stream : this.streams) {
+			this.remove(stream);
+			stream.emitter.complete();
+		}
+	}
+
+	@Override
+	public boolean isRunning() {
+		return this.running;
+	}
+
+	final class Stream {
+
+		private final SseEmitter emitter;
+
+		private final String jobId;
+
+		private final Thread thread;
+
+		private long cursor;
+
+		Stream(SseEmitter emitter, String jobId, long cursor) {
+			this.emitter = emitter;
+			this.jobId = jobId;
+			this.cursor = cursor;
+			this.thread = Thread.ofVirtual().name("job-event-stream-" + jobId).unstarted(this::dispatch);
+		}
+
+		void dispatch() {
+			events.wakeUp(this.jobId, this.thread);
+			try {
+				while (streams.contains(this)) {
+					this.cursor = events.read(this.cursor, this::send);
+					// woken up by a new event of the job or the removal of the stream
+					LockSupport.parkNanos(POLL_INTERVAL.toNanos());
+				}
+			}
+			catch (RuntimeException e) {
+				logger.debug("action=send_job_event jobId={}", this.jobId, e);
+				streams.remove(this);
+				this.emitter.completeWithError(e);
+			}
+			finally {
+				events.stopWakingUp(this.jobId, this.thread);
+			}
+		}
+
+		void send(JobEvent event) {
+			if (!event.jobId().equals(this.jobId) || !streams.contains(this)) {
+				return;
+			}
+			try {
+				this.emitter
+					.send(SseEmitter.event().id(Long.toString(event.sequence())).name(event.type()).data(event));
+			}
+			catch (IOException e) {
+				throw new IllegalStateException(e);
+			}
+			if (event.state().isTerminal()) {
+				streams.remove(this);
+				this.emitter.complete();
+			}
+		}
+
+	}
+
+}
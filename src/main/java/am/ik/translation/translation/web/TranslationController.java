@@ -4,7 +4,9 @@ import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
 import am.ik.translation.github.IssueEvent;
-import am.ik.translation.translation.TranslationService;
+import am.ik.translation.translation.TranslationProps;
+import am.ik.translation.translation.job.TranslationJob;
+import am.ik.translation.translation.job.TranslationJobQueue;
 import am.ik.webhook.annotation.WebhookPayload;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import org.slf4j.Logger;
@@ -14,32 +16,63 @@ import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RestController;
 
 @RestController
 public class TranslationController {
 
-	private final TranslationService translationService;
+	private final TranslationJobQueue jobQueue;
+
+	private final WebhookDeliveries webhookDeliveries;
 
 	private final ObjectMapper objectMapper;
 
+	private final String repository;
+
 	private final Logger log = LoggerFactory.getLogger(TranslationController.class);
 
 	final Pattern titlePattern = Pattern.compile("Translation Request to (\\d+)");
 
-	public TranslationController(TranslationService translationService, ObjectMapper objectMapper) {
-		this.translationService = translationService;
+	public TranslationController(TranslationJobQueue jobQueue, WebhookDeliveries webhookDeliveries,
+			ObjectMapper objectMapper, TranslationProps translationProps) {
+		// translation requests are issues of the repository of the primary language
+		this.repository = translationProps.primaryLanguage().repository();
+		this.jobQueue = jobQueue;
+		this.webhookDeliveries = webhookDeliveries;
 		this.objectMapper = objectMapper;
 	}
 
+	/**
+	 * Queue a translation job for an issue requesting a translation. A request for an
+	 * entry whose job is unfinished is coalesced onto that job, and its issue is queued
+	 * to be closed by a worker with a comment pointing to the issue of the job. No call
+	 * to GitHub is made here. The delivery id is forgotten if the request fails, so that
+	 * a redelivery is processed again.
+	 */
 	@PostMapping(path = "webhook", headers = "X-GitHub-Event=issues")
-	public ResponseEntity<String> webhook(@WebhookPayload @RequestBody String payload) throws Exception {
-		IssueEvent issueEvent = this.objectMapper.readValue(payload, IssueEvent.class);
+	public ResponseEntity<String> webhook(@WebhookPayload @RequestBody String payload,
+			@RequestHeader(name = "X-GitHub-Delivery", required = false) String deliveryId) throws Exception {
+		if (deliveryId != null && !this.webhookDeliveries.register(deliveryId)) {
+			return ResponseEntity.status(HttpStatus.ACCEPTED).body("Ignored redelivery: " + deliveryId);
+		}
+		try {
+			return this.handle(this.objectMapper.readValue(payload, IssueEvent.class));
+		}
+		catch (Exception e) {
+			if (deliveryId != null) {
+				this.webhookDeliveries.forget(deliveryId);
+			}
+			throw e;
+		}
+	}
+
+	ResponseEntity<String> handle(IssueEvent issueEvent) {
 		log.info("Received {}", issueEvent);
 		if (!"opened".equals(issueEvent.action())) {
 			return ResponseEntity.status(HttpStatus.ACCEPTED).body("Ignored action: " + issueEvent.action());
 		}
-		if (!"making/ik.am_en".equals(issueEvent.repository().fullName())) {
+		if (!this.repository.equals(issueEvent.repository().fullName())) {
 			return ResponseEntity.status(HttpStatus.BAD_REQUEST)
 				.body("Invalid request: " + issueEvent.repository().fullName());
 		}
@@ -47,7 +80,13 @@ public class TranslationController {
 		Matcher matcher = this.titlePattern.matcher(issue.title());
 		if (matcher.matches()) {
 			long entryId = Long.parseLong(matcher.group(1));
-			this.translationService.translateAndSendPullRequest(entryId, issue.number());
+			TranslationJobQueue.Enqueued enqueued = this.jobQueue.enqueue(entryId, issue.number());
+			TranslationJob job = enqueued.job();
+			if (enqueued.coalesced()) {
+				return ResponseEntity
+					.ok("Translation is already in progress for %d (issue #%d)".formatted(entryId, job.issueNumber()));
+			}
+			log.info("action=enqueue_job jobId={} entryId={} issueNumber={}", job.jobId(), entryId, issue.number());
 			return ResponseEntity.ok("Translation is requested for " + entryId);
 		}
 		else {
@@ -0,0 +1,61 @@
+package am.ik.translation.translation.web;
+
+import am.ik.translation.translation.TranslationProps;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import org.springframework.stereotype.Component;
+
+/**
+ * Remembers the {@code X-GitHub-Delivery} ids of received webhooks for
+ * {@code translation.webhook.delivery-ttl} so that redeliveries are ignored.
+ */
+@Component
+public class WebhookDeliveries {
+
+	private final Map<String, Instant> deliveries = new ConcurrentHashMap<>();
+
+	private final Duration ttl;
+
+	private volatile Instant lastPurge = Instant.now();
+
+	public WebhookDeliveries(TranslationProps translationProps) {
+		this.ttl = translationProps.webhook().deliveryTtl();
+	}
+
+	/**
+	 * Register the delivery id.
+	 * @return {@code false} if the delivery has already been received within the TTL
+	 */
+	public boolean register(String deliveryId) {
+		Instant now = Instant.now();
+		this.purgeIfNecessary(now);
+		Instant expiresAt = now.plus(this.ttl);
+		Instant previous = this.deliveries.putIfAbsent(deliveryId, expiresAt);
+		if (previous == null) {
+			return true;
+		}
+		if (previous.isBefore(now)) {
+			return this.deliveries.replace(deliveryId, previous, expiresAt);
+		}
+		return false;
+	}
+
+	/**
+	 * Forget the delivery id so that a redelivery is processed, for example because the
+	 * delivery failed.
+	 */
+	public void forget(String deliveryId) {
+		this.deliveries.remove(deliveryId);
+	}
+
+	private void purgeIfNecessary(Instant now) {
+		if (Duration.between(this.lastPurge, now).compareTo(this.ttl) < 0) {
+			return;
+		}
+		this.lastPurge = now;
+		this.deliveries.values().removeIf(expiresAt -> expiresAt.isBefore(now));
+	}
+
+}
@@ -0,0 +1,97 @@
+package am.ik.translation.util;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+
+/**
+ * Aho-Corasick automaton to find which of many patterns occur in a text in a single pass.
+ * Building takes time linear in the total length of the patterns, and matching takes time
+ * linear in the length of the text plus the number of occurrences.
+ */
+public final class AhoCorasick {
+
+	private final List<Map<Character, Integer>> transitions = new ArrayList<>();
+
+	private final int[] failures;
+
+	private final int[][] outputs;
+
+	private final int size;
+
+	public AhoCorasick(List<String> patterns) {
+		this.size = patterns.size();
+		List<List<Integer>> matches = new ArrayList<>();
+		this.transitions.add(new HashMap<>());
+		matches.add(new ArrayList<>());
+		for (int i = 0; i < patterns.size(); i++) {
+			String pattern = patterns.get(i);
+			if (pattern.isEmpty()) {
+				continue;
+			}
+			int node = 0;
+			for (int j = 0; j < pattern.length(); j++) {
+				Integer next = this.transitions.get(node).get(pattern.charAt(j));
+				if (next == null) {
+					next = this.transitions.size();
+					this.transitions.add(new HashMap<>());
+					matches.add(new ArrayList<>());
+					this.transitions.get(node).put(pattern.charAt(j), next);
+				}
+				node = next;
+			}
+			matches.get(node).add(i);
+		}
+		this.failures = new int[this.transitions.size()];
+		this.outputs = new int[this.transitions.size()][];
+		this.outputs[0] = new int[0];
+		// breadth-first, so that the failure of a node is done before the node
+		Queue<Integer> queue = new ArrayDeque<>(this.transitions.get(0).values());
+		while (!queue.isEmpty()) {
+			int node = queue.remove();
+			List<Integer> output = matches.get(node);
+			for (int failure : this.outputs[this.failures[node]]) {
+				output.add(failure);
+			}
+			this.outputs[node] = output.stream().mapToInt(Integer::intValue).toArray();
+			for (Map.Entry<Character, Integer> transition : this.transitions.get(node).entrySet()) {
+				int child = transition.getValue();
+				this.failures[child] = node == 0 ? 0 : this.next(this.failures[node], transition.getKey());
+				queue.add(child);
+			}
+		}
+	}
+
+	/**
+	 * @return indices of the patterns that occur in the text
+	 */
+	public BitSet match(CharSequence text) {
+		BitSet matched = new BitSet(this.size);
+		int node = 0;
+		for (int i = 0; i < text.length(); i++) {
+			node = this.next(node, text.charAt(i));
+			for (int pattern : this.outputs[node]) {
+				matched.set(pattern);
+			}
+		}
+		return matched;
+	}
+
+	private int next(int node, char c) {
+		while (true) {
+			Integer next = this.transitions.get(node).get(c);
+			if (next != null) {
+				return next;
+			}
+			if (node == 0) {
+				return 0;
+			}
+			node = this.failures[node];
+		}
+	}
+
+}
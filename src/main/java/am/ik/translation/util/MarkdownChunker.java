@@ -0,0 +1,170 @@
+package am.ik.translation.util;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Splits markdown into chunks that can be translated independently. Chunks are cut at
+ * heading or paragraph boundaries only, never inside a fenced code block, and the
+ * concatenation of the returned chunks is always identical to the input.
+ */
+public class MarkdownChunker {
+
+	/**
+	 * Split the given markdown into sections starting at each heading (outside fenced
+	 * code blocks).
+	 */
+	public static List<String> sections(String markdown) {
+		List<String> sections = new ArrayList<>();
+		List<Block> blocks = blocks(markdown);
+		StringBuilder current = new StringBuilder();
+		for (Block block : blocks) {
+			if (block.heading() && !current.isEmpty()) {
+				sections.add(current.toString());
+				current.setLength(0);
+			}
+			current.append(block.text());
+		}
+		if (!current.isEmpty()) {
+			sections.add(current.toString());
+		}
+		return sections;
+	}
+
+	/**
+	 * Split the given markdown into sections, further splitting sections larger than
+	 * {@code maxChunkSize} with {@link #chunk(String, int)}. Segment boundaries only
+	 * depend on the section itself, so that an edit in one section does not move the
+	 * boundaries of the others.
+	 */
+	public static List<String> segments(String markdown, int maxChunkSize) {
+		List<String> segments = new ArrayList<>();
+		for (String section : sections(markdown)) {
+			segments.addAll(chunk(section, maxChunkSize));
+		}
+		if (segments.isEmpty()) {
+			segments.add(markdown);
+		}
+		return segments;
+	}
+
+	/**
+	 * Returns whether the given markdown starts with a heading.
+	 */
+	public static boolean startsWithHeading(String markdown) {
+		List<Block> blocks = blocks(markdown);
+		return !blocks.isEmpty() && blocks.getFirst().heading();
+	}
+
+	/**
+	 * Split the given markdown into chunks of at most {@code maxChunkSize} characters.
+	 * Sections are packed greedily. A section larger than {@code maxChunkSize} is split
+	 * at paragraph boundaries. A single paragraph or code block larger than
+	 * {@code maxChunkSize} is kept as one chunk.
+	 */
+	public static List<String> chunk(String markdown, int maxChunkSize) {
+		if (markdown.length() <= maxChunkSize) {
+			return List.of(markdown);
+		}
+		List<String> chunks = new ArrayList<>();
+		StringBuilder current = new StringBuilder();
+		for (Block block : blocks(markdown)) {
+			boolean overflow = current.length() + block.text().length() > maxChunkSize;
+			// prefer cutting at a heading once the current chunk is reasonably filled
+			boolean cutAtHeading = block.heading() && current.length() > maxChunkSize / 2;
+			if (!current.isEmpty() && (overflow || cutAtHeading)) {
+				chunks.add(current.toString());
+				current.setLength(0);
+			}
+			current.append(block.text());
+		}
+		if (!current.isEmpty()) {
+			chunks.add(current.toString());
+		}
+		return chunks;
+	}
+
+	/**
+	 * Split markdown into blocks separated by blank lines. Trailing blank lines belong to
+	 * the preceding block and a fenced code block is always contained in a single block.
+	 */
+	static List<Block> blocks(String markdown) {
+		List<Block> blocks = new ArrayList<>();
+		int length = markdown.length();
+		int blockStart = 0;
+		boolean blockHasText = false;
+		boolean blankSinceText = false;
+		boolean heading = false;
+		String fence = null;
+		int pos = 0;
+		while (pos < length) {
+			int eol = markdown.indexOf('\n', pos);
+			int next = eol < 0 ? length : eol + 1;
+			String stripped = markdown.substring(pos, eol < 0 ? length : eol).strip();
+			if (fence != null) {
+				if (isClosingFence(stripped, fence)) {
+					fence = null;
+				}
+			}
+			else if (stripped.isEmpty()) {
+				blankSinceText = blockHasText;
+			}
+			else {
+				boolean lineIsHeading = isHeading(stripped);
+				if (blockHasText && (blankSinceText || lineIsHeading)) {
+					blocks.add(new Block(markdown.substring(blockStart, pos), heading));
+					blockStart = pos;
+					blockHasText = false;
+				}
+				if (!blockHasText) {
+					heading = lineIsHeading;
+				}
+				blockHasText = true;
+				blankSinceText = false;
+				fence = openingFence(stripped);
+			}
+			pos = next;
+		}
+		if (blockStart < length) {
+			blocks.add(new Block(markdown.substring(blockStart), heading));
+		}
+		return blocks;
+	}
+
+	static boolean isHeading(String stripped) {
+		int level = 0;
+		while (level < stripped.length() && stripped.charAt(level) == '#') {
+			level++;
+		}
+		return level > 0 && level <= 6 && (level == stripped.length() || stripped.charAt(level) == ' ');
+	}
+
+	static String openingFence(String stripped) {
+		if (!stripped.startsWith("```") && !stripped.startsWith("~~~")) {
+			return null;
+		}
+		char c = stripped.charAt(0);
+		int n = 0;
+		while (n < stripped.length() && stripped.charAt(n) == c) {
+			n++;
+		}
+		return String.valueOf(c).repeat(n);
+	}
+
+	static boolean isClosingFence(String stripped, String fence) {
+		if (!stripped.startsWith(fence)) {
+			return false;
+		}
+		char c = fence.charAt(0);
+		for (int i = fence.length(); i < stripped.length(); i++) {
+			if (stripped.charAt(i) != c) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	record Block(String text, boolean heading) {
+	}
+
+}
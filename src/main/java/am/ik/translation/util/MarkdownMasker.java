@@ -0,0 +1,146 @@
+package am.ik.translation.util;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Replaces the parts of markdown that must not be translated (fenced code blocks,
+ * {@code <pre>} blocks, inline code, image links and URLs) with compact placeholders such
+ * as {@code @@M0@@}, so that they are neither sent to nor corrupted by the model.
+ */
+public class MarkdownMasker {
+
+	static final String PLACEHOLDER_PREFIX = "@@M";
+
+	/**
+	 * A URL consists of printable ASCII characters only, so that the Japanese text right
+	 * after it is not masked together with it.
+	 */
+	static final Pattern INLINE_PATTERN = Pattern.compile(
+			"(?s)<pre[\\s>].*?</pre>|!\\[[^\\]\\n]*]\\([^)\\n]*\\)|``[^\\n]+?``|`[^`\\n]+`|https?://[!-~&&[^)<>\\]\"'`]]+");
+
+	static final Pattern PLACEHOLDER_PATTERN = Pattern.compile("@@M(\\d+)@@");
+
+	public static Masked mask(String markdown) {
+		List<String> originals = new ArrayList<>();
+		if (markdown.contains(PLACEHOLDER_PREFIX)) {
+			// the input already looks like a placeholder. leave it as it is
+			return new Masked(markdown, originals);
+		}
+		StringBuilder masked = new StringBuilder(markdown.length());
+		int length = markdown.length();
+		int regionStart = 0;
+		int fenceStart = -1;
+		String fence = null;
+		int pos = 0;
+		while (pos < length) {
+			int eol = markdown.indexOf('\n', pos);
+			int lineEnd = eol < 0 ? length : eol;
+			String line = markdown.substring(pos, lineEnd);
+			String stripped = line.strip();
+			if (fence == null) {
+				String openingFence = MarkdownChunker.openingFence(stripped);
+				if (openingFence != null) {
+					fence = openingFence;
+					fenceStart = pos + line.indexOf(openingFence);
+					maskInline(markdown.substring(regionStart, fenceStart), masked, originals);
+				}
+			}
+			else if (MarkdownChunker.isClosingFence(stripped, fence)) {
+				masked.append(placeholder(originals, markdown.substring(fenceStart, lineEnd)));
+				fence = null;
+				regionStart = lineEnd;
+			}
+			pos = eol < 0 ? length : eol + 1;
+		}
+		if (fence != null) {
+			// unclosed fence. the rest of the input is the code block
+			masked.append(placeholder(originals, markdown.substring(fenceStart)));
+		}
+		else {
+			maskInline(markdown.substring(regionStart), masked, originals);
+		}
+		return new Masked(masked.toString(), originals);
+	}
+
+	static void maskInline(String text, StringBuilder masked, List<String> originals) {
+		Matcher matcher = INLINE_PATTERN.matcher(text);
+		int last = 0;
+		while (matcher.find()) {
+			masked.append(text, last, matcher.start()).append(placeholder(originals, matcher.group()));
+			last = matcher.end();
+		}
+		masked.append(text, last, text.length());
+	}
+
+	static String placeholder(List<String> originals, String original) {
+		originals.add(original);
+		return PLACEHOLDER_PREFIX + (originals.size() - 1) + "@@";
+	}
+
+	/**
+	 * @param text masked text
+	 * @param originals masked parts in order of their placeholder index
+	 */
+	public record Masked(String text, List<String> originals) {
+
+		/**
+		 * Restore the masked parts in the given translated text verbatim. Placeholders
+		 * that do not refer to a masked part are left as they are and counted as unknown.
+		 */
+		public Unmasked unmask(String translated) {
+			if (this.originals.isEmpty() && this.text.contains(PLACEHOLDER_PREFIX)) {
+				// masking was skipped because the input already contained placeholders
+				return new Unmasked(translated, 0, 0);
+			}
+			Matcher matcher = PLACEHOLDER_PATTERN.matcher(translated);
+			StringBuilder unmasked = new StringBuilder(translated.length() + 64 * this.originals.size());
+			BitSet restored = new BitSet(this.originals.size());
+			int unknown = 0;
+			while (matcher.find()) {
+				int index = index(matcher.group(1));
+				if (index < this.originals.size()) {
+					matcher.appendReplacement(unmasked, Matcher.quoteReplacement(this.originals.get(index)));
+					restored.set(index);
+				}
+				else {
+					unknown++;
+				}
+			}
+			matcher.appendTail(unmasked);
+			return new Unmasked(unmasked.toString(), this.originals.size() - restored.cardinality(), unknown);
+		}
+
+		static int index(String digits) {
+			try {
+				return Integer.parseInt(digits);
+			}
+			catch (NumberFormatException e) {
+				// too large to refer to a masked part
+				return Integer.MAX_VALUE;
+			}
+		}
+
+	}
+
+	/**
+	 * @param text text whose placeholders are restored
+	 * @param missing number of placeholders missing in the translated text
+	 * @param unknown number of placeholders in the translated text that do not refer to a
+	 * masked part
+	 */
+	public record Unmasked(String text, int missing, int unknown) {
+
+		/**
+		 * Whether every masked part was restored and no unknown placeholder was left.
+		 */
+		public boolean complete() {
+			return this.missing == 0 && this.unknown == 0;
+		}
+
+	}
+
+}
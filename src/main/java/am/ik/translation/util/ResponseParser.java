@@ -1,47 +1,96 @@
 package am.ik.translation.util;
 
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
-
 public class ResponseParser {
 
+	private static final String TITLE = "== title ==";
+
+	private static final String SUMMARY = "== summary ==";
+
+	private static final String CONTENT = "== content ==";
+
+	static final String THINK_START = "<think>";
+
+	static final String THINK_END = "</think>";
+
+	/**
+	 * Parse the response in a single pass without regular expressions so that the time is
+	 * linear to the length of the response even if it contains a large {@code <think>}
+	 * block.
+	 */
 	public static TranslatedContent parseText(String text) {
-		// Pattern for title: between "== title ==" and either "== summary ==" or "==
-		// content =="
-		String titlePattern = "== title ==\\s*(.+?)\\s*(?:== summary ==|== content ==)";
-		// Pattern for summary: between "== summary ==" and "== content ==" (optional)
-		String summaryPattern = "== summary ==\\s*(.+?)\\s*== content ==";
-		// Pattern for content: after "== content =="
-		String contentPattern = "== content ==\\s*(.+)";
-
-		Pattern patternTitle = Pattern.compile(titlePattern, Pattern.DOTALL);
-		Pattern patternSummary = Pattern.compile(summaryPattern, Pattern.DOTALL);
-		Pattern patternContent = Pattern.compile(contentPattern, Pattern.DOTALL);
-
-		String thinkRemovedText = text.replaceAll("(?s)<think>.*?</think>", "").trim();
-		Matcher matcherTitle = patternTitle.matcher(thinkRemovedText);
-		Matcher matcherSummary = patternSummary.matcher(thinkRemovedText);
-		Matcher matcherContent = patternContent.matcher(thinkRemovedText);
+		String thinkRemovedText = removeThink(text).trim();
 
 		String title = "";
 		String summary = null;
 		String content = "";
 
-		if (matcherTitle.find()) {
-			title = matcherTitle.group(1).trim();
+		// title: between "== title ==" and either "== summary ==" or "== content =="
+		int titleIndex = thinkRemovedText.indexOf(TITLE);
+		if (titleIndex >= 0) {
+			int start = titleIndex + TITLE.length();
+			int end = nearest(thinkRemovedText.indexOf(SUMMARY, start), thinkRemovedText.indexOf(CONTENT, start));
+			if (end >= 0) {
+				title = thinkRemovedText.substring(start, end).trim();
+			}
 		}
 
-		if (matcherSummary.find()) {
-			summary = matcherSummary.group(1).trim();
+		// summary: between "== summary ==" and "== content ==" (optional)
+		int summaryIndex = thinkRemovedText.indexOf(SUMMARY);
+		if (summaryIndex >= 0) {
+			int start = summaryIndex + SUMMARY.length();
+			int end = thinkRemovedText.indexOf(CONTENT, start);
+			if (end >= 0) {
+				summary = thinkRemovedText.substring(start, end).trim();
+				// an empty summary is no summary, as in StreamingResponseParser
+				if (summary.isEmpty()) {
+					summary = null;
+				}
+			}
 		}
 
-		if (matcherContent.find()) {
-			content = matcherContent.group(1).trim();
+		// content: after "== content =="
+		int contentIndex = thinkRemovedText.indexOf(CONTENT);
+		if (contentIndex >= 0) {
+			content = thinkRemovedText.substring(contentIndex + CONTENT.length()).trim();
 		}
 
 		return new TranslatedContent(title, summary, content);
 	}
 
+	/**
+	 * Remove the {@code <think>} blocks. A {@code <think>} that is never closed is not a
+	 * thinking block, so it and the rest of the text are kept, as a translation may
+	 * mention the tag. {@link StreamingResponseParser} does the same.
+	 */
+	static String removeThink(String text) {
+		int start = text.indexOf(THINK_START);
+		if (start < 0) {
+			return text;
+		}
+		StringBuilder builder = new StringBuilder(text.length());
+		int last = 0;
+		while (start >= 0) {
+			int end = text.indexOf(THINK_END, start + THINK_START.length());
+			if (end < 0) {
+				break;
+			}
+			builder.append(text, last, start);
+			last = end + THINK_END.length();
+			start = text.indexOf(THINK_START, last);
+		}
+		return builder.append(text, last, text.length()).toString();
+	}
+
+	private static int nearest(int i, int j) {
+		if (i < 0) {
+			return j;
+		}
+		if (j < 0) {
+			return i;
+		}
+		return Math.min(i, j);
+	}
+
 	public record TranslatedContent(String title, String summary, String content) {
 	}
 
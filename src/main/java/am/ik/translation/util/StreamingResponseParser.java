@@ -0,0 +1,176 @@
+package am.ik.translation.util;
+
+import am.ik.translation.util.ResponseParser.TranslatedContent;
+
+/**
+ * Incremental counterpart of {@link ResponseParser}. Fragments of a streamed response are
+ * fed with {@link #append(String)} as they arrive. The {@code == title ==},
+ * {@code == summary ==} and {@code == content ==} sections are detected line by line and
+ * {@code <think>} blocks are skipped, so that the content is written into a single
+ * growing buffer instead of keeping every fragment until the response completes.
+ * <p>
+ * As in {@link ResponseParser}, a {@code <think>} that is never closed is not a thinking
+ * block. The text held since it is restored verbatim by {@link #finish()}.
+ * <p>
+ * An instance is not thread-safe except for {@link #progress()}.
+ */
+public class StreamingResponseParser {
+
+	private final StringBuilder line = new StringBuilder(256);
+
+	private final StringBuilder title = new StringBuilder();
+
+	private StringBuilder summary = null;
+
+	private final StringBuilder content;
+
+	private volatile Section section = Section.PREAMBLE;
+
+	private Section sectionBeforeThink = Section.PREAMBLE;
+
+	/**
+	 * Text since the last {@code <think>}, restored if it is never closed
+	 */
+	private final StringBuilder think = new StringBuilder();
+
+	private boolean unclosedThink = false;
+
+	private volatile long received = 0;
+
+	public StreamingResponseParser(int expectedContentLength) {
+		this.content = new StringBuilder(expectedContentLength);
+	}
+
+	public StreamingResponseParser() {
+		this(1024);
+	}
+
+	public StreamingResponseParser append(String fragment) {
+		this.received += fragment.length();
+		this.feed(fragment);
+		return this;
+	}
+
+	private void feed(String fragment) {
+		int start = 0;
+		int eol;
+		while ((eol = fragment.indexOf('\n', start)) >= 0) {
+			this.line.append(fragment, start, eol);
+			this.processLine(this.line, true);
+			this.line.setLength(0);
+			start = eol + 1;
+		}
+		this.line.append(fragment, start, fragment.length());
+	}
+
+	public TranslatedContent finish() {
+		if (!this.line.isEmpty()) {
+			this.processLine(this.line, false);
+			this.line.setLength(0);
+		}
+		if (this.section == Section.THINK) {
+			// the rest of the response is text as it is, including any further <think>
+			this.section = this.sectionBeforeThink;
+			this.unclosedThink = true;
+			this.feed(ResponseParser.THINK_START + this.think);
+			this.processLine(this.line, false);
+			this.line.setLength(0);
+		}
+		String summary = this.summary == null ? null : this.summary.toString().trim();
+		return new TranslatedContent(this.title.toString().trim(),
+				summary == null || summary.isEmpty() ? null : summary, this.content.toString().trim());
+	}
+
+	public Progress progress() {
+		return new Progress(this.received, this.section);
+	}
+
+	private void processLine(CharSequence line, boolean newline) {
+		if (this.section == Section.THINK) {
+			int end = indexOf(line, ResponseParser.THINK_END);
+			if (end >= 0) {
+				this.think.setLength(0);
+				this.section = this.sectionBeforeThink;
+				this.processLine(line.subSequence(end + ResponseParser.THINK_END.length(), line.length()), newline);
+			}
+			else {
+				this.think.append(line);
+				if (newline) {
+					this.think.append('\n');
+				}
+			}
+			return;
+		}
+		int start = this.unclosedThink ? -1 : indexOf(line, ResponseParser.THINK_START);
+		if (start >= 0) {
+			CharSequence before = line.subSequence(0, start);
+			if (!before.toString().isBlank()) {
+				this.processLine(before, false);
+			}
+			this.sectionBeforeThink = this.section;
+			this.section = Section.THINK;
+			this.processLine(line.subSequence(start + ResponseParser.THINK_START.length(), line.length()), newline);
+			return;
+		}
+		if (this.section != Section.CONTENT) {
+			String stripped = line.toString().strip();
+			for (Section marked : Section.MARKED) {
+				if (stripped.startsWith(marked.marker)) {
+					this.section = marked;
+					if (marked == Section.SUMMARY) {
+						this.summary = new StringBuilder();
+					}
+					String rest = stripped.substring(marked.marker.length());
+					if (!rest.isBlank()) {
+						this.processLine(rest, newline);
+					}
+					return;
+				}
+			}
+		}
+		StringBuilder buffer = switch (this.section) {
+			case TITLE -> this.title;
+			case SUMMARY -> this.summary;
+			case CONTENT -> this.content;
+			default -> null;
+		};
+		if (buffer != null) {
+			buffer.append(line);
+			if (newline) {
+				buffer.append('\n');
+			}
+		}
+	}
+
+	private static int indexOf(CharSequence sequence, String s) {
+		if (sequence instanceof String string) {
+			return string.indexOf(s);
+		}
+		if (sequence instanceof StringBuilder builder) {
+			return builder.indexOf(s);
+		}
+		return sequence.toString().indexOf(s);
+	}
+
+	public enum Section {
+
+		PREAMBLE(null), THINK(null), TITLE("== title =="), SUMMARY("== summary =="), CONTENT("== content ==");
+
+		static final Section[] MARKED = { TITLE, SUMMARY, CONTENT };
+
+		private final String marker;
+
+		Section(String marker) {
+			this.marker = marker;
+		}
+
+	}
+
+	/**
+	 * @param received number of characters received so far
+	 * @param section section currently being received
+	 */
+	public record Progress(long received, Section section) {
+	}
+
+}
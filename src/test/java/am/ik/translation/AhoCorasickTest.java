@@ -0,0 +1,27 @@
+package am.ik.translation;
+
+import java.util.List;
+
+import am.ik.translation.util.AhoCorasick;
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class AhoCorasickTest {
+
+	@Test
+	void matchOverlappingPatterns() {
+		AhoCorasick automaton = new AhoCorasick(List.of("he", "she", "his", "hers", "ハンドラ", "ハンドラー"));
+		assertThat(automaton.match("ushers").stream().toArray()).containsExactly(0, 1, 3);
+		assertThat(automaton.match("リクエストハンドラーを登録する").stream().toArray()).containsExactly(4, 5);
+		assertThat(automaton.match("nothing").isEmpty()).isTrue();
+	}
+
+	@Test
+	void matchPatternsFoundThroughFailureLinks() {
+		AhoCorasick automaton = new AhoCorasick(List.of("Spring Boot", "Boot", "ring", ""));
+		assertThat(automaton.match("Spring Bo").stream().toArray()).containsExactly(2);
+		assertThat(automaton.match("Spring Boot").stream().toArray()).containsExactly(0, 1, 2);
+	}
+
+}
@@ -0,0 +1,61 @@
+package am.ik.translation;
+
+import java.util.List;
+
+import am.ik.translation.util.MarkdownChunker;
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class MarkdownChunkerTest {
+
+	static final String MARKDOWN = """
+			Introduction paragraph.
+
+			## First
+
+			First paragraph.
+			Still first paragraph.
+
+			```java
+			// comment
+
+			## not a heading
+			```
+
+			## Second
+
+			Second paragraph.
+			""";
+
+	@Test
+	void chunkSmallMarkdown() {
+		assertThat(MarkdownChunker.chunk(MARKDOWN, 10_000)).containsExactly(MARKDOWN);
+	}
+
+	@Test
+	void chunkNeverSplitsFencedCodeBlock() {
+		List<String> chunks = MarkdownChunker.chunk(MARKDOWN, 20);
+		assertThat(String.join("", chunks)).isEqualTo(MARKDOWN);
+		assertThat(chunks).containsExactly("Introduction paragraph.\n\n", "## First\n\n",
+				"First paragraph.\nStill first paragraph.\n\n", "```java\n// comment\n\n## not a heading\n```\n\n",
+				"## Second\n\n", "Second paragraph.\n");
+	}
+
+	@Test
+	void chunkPrefersHeadings() {
+		List<String> chunks = MarkdownChunker.chunk(MARKDOWN, 100);
+		assertThat(String.join("", chunks)).isEqualTo(MARKDOWN);
+		assertThat(chunks).containsExactly(
+				"Introduction paragraph.\n\n## First\n\nFirst paragraph.\nStill first paragraph.\n\n",
+				"```java\n// comment\n\n## not a heading\n```\n\n## Second\n\nSecond paragraph.\n");
+	}
+
+	@Test
+	void sections() {
+		assertThat(MarkdownChunker.sections(MARKDOWN)).containsExactly("Introduction paragraph.\n\n",
+				"## First\n\nFirst paragraph.\nStill first paragraph.\n\n```java\n// comment\n\n## not a heading\n```\n\n",
+				"## Second\n\nSecond paragraph.\n");
+	}
+
+}
@@ -0,0 +1,96 @@
+package am.ik.translation;
+
+import am.ik.translation.util.MarkdownMasker;
+import am.ik.translation.util.MarkdownMasker.Masked;
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class MarkdownMaskerTest {
+
+	static final String MARKDOWN = """
+			`kubectl`で確認します。詳細は https://example.com/docs を参照。
+
+			![図1](https://example.com/image.png)
+
+			[リンク](https://example.com/link)
+
+			```java
+			// コメント
+			System.out.println("こんにちは");
+			```
+
+			<pre>
+			$ echo こんにちは
+			</pre>
+
+			  ~~~
+			  indented
+			  ~~~
+			""";
+
+	@Test
+	void mask() {
+		Masked masked = MarkdownMasker.mask(MARKDOWN);
+		assertThat(masked.text()).isEqualTo("""
+				@@M0@@で確認します。詳細は @@M1@@ を参照。
+
+				@@M2@@
+
+				[リンク](@@M3@@)
+
+				@@M4@@
+
+				@@M5@@
+
+				  @@M6@@
+				""");
+		assertThat(masked.originals()).hasSize(7);
+	}
+
+	@Test
+	void maskUrlFollowedByJapanese() {
+		Masked masked = MarkdownMasker.mask("詳細はhttps://example.com/docs?q=1を参照。(https://example.com)も参照。");
+		assertThat(masked.text()).isEqualTo("詳細は@@M0@@を参照。(@@M1@@)も参照。");
+		assertThat(masked.originals()).containsExactly("https://example.com/docs?q=1", "https://example.com");
+	}
+
+	@Test
+	void unmask() {
+		Masked masked = MarkdownMasker.mask(MARKDOWN);
+		String translated = masked.text()
+			.replace("で確認します。詳細は", " to check. See")
+			.replace(" を参照。", " for details.")
+			.replace("リンク", "Link");
+		MarkdownMasker.Unmasked unmasked = masked.unmask(translated);
+		assertThat(unmasked.missing()).isZero();
+		assertThat(unmasked.text()).isEqualTo(MARKDOWN.replace("で確認します。詳細は", " to check. See")
+			.replace(" を参照。", " for details.")
+			.replace("[リンク]", "[Link]"));
+	}
+
+	@Test
+	void unmaskMissingPlaceholder() {
+		Masked masked = MarkdownMasker.mask(MARKDOWN);
+		assertThat(masked.unmask(masked.text().replace("@@M2@@", "")).missing()).isEqualTo(1);
+	}
+
+	@Test
+	void unmaskUnknownPlaceholder() {
+		Masked masked = MarkdownMasker.mask(MARKDOWN);
+		MarkdownMasker.Unmasked unmasked = masked.unmask(masked.text() + "\n@@M7@@ @@M99999999999@@");
+		assertThat(unmasked.missing()).isZero();
+		assertThat(unmasked.unknown()).isEqualTo(2);
+		assertThat(unmasked.complete()).isFalse();
+		assertThat(MarkdownMasker.mask("no code").unmask("@@M0@@").complete()).isFalse();
+		assertThat(MarkdownMasker.mask("keep @@M0@@").unmask("@@M0@@").complete()).isTrue();
+	}
+
+	@Test
+	void maskUnclosedFence() {
+		Masked masked = MarkdownMasker.mask("text\n\n```\ncode\n");
+		assertThat(masked.text()).isEqualTo("text\n\n@@M0@@");
+		assertThat(masked.unmask(masked.text()).text()).isEqualTo("text\n\n```\ncode\n");
+	}
+
+}
@@ -0,0 +1,122 @@
+package am.ik.translation;
+
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import am.ik.translation.util.ResponseParser;
+import am.ik.translation.util.ResponseParser.TranslatedContent;
+import am.ik.translation.util.StreamingResponseParser;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Compares {@link ResponseParser#parseText(String)} with the previous regex based
+ * implementation and {@link StreamingResponseParser} for 1KB to 1MB responses.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ResponseParserBenchmark {
+
+	@Param({ "1024", "16384", "131072", "1048576" })
+	int size;
+
+	@Param({ "false", "true" })
+	boolean think;
+
+	String text;
+
+	@Setup
+	public void setup() {
+		this.text = response(this.size, this.think);
+	}
+
+	/**
+	 * Build a response of approximately {@code size} characters. If {@code think} is
+	 * true, half of the response is a {@code <think>} block.
+	 */
+	static String response(int size, boolean think) {
+		String line = "The quick brown fox jumps over the lazy dog. == not a marker\n";
+		StringBuilder builder = new StringBuilder(size + 256);
+		if (think) {
+			builder.append("<think>\n");
+			while (builder.length() < size / 2) {
+				builder.append(line);
+			}
+			builder.append("</think>\n");
+		}
+		builder.append("== title ==\nHello World\n\n== summary ==\nThis is a summary.\n\n== content ==\n");
+		while (builder.length() < size) {
+			builder.append(line);
+		}
+		return builder.toString();
+	}
+
+	@Benchmark
+	public TranslatedContent parseText() {
+		return ResponseParser.parseText(this.text);
+	}
+
+	@Benchmark
+	public TranslatedContent streamingParser() {
+		StreamingResponseParser parser = new StreamingResponseParser(this.text.length());
+		for (int i = 0; i < this.text.length(); i += 16) {
+			parser.append(this.text.substring(i, Math.min(this.text.length(), i + 16)));
+		}
+		return parser.finish();
+	}
+
+	@Benchmark
+	public TranslatedContent legacyRegexParser() {
+		return legacyParseText(this.text);
+	}
+
+	/**
+	 * The previous implementation of {@link ResponseParser#parseText(String)} as the
+	 * baseline.
+	 */
+	static TranslatedContent legacyParseText(String text) {
+		Pattern patternTitle = Pattern.compile("== title ==\\s*(.+?)\\s*(?:== summary ==|== content ==)",
+				Pattern.DOTALL);
+		Pattern patternSummary = Pattern.compile("== summary ==\\s*(.+?)\\s*== content ==", Pattern.DOTALL);
+		Pattern patternContent = Pattern.compile("== content ==\\s*(.+)", Pattern.DOTALL);
+		String thinkRemovedText = text.replaceAll("(?s)<think>.*?</think>", "").trim();
+		Matcher matcherTitle = patternTitle.matcher(thinkRemovedText);
+		Matcher matcherSummary = patternSummary.matcher(thinkRemovedText);
+		Matcher matcherContent = patternContent.matcher(thinkRemovedText);
+		String title = "";
+		String summary = null;
+		String content = "";
+		if (matcherTitle.find()) {
+			title = matcherTitle.group(1).trim();
+		}
+		if (matcherSummary.find()) {
+			summary = matcherSummary.group(1).trim();
+		}
+		if (matcherContent.find()) {
+			content = matcherContent.group(1).trim();
+		}
+		return new TranslatedContent(title, summary, content);
+	}
+
+	public static void main(String[] args) throws RunnerException {
+		new Runner(new OptionsBuilder().include(ResponseParserBenchmark.class.getSimpleName()).build()).run();
+	}
+
+}
@@ -104,4 +104,27 @@ class ResponseParserTest {
 					""".trim()));
 	}
 
-}
\ No newline at end of file
+	@Test
+	void parseTextWithMultipleThinks() {
+		TranslatedContent translatedContent = ResponseParser.parseText("""
+				<think>first</think>
+				== title ==
+				Hello <think>second</think>World
+
+				== content ==
+				ABC <think>unclosed
+				""");
+		assertThat(translatedContent).isEqualTo(new TranslatedContent("Hello World", null, "ABC <think>unclosed"));
+	}
+
+	@Test
+	void parseTextSameAsRegexParser() {
+		for (int size : new int[] { 1024, 16384 }) {
+			for (boolean think : new boolean[] { false, true }) {
+				String text = ResponseParserBenchmark.response(size, think);
+				assertThat(ResponseParser.parseText(text)).isEqualTo(ResponseParserBenchmark.legacyParseText(text));
+			}
+		}
+	}
+
+}
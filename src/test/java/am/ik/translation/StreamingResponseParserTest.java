@@ -0,0 +1,147 @@
+package am.ik.translation;
+
+import java.util.Random;
+
+import am.ik.translation.util.ResponseParser;
+import am.ik.translation.util.ResponseParser.TranslatedContent;
+import am.ik.translation.util.StreamingResponseParser;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class StreamingResponseParserTest {
+
+	static TranslatedContent parseInFragments(String text, long seed) {
+		StreamingResponseParser parser = new StreamingResponseParser();
+		Random random = new Random(seed);
+		int start = 0;
+		while (start < text.length()) {
+			int end = Math.min(text.length(), start + 1 + random.nextInt(8));
+			parser.append(text.substring(start, end));
+			start = end;
+		}
+		return parser.finish();
+	}
+
+	@ParameterizedTest
+	@ValueSource(strings = { """
+			== title ==
+			Hello World
+
+			== content ==
+			ABCDEFGH
+			IJKLMNOP
+			""", """
+			== title ==
+			Hello World
+
+			== summary ==
+			This is a summary of the article.
+
+			== content ==
+			ABCDEFGH
+
+			```
+			== title ==
+			```
+			""", """
+			<think>
+			This is a thinking part.
+			== title ==
+			This part should be removed.
+			</think>
+			== title ==
+			Hello World
+
+			== summary ==
+			This is a summary of the article.
+
+			== content ==
+			ABCDEFGH
+			IJKLMNOP""", """
+			== content ==
+			Only content
+			""" })
+	void sameAsResponseParser(String text) {
+		for (long seed = 0; seed < 20; seed++) {
+			assertThat(parseInFragments(text, seed)).isEqualTo(ResponseParser.parseText(text));
+		}
+	}
+
+	@ParameterizedTest
+	@ValueSource(strings = { """
+			== title ==
+			Hello
+
+			== content ==
+			ABC <think>unclosed
+			DEF
+			""", """
+			<think>first</think>
+			== title ==
+			Hello
+
+			== content ==
+			ABC
+			<think>
+			unclosed <think> twice
+			DEF""", """
+			<think>
+			reasoning that never ends
+			== title ==
+			Hello
+
+			== content ==
+			ABC
+			""" })
+	void keepUnclosedThinkAsResponseParser(String text) {
+		for (long seed = 0; seed < 20; seed++) {
+			assertThat(parseInFragments(text, seed)).isEqualTo(ResponseParser.parseText(text));
+		}
+	}
+
+	@ParameterizedTest
+	@ValueSource(strings = { """
+			== title ==
+			Hello World
+
+			== summary ==
+
+			== content ==
+			ABCDEFGH
+			""", """
+			== title ==
+			Hello World
+			== summary ==
+			== content ==
+			ABCDEFGH
+			""" })
+	void blankSummaryAsResponseParser(String text) {
+		assertThat(ResponseParser.parseText(text).summary()).isNull();
+		for (long seed = 0; seed < 20; seed++) {
+			assertThat(parseInFragments(text, seed)).isEqualTo(ResponseParser.parseText(text));
+		}
+	}
+
+	@Test
+	void keepUnclosedThink() {
+		StreamingResponseParser parser = new StreamingResponseParser();
+		parser.append("== title ==\nHello\n\n== content ==\nABC <think>unclosed\n").append("DEF");
+		assertThat(parser.finish()).isEqualTo(new TranslatedContent("Hello", null, "ABC <think>unclosed\nDEF"));
+	}
+
+	@Test
+	void progress() {
+		StreamingResponseParser parser = new StreamingResponseParser();
+		parser.append("<think>\nthinking");
+		assertThat(parser.progress())
+			.isEqualTo(new StreamingResponseParser.Progress(16, StreamingResponseParser.Section.THINK));
+		parser.append("</think>\n== title ==\nHello\n\n== content ==\n");
+		assertThat(parser.progress().section()).isEqualTo(StreamingResponseParser.Section.CONTENT);
+		parser.append("ABC");
+		assertThat(parser.finish()).isEqualTo(new TranslatedContent("Hello", null, "ABC"));
+	}
+
+}
@@ -0,0 +1,213 @@
+package am.ik.translation;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.time.OffsetDateTime;
+import java.util.Base64;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import am.ik.translation.entry.Author;
+import am.ik.translation.entry.Category;
+import am.ik.translation.entry.Entry;
+import am.ik.translation.entry.FrontMatter;
+import am.ik.translation.entry.Tag;
+import am.ik.translation.github.CreateBlobRequest;
+import am.ik.translation.github.IssueEvent;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.client.AbstractClientHttpRequest;
+import org.springframework.http.client.ClientHttpResponse;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import org.springframework.mock.http.client.MockClientHttpResponse;
+import org.springframework.util.StreamUtils;
+import org.springframework.web.client.RestClient;
+
+/**
+ * Benchmarks for the CPU bound steps of a translation job other than parsing the
+ * response: {@link Entry#toMarkdown()}, the Base64 encoding of the commit payload and
+ * Jackson deserialization of {@link IssueEvent} and {@link Entry}.
+ * <p>
+ * {@code blobRequest*} compare the request body of the create blob API built in memory
+ * with the one streamed by {@link CreateBlobRequest}. Run them with {@code -prof gc} and
+ * compare {@code gc.alloc.rate.norm}, the bytes allocated per operation.
+ * {@code blobRequestRestClient*} send them through a {@link RestClient} with an
+ * interceptor, which buffers the body as the interceptors of the application do, to a
+ * request factory discarding it.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TranslationHotPathBenchmark {
+
+	@Param({ "4096", "32768", "262144" })
+	int size;
+
+	ObjectMapper objectMapper;
+
+	Entry entry;
+
+	String markdown;
+
+	byte[] entryJson;
+
+	byte[] issueEventJson;
+
+	RestClient restClient;
+
+	@Setup
+	public void setup() throws IOException {
+		this.objectMapper = Jackson2ObjectMapperBuilder.json().build();
+		this.entry = entry(this.size);
+		this.markdown = this.entry.toMarkdown();
+		this.entryJson = this.objectMapper.writeValueAsBytes(this.entry);
+		try (InputStream stream = new ClassPathResource("test-payload.json").getInputStream()) {
+			this.issueEventJson = StreamUtils.copyToByteArray(stream);
+		}
+		this.restClient = RestClient.builder()
+			.requestFactory(DiscardingRequest::new)
+			.requestInterceptor((request, body, execution) -> execution.execute(request, body))
+			.build();
+	}
+
+	/**
+	 * Build an entry whose content is approximately {@code size} characters of Japanese
+	 * markdown with headings and code blocks.
+	 */
+	public static Entry entry(int size) {
+		StringBuilder content = new StringBuilder(size + 256);
+		int section = 0;
+		while (content.length() < size) {
+			content.append("## セクション").append(++section).append("\n\n");
+			content.append("これは翻訳のベンチマークに使うサンプルの段落です。`kubectl` や https://example.com のリンクも含みます。\n\n");
+			content.append("```java\nSystem.out.println(\"こんにちは\");\n```\n\n");
+			content.append("同じような内容の段落をもう一つ追加して、記事の長さを調整します。\n\n");
+		}
+		OffsetDateTime date = OffsetDateTime.parse("2025-01-01T00:00:00Z");
+		return new Entry(100L,
+				new FrontMatter("ベンチマーク用の記事", "ベンチマーク用の要約", List.of(new Category("Dev"), new Category("Java")),
+						List.of(new Tag("Java"), new Tag("Spring Boot", "3.5"))),
+				content.toString(), new Author("making", date), new Author("making", date.plusDays(1)));
+	}
+
+	@Benchmark
+	public String toMarkdown() {
+		return this.entry.toMarkdown();
+	}
+
+	@Benchmark
+	public String toMarkdownAndEncodeBase64() {
+		return Base64.getEncoder().encodeToString(this.entry.toMarkdown().getBytes(StandardCharsets.UTF_8));
+	}
+
+	@Benchmark
+	public String encodeBase64() {
+		return Base64.getEncoder().encodeToString(this.markdown.getBytes(StandardCharsets.UTF_8));
+	}
+
+	@Benchmark
+	public void blobRequestInMemory() throws IOException {
+		this.objectMapper.writeValue(OutputStream.nullOutputStream(), Map.of("encoding", "base64", "content",
+				Base64.getEncoder().encodeToString(this.entry.toMarkdown().getBytes(StandardCharsets.UTF_8))));
+	}
+
+	@Benchmark
+	public void blobRequestStreaming() throws IOException {
+		CreateBlobRequest.write(this.entry::writeMarkdown, OutputStream.nullOutputStream());
+	}
+
+	@Benchmark
+	public void blobRequestRestClientInMemory() {
+		this.restClient.post()
+			.uri("http://localhost/git/blobs")
+			.contentType(MediaType.APPLICATION_JSON)
+			.body(Map.of("encoding", "base64", "content",
+					Base64.getEncoder().encodeToString(this.entry.toMarkdown().getBytes(StandardCharsets.UTF_8))))
+			.retrieve()
+			.toBodilessEntity();
+	}
+
+	@Benchmark
+	public void blobRequestRestClientStreaming() {
+		this.restClient.post()
+			.uri("http://localhost/git/blobs")
+			.contentType(MediaType.APPLICATION_JSON)
+			.body(body -> CreateBlobRequest.write(this.entry::writeMarkdown, body))
+			.retrieve()
+			.toBodilessEntity();
+	}
+
+	@Benchmark
+	public Entry deserializeEntry() throws IOException {
+		return this.objectMapper.readValue(this.entryJson, Entry.class);
+	}
+
+	@Benchmark
+	public IssueEvent deserializeIssueEvent() throws IOException {
+		return this.objectMapper.readValue(this.issueEventJson, IssueEvent.class);
+	}
+
+	static final class DiscardingRequest extends AbstractClientHttpRequest {
+
+		private final URI uri;
+
+		private final HttpMethod method;
+
+		DiscardingRequest(URI uri, HttpMethod method) {
+			this.uri = uri;
+			this.method = method;
+		}
+
+		@Override
+		public HttpMethod getMethod() {
+			return this.method;
+		}
+
+		@Override
+		public URI getURI() {
+			return this.uri;
+		}
+
+		@Override
+		protected OutputStream getBodyInternal(HttpHeaders headers) {
+			return OutputStream.nullOutputStream();
+		}
+
+		@Override
+		protected ClientHttpResponse executeInternal(HttpHeaders headers) {
+			return new MockClientHttpResponse(new byte[0], HttpStatus.CREATED);
+		}
+
+	}
+
+	public static void main(String[] args) throws RunnerException {
+		new Runner(new OptionsBuilder().include(TranslationHotPathBenchmark.class.getSimpleName()).build()).run();
+	}
+
+}
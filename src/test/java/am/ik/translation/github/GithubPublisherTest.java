@@ -0,0 +1,154 @@
+package am.ik.translation.github;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.test.web.client.MockRestServiceServer;
+import org.springframework.web.client.RestClient;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.hamcrest.Matchers.anyOf;
+import static org.hamcrest.Matchers.is;
+import static org.springframework.test.web.client.ExpectedCount.times;
+import static org.springframework.test.web.client.match.MockRestRequestMatchers.header;
+import static org.springframework.test.web.client.match.MockRestRequestMatchers.jsonPath;
+import static org.springframework.test.web.client.match.MockRestRequestMatchers.method;
+import static org.springframework.test.web.client.match.MockRestRequestMatchers.requestTo;
+import static org.springframework.test.web.client.response.MockRestResponseCreators.withStatus;
+import static org.springframework.test.web.client.response.MockRestResponseCreators.withSuccess;
+
+class GithubPublisherTest {
+
+	static final String API = "http://github.example.com/repos/making/ik.am_en";
+
+	MockRestServiceServer server;
+
+	GithubPublisher githubPublisher;
+
+	@BeforeEach
+	void init() {
+		RestClient.Builder restClientBuilder = RestClient.builder();
+		this.server = MockRestServiceServer.bindTo(restClientBuilder).ignoreExpectOrder(true).build();
+		this.githubPublisher = new GithubPublisher(restClientBuilder,
+				new GithubProps("http://github.example.com", "token", "secret"));
+	}
+
+	@Test
+	void publishFilesInSingleCommit() {
+		this.server.expect(requestTo(API + "/branches/main"))
+			.andExpect(method(HttpMethod.GET))
+			.andRespond(withSuccess("""
+					{"name": "main", "commit": {"sha": "base-commit", "commit": {"tree": {"sha": "base-tree"}}}}
+					""", MediaType.APPLICATION_JSON));
+		this.server.expect(times(2), requestTo(API + "/git/blobs"))
+			.andExpect(method(HttpMethod.POST))
+			.andExpect(header("Authorization", "token token"))
+			.andExpect(jsonPath("$.encoding").value("base64"))
+			.andExpect(jsonPath("$.content").value(anyOf(is("SGVsbG8="), is("V29ybGQ="))))
+			.andRespond(withSuccess("""
+					{"sha": "blob"}
+					""", MediaType.APPLICATION_JSON));
+		this.server.expect(requestTo(API + "/git/trees"))
+			.andExpect(jsonPath("$.base_tree").value("base-tree"))
+			.andExpect(jsonPath("$.tree.length()").value(2))
+			.andExpect(jsonPath("$.tree[0].path").value("content/00001.md"))
+			.andExpect(jsonPath("$.tree[0].mode").value("100644"))
+			.andRespond(withSuccess("""
+					{"sha": "new-tree"}
+					""", MediaType.APPLICATION_JSON));
+		this.server.expect(requestTo(API + "/git/commits"))
+			.andExpect(jsonPath("$.tree").value("new-tree"))
+			.andExpect(jsonPath("$.parents[0]").value("base-commit"))
+			.andRespond(withSuccess("""
+					{"sha": "new-commit", "tree": {"sha": "new-tree"}}
+					""", MediaType.APPLICATION_JSON));
+		this.server.expect(requestTo(API + "/git/refs"))
+			.andExpect(jsonPath("$.ref").value("refs/heads/translation-test"))
+			.andExpect(jsonPath("$.sha").value("new-commit"))
+			.andRespond(withSuccess());
+		this.server.expect(requestTo(API + "/pulls"))
+			.andExpect(jsonPath("$.head").value("translation-test"))
+			.andExpect(jsonPath("$.base").value("main"))
+			.andRespond(withSuccess("""
+					{"html_url": "https://github.com/making/ik.am_en/pull/1"}
+					""", MediaType.APPLICATION_JSON));
+		Map<String, BlobContent> files = new LinkedHashMap<>();
+		files.put("content/00001.md", BlobContent.of("Hello"));
+		files.put("content/00002.md", BlobContent.of("World"));
+		CreatePullResponse response = this.githubPublisher.publish("making/ik.am_en", "translation-test", "Translate",
+				"body", files);
+		assertThat(response.html_url()).isEqualTo("https://github.com/making/ik.am_en/pull/1");
+		this.server.verify();
+	}
+
+	@Test
+	void returnPullOpenedByEarlierAttempt() {
+		this.expectCommit();
+		this.server.expect(requestTo(API + "/git/refs"))
+			.andRespond(withStatus(HttpStatus.UNPROCESSABLE_ENTITY).contentType(MediaType.APPLICATION_JSON).body("""
+					{"message": "Reference already exists"}
+					"""));
+		this.server.expect(requestTo(API + "/git/refs/heads/translation-test"))
+			.andExpect(method(HttpMethod.PATCH))
+			.andExpect(jsonPath("$.sha").value("new-commit"))
+			.andExpect(jsonPath("$.force").value(true))
+			.andRespond(withSuccess());
+		this.server.expect(requestTo(API + "/pulls"))
+			.andExpect(method(HttpMethod.POST))
+			.andRespond(withStatus(HttpStatus.UNPROCESSABLE_ENTITY).contentType(MediaType.APPLICATION_JSON).body("""
+					{"message": "A pull request already exists for making:translation-test."}
+					"""));
+		this.server.expect(requestTo(API + "/pulls?head=making%3Atranslation-test&state=all"))
+			.andExpect(method(HttpMethod.GET))
+			.andRespond(withSuccess("""
+					[{"html_url": "https://github.com/making/ik.am_en/pull/1"}]
+					""", MediaType.APPLICATION_JSON));
+		CreatePullResponse response = this.githubPublisher.publish("making/ik.am_en", "translation-test", "Translate",
+				"body", Map.of("content/00001.md", BlobContent.of("Hello")));
+		assertThat(response.html_url()).isEqualTo("https://github.com/making/ik.am_en/pull/1");
+		this.server.verify();
+	}
+
+	@Test
+	void openPullOnBranchCreatedByEarlierAttempt() {
+		this.expectCommit();
+		this.server.expect(requestTo(API + "/git/refs"))
+			.andRespond(withStatus(HttpStatus.UNPROCESSABLE_ENTITY).contentType(MediaType.APPLICATION_JSON).body("""
+					{"message": "Reference already exists"}
+					"""));
+		// the branch is moved to the commit just built
+		this.server.expect(requestTo(API + "/git/refs/heads/translation-test"))
+			.andExpect(method(HttpMethod.PATCH))
+			.andExpect(jsonPath("$.sha").value("new-commit"))
+			.andRespond(withSuccess());
+		this.server.expect(requestTo(API + "/pulls")).andExpect(method(HttpMethod.POST)).andRespond(withSuccess("""
+				{"html_url": "https://github.com/making/ik.am_en/pull/2"}
+				""", MediaType.APPLICATION_JSON));
+		CreatePullResponse response = this.githubPublisher.publish("making/ik.am_en", "translation-test", "Translate",
+				"body", Map.of("content/00001.md", BlobContent.of("Hello")));
+		assertThat(response.html_url()).isEqualTo("https://github.com/making/ik.am_en/pull/2");
+		this.server.verify();
+	}
+
+	void expectCommit() {
+		this.server.expect(requestTo(API + "/branches/main")).andRespond(withSuccess("""
+				{"name": "main", "commit": {"sha": "base-commit", "commit": {"tree": {"sha": "base-tree"}}}}
+				""", MediaType.APPLICATION_JSON));
+		this.server.expect(requestTo(API + "/git/blobs")).andRespond(withSuccess("""
+				{"sha": "blob"}
+				""", MediaType.APPLICATION_JSON));
+		this.server.expect(requestTo(API + "/git/trees")).andRespond(withSuccess("""
+				{"sha": "new-tree"}
+				""", MediaType.APPLICATION_JSON));
+		this.server.expect(requestTo(API + "/git/commits")).andRespond(withSuccess("""
+				{"sha": "new-commit", "tree": {"sha": "new-tree"}}
+				""", MediaType.APPLICATION_JSON));
+	}
+
+}
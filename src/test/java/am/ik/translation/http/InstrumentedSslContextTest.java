@@ -0,0 +1,103 @@
+package am.ik.translation.http;
+
+import java.io.InputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.security.KeyStore;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import javax.net.ssl.KeyManagerFactory;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.TrustManagerFactory;
+
+import com.sun.net.httpserver.HttpsConfigurator;
+import com.sun.net.httpserver.HttpsServer;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class InstrumentedSslContextTest {
+
+	static final char[] PASSWORD = "changeit".toCharArray();
+
+	HttpsServer server;
+
+	ExecutorService executor = Executors.newCachedThreadPool();
+
+	SSLContext clientContext;
+
+	@BeforeEach
+	void init() throws Exception {
+		// a self-signed certificate for localhost trusted by the client
+		KeyStore keyStore = KeyStore.getInstance("PKCS12");
+		try (InputStream stream = getClass().getResourceAsStream("/tls/localhost.p12")) {
+			keyStore.load(stream, PASSWORD);
+		}
+		KeyManagerFactory keyManagerFactory = KeyManagerFactory.getInstance(KeyManagerFactory.getDefaultAlgorithm());
+		keyManagerFactory.init(keyStore, PASSWORD);
+		SSLContext serverContext = SSLContext.getInstance("TLS");
+		serverContext.init(keyManagerFactory.getKeyManagers(), null, null);
+		TrustManagerFactory trustManagerFactory = TrustManagerFactory
+			.getInstance(TrustManagerFactory.getDefaultAlgorithm());
+		trustManagerFactory.init(keyStore);
+		this.clientContext = SSLContext.getInstance("TLS");
+		this.clientContext.init(null, trustManagerFactory.getTrustManagers(), null);
+		this.server = HttpsServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+		this.server.setHttpsConfigurator(new HttpsConfigurator(serverContext));
+		this.server.createContext("/", exchange -> {
+			byte[] body = "ok".getBytes(StandardCharsets.UTF_8);
+			exchange.sendResponseHeaders(200, body.length);
+			exchange.getResponseBody().write(body);
+			exchange.close();
+		});
+		// platform threads, so that the server does not compete with the client for the
+		// carrier threads
+		this.server.setExecutor(this.executor);
+		this.server.start();
+	}
+
+	@AfterEach
+	void destroy() throws Exception {
+		this.server.stop(0);
+		this.executor.shutdownNow();
+		this.executor.awaitTermination(5, TimeUnit.SECONDS);
+	}
+
+	@Test
+	void recordConnectionsAndHandshakes() throws Exception {
+		SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+		SSLContext sslContext = new InstrumentedSslContext(this.clientContext, meterRegistry);
+		URI uri = URI.create("https://localhost:%d/".formatted(this.server.getAddress().getPort()));
+		for (int i = 0; i < 2; i++) {
+			// a new client opens a new connection
+			try (HttpClient httpClient = HttpClient.newBuilder()
+				.sslContext(sslContext)
+				.version(HttpClient.Version.HTTP_1_1)
+				.build()) {
+				for (int j = 0; j < 3; j++) {
+					HttpResponse<String> response = httpClient.send(HttpRequest.newBuilder(uri).build(),
+							HttpResponse.BodyHandlers.ofString());
+					assertThat(response.statusCode()).isEqualTo(200);
+					assertThat(response.body()).isEqualTo("ok");
+				}
+			}
+		}
+		assertThat(meterRegistry.get("http.client.connections").tag("host", "localhost").counter().count())
+			.isEqualTo(2);
+		Timer handshake = meterRegistry.get("http.client.tls.handshake").tag("host", "localhost").timer();
+		assertThat(handshake.count()).isEqualTo(2);
+		assertThat(handshake.totalTime(TimeUnit.NANOSECONDS)).isPositive();
+	}
+
+}
@@ -0,0 +1,48 @@
+package am.ik.translation.load;
+
+import java.time.Duration;
+import java.util.concurrent.ThreadLocalRandom;
+
+import org.springframework.boot.convert.DurationStyle;
+
+/**
+ * Distribution of the latencies simulated by the {@link LoadStubServer}.
+ */
+@FunctionalInterface
+public interface LatencyDistribution {
+
+	Duration sample();
+
+	static LatencyDistribution fixed(Duration latency) {
+		return () -> latency;
+	}
+
+	/**
+	 * Log-normal distribution, which is typical of the latencies of remote services.
+	 * @param median 50th percentile
+	 * @param p99 99th percentile
+	 */
+	static LatencyDistribution logNormal(Duration median, Duration p99) {
+		if (p99.compareTo(median) <= 0) {
+			return fixed(median);
+		}
+		// the 99th percentile of the standard normal distribution
+		double sigma = Math.log((double) p99.toNanos() / median.toNanos()) / 2.326;
+		return () -> Duration
+			.ofNanos((long) (median.toNanos() * Math.exp(sigma * ThreadLocalRandom.current().nextGaussian())));
+	}
+
+	/**
+	 * @param value a fixed latency such as {@code 200ms}, or the median and the 99th
+	 * percentile of a log-normal distribution such as {@code 500ms..3s}
+	 */
+	static LatencyDistribution parse(String value) {
+		int separator = value.indexOf("..");
+		if (separator < 0) {
+			return fixed(DurationStyle.detectAndParse(value));
+		}
+		return logNormal(DurationStyle.detectAndParse(value.substring(0, separator)),
+				DurationStyle.detectAndParse(value.substring(separator + 2)));
+	}
+
+}
@@ -0,0 +1,280 @@
+package am.ik.translation.load;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+import am.ik.translation.TranslationApiApplication;
+import am.ik.translation.translation.job.TranslationJobQueue;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+import org.springframework.boot.SpringApplication;
+import org.springframework.boot.convert.DurationStyle;
+import org.springframework.context.ConfigurableApplicationContext;
+
+/**
+ * Fires signed {@code issues} webhooks at the {@code TranslationController} at a target
+ * rate against the {@link LoadStubServer}, and reports the throughput, the queue times
+ * and the latency percentiles of the jobs. The rate is kept regardless of the responses,
+ * so that a saturated application shows up as a growing queue rather than a slower
+ * driver.
+ * <p>
+ * The options of the driver are given as {@code --name=value}. The other arguments are
+ * passed to the application, so that the executor and HTTP settings can be swept, for
+ * example {@code --translation.job.workers=8 --http-client.version=http_1_1}.
+ *
+ * <pre>
+ * ./mvnw -Pload test -Dload.args="--rate=5 --duration=1m --ttft=500ms..3s"
+ * </pre>
+ */
+public class LoadDriver {
+
+	static final String WEBHOOK_SECRET = "load-test";
+
+	static final String REPOSITORY = "making/ik.am_en";
+
+	/**
+	 * @param rate webhooks per second
+	 * @param duration time to fire webhooks
+	 * @param drain maximum time to wait for the jobs after the last webhook
+	 * @param stub options of the stub server
+	 */
+	public record Options(double rate, Duration duration, Duration drain, LoadStubServer.Options stub) {
+
+		static final Map<String, String> DEFAULTS = Map.of("rate", "2", "duration", "30s", "drain", "2m",
+				"tokens-per-second", "100", "token-size", "16", "ttft", "300ms..2s", "github-latency", "50ms..300ms",
+				"entry-latency", "20ms..100ms", "entry-size", "4096");
+
+		static Options parse(Map<String, String> values) {
+			Map<String, String> options = new TreeMap<>(DEFAULTS);
+			options.putAll(values);
+			return new Options(Double.parseDouble(options.get("rate")),
+					DurationStyle.detectAndParse(options.get("duration")),
+					DurationStyle.detectAndParse(options.get("drain")),
+					new LoadStubServer.Options(Integer.parseInt(options.get("tokens-per-second")),
+							Integer.parseInt(options.get("token-size")), LatencyDistribution.parse(options.get("ttft")),
+							LatencyDistribution.parse(options.get("github-latency")),
+							LatencyDistribution.parse(options.get("entry-latency")),
+							Integer.parseInt(options.get("entry-size"))));
+		}
+
+	}
+
+	/**
+	 * @param sent webhooks sent
+	 * @param accepted webhooks answered with 200
+	 * @param completed jobs that opened a pull request
+	 * @param elapsed time from the first webhook to the last completed job
+	 * @param webhookLatencies response times of the webhooks in nanoseconds
+	 * @param queueTimes times from the response of a webhook to the first call of its job
+	 * in nanoseconds
+	 * @param endToEndLatencies times from a webhook to its pull request in nanoseconds
+	 * @param maxQueued maximum number of jobs waiting for a worker
+	 * @param stages mean and max durations of the stages of the jobs
+	 * @param requests requests to the stub server by route
+	 */
+	public record Report(long sent, long accepted, long completed, Duration elapsed, long[] webhookLatencies,
+			long[] queueTimes, long[] endToEndLatencies, int maxQueued, Map<String, String> stages,
+			Map<String, Long> requests) {
+
+		public double throughput() {
+			return this.elapsed.isZero() ? 0 : this.completed / (this.elapsed.toNanos() / 1e9);
+		}
+
+		@Override
+		public String toString() {
+			StringBuilder report = new StringBuilder();
+			report.append("sent=%d accepted=%d completed=%d elapsed=%s throughput=%.2f/s maxQueued=%d%n"
+				.formatted(this.sent, this.accepted, this.completed, this.elapsed, this.throughput(), this.maxQueued));
+			report.append(percentiles("webhook", this.webhookLatencies));
+			report.append(percentiles("queue", this.queueTimes));
+			report.append(percentiles("end-to-end", this.endToEndLatencies));
+			this.stages.forEach((stage, value) -> report.append("stage %-10s %s%n".formatted(stage, value)));
+			report.append("requests ").append(new TreeMap<>(this.requests)).append('\n');
+			return report.toString();
+		}
+
+		static String percentiles(String name, long[] nanos) {
+			if (nanos.length == 0) {
+				return "%-10s n=0%n".formatted(name);
+			}
+			long[] sorted = nanos.clone();
+			Arrays.sort(sorted);
+			return "%-10s n=%d p50=%dms p90=%dms p99=%dms max=%dms%n".formatted(name, sorted.length,
+					millis(sorted, 0.5), millis(sorted, 0.9), millis(sorted, 0.99), millis(sorted, 1.0));
+		}
+
+		static long millis(long[] sorted, double percentile) {
+			int index = (int) Math.ceil(percentile * sorted.length) - 1;
+			return TimeUnit.NANOSECONDS.toMillis(sorted[Math.clamp(index, 0, sorted.length - 1)]);
+		}
+
+	}
+
+	public static void main(String[] args) throws Exception {
+		Map<String, String> options = new ConcurrentHashMap<>();
+		List<String> applicationArgs = new ArrayList<>();
+		for (String arg : args) {
+			int equals = arg.indexOf('=');
+			String name = arg.startsWith("--") && equals > 0 ? arg.substring(2, equals) : null;
+			if (name != null && Options.DEFAULTS.containsKey(name)) {
+				options.put(name, arg.substring(equals + 1));
+			}
+			else {
+				applicationArgs.add(arg);
+			}
+		}
+		System.out.print(run(Options.parse(options), applicationArgs));
+	}
+
+	public static Report run(Options options, List<String> applicationArgs) throws Exception {
+		// a new journal, so that the jobs of an interrupted run are not resumed
+		Path journal = Files.createTempFile("load-translation-jobs", ".journal");
+		try (LoadStubServer stub = new LoadStubServer(options.stub())) {
+			List<String> args = new ArrayList<>(List.of("--server.port=0", "--github.api-url=" + stub.baseUrl(),
+					"--github.access-token=load-test", "--github.webhook-secret=" + WEBHOOK_SECRET,
+					"--entry.api-url=" + stub.baseUrl(), "--spring.ai.openai.base-url=" + stub.baseUrl(),
+					"--spring.ai.openai.api-key=load-test", "--translation.incremental=false",
+					// the entries share their content, which must not be served by the
+					// memory
+					"--translation.memory.max-size=0", "--translation.job.journal-file=" + journal,
+					"--logging.logback.ecs-encoder.enabled=false", "--logging.level.am.ik.translation=warn",
+					"--logging.level.org.zalando.logbook=info", "--management.tracing.enabled=false",
+					"--management.otlp.metrics.export.enabled=false"));
+			args.addAll(applicationArgs);
+			try (ConfigurableApplicationContext context = SpringApplication.run(TranslationApiApplication.class,
+					args.toArray(String[]::new))) {
+				String port = context.getEnvironment().getProperty("local.server.port");
+				return drive(options, URI.create("http://localhost:%s/webhook".formatted(port)), stub, context);
+			}
+		}
+		finally {
+			Files.deleteIfExists(journal);
+		}
+	}
+
+	static Report drive(Options options, URI webhook, LoadStubServer stub, ConfigurableApplicationContext context)
+			throws Exception {
+		TranslationJobQueue jobQueue = context.getBean(TranslationJobQueue.class);
+		HttpClient httpClient = HttpClient.newHttpClient();
+		Map<Long, Long> sentAt = new ConcurrentHashMap<>();
+		Map<Long, Long> acceptedAt = new ConcurrentHashMap<>();
+		List<Long> webhookLatencies = new ArrayList<>();
+		LongAdder sent = new LongAdder();
+		AtomicLong maxQueued = new AtomicLong();
+		// entry ids are unique per run, so that the jobs are neither coalesced nor served
+		// by the translation memory
+		long firstEntryId = System.currentTimeMillis() % 1_000_000 * 1000;
+		AtomicLong nextEntryId = new AtomicLong(firstEntryId);
+		long total = (long) (options.rate() * options.duration().toNanos() / 1e9);
+		long start = System.nanoTime();
+		ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+		scheduler.scheduleAtFixedRate(() -> maxQueued.accumulateAndGet(jobQueue.queued(), Math::max), 0, 100,
+				TimeUnit.MILLISECONDS);
+		// platform threads like the stubs, so that the driver is not slowed down by a
+		// saturated application
+		try (ExecutorService senders = Executors.newCachedThreadPool()) {
+			long interval = (long) (1e9 / options.rate());
+			for (long i = 0; i < total; i++) {
+				long delay = start + i * interval - System.nanoTime();
+				if (delay > 0) {
+					TimeUnit.NANOSECONDS.sleep(delay);
+				}
+				long entryId = nextEntryId.getAndIncrement();
+				senders.submit(() -> {
+					String payload = payload(entryId);
+					HttpRequest request = HttpRequest.newBuilder(webhook)
+						.header("Content-Type", "application/json")
+						.header("X-GitHub-Event", "issues")
+						.header("X-GitHub-Delivery", UUID.randomUUID().toString())
+						.header("X-Hub-Signature-256", "sha256=" + sign(payload))
+						.POST(HttpRequest.BodyPublishers.ofString(payload))
+						.build();
+					long requestStart = System.nanoTime();
+					sentAt.put(entryId, requestStart);
+					sent.increment();
+					HttpResponse<Void> response = httpClient.send(request, HttpResponse.BodyHandlers.discarding());
+					long now = System.nanoTime();
+					synchronized (webhookLatencies) {
+						webhookLatencies.add(now - requestStart);
+					}
+					if (response.statusCode() == 200) {
+						acceptedAt.put(entryId, now);
+					}
+					return null;
+				});
+			}
+		}
+		// wait for the jobs of the accepted webhooks
+		long drainDeadline = System.nanoTime() + options.drain().toNanos();
+		while (!stub.publishedAt().keySet().containsAll(acceptedAt.keySet()) && System.nanoTime() < drainDeadline) {
+			TimeUnit.MILLISECONDS.sleep(100);
+		}
+		scheduler.shutdownNow();
+		long end = stub.publishedAt().values().stream().mapToLong(Long::longValue).max().orElse(start);
+		long[] queueTimes = acceptedAt.entrySet()
+			.stream()
+			.filter(e -> stub.fetchedAt().containsKey(e.getKey()))
+			.mapToLong(e -> Math.max(0, stub.fetchedAt().get(e.getKey()) - e.getValue()))
+			.toArray();
+		long[] endToEnd = sentAt.entrySet()
+			.stream()
+			.filter(e -> stub.publishedAt().containsKey(e.getKey()))
+			.mapToLong(e -> stub.publishedAt().get(e.getKey()) - e.getValue())
+			.toArray();
+		return new Report(sent.sum(), acceptedAt.size(), endToEnd.length, Duration.ofNanos(end - start),
+				webhookLatencies.stream().mapToLong(Long::longValue).toArray(), queueTimes, endToEnd,
+				(int) maxQueued.get(), stages(context.getBean(MeterRegistry.class)), stub.requests());
+	}
+
+	static Map<String, String> stages(MeterRegistry meterRegistry) {
+		Map<String, String> stages = new TreeMap<>();
+		for (Timer timer : meterRegistry.find("translation.stage").timers()) {
+			stages.put(timer.getId().getTag("stage") + "/" + timer.getId().getTag("outcome"),
+					"n=%d mean=%.0fms max=%.0fms".formatted(timer.count(), timer.mean(TimeUnit.MILLISECONDS),
+							timer.max(TimeUnit.MILLISECONDS)));
+		}
+		return stages;
+	}
+
+	static String payload(long entryId) {
+		return """
+				{"action":"opened","issue":{"number":%d,"title":"Translation Request to %d"},"repository":{"full_name":"%s"}}"""
+			.formatted(entryId, entryId, REPOSITORY);
+	}
+
+	static String sign(String payload) {
+		try {
+			Mac mac = Mac.getInstance("HmacSHA256");
+			mac.init(new SecretKeySpec(WEBHOOK_SECRET.getBytes(StandardCharsets.UTF_8), "HmacSHA256"));
+			return HexFormat.of().formatHex(mac.doFinal(payload.getBytes(StandardCharsets.UTF_8)));
+		}
+		catch (Exception e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+}
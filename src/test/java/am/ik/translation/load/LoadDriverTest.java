@@ -0,0 +1,44 @@
+package am.ik.translation.load;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class LoadDriverTest {
+
+	@Test
+	void translateAllRequestsAgainstStubs() throws Exception {
+		LoadDriver.Options options = LoadDriver.Options
+			.parse(Map.of("rate", "4", "duration", "1s", "drain", "30s", "tokens-per-second", "2000", "ttft",
+					"10ms..50ms", "github-latency", "1ms", "entry-latency", "1ms", "entry-size", "1024"));
+		LoadDriver.Report report = LoadDriver.run(options, List.of("--translation.job.workers=2"));
+		assertThat(report.sent()).isEqualTo(4);
+		assertThat(report.accepted()).isEqualTo(4);
+		assertThat(report.completed()).isEqualTo(4);
+		assertThat(report.queueTimes()).hasSize(4);
+		assertThat(report.requests()).containsEntry("github.pulls", 4L).containsEntry("github.comment", 4L);
+		assertThat(report.elapsed()).isPositive();
+		assertThat(report.toString()).contains("end-to-end n=4");
+	}
+
+	@Test
+	void sampleLogNormalLatencies() {
+		LatencyDistribution distribution = LatencyDistribution.parse("100ms..1s");
+		long[] samples = new long[10_000];
+		for (int i = 0; i < samples.length; i++) {
+			samples[i] = distribution.sample().toNanos();
+		}
+		Arrays.sort(samples);
+		assertThat(Duration.ofNanos(samples[samples.length / 2])).isBetween(Duration.ofMillis(90),
+				Duration.ofMillis(110));
+		assertThat(Duration.ofNanos(samples[samples.length * 99 / 100])).isBetween(Duration.ofMillis(800),
+				Duration.ofMillis(1250));
+		assertThat(LatencyDistribution.parse("200ms").sample()).isEqualTo(Duration.ofMillis(200));
+	}
+
+}
@@ -0,0 +1,255 @@
+package am.ik.translation.load;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Collectors;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import am.ik.translation.TranslationHotPathBenchmark;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Local stand-in of the GitHub API, the entry API and the OpenAI streaming chat
+ * completions on a single port, for load tests that must not call the real services.
+ * <ul>
+ * <li>GitHub: the endpoints used to comment on an issue and to open a pull request. The
+ * contents and the commits used by the incremental translation are not found.</li>
+ * <li>Entry API: {@code /entries/{id}} returns an entry of {@code entrySize}
+ * characters.</li>
+ * <li>OpenAI: {@code /v1/chat/completions} streams the user message back, like
+ * {@link am.ik.translation.translation.EchoChatModel}, at {@code tokensPerSecond} after
+ * the time to the first token.</li>
+ * </ul>
+ * The times of the first fetch of each entry and of its pull request are recorded, so
+ * that the driver can tell the queue time and the end-to-end latency of the jobs.
+ */
+public class LoadStubServer implements AutoCloseable {
+
+	static final Pattern COMMENTS_PATTERN = Pattern.compile("/repos/[^/]+/[^/]+/issues/(\\d+)/comments");
+
+	static final Pattern HEAD_PATTERN = Pattern.compile("translation-(\\d+)-.+");
+
+	private final Options options;
+
+	private final HttpServer server;
+
+	private final ObjectMapper objectMapper = new ObjectMapper().findAndRegisterModules()
+		.disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS);
+
+	private final byte[] entryTemplate;
+
+	private final Map<Long, Long> fetchedAt = new ConcurrentHashMap<>();
+
+	private final Map<Long, Long> publishedAt = new ConcurrentHashMap<>();
+
+	private final Map<String, LongAdder> requests = new ConcurrentHashMap<>();
+
+	/**
+	 * @param tokensPerSecond rate of the streamed tokens of a completion
+	 * @param tokenSize number of characters per streamed token
+	 * @param timeToFirstToken latency of the first token of a completion
+	 * @param githubLatency latency of a GitHub call
+	 * @param entryLatency latency of an entry API call
+	 * @param entrySize approximate number of characters of an entry
+	 */
+	public record Options(int tokensPerSecond, int tokenSize, LatencyDistribution timeToFirstToken,
+			LatencyDistribution githubLatency, LatencyDistribution entryLatency, int entrySize) {
+	}
+
+	public LoadStubServer(Options options) throws IOException {
+		this.options = options;
+		this.entryTemplate = this.objectMapper
+			.writeValueAsBytes(TranslationHotPathBenchmark.entry(options.entrySize()));
+		this.server = HttpServer.create(new InetSocketAddress("localhost", 0), 1024);
+		// platform threads, so that the stubs do not compete with the virtual threads of
+		// the application under test for the carrier threads
+		this.server.setExecutor(Executors.newCachedThreadPool());
+		this.server.createContext("/repos/", this::github);
+		this.server.createContext("/entries/", this::entry);
+		this.server.createContext("/v1/chat/completions", this::chatCompletions);
+		this.server.start();
+	}
+
+	public String baseUrl() {
+		return "http://localhost:" + this.server.getAddress().getPort();
+	}
+
+	/**
+	 * @return {@link System#nanoTime()} of the first fetch of the entries
+	 */
+	public Map<Long, Long> fetchedAt() {
+		return this.fetchedAt;
+	}
+
+	/**
+	 * @return {@link System#nanoTime()} of the pull requests of the entries
+	 */
+	public Map<Long, Long> publishedAt() {
+		return this.publishedAt;
+	}
+
+	/**
+	 * @return number of the requests by route
+	 */
+	public Map<String, Long> requests() {
+		return this.requests.entrySet().stream().collect(Collectors.toMap(Map.Entry::getKey, e -> e.getValue().sum()));
+	}
+
+	private void count(String route) {
+		this.requests.computeIfAbsent(route, r -> new LongAdder()).increment();
+	}
+
+	private void github(HttpExchange exchange) throws IOException {
+		String path = exchange.getRequestURI().getPath();
+		String method = exchange.getRequestMethod();
+		byte[] body = exchange.getRequestBody().readAllBytes();
+		sleep(this.options.githubLatency().sample());
+		Matcher comments = COMMENTS_PATTERN.matcher(path);
+		if (comments.matches()) {
+			count("github.comment");
+			respond(exchange, 201, Map.of("id", 1));
+		}
+		else if ("PATCH".equals(method) && path.matches(".*/issues/\\d+")) {
+			// a duplicate request closed
+			count("github.close_issue");
+			respond(exchange, 200, Map.of("state", "closed"));
+		}
+		else if (path.endsWith("/branches/main")) {
+			count("github.branch");
+			respond(exchange, 200, Map.of("name", "main", "commit",
+					Map.of("sha", sha(), "commit", Map.of("sha", sha(), "tree", Map.of("sha", sha())))));
+		}
+		else if (path.endsWith("/git/blobs") || path.endsWith("/git/trees") || path.endsWith("/git/commits")) {
+			count("github." + path.substring(path.lastIndexOf('/') + 1));
+			respond(exchange, 201, Map.of("sha", sha(), "tree", Map.of("sha", sha())));
+		}
+		else if (path.endsWith("/git/refs")) {
+			count("github.refs");
+			respond(exchange, 201, Map.of("ref", "refs/heads/translation"));
+		}
+		else if (path.endsWith("/pulls") && "GET".equals(method)) {
+			// no pull request opened by an earlier attempt
+			count("github.find_pulls");
+			respond(exchange, 200, List.of());
+		}
+		else if (path.endsWith("/pulls") && "POST".equals(method)) {
+			count("github.pulls");
+			JsonNode request = this.objectMapper.readTree(body);
+			Matcher head = HEAD_PATTERN.matcher(request.path("head").asText());
+			if (head.matches()) {
+				this.publishedAt.putIfAbsent(Long.parseLong(head.group(1)), System.nanoTime());
+			}
+			respond(exchange, 201, Map.of("html_url", "https://github.com/making/ik.am_en/pull/1"));
+		}
+		else {
+			// no previous translations
+			count("github.not_found");
+			respond(exchange, 404, Map.of("message", "Not Found"));
+		}
+	}
+
+	private void entry(HttpExchange exchange) throws IOException {
+		count("entry");
+		long entryId = Long.parseLong(exchange.getRequestURI().getPath().substring("/entries/".length()));
+		this.fetchedAt.putIfAbsent(entryId, System.nanoTime());
+		sleep(this.options.entryLatency().sample());
+		JsonNode entry = this.objectMapper.readTree(this.entryTemplate);
+		((ObjectNode) entry).put("entryId", entryId);
+		respond(exchange, 200, entry);
+	}
+
+	private void chatCompletions(HttpExchange exchange) throws IOException {
+		count("openai.completions");
+		JsonNode request = this.objectMapper.readTree(exchange.getRequestBody());
+		String text = "";
+		for (JsonNode message : request.path("messages")) {
+			if ("user".equals(message.path("role").asText())) {
+				text = message.path("content").asText();
+			}
+		}
+		String model = request.path("model").asText();
+		sleep(this.options.timeToFirstToken().sample());
+		exchange.getResponseHeaders().set("Content-Type", "text/event-stream");
+		exchange.sendResponseHeaders(200, 0);
+		long interval = 1_000_000_000L / this.options.tokensPerSecond();
+		int tokens = 0;
+		try (OutputStream body = exchange.getResponseBody()) {
+			long next = System.nanoTime();
+			for (int i = 0; i < text.length(); i += this.options.tokenSize()) {
+				String token = text.substring(i, Math.min(text.length(), i + this.options.tokenSize()));
+				event(body, Map.of("id", "chatcmpl-load", "object", "chat.completion.chunk", "model", model, "choices",
+						List.of(Map.of("index", 0, "delta", Map.of("role", "assistant", "content", token)))));
+				tokens++;
+				next += interval;
+				sleep(Duration.ofNanos(next - System.nanoTime()));
+			}
+			event(body, Map.of("id", "chatcmpl-load", "object", "chat.completion.chunk", "model", model, "choices",
+					List.of(Map.of("index", 0, "delta", Map.of(), "finish_reason", "stop"))));
+			// the usage is sent in a last chunk without choices like
+			// stream_options.include_usage
+			event(body,
+					Map.of("id", "chatcmpl-load", "object", "chat.completion.chunk", "model", model, "choices",
+							List.of(), "usage",
+							Map.of("prompt_tokens", tokens, "completion_tokens", tokens, "total_tokens", 2 * tokens)));
+			body.write("data: [DONE]\n\n".getBytes(StandardCharsets.UTF_8));
+		}
+		catch (IOException e) {
+			// cancelled by the client, such as the loser of a hedge
+		}
+	}
+
+	private void event(OutputStream body, Object data) throws IOException {
+		body.write("data: ".getBytes(StandardCharsets.UTF_8));
+		body.write(this.objectMapper.writeValueAsBytes(data));
+		body.write("\n\n".getBytes(StandardCharsets.UTF_8));
+		body.flush();
+	}
+
+	private void respond(HttpExchange exchange, int status, Object body) throws IOException {
+		byte[] json = this.objectMapper.writeValueAsBytes(body);
+		exchange.getResponseHeaders().set("Content-Type", "application/json");
+		exchange.sendResponseHeaders(status, json.length);
+		try (OutputStream out = exchange.getResponseBody()) {
+			out.write(json);
+		}
+	}
+
+	private static String sha() {
+		return UUID.randomUUID().toString().replace("-", "");
+	}
+
+	private static void sleep(Duration duration) {
+		if (duration.isNegative() || duration.isZero()) {
+			return;
+		}
+		try {
+			Thread.sleep(duration);
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	@Override
+	public void close() {
+		this.server.stop(0);
+		((ExecutorService) this.server.getExecutor()).shutdownNow();
+	}
+
+}
@@ -0,0 +1,72 @@
+package am.ik.translation.resilience;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class CircuitBreakerTest {
+
+	AtomicLong now = new AtomicLong();
+
+	CircuitBreaker circuitBreaker = new CircuitBreaker("github",
+			new DownstreamProps.Settings(4, Duration.ZERO, 4, 2, 0.5, Duration.ofSeconds(30)), this.now::get);
+
+	void call(boolean failure) {
+		this.circuitBreaker.acquire();
+		if (failure) {
+			this.circuitBreaker.onFailure();
+		}
+		else {
+			this.circuitBreaker.onSuccess();
+		}
+	}
+
+	@Test
+	void openWhenFailureRateReachesThreshold() {
+		call(true);
+		// fewer than the minimum calls
+		assertThat(this.circuitBreaker.state()).isEqualTo(CircuitBreaker.State.CLOSED);
+		call(false);
+		call(false);
+		call(true);
+		// 2 of the last 4
+		assertThat(this.circuitBreaker.state()).isEqualTo(CircuitBreaker.State.OPEN);
+		this.now.addAndGet(Duration.ofSeconds(10).toNanos());
+		assertThatThrownBy(() -> this.circuitBreaker.acquire())
+			.isInstanceOfSatisfying(DownstreamUnavailableException.class, e -> {
+				assertThat(e.reason()).isEqualTo("circuit_open");
+				assertThat(e.retryAfter()).isEqualTo(Duration.ofSeconds(20));
+			});
+	}
+
+	@Test
+	void slideOutOldFailures() {
+		call(true);
+		call(false);
+		call(false);
+		call(false);
+		call(false);
+		call(true);
+		assertThat(this.circuitBreaker.state()).isEqualTo(CircuitBreaker.State.CLOSED);
+	}
+
+	@Test
+	void allowSingleTrialAfterOpenDuration() {
+		call(true);
+		call(true);
+		this.now.addAndGet(Duration.ofSeconds(30).toNanos());
+		this.circuitBreaker.acquire();
+		assertThat(this.circuitBreaker.state()).isEqualTo(CircuitBreaker.State.HALF_OPEN);
+		assertThatThrownBy(() -> this.circuitBreaker.acquire()).isInstanceOf(DownstreamUnavailableException.class);
+		this.circuitBreaker.onFailure();
+		assertThat(this.circuitBreaker.state()).isEqualTo(CircuitBreaker.State.OPEN);
+		this.now.addAndGet(Duration.ofSeconds(30).toNanos());
+		call(false);
+		assertThat(this.circuitBreaker.state()).isEqualTo(CircuitBreaker.State.CLOSED);
+	}
+
+}
@@ -0,0 +1,104 @@
+package am.ik.translation.resilience;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.test.web.client.MockRestServiceServer;
+import org.springframework.web.client.HttpServerErrorException;
+import org.springframework.web.client.RestClient;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.springframework.test.web.client.ExpectedCount.times;
+import static org.springframework.test.web.client.match.MockRestRequestMatchers.requestTo;
+import static org.springframework.test.web.client.response.MockRestResponseCreators.withStatus;
+import static org.springframework.test.web.client.response.MockRestResponseCreators.withSuccess;
+
+class DownstreamsTest {
+
+	SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+	DownstreamProps.Settings settings = new DownstreamProps.Settings(1, Duration.ofMillis(50), 4, 2, 0.5,
+			Duration.ofSeconds(30));
+
+	Downstreams downstreams = new Downstreams(new DownstreamProps(this.settings, this.settings, this.settings),
+			this.meterRegistry, Downstreams.authorities("http://github.example.com", "http://entry.example.com"));
+
+	RestClient.Builder restClientBuilder = RestClient.builder()
+		.requestInterceptor(this.downstreams.bulkheadInterceptor())
+		.requestInterceptor(this.downstreams.circuitBreakerInterceptor());
+
+	MockRestServiceServer server = MockRestServiceServer.bindTo(this.restClientBuilder).build();
+
+	RestClient restClient = this.restClientBuilder.build();
+
+	double calls(String downstream, String outcome) {
+		return this.meterRegistry.get("downstream.calls")
+			.tag("downstream", downstream)
+			.tag("outcome", outcome)
+			.counter()
+			.count();
+	}
+
+	@Test
+	void failFastWhenCircuitIsOpen() {
+		this.server.expect(times(2), requestTo("http://github.example.com/repos"))
+			.andRespond(withStatus(HttpStatus.SERVICE_UNAVAILABLE));
+		this.server.expect(requestTo("http://entry.example.com/entries/100")).andRespond(withSuccess());
+		for (int i = 0; i < 2; i++) {
+			assertThatThrownBy(
+					() -> this.restClient.get().uri("http://github.example.com/repos").retrieve().toBodilessEntity())
+				.isInstanceOf(HttpServerErrorException.ServiceUnavailable.class);
+		}
+		assertThatThrownBy(
+				() -> this.restClient.get().uri("http://github.example.com/repos").retrieve().toBodilessEntity())
+			.isInstanceOf(DownstreamUnavailableException.class);
+		// the other downstream is not affected
+		this.restClient.get().uri("http://entry.example.com/entries/100").retrieve().toBodilessEntity();
+		this.server.verify();
+		assertThat(this.meterRegistry.get("downstream.circuit.state")
+			.tag("downstream", "github")
+			.tag("state", "open")
+			.gauge()
+			.value()).isEqualTo(1);
+		assertThat(calls("github", "failure")).isEqualTo(2);
+		assertThat(calls("github", "rejected")).isEqualTo(1);
+		assertThat(calls("entry-api", "success")).isEqualTo(1);
+	}
+
+	@Test
+	void rejectWhenBulkheadIsFull() throws Exception {
+		CountDownLatch started = new CountDownLatch(1);
+		CountDownLatch release = new CountDownLatch(1);
+		this.server.expect(requestTo("http://github.example.com/repos")).andRespond(request -> {
+			started.countDown();
+			try {
+				release.await(5, TimeUnit.SECONDS);
+			}
+			catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			return withSuccess().createResponse(request);
+		});
+		Thread hanging = Thread.ofVirtual()
+			.start(() -> this.restClient.get().uri("http://github.example.com/repos").retrieve().toBodilessEntity());
+		started.await(5, TimeUnit.SECONDS);
+		assertThat(this.meterRegistry.get("downstream.bulkhead.active").tag("downstream", "github").gauge().value())
+			.isEqualTo(1);
+		assertThatThrownBy(
+				() -> this.restClient.get().uri("http://github.example.com/repos").retrieve().toBodilessEntity())
+			.isInstanceOfSatisfying(DownstreamUnavailableException.class,
+					e -> assertThat(e.reason()).isEqualTo("bulkhead_full"));
+		release.countDown();
+		hanging.join();
+		assertThat(this.meterRegistry.get("downstream.bulkhead.active").tag("downstream", "github").gauge().value())
+			.isZero();
+	}
+
+}
@@ -0,0 +1,27 @@
+package am.ik.translation.resilience;
+
+import java.time.Duration;
+import java.util.Map;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+/**
+ * {@link Downstreams} with the same values as application.properties for tests that do
+ * not start the application context. No RestClient call is guarded.
+ */
+public class TestDownstreams {
+
+	public static DownstreamProps.Settings settings(int maxConcurrency, Duration maxWait) {
+		return new DownstreamProps.Settings(maxConcurrency, maxWait, 20, 10, 0.5, Duration.ofSeconds(30));
+	}
+
+	public static DownstreamProps props() {
+		return new DownstreamProps(settings(16, Duration.ofSeconds(5)), settings(16, Duration.ofSeconds(5)),
+				settings(32, Duration.ofSeconds(30)));
+	}
+
+	public static Downstreams create() {
+		return new Downstreams(props(), new SimpleMeterRegistry(), Map.of());
+	}
+
+}
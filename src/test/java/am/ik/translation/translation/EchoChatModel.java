@@ -0,0 +1,76 @@
+package am.ik.translation.translation;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import reactor.core.publisher.Flux;
+
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.metadata.ChatResponseMetadata;
+import org.springframework.ai.chat.metadata.DefaultUsage;
+import org.springframework.ai.chat.model.ChatModel;
+import org.springframework.ai.chat.model.ChatResponse;
+import org.springframework.ai.chat.model.Generation;
+import org.springframework.ai.chat.prompt.Prompt;
+
+/**
+ * Stub {@link ChatModel} that streams the user message back as it is. Because the
+ * response format is the same as the input format, the "translation" is the identity. The
+ * usage reports the number of streamed tokens as both input and output tokens.
+ */
+public class EchoChatModel implements ChatModel {
+
+	private final int tokenSize;
+
+	private final Duration tokenInterval;
+
+	private final List<Prompt> prompts = new CopyOnWriteArrayList<>();
+
+	/**
+	 * @param tokenSize number of characters per streamed token
+	 * @param tokenInterval interval between tokens to simulate the generation rate
+	 */
+	public EchoChatModel(int tokenSize, Duration tokenInterval) {
+		this.tokenSize = tokenSize;
+		this.tokenInterval = tokenInterval;
+	}
+
+	public EchoChatModel() {
+		this(16, Duration.ZERO);
+	}
+
+	public List<Prompt> prompts() {
+		return this.prompts;
+	}
+
+	@Override
+	public ChatResponse call(Prompt prompt) {
+		this.prompts.add(prompt);
+		return response(prompt.getUserMessage().getText());
+	}
+
+	@Override
+	public Flux<ChatResponse> stream(Prompt prompt) {
+		this.prompts.add(prompt);
+		String text = prompt.getUserMessage().getText();
+		List<String> tokens = new ArrayList<>();
+		for (int i = 0; i < text.length(); i += this.tokenSize) {
+			tokens.add(text.substring(i, Math.min(text.length(), i + this.tokenSize)));
+		}
+		Flux<String> flux = Flux.fromIterable(tokens);
+		if (!this.tokenInterval.isZero()) {
+			flux = flux.delayElements(this.tokenInterval);
+		}
+		// the usage is sent in a last response without generations like OpenAI does
+		return flux.map(EchoChatModel::response)
+			.concatWithValues(new ChatResponse(List.of(),
+					ChatResponseMetadata.builder().usage(new DefaultUsage(tokens.size(), tokens.size())).build()));
+	}
+
+	static ChatResponse response(String text) {
+		return new ChatResponse(List.of(new Generation(new AssistantMessage(text))));
+	}
+
+}
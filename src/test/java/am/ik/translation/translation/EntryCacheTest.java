@@ -0,0 +1,110 @@
+package am.ik.translation.translation;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+
+import am.ik.translation.entry.Entry;
+import am.ik.translation.entry.EntryProps;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.test.web.client.MockRestServiceServer;
+import org.springframework.web.client.RestClient;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.springframework.test.web.client.ExpectedCount.once;
+import static org.springframework.test.web.client.match.MockRestRequestMatchers.header;
+import static org.springframework.test.web.client.match.MockRestRequestMatchers.requestTo;
+import static org.springframework.test.web.client.response.MockRestResponseCreators.withStatus;
+import static org.springframework.test.web.client.response.MockRestResponseCreators.withSuccess;
+
+class EntryCacheTest {
+
+	SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+	RestClient.Builder restClientBuilder = RestClient.builder();
+
+	MockRestServiceServer server = MockRestServiceServer.bindTo(this.restClientBuilder).build();
+
+	EntryCache entryCache(Duration maxAge, int maxEntries) {
+		return new EntryCache(this.restClientBuilder,
+				new EntryProps("http://entry.example.com",
+						new EntryProps.Cache(maxEntries, maxAge, Duration.ofHours(1))),
+				new TranslationMetrics(this.meterRegistry));
+	}
+
+	static String entry(long entryId) {
+		return """
+				{
+				  "entryId": %d,
+				  "frontMatter": {"title": "Title", "summary": "Summary", "categories": [], "tags": []},
+				  "content": "Hello",
+				  "created": {"name": "making", "date": "2025-01-01T00:00:00Z"},
+				  "updated": {"name": "making", "date": "2025-01-02T00:00:00Z"}
+				}
+				""".formatted(entryId);
+	}
+
+	double count(String outcome) {
+		return this.meterRegistry.get("translation.entry.cache").tag("outcome", outcome).counter().count();
+	}
+
+	@Test
+	void serveFreshEntryWithoutRequest() {
+		EntryCache entryCache = entryCache(Duration.ofMinutes(1), 10);
+		this.server.expect(once(), requestTo("http://entry.example.com/entries/100"))
+			.andRespond(withSuccess(entry(100), MediaType.APPLICATION_JSON));
+		Entry first = entryCache.get(100L);
+		Entry second = entryCache.get(100L);
+		assertThat(second).isSameAs(first);
+		assertThat(count("hit")).isEqualTo(1);
+		this.server.verify();
+	}
+
+	@Test
+	void revalidateWithConditionalRequest() {
+		EntryCache entryCache = entryCache(Duration.ZERO, 10);
+		HttpHeaders headers = new HttpHeaders();
+		headers.setETag("\"v1\"");
+		headers.set(HttpHeaders.LAST_MODIFIED, "Thu, 02 Jan 2025 00:00:00 GMT");
+		this.server.expect(requestTo("http://entry.example.com/entries/100"))
+			.andRespond(withSuccess(entry(100), MediaType.APPLICATION_JSON).headers(headers));
+		this.server.expect(requestTo("http://entry.example.com/entries/100"))
+			.andExpect(header(HttpHeaders.IF_NONE_MATCH, "\"v1\""))
+			.andExpect(header(HttpHeaders.IF_MODIFIED_SINCE, "Thu, 02 Jan 2025 00:00:00 GMT"))
+			.andRespond(withStatus(HttpStatus.NOT_MODIFIED));
+		Entry first = entryCache.get(100L);
+		Entry second = entryCache.get(100L);
+		assertThat(second).isSameAs(first);
+		assertThat(count("miss")).isEqualTo(1);
+		assertThat(count("revalidated")).isEqualTo(1);
+		this.server.verify();
+	}
+
+	@Test
+	void prefetchAndEvictLeastRecentlyUsed() throws Exception {
+		EntryCache entryCache = entryCache(Duration.ofMinutes(1), 2);
+		this.server.expect(requestTo("http://entry.example.com/entries/100"))
+			.andRespond(withSuccess(entry(100), MediaType.APPLICATION_JSON));
+		this.server.expect(requestTo("http://entry.example.com/entries/101"))
+			.andRespond(withStatus(HttpStatus.NOT_FOUND));
+		this.server.expect(requestTo("http://entry.example.com/entries/102"))
+			.andRespond(withSuccess(entry(102), MediaType.APPLICATION_JSON));
+		this.server.expect(requestTo("http://entry.example.com/entries/103"))
+			.andRespond(withSuccess(entry(103), MediaType.APPLICATION_JSON));
+		// one request at a time to keep the expected order
+		Map<Long, Entry> prefetched = entryCache.prefetch(List.of(100L, 101L, 102L, 103L), 1);
+		assertThat(prefetched).containsOnlyKeys(100L, 102L, 103L);
+		assertThat(entryCache.size()).isEqualTo(2);
+		// the evicted entry is still held by the caller
+		assertThat(prefetched.get(100L).entryId()).isEqualTo(100L);
+		this.server.verify();
+		assertThat(entryCache.get(103L).entryId()).isEqualTo(103L);
+		assertThat(count("hit")).isEqualTo(1);
+	}
+
+}
@@ -0,0 +1,32 @@
+package am.ik.translation.translation;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+
+import am.ik.translation.translation.scheduler.Priority;
+import org.springframework.util.unit.DataSize;
+
+/**
+ * {@link TranslationProps} with the same values as application.properties for tests that
+ * do not start the application context.
+ */
+public class TestTranslationProps {
+
+	public static TranslationProps defaults() {
+		return new TranslationProps(6000, 8, new TranslationProps.Memory(DataSize.ofMegabytes(64), null),
+				new TranslationProps.Job(Path.of("target/test-translation-jobs.journal"), 4, 3, Duration.ofSeconds(30),
+						false, DataSize.ofMegabytes(16)),
+				new TranslationProps.Webhook(Duration.ofHours(1)),
+				new TranslationProps.Batch(4, null, TranslationProps.Batch.Mode.INTERACTIVE, Duration.ofMinutes(1),
+						null),
+				new TranslationProps.RateLimit(500, 200_000), new TranslationProps.Routing(List.of(), List.of(), null),
+				new TranslationProps.Hedge(true, 0.95, Duration.ofSeconds(2), Duration.ofSeconds(30),
+						Duration.ofMinutes(2)),
+				true, null,
+				new TranslationProps.Scheduler(4, Map.of(Priority.NEW, 8, Priority.UPDATE, 4, Priority.BACKFILL, 1)),
+				List.of(new TranslationProps.Language("en", "English", "making/ik.am_en", 8)));
+	}
+
+}
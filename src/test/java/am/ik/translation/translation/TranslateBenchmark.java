@@ -0,0 +1,96 @@
+package am.ik.translation.translation;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import am.ik.translation.TranslationHotPathBenchmark;
+import am.ik.translation.entry.Entry;
+import am.ik.translation.entry.EntryProps;
+import am.ik.translation.github.GithubProps;
+import am.ik.translation.github.GithubPublisher;
+import am.ik.translation.resilience.TestDownstreams;
+import am.ik.translation.translation.ratelimit.RateLimiter;
+import am.ik.translation.translation.routing.ModelRouter;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import org.springframework.ai.chat.client.ChatClient;
+import org.springframework.util.unit.DataSize;
+import org.springframework.web.client.RestClient;
+
+/**
+ * End-to-end {@link TranslationService#translate(Entry)} against a stubbed
+ * {@link org.springframework.ai.chat.model.ChatModel} that streams canned tokens at
+ * {@code tokensPerSecond}. The translation memory is disabled so that every invocation
+ * calls the model.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 1, time = 5)
+@Measurement(iterations = 3, time = 5)
+@Fork(1)
+public class TranslateBenchmark {
+
+	@Param({ "4096", "32768" })
+	int size;
+
+	@Param({ "6000", "1000000" })
+	int chunkSize;
+
+	@Param({ "2000" })
+	int tokensPerSecond;
+
+	TranslationService translationService;
+
+	Entry entry;
+
+	@Setup
+	public void setup() {
+		TranslationProps props = TranslationPropsBuilder.from(TestTranslationProps.defaults())
+			.chunkSize(this.chunkSize)
+			.memory(new TranslationProps.Memory(DataSize.ofBytes(0), null))
+			.rateLimit(new TranslationProps.RateLimit(Integer.MAX_VALUE, Integer.MAX_VALUE))
+			.incremental(false)
+			.build();
+		EchoChatModel chatModel = new EchoChatModel(16, Duration.ofNanos(1_000_000_000L / this.tokensPerSecond));
+		GithubProps githubProps = new GithubProps("http://localhost", "token", "secret");
+		TranslationMetrics metrics = new TranslationMetrics(new SimpleMeterRegistry());
+		this.translationService = new TranslationService(RestClient.builder(), githubProps,
+				new EntryCache(RestClient.builder(),
+						new EntryProps("http://localhost", new EntryProps.Cache(100, Duration.ZERO, Duration.ZERO)),
+						metrics),
+				ModelRouter
+					.single(new ModelRouter.Target("echo", ChatClient.create(chatModel), new RateLimiter(props))),
+				props, new TranslationMemory(props, new ObjectMapper()),
+				new GithubPublisher(RestClient.builder(), githubProps),
+				new PreviousTranslations(RestClient.builder(), githubProps), new Glossary(List.of()), metrics,
+				TestDownstreams.create());
+		this.entry = TranslationHotPathBenchmark.entry(this.size);
+	}
+
+	@Benchmark
+	public TranslationService.Translated translate() {
+		return this.translationService.translate(this.entry);
+	}
+
+	public static void main(String[] args) throws RunnerException {
+		new Runner(new OptionsBuilder().include(TranslateBenchmark.class.getSimpleName()).build()).run();
+	}
+
+}
@@ -0,0 +1,83 @@
+package am.ik.translation.translation;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import am.ik.translation.util.ResponseParser.TranslatedContent;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import org.springframework.util.unit.DataSize;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class TranslationMemoryTest {
+
+	@Test
+	void keyDependsOnModelPromptVersionAndLanguage() {
+		String key = TranslationMemory.key("gpt-4o-mini", "1", "en", "", "title", null, "content");
+		assertThat(key).hasSize(64);
+		assertThat(TranslationMemory.key("gpt-4o-mini", "1", "en", "", "title", null, "content")).isEqualTo(key);
+		assertThat(TranslationMemory.key("gpt-4o", "1", "en", "", "title", null, "content")).isNotEqualTo(key);
+		assertThat(TranslationMemory.key("gpt-4o-mini", "2", "en", "", "title", null, "content")).isNotEqualTo(key);
+		assertThat(TranslationMemory.key("gpt-4o-mini", "1", "zh", "", "title", null, "content")).isNotEqualTo(key);
+		assertThat(TranslationMemory.key("gpt-4o-mini", "1", "en", "内容 => content", "title", null, "content"))
+			.isNotEqualTo(key);
+		assertThat(TranslationMemory.key("gpt-4o-mini", "1", "en", "", "title", "", "content")).isNotEqualTo(key);
+		assertThat(TranslationMemory.key("gpt-4o-mini", "1", "en", "", "titlec", null, "ontent")).isNotEqualTo(key);
+	}
+
+	@Test
+	void evictLeastRecentlyUsed() {
+		TranslationMemory memory = new TranslationMemory(TranslationPropsBuilder.from(TestTranslationProps.defaults())
+			.memory(new TranslationProps.Memory(DataSize.ofBytes(40), null))
+			.build(), new ObjectMapper());
+		memory.put("a", new TranslatedContent("", null, "aaaaaaaaaa"));
+		memory.put("b", new TranslatedContent("", null, "bbbbbbbbbb"));
+		assertThat(memory.get("a")).isNotNull();
+		memory.put("c", new TranslatedContent("", null, "cccccccccc"));
+		assertThat(memory.get("a")).isNotNull();
+		assertThat(memory.get("b")).isNull();
+		assertThat(memory.get("c")).isNotNull();
+	}
+
+	@Test
+	void survivesRestartWithDirectory(@TempDir Path directory) {
+		TranslationProps props = TranslationPropsBuilder.from(TestTranslationProps.defaults())
+			.memory(new TranslationProps.Memory(DataSize.ofMegabytes(1), directory))
+			.build();
+		String key = TranslationMemory.key("gpt-4o-mini", "1", "en", "", "タイトル", "概要", "本文");
+		new TranslationMemory(props, new ObjectMapper()).put(key, new TranslatedContent("Title", "Summary", "Body"));
+		assertThat(new TranslationMemory(props, new ObjectMapper()).get(key))
+			.isEqualTo(new TranslatedContent("Title", "Summary", "Body"));
+	}
+
+	@Test
+	void keepInMemoryWhenFileTierCannotBeWritten(@TempDir Path directory) throws Exception {
+		// a regular file where the tier expects a directory makes every write fail
+		Path blocked = Files.writeString(directory.resolve("blocked"), "");
+		TranslationMemory memory = new TranslationMemory(TranslationPropsBuilder.from(TestTranslationProps.defaults())
+			.memory(new TranslationProps.Memory(DataSize.ofMegabytes(1), blocked))
+			.build(), new ObjectMapper());
+		String key = TranslationMemory.key("gpt-4o-mini", "1", "en", "", "タイトル", "概要", "本文");
+		memory.put(key, new TranslatedContent("Title", "Summary", "Body"));
+		assertThat(memory.get(key)).isEqualTo(new TranslatedContent("Title", "Summary", "Body"));
+	}
+
+	@Test
+	void deleteTemporaryFileWhenFileTierCannotBeWritten(@TempDir Path directory) throws Exception {
+		TranslationMemory memory = new TranslationMemory(TranslationPropsBuilder.from(TestTranslationProps.defaults())
+			.memory(new TranslationProps.Memory(DataSize.ofMegabytes(1), directory))
+			.build(), new ObjectMapper());
+		String key = TranslationMemory.key("gpt-4o-mini", "1", "en", "", "タイトル", "概要", "本文");
+		// a non-empty directory where the file is to be moved makes the move fail
+		Path blocked = Files.createDirectories(directory.resolve(key.substring(0, 2)).resolve(key + ".json"));
+		Files.writeString(blocked.resolve("blocked"), "");
+		memory.put(key, new TranslatedContent("Title", "Summary", "Body"));
+		try (var files = Files.list(blocked.getParent())) {
+			assertThat(files).containsExactly(blocked);
+		}
+	}
+
+}
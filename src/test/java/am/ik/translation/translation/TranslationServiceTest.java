@@ -0,0 +1,442 @@
+package am.ik.translation.translation;
+
+import am.ik.translation.entry.EntryProps;
+import am.ik.translation.entry.Entry;
+import am.ik.translation.github.GithubProps;
+import am.ik.translation.github.GithubPublisher;
+import am.ik.translation.resilience.DownstreamProps;
+import am.ik.translation.resilience.Downstreams;
+import am.ik.translation.resilience.TestDownstreams;
+import am.ik.translation.translation.ratelimit.RateLimiter;
+import am.ik.translation.translation.routing.ModelRouter;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import org.springframework.ai.chat.client.ChatClient;
+import org.springframework.ai.chat.model.ChatModel;
+import org.springframework.ai.chat.model.ChatResponse;
+import org.springframework.ai.chat.prompt.Prompt;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.test.web.client.MockRestServiceServer;
+import org.springframework.web.client.RestClient;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
+import reactor.core.publisher.Flux;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.springframework.test.web.client.match.MockRestRequestMatchers.jsonPath;
+import static org.springframework.test.web.client.match.MockRestRequestMatchers.requestTo;
+import static org.springframework.test.web.client.response.MockRestResponseCreators.withSuccess;
+
+class TranslationServiceTest {
+
+	static final String CONTENT = """
+			Introduction.
+
+			## First
+
+			First paragraph.
+
+			```java
+			// ## not a heading
+			```
+
+			## Second
+
+			Second paragraph.
+			""";
+
+	EchoChatModel chatModel;
+
+	MockRestServiceServer server;
+
+	SimpleMeterRegistry meterRegistry;
+
+	TranslationProps props;
+
+	Glossary glossary;
+
+	DownstreamProps.Settings downstream = TestDownstreams.settings(32, Duration.ofSeconds(30));
+
+	TranslationService translationService;
+
+	@BeforeEach
+	void init() {
+		this.chatModel = new EchoChatModel();
+		this.props = TranslationPropsBuilder.from(TestTranslationProps.defaults())
+			.chunkSize(40)
+			.chunkConcurrency(2)
+			.incremental(false)
+			.build();
+		this.glossary = new Glossary(List.of());
+		this.translationService = translationService(ModelRouter.single(target("echo", this.chatModel)));
+	}
+
+	TranslationService translationService(ModelRouter modelRouter) {
+		RestClient.Builder restClientBuilder = RestClient.builder();
+		this.server = MockRestServiceServer.bindTo(restClientBuilder).ignoreExpectOrder(true).build();
+		this.meterRegistry = new SimpleMeterRegistry();
+		GithubProps githubProps = new GithubProps("http://github.example.com", "token", "secret");
+		TranslationMetrics metrics = new TranslationMetrics(this.meterRegistry);
+		EntryProps entryProps = new EntryProps("http://entry.example.com",
+				new EntryProps.Cache(100, Duration.ZERO, Duration.ofHours(1)));
+		return new TranslationService(restClientBuilder, githubProps,
+				new EntryCache(restClientBuilder, entryProps, metrics), modelRouter, this.props,
+				new TranslationMemory(this.props, new ObjectMapper()),
+				new GithubPublisher(restClientBuilder, githubProps),
+				new PreviousTranslations(restClientBuilder, githubProps), this.glossary, metrics,
+				new Downstreams(new DownstreamProps(this.downstream, this.downstream, this.downstream),
+						this.meterRegistry, Map.of()));
+	}
+
+	ModelRouter.Target target(String name, ChatModel chatModel) {
+		return new ModelRouter.Target(name, ChatClient.create(chatModel), new RateLimiter(this.props));
+	}
+
+	void expectEntry(String content) {
+		this.server.expect(requestTo("http://entry.example.com/entries/100")).andRespond(withSuccess("""
+				{
+				  "entryId": 100,
+				  "frontMatter": {"title": "Title", "summary": "Summary", "categories": [], "tags": []},
+				  "content": %s,
+				  "created": {"name": "making", "date": "2025-01-01T00:00:00Z"},
+				  "updated": {"name": "making", "date": "2025-01-02T00:00:00Z"}
+				}
+				""".formatted(new ObjectMapper().valueToTree(content)), MediaType.APPLICATION_JSON));
+	}
+
+	@Test
+	void translateInChunks() {
+		expectEntry(CONTENT);
+		Entry translated = this.translationService.translate(100L).entry();
+		assertThat(translated.frontMatter().title()).isEqualTo("Title");
+		assertThat(translated.frontMatter().summary()).isEqualTo("Summary");
+		assertThat(translated.content()).endsWith(CONTENT.trim());
+		assertThat(this.chatModel.prompts()).hasSize(4);
+		// once per response
+		assertThat(this.meterRegistry.get("translation.parse").timer().count()).isEqualTo(4);
+	}
+
+	@Test
+	void translateOnlyChangedSegments() {
+		expectEntry(CONTENT);
+		this.translationService.translate(100L);
+		assertThat(this.chatModel.prompts()).hasSize(4);
+		this.server.reset();
+		expectEntry(CONTENT.replace("Second paragraph.", "Second paragraph (edited)."));
+		Entry translated = this.translationService.translate(100L).entry();
+		assertThat(translated.content()).endsWith("## Second\n\nSecond paragraph (edited).");
+		assertThat(this.chatModel.prompts()).hasSize(5);
+		assertThat(this.chatModel.prompts().getLast().getUserMessage().getText()).doesNotContain("First");
+	}
+
+	@Test
+	void reusePreviousTranslation() {
+		this.props = TranslationPropsBuilder.from(this.props).incremental(true).build();
+		this.translationService = translationService(ModelRouter.single(target("echo", this.chatModel)));
+		expectEntry(CONTENT.replace("Second paragraph.", "Second paragraph (edited)."));
+		this.server.expect(requestTo("http://github.example.com/repos/making/ik.am_en/contents/content/00100.md"))
+			.andRespond(withSuccess(
+					"""
+							---
+							title: Title (en)
+							tags: []
+							categories: []
+							summary: Summary (en)
+							updated: 2025-01-01T00:00Z
+							---
+
+							> ⚠️ This article was automatically translated by OpenAI API (previous).
+							> It may be edited eventually, but please be aware that it may contain incorrect information at this time.
+
+							Introduction (en).
+
+							## First (en)
+
+							First paragraph (en).
+
+							## Second (en)
+
+							Second paragraph (en).
+							""",
+					MediaType.TEXT_PLAIN));
+		this.server.expect(requestTo(
+				"http://github.example.com/repos/making/blog.ik.am/commits?path=content%2F00100.md&until=2025-01-01T00%3A00Z&per_page=1"))
+			.andRespond(withSuccess("""
+					[{"sha": "source-commit"}]
+					""", MediaType.APPLICATION_JSON));
+		this.server
+			.expect(requestTo(
+					"http://github.example.com/repos/making/blog.ik.am/contents/content/00100.md?ref=source-commit"))
+			.andRespond(withSuccess("""
+					---
+					title: "Title"
+					summary: Summary
+					---
+
+					%s""".formatted(CONTENT), MediaType.TEXT_PLAIN));
+		TranslationService.Translated translated = this.translationService.translate(100L);
+		assertThat(this.chatModel.prompts()).hasSize(1);
+		assertThat(this.chatModel.prompts().getFirst().getUserMessage().getText())
+			.contains("Second paragraph (edited).")
+			.doesNotContain("First");
+		assertThat(translated.model()).isEqualTo("previous, echo");
+		assertThat(translated.entry().frontMatter().title()).isEqualTo("Title (en)");
+		assertThat(translated.entry().content()).contains("""
+				Introduction (en).
+
+				## First (en)
+
+				First paragraph (en).
+
+				## Second
+
+				Second paragraph (edited).""");
+	}
+
+	@Test
+	void injectMatchingGlossaryTerms() {
+		this.glossary = new Glossary(
+				List.of(new Glossary.Term("Second paragraph", "2nd paragraph"), new Glossary.Term("未使用", "unused")));
+		this.translationService = translationService(ModelRouter.single(target("echo", this.chatModel)));
+		expectEntry(CONTENT);
+		this.translationService.translate(100L);
+		assertThat(this.chatModel.prompts()).hasSize(4);
+		assertThat(this.chatModel.prompts()).filteredOn(p -> p.getUserMessage().getText().contains("Second paragraph"))
+			.singleElement()
+			.satisfies(p -> assertThat(p.getSystemMessage().getText()).endsWith("Second paragraph => 2nd paragraph\n"));
+		assertThat(this.chatModel.prompts()).filteredOn(p -> !p.getUserMessage().getText().contains("Second paragraph"))
+			.allSatisfy(p -> assertThat(p.getSystemMessage().getText())
+				.isEqualTo(TranslationService.systemPrompt(this.props.primaryLanguage())));
+	}
+
+	@Test
+	void fanOutToLanguages() {
+		TranslationProps.Language chinese = new TranslationProps.Language("zh", "Simplified Chinese", "making/ik.am_zh",
+				1);
+		this.props = TranslationPropsBuilder.from(this.props)
+			.languages(List.of(this.props.primaryLanguage(), chinese))
+			.build();
+		this.glossary = new Glossary(List.of(new Glossary.Term("Second paragraph", "2nd paragraph")));
+		this.translationService = translationService(ModelRouter.single(target("echo", this.chatModel)));
+		expectEntry(CONTENT);
+		Entry entry = this.translationService.fetchEntry(100L);
+		List<TranslationService.Translated> translated = this.translationService
+			.translate(entry, this.props.languages(), TranslationListener.NOOP)
+			.stream()
+			.map(TranslationService.Outcome::get)
+			.toList();
+		assertThat(translated).extracting(t -> t.language().code()).containsExactly("en", "zh");
+		assertThat(translated).allSatisfy(t -> assertThat(t.entry().content()).endsWith(CONTENT.trim()));
+		assertThat(this.chatModel.prompts()).hasSize(8);
+		assertThat(this.chatModel.prompts())
+			.filteredOn(p -> p.getSystemMessage().getText().contains("into Simplified Chinese."))
+			.hasSize(4)
+			// the glossary is of the primary language
+			.noneMatch(p -> p.getSystemMessage().getText().contains("2nd paragraph"));
+	}
+
+	@Test
+	void recordMetrics() {
+		expectEntry(CONTENT);
+		this.translationService.translate(100L);
+		assertThat(this.meterRegistry.get("translation.llm.duration").tag("model", "echo").timer().count())
+			.isEqualTo(4);
+		assertThat(this.meterRegistry.get("translation.llm.ttft").timer().count()).isEqualTo(4);
+		assertThat(this.meterRegistry.get("translation.llm.tokens").tag("type", "output").counter().count())
+			.isPositive();
+		assertThat(this.meterRegistry.get("translation.chunks.active").gauge().value()).isZero();
+	}
+
+	@Test
+	void hedgeStalledCall() {
+		this.props = TranslationPropsBuilder.from(this.props)
+			.hedge(new TranslationProps.Hedge(true, 0.95, Duration.ofMillis(100), Duration.ofMillis(100),
+					Duration.ofMinutes(1)))
+			.build();
+		AtomicInteger calls = new AtomicInteger();
+		AtomicBoolean cancelled = new AtomicBoolean();
+		ChatModel stalling = new ChatModel() {
+			@Override
+			public ChatResponse call(Prompt prompt) {
+				throw new UnsupportedOperationException();
+			}
+
+			@Override
+			public Flux<ChatResponse> stream(Prompt prompt) {
+				if (calls.getAndIncrement() == 0) {
+					return Flux.<ChatResponse>never().doOnCancel(() -> cancelled.set(true));
+				}
+				return chatModel.stream(prompt);
+			}
+		};
+		this.translationService = translationService(ModelRouter.single(target("echo", stalling)));
+		expectEntry(CONTENT);
+		Entry translated = this.translationService.translate(100L).entry();
+		assertThat(translated.content()).endsWith(CONTENT.trim());
+		assertThat(calls).hasValue(5);
+		assertThat(cancelled).isTrue();
+		assertThat(this.meterRegistry.get("translation.llm.hedge").tag("outcome", "fired").counter().count())
+			.isEqualTo(1);
+		assertThat(this.meterRegistry.get("translation.llm.hedge").tag("outcome", "won").counter().count())
+			.isEqualTo(1);
+		assertThat(this.meterRegistry.get("translation.chunks.active").gauge().value()).isZero();
+		// the hedged call held a permit of the bulkhead too
+		assertThat(
+				this.meterRegistry.get("downstream.bulkhead.active").tag("downstream", "openai:echo").gauge().value())
+			.isZero();
+	}
+
+	@Test
+	void waitForRateLimitWithoutHoldingBulkhead() {
+		this.props = TranslationPropsBuilder.from(this.props).chunkConcurrency(1).build();
+		// the calls waiting for the rate limiter would exceed the wait for the bulkhead
+		this.downstream = TestDownstreams.settings(2, Duration.ofMillis(100));
+		this.translationService = translationService(
+				ModelRouter.single(target("echo", new EchoChatModel(4, Duration.ofMillis(20)))));
+		expectEntry(CONTENT);
+		Entry translated = this.translationService.translate(100L).entry();
+		assertThat(translated.content()).endsWith(CONTENT.trim());
+		assertThat(this.meterRegistry.get("downstream.calls")
+			.tag("downstream", "openai:echo")
+			.tag("outcome", "success")
+			.counter()
+			.count()).isEqualTo(4);
+	}
+
+	@Test
+	void cancelChunkCallsWhenInterrupted() throws Exception {
+		this.props = TranslationPropsBuilder.from(this.props)
+			.hedge(new TranslationProps.Hedge(false, 0.95, Duration.ofSeconds(2), Duration.ofSeconds(30),
+					Duration.ofMinutes(2)))
+			.build();
+		CountDownLatch called = new CountDownLatch(1);
+		ChatModel stalling = new ChatModel() {
+			@Override
+			public ChatResponse call(Prompt prompt) {
+				throw new UnsupportedOperationException();
+			}
+
+			@Override
+			public Flux<ChatResponse> stream(Prompt prompt) {
+				called.countDown();
+				return Flux.never();
+			}
+		};
+		this.translationService = translationService(ModelRouter.single(target("echo", stalling)));
+		expectEntry(CONTENT);
+		Entry entry = this.translationService.fetchEntry(100L);
+		AtomicReference<Throwable> error = new AtomicReference<>();
+		Thread thread = Thread.ofVirtual().start(() -> {
+			try {
+				this.translationService.translate(entry);
+			}
+			catch (RuntimeException e) {
+				error.set(e);
+			}
+		});
+		assertThat(called.await(5, TimeUnit.SECONDS)).isTrue();
+		thread.interrupt();
+		// does not wait for the stalled calls until they time out
+		assertThat(thread.join(Duration.ofSeconds(5))).isTrue();
+		assertThat(error.get()).hasMessageContaining("Translation is interrupted");
+	}
+
+	@Test
+	void fallOverWhenOverloaded() {
+		ChatModel overloaded = new ChatModel() {
+			@Override
+			public ChatResponse call(Prompt prompt) {
+				throw new UnsupportedOperationException();
+			}
+
+			@Override
+			public Flux<ChatResponse> stream(Prompt prompt) {
+				return Flux.error(WebClientResponseException.create(429, "Too Many Requests", HttpHeaders.EMPTY,
+						new byte[0], null));
+			}
+		};
+		this.translationService = translationService(
+				new ModelRouter(List.of(new ModelRouter.Route(Integer.MAX_VALUE, target("overloaded", overloaded))),
+						List.of(target("echo", this.chatModel)), null));
+		expectEntry(CONTENT);
+		TranslationService.Translated translated = this.translationService.translate(100L);
+		assertThat(translated.model()).isEqualTo("echo");
+		assertThat(translated.entry().content()).endsWith(CONTENT.trim());
+		assertThat(this.meterRegistry.get("translation.llm.fallover")
+			.tag("from", "overloaded")
+			.tag("to", "echo")
+			.counter()
+			.count()).isEqualTo(4);
+		// the acknowledgement names the models that may serve the translation
+		this.server.reset();
+		this.server.expect(requestTo("http://github.example.com/repos/making/ik.am_en/issues/10/comments"))
+			.andExpect(jsonPath("$.body")
+				.value("We will now start translating using OpenAI API (overloaded, echo). please wait a moment."))
+			.andRespond(withSuccess());
+		this.translationService.sendComment(10);
+		this.server.verify();
+	}
+
+	@Test
+	void fallOverWhenCircuitIsOpen() {
+		AtomicInteger calls = new AtomicInteger();
+		ChatModel unavailable = new ChatModel() {
+			@Override
+			public ChatResponse call(Prompt prompt) {
+				throw new UnsupportedOperationException();
+			}
+
+			@Override
+			public Flux<ChatResponse> stream(Prompt prompt) {
+				calls.incrementAndGet();
+				return Flux.error(WebClientResponseException.create(503, "Service Unavailable", HttpHeaders.EMPTY,
+						new byte[0], null));
+			}
+		};
+		// the failed chunk cancels the other chunks, which may not be called
+		this.downstream = new DownstreamProps.Settings(32, Duration.ofSeconds(30), 1, 1, 0.5, Duration.ofMinutes(1));
+		this.translationService = translationService(
+				new ModelRouter(List.of(new ModelRouter.Route(Integer.MAX_VALUE, target("unavailable", unavailable))),
+						List.of(target("echo", this.chatModel)), null));
+		expectEntry(CONTENT);
+		// 503 is not a reason to fall over, but opens the circuit
+		assertThatThrownBy(() -> this.translationService.translate(100L))
+			.isInstanceOf(WebClientResponseException.ServiceUnavailable.class);
+		assertThat(this.meterRegistry.get("downstream.circuit.state")
+			.tag("downstream", "openai:unavailable")
+			.tag("state", "open")
+			.gauge()
+			.value()).isEqualTo(1);
+		int failedCalls = calls.get();
+		// the cancelled chunks may have fallen over already
+		Counter fallovers = this.meterRegistry.find("translation.llm.fallover")
+			.tag("from", "unavailable")
+			.tag("reason", "circuit_open")
+			.counter();
+		double falloversBefore = fallovers != null ? fallovers.count() : 0;
+		this.server.reset();
+		expectEntry(CONTENT);
+		TranslationService.Translated translated = this.translationService.translate(100L);
+		assertThat(translated.model()).isEqualTo("echo");
+		assertThat(calls).hasValue(failedCalls);
+		assertThat(this.meterRegistry.get("translation.llm.fallover")
+			.tag("from", "unavailable")
+			.tag("reason", "circuit_open")
+			.counter()
+			.count() - falloversBefore).isEqualTo(4);
+	}
+
+}
@@ -0,0 +1,124 @@
+package am.ik.translation.translation.batch;
+
+import java.time.Instant;
+import java.time.OffsetDateTime;
+import java.util.List;
+import java.util.Map;
+
+import am.ik.translation.entry.Author;
+import am.ik.translation.entry.Entry;
+import am.ik.translation.entry.FrontMatter;
+import am.ik.translation.github.BlobContent;
+import am.ik.translation.github.CreatePullResponse;
+import am.ik.translation.github.GithubPublisher;
+import am.ik.translation.translation.EntryCache;
+import am.ik.translation.translation.TestTranslationProps;
+import am.ik.translation.translation.TranslationProps;
+import am.ik.translation.translation.TranslationService;
+import am.ik.translation.translation.scheduler.FairScheduler;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.client.HttpClientErrorException;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+
+class BatchTranslatorTest {
+
+	TranslationProps props = TestTranslationProps.defaults();
+
+	TranslationService translationService = mock(TranslationService.class);
+
+	GithubPublisher githubPublisher = mock(GithubPublisher.class);
+
+	EntryCache entryCache = mock(EntryCache.class);
+
+	BatchTranslator batchTranslator = new BatchTranslator(this.translationService, this.githubPublisher, this.props,
+			new FairScheduler(this.props, new SimpleMeterRegistry()), this.entryCache, mock(OpenAiBatches.class));
+
+	Entry entry(long entryId) {
+		return new Entry(entryId, new FrontMatter("タイトル", "要約", List.of(), List.of()), "こんにちは",
+				new Author("making", OffsetDateTime.parse("2025-01-01T00:00:00Z")),
+				new Author("making", OffsetDateTime.parse("2025-01-01T00:00:00Z")));
+	}
+
+	Batch batch(String batchId, List<Long> entryIds) {
+		return new Batch(batchId, entryIds, BatchState.RUNNING, List.of(), List.of(), List.of(), null, Instant.now(),
+				Instant.now());
+	}
+
+	@Test
+	void publishTranslatedEntriesAsSinglePullRequest() throws Exception {
+		Entry first = entry(1L);
+		Entry second = entry(2L);
+		Entry failing = entry(4L);
+		// the missing entry is fetched again to find out why it was not prefetched
+		given(this.entryCache.prefetch(List.of(1L, 2L, 3L, 4L), 4))
+			.willReturn(Map.of(1L, first, 2L, second, 4L, failing));
+		given(this.translationService.fetchEntry(3L)).willThrow(HttpClientErrorException.create(HttpStatus.NOT_FOUND,
+				"Not Found", HttpHeaders.EMPTY, new byte[0], null));
+		given(this.translationService.translate(first))
+			.willReturn(new TranslationService.Translated(first, "gpt-4.1-mini", this.props.primaryLanguage()));
+		given(this.translationService.translate(second))
+			.willReturn(new TranslationService.Translated(second, "gpt-4.1-mini", this.props.primaryLanguage()));
+		given(this.translationService.translate(failing)).willThrow(new IllegalStateException("Too Many Requests"));
+		given(this.githubPublisher.publish(anyString(), anyString(), anyString(), anyString(), any()))
+			.willReturn(new CreatePullResponse("https://github.com/making/ik.am_en/pull/1"));
+		this.batchTranslator.run(batch("batch-1", List.of(1L, 2L, 3L, 4L)));
+		@SuppressWarnings("unchecked")
+		ArgumentCaptor<Map<String, BlobContent>> files = ArgumentCaptor.forClass(Map.class);
+		ArgumentCaptor<String> body = ArgumentCaptor.forClass(String.class);
+		verify(this.githubPublisher).publish(eq("making/ik.am_en"), eq("translation-batch-batch-1"),
+				eq("Translate 2 entries by OpenAI (gpt-4.1-mini)"), body.capture(), files.capture());
+		assertThat(files.getValue()).containsOnlyKeys("content/00001.md", "content/00002.md");
+		assertThat(body.getValue()).isEqualTo("""
+				translated https://github.com/making/blog.ik.am/blob/master/content/00001.md
+				translated https://github.com/making/blog.ik.am/blob/master/content/00002.md
+
+				failed to translate [4]""");
+		Batch batch = this.batchTranslator.get("batch-1");
+		assertThat(batch.state()).isEqualTo(BatchState.PR_CREATED);
+		assertThat(batch.translated()).containsExactly(1L, 2L);
+		assertThat(batch.skipped()).containsExactly(3L);
+		assertThat(batch.failed()).containsExactly(4L);
+		assertThat(batch.url()).isEqualTo("https://github.com/making/ik.am_en/pull/1");
+	}
+
+	@Test
+	void failWithoutPullRequestWhenNothingIsTranslated() throws Exception {
+		Entry failing = entry(1L);
+		given(this.entryCache.prefetch(List.of(1L), 4)).willReturn(Map.of(1L, failing));
+		given(this.translationService.translate(failing)).willThrow(new IllegalStateException("Too Many Requests"));
+		this.batchTranslator.run(batch("batch-1", List.of(1L)));
+		Batch batch = this.batchTranslator.get("batch-1");
+		assertThat(batch.state()).isEqualTo(BatchState.FAILED);
+		assertThat(batch.failed()).containsExactly(1L);
+		verify(this.githubPublisher, never()).publish(anyString(), anyString(), anyString(), anyString(), any());
+	}
+
+	@Test
+	void keepOnlyRecentFinishedBatches() throws Exception {
+		given(this.entryCache.prefetch(any(), anyInt())).willReturn(Map.of());
+		given(this.translationService.fetchEntry(anyLong())).willThrow(HttpClientErrorException
+			.create(HttpStatus.NOT_FOUND, "Not Found", HttpHeaders.EMPTY, new byte[0], null));
+		for (int i = 0; i <= BatchTranslator.RECENT_BATCHES; i++) {
+			this.batchTranslator.run(batch("batch-" + i, List.of(1L)));
+		}
+		assertThat(this.batchTranslator.get("batch-0")).isNull();
+		assertThat(this.batchTranslator.get("batch-1").state()).isEqualTo(BatchState.FAILED);
+		assertThat(this.batchTranslator.get("batch-" + BatchTranslator.RECENT_BATCHES).skipped()).containsExactly(1L);
+	}
+
+}
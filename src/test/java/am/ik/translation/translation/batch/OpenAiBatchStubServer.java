@@ -0,0 +1,169 @@
+package am.ik.translation.translation.batch;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Local stub of the OpenAI Files and Batches API. Like
+ * {@link am.ik.translation.translation.EchoChatModel}, every request is answered with its
+ * user message. A batch is {@code in_progress} on the first retrieval and
+ * {@code completed} afterwards. The requests whose custom ids are given as failing are
+ * written to the error file, and the downloads of the files given by
+ * {@link #failDownloads(Integer...)} fail with 500.
+ */
+class OpenAiBatchStubServer implements AutoCloseable {
+
+	private final HttpServer server;
+
+	private final ObjectMapper objectMapper = new ObjectMapper();
+
+	private final Set<String> failing;
+
+	private final Map<String, byte[]> files = new ConcurrentHashMap<>();
+
+	private final Map<String, String> batches = new ConcurrentHashMap<>();
+
+	private final Map<String, AtomicInteger> retrievals = new ConcurrentHashMap<>();
+
+	private final Map<String, Map<String, String>> completed = new ConcurrentHashMap<>();
+
+	private final List<JsonNode> requests = new ArrayList<>();
+
+	private final AtomicInteger downloads = new AtomicInteger();
+
+	private volatile Set<Integer> failingDownloads = Set.of();
+
+	private final AtomicInteger ids = new AtomicInteger();
+
+	OpenAiBatchStubServer(Set<String> failing) throws IOException {
+		this.failing = failing;
+		this.server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+		this.server.createContext("/v1/files", this::files);
+		this.server.createContext("/v1/batches", this::batches);
+		this.server.start();
+	}
+
+	String baseUrl() {
+		return "http://localhost:" + this.server.getAddress().getPort();
+	}
+
+	/**
+	 * @param ordinals ordinals of the downloads to fail, starting from 1
+	 */
+	void failDownloads(Integer... ordinals) {
+		this.failingDownloads = Set.of(ordinals);
+	}
+
+	synchronized List<JsonNode> requests() {
+		return List.copyOf(this.requests);
+	}
+
+	private void files(HttpExchange exchange) throws IOException {
+		String path = exchange.getRequestURI().getPath();
+		if ("POST".equals(exchange.getRequestMethod())) {
+			String body = new String(exchange.getRequestBody().readAllBytes(), StandardCharsets.UTF_8);
+			String id = "file-" + this.ids.incrementAndGet();
+			// the lines of the uploaded JSONL are found between the multipart boundaries
+			StringBuilder jsonl = new StringBuilder();
+			for (String line : body.split("\r?\n")) {
+				if (line.startsWith("{")) {
+					jsonl.append(line).append('\n');
+				}
+			}
+			this.files.put(id, jsonl.toString().getBytes(StandardCharsets.UTF_8));
+			respond(exchange, 200, Map.of("id", id, "object", "file", "purpose", "batch"));
+			return;
+		}
+		if (this.failingDownloads.contains(this.downloads.incrementAndGet())) {
+			respond(exchange, 500, Map.of("error", Map.of("message", "server error")));
+			return;
+		}
+		String id = path.substring("/v1/files/".length(), path.length() - "/content".length());
+		byte[] content = this.files.get(id);
+		exchange.sendResponseHeaders(200, content.length);
+		try (OutputStream body = exchange.getResponseBody()) {
+			body.write(content);
+		}
+	}
+
+	private void batches(HttpExchange exchange) throws IOException {
+		if ("POST".equals(exchange.getRequestMethod())) {
+			JsonNode request = this.objectMapper.readTree(exchange.getRequestBody());
+			String id = "batch-" + this.ids.incrementAndGet();
+			this.batches.put(id, request.path("input_file_id").asText());
+			this.retrievals.put(id, new AtomicInteger());
+			respond(exchange, 200, Map.of("id", id, "status", "validating"));
+			return;
+		}
+		String id = exchange.getRequestURI().getPath().substring("/v1/batches/".length());
+		if (this.retrievals.get(id).getAndIncrement() == 0) {
+			respond(exchange, 200, Map.of("id", id, "status", "in_progress"));
+			return;
+		}
+		Map<String, String> completed = this.completed.get(id);
+		if (completed != null) {
+			respond(exchange, 200, completed);
+			return;
+		}
+		StringBuilder output = new StringBuilder();
+		StringBuilder error = new StringBuilder();
+		String input = new String(this.files.get(this.batches.get(id)), StandardCharsets.UTF_8);
+		for (String line : input.split("\n")) {
+			JsonNode request = this.objectMapper.readTree(line);
+			synchronized (this) {
+				this.requests.add(request);
+			}
+			String customId = request.path("custom_id").asText();
+			if (this.failing.contains(customId)) {
+				error
+					.append(this.objectMapper.writeValueAsString(Map.of("custom_id", customId, "response",
+							Map.of("status_code", 500), "error", Map.of("message", "server error"))))
+					.append('\n');
+			}
+			else {
+				String user = request.at("/body/messages/1/content").asText();
+				output
+					.append(this.objectMapper.writeValueAsString(Map.of("custom_id", customId, "response",
+							Map.of("status_code", 200, "body",
+									Map.of("choices", List.of(Map.of("message", Map.of("content", user))))))))
+					.append('\n');
+			}
+		}
+		String outputFileId = "file-" + this.ids.incrementAndGet();
+		this.files.put(outputFileId, output.toString().getBytes(StandardCharsets.UTF_8));
+		String errorFileId = "file-" + this.ids.incrementAndGet();
+		this.files.put(errorFileId, error.toString().getBytes(StandardCharsets.UTF_8));
+		completed = Map.of("id", id, "status", "completed", "output_file_id", outputFileId, "error_file_id",
+				errorFileId);
+		this.completed.put(id, completed);
+		respond(exchange, 200, completed);
+	}
+
+	private void respond(HttpExchange exchange, int status, Object body) throws IOException {
+		byte[] json = this.objectMapper.writeValueAsBytes(body);
+		exchange.getResponseHeaders().set("Content-Type", "application/json");
+		exchange.sendResponseHeaders(status, json.length);
+		try (OutputStream out = exchange.getResponseBody()) {
+			out.write(json);
+		}
+	}
+
+	@Override
+	public void close() {
+		this.server.stop(0);
+	}
+
+}
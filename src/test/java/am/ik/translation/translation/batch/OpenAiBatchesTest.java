@@ -0,0 +1,150 @@
+package am.ik.translation.translation.batch;
+
+import java.time.Duration;
+import java.time.OffsetDateTime;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import am.ik.translation.entry.Author;
+import am.ik.translation.entry.Entry;
+import am.ik.translation.entry.EntryProps;
+import am.ik.translation.entry.FrontMatter;
+import am.ik.translation.github.GithubProps;
+import am.ik.translation.github.GithubPublisher;
+import am.ik.translation.resilience.TestDownstreams;
+import am.ik.translation.translation.EchoChatModel;
+import am.ik.translation.translation.EntryCache;
+import am.ik.translation.translation.Glossary;
+import am.ik.translation.translation.PreviousTranslations;
+import am.ik.translation.translation.TestTranslationProps;
+import am.ik.translation.translation.TranslationMemory;
+import am.ik.translation.translation.TranslationMetrics;
+import am.ik.translation.translation.TranslationProps;
+import am.ik.translation.translation.TranslationPropsBuilder;
+import am.ik.translation.translation.TranslationService;
+import am.ik.translation.translation.ratelimit.RateLimiter;
+import am.ik.translation.translation.routing.ModelRouter;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import org.springframework.ai.chat.client.ChatClient;
+import org.springframework.util.unit.DataSize;
+import org.springframework.web.client.RestClient;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class OpenAiBatchesTest {
+
+	static final String CONTENT = """
+			## First
+
+			First paragraph with `code`.
+
+			## Second
+
+			Second paragraph.
+			""";
+
+	EchoChatModel chatModel = new EchoChatModel();
+
+	OpenAiBatchStubServer server;
+
+	OpenAiBatches openAiBatches;
+
+	@BeforeEach
+	void init() throws Exception {
+		this.server = new OpenAiBatchStubServer(Set.of("1-1"));
+		TranslationProps props = TranslationPropsBuilder.from(TestTranslationProps.defaults())
+			.chunkSize(40)
+			.memory(new TranslationProps.Memory(DataSize.ofBytes(0), null))
+			.incremental(false)
+			.batch(new TranslationProps.Batch(4, null, TranslationProps.Batch.Mode.OPENAI, Duration.ofMillis(50), null))
+			.build();
+		GithubProps githubProps = new GithubProps("http://localhost", "token", "secret");
+		TranslationMetrics metrics = new TranslationMetrics(new SimpleMeterRegistry());
+		TranslationService translationService = new TranslationService(RestClient.builder(), githubProps,
+				new EntryCache(RestClient.builder(),
+						new EntryProps("http://localhost", new EntryProps.Cache(100, Duration.ZERO, Duration.ZERO)),
+						metrics),
+				ModelRouter
+					.single(new ModelRouter.Target("echo", ChatClient.create(this.chatModel), new RateLimiter(props))),
+				props, new TranslationMemory(props, new ObjectMapper()),
+				new GithubPublisher(RestClient.builder(), githubProps),
+				new PreviousTranslations(RestClient.builder(), githubProps), new Glossary(List.of()), metrics,
+				TestDownstreams.create());
+		OpenAiBatchClient client = new OpenAiBatchClient(RestClient.builder(), this.server.baseUrl(), "key",
+				"gpt-batch", new ObjectMapper());
+		this.openAiBatches = new OpenAiBatches(client, translationService, props);
+		this.openAiBatches.start();
+	}
+
+	@AfterEach
+	void destroy() {
+		this.openAiBatches.stop();
+		this.server.close();
+	}
+
+	static Entry entry(long entryId) {
+		OffsetDateTime date = OffsetDateTime.parse("2025-01-01T00:00:00Z");
+		return new Entry(entryId, new FrontMatter("Title", "Summary", List.of(), List.of()), CONTENT,
+				new Author("making", date), new Author("making", date.plusDays(1)));
+	}
+
+	@Test
+	void translateEntriesInBatch() throws Exception {
+		CompletableFuture<List<TranslationService.Translated>> translated = new CompletableFuture<>();
+		CompletableFuture<List<Long>> failed = new CompletableFuture<>();
+		this.openAiBatches.submit("batch", List.of(entry(100L), entry(101L)), (t, f) -> {
+			translated.complete(t);
+			failed.complete(f);
+		});
+		assertThat(translated.get(10, TimeUnit.SECONDS)).singleElement().satisfies(t -> {
+			assertThat(t.entry().entryId()).isEqualTo(100L);
+			assertThat(t.entry().frontMatter().title()).isEqualTo("Title");
+			assertThat(t.entry().content()).endsWith(CONTENT.trim());
+			assertThat(t.model()).isEqualTo("gpt-batch");
+		});
+		// the second chunk of the second entry failed
+		assertThat(failed.get()).containsExactly(101L);
+		assertThat(this.server.requests()).hasSize(4)
+			.allSatisfy(request -> assertThat(request.at("/body/model").asText()).isEqualTo("gpt-batch"));
+		assertThat(this.chatModel.prompts()).isEmpty();
+	}
+
+	@Test
+	void retryFailedDownloadOnNextPoll() throws Exception {
+		// the output file fails on the first poll, and the error file on the second after
+		// the output file was completed
+		this.server.failDownloads(1, 3);
+		AtomicInteger callbacks = new AtomicInteger();
+		CompletableFuture<List<TranslationService.Translated>> translated = new CompletableFuture<>();
+		CompletableFuture<List<Long>> failed = new CompletableFuture<>();
+		this.openAiBatches.submit("batch", List.of(entry(100L), entry(101L)), (t, f) -> {
+			callbacks.incrementAndGet();
+			translated.complete(t);
+			failed.complete(f);
+		});
+		assertThat(translated.get(10, TimeUnit.SECONDS)).singleElement()
+			.satisfies(t -> assertThat(t.entry().content()).endsWith(CONTENT.trim()));
+		assertThat(failed.get()).containsExactly(101L);
+		// the finished batch is not polled again
+		Thread.sleep(200);
+		assertThat(callbacks).hasValue(1);
+		assertThat(this.chatModel.prompts()).isEmpty();
+	}
+
+	@Test
+	void completeImmediatelyWithoutEntries() {
+		CompletableFuture<List<TranslationService.Translated>> translated = new CompletableFuture<>();
+		this.openAiBatches.submit("batch", List.of(), (t, f) -> translated.complete(t));
+		assertThat(translated.getNow(null)).isEmpty();
+		assertThat(this.server.requests()).isEmpty();
+	}
+
+}
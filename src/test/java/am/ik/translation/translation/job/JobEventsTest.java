@@ -0,0 +1,62 @@
+package am.ik.translation.translation.job;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.locks.LockSupport;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class JobEventsTest {
+
+	@Test
+	void readFromCursor() {
+		JobEvents events = new JobEvents();
+		events.publishProgress("job-1", 1L, 10, 0, 2);
+		events.publishProgress("job-1", 1L, 20, 1, 2);
+		List<JobEvent> read = new ArrayList<>();
+		long cursor = events.read(events.oldest(), read::add);
+		assertThat(cursor).isEqualTo(2);
+		assertThat(read).extracting(JobEvent::tokens).containsExactly(10L, 20L);
+		events.publishProgress("job-1", 1L, 30, 2, 2);
+		read.clear();
+		assertThat(events.read(cursor, read::add)).isEqualTo(3);
+		assertThat(read).extracting(JobEvent::tokens).containsExactly(30L);
+	}
+
+	@Test
+	void skipOverwrittenEvents() {
+		JobEvents events = new JobEvents();
+		for (int i = 0; i < JobEvents.CAPACITY + 10; i++) {
+			events.publishProgress("job-1", 1L, i, 0, 1);
+		}
+		List<JobEvent> read = new ArrayList<>();
+		long cursor = events.read(0, read::add);
+		assertThat(cursor).isEqualTo(JobEvents.CAPACITY + 10);
+		assertThat(read).hasSize(JobEvents.CAPACITY);
+		assertThat(read.getFirst().sequence()).isEqualTo(10);
+		assertThat(events.oldest()).isEqualTo(10);
+	}
+
+	@Test
+	void wakeUpReadersOfJob() throws Exception {
+		JobEvents events = new JobEvents();
+		CountDownLatch parking = new CountDownLatch(1);
+		Thread reader = Thread.ofVirtual().unstarted(() -> {
+			parking.countDown();
+			LockSupport.park();
+		});
+		events.wakeUp("job-1", reader);
+		reader.start();
+		parking.await();
+		events.publishProgress("job-2", 2L, 10, 0, 1);
+		assertThat(reader.join(Duration.ofMillis(200))).isFalse();
+		events.publishProgress("job-1", 1L, 10, 0, 1);
+		assertThat(reader.join(Duration.ofSeconds(5))).isTrue();
+		events.stopWakingUp("job-1", reader);
+	}
+
+}
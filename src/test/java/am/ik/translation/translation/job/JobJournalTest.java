@@ -0,0 +1,46 @@
+package am.ik.translation.translation.job;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.json.JsonMapper;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class JobJournalTest {
+
+	ObjectMapper objectMapper = JsonMapper.builder().findAndAddModules().build();
+
+	@Test
+	void compactWhenGrowingPastThreshold(@TempDir Path directory) throws Exception {
+		Path file = directory.resolve("jobs.journal");
+		try (JobJournal journal = new JobJournal(file, this.objectMapper, false, 4096)) {
+			assertThat(journal.replay()).isEmpty();
+			Instant now = Instant.now();
+			TranslationJob unfinished = new TranslationJob("unfinished", 0L, 0, JobState.QUEUED, 0, now, now, null,
+					null, Map.of(), List.of());
+			journal.append(unfinished);
+			for (int i = 0; i < 100; i++) {
+				TranslationJob job = new TranslationJob("job-" + i, i, i, JobState.QUEUED, 0, now, now, null, null,
+						Map.of(), List.of());
+				journal.append(job);
+				journal.append(job.transition(JobState.TRANSLATING, null));
+				journal.append(job.transition(JobState.PR_CREATED, "https://github.com/making/ik.am_en/pull/" + i));
+				assertThat(journal.size()).isLessThanOrEqualTo(4096);
+				assertThat(Files.size(file)).isEqualTo(journal.size());
+			}
+			assertThat(Files.readAllLines(file)).hasSizeLessThan(100);
+		}
+		try (JobJournal journal = new JobJournal(file, this.objectMapper, false, 4096)) {
+			assertThat(journal.replay()).extracting(TranslationJob::jobId).containsExactly("unfinished");
+			assertThat(Files.readAllLines(file)).hasSize(1);
+		}
+	}
+
+}
@@ -0,0 +1,156 @@
+package am.ik.translation.translation.job;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+import am.ik.translation.translation.TestTranslationProps;
+import am.ik.translation.translation.TranslationProps;
+import am.ik.translation.translation.TranslationPropsBuilder;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.json.JsonMapper;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import org.springframework.util.unit.DataSize;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class TranslationJobQueueTest {
+
+	ObjectMapper objectMapper = JsonMapper.builder().findAndAddModules().build();
+
+	TranslationProps props(Path journalFile) {
+		return TranslationPropsBuilder.from(TestTranslationProps.defaults())
+			.job(new TranslationProps.Job(journalFile, 1, 3, Duration.ofSeconds(30), false, DataSize.ofMegabytes(16)))
+			.build();
+	}
+
+	@Test
+	void resumeUnfinishedJobsAfterRestart(@TempDir Path directory) throws Exception {
+		Path journalFile = directory.resolve("jobs.journal");
+		TranslationJobQueue queue = new TranslationJobQueue(props(journalFile), this.objectMapper, new JobEvents());
+		TranslationJob finished = queue.enqueue(1L, 10).job();
+		TranslationJob inFlight = queue.enqueue(2L, 20).job();
+		queue.enqueue(3L, 30);
+		queue.transition(queue.take(), JobState.PR_CREATED, "https://github.com/making/ik.am_en/pull/1");
+		queue.transition(queue.take(), JobState.TRANSLATING, null);
+		// crash without closing the journal
+		TranslationJobQueue restarted = new TranslationJobQueue(props(journalFile), this.objectMapper, new JobEvents());
+		assertThat(restarted.jobs()).extracting(TranslationJob::entryId).containsExactlyInAnyOrder(2L, 3L);
+		assertThat(restarted.jobs()).allMatch(job -> job.state() == JobState.QUEUED);
+		assertThat(restarted.jobs()).extracting(TranslationJob::jobId)
+			.doesNotContain(finished.jobId())
+			.contains(inFlight.jobId());
+		// the journal is compacted
+		assertThat(Files.readAllLines(journalFile)).hasSize(2 + 1);
+		queue.destroy();
+		restarted.destroy();
+	}
+
+	@Test
+	void coalesceRequestsForTheSameEntry(@TempDir Path directory) throws Exception {
+		TranslationJobQueue queue = new TranslationJobQueue(props(directory.resolve("jobs.journal")), this.objectMapper,
+				new JobEvents());
+		TranslationJobQueue.Enqueued first = queue.enqueue(1L, 10);
+		TranslationJobQueue.Enqueued second = queue.enqueue(1L, 11);
+		assertThat(first.coalesced()).isFalse();
+		assertThat(second.coalesced()).isTrue();
+		assertThat(second.job().jobId()).isEqualTo(first.job().jobId());
+		assertThat(queue.jobs()).hasSize(1);
+		queue.transition(queue.take(), JobState.PR_CREATED, null);
+		TranslationJobQueue.Enqueued third = queue.enqueue(1L, 12);
+		assertThat(third.coalesced()).isFalse();
+		assertThat(third.job().jobId()).isNotEqualTo(first.job().jobId());
+		queue.destroy();
+	}
+
+	@Test
+	void queueDuplicatesToCloseAndResumeThemAfterRestart(@TempDir Path directory) throws Exception {
+		Path journalFile = directory.resolve("jobs.journal");
+		TranslationJobQueue queue = new TranslationJobQueue(props(journalFile), this.objectMapper, new JobEvents());
+		TranslationJob job = queue.enqueue(1L, 10).job();
+		queue.enqueue(1L, 11);
+		queue.enqueue(1L, 12);
+		// neither the issue of the job nor a redelivered duplicate is closed
+		queue.enqueue(1L, 10);
+		queue.enqueue(1L, 11);
+		// the snapshot taken before the duplicates keeps them when it transitions
+		queue.transition(queue.take(), JobState.TRANSLATING, null);
+		assertThat(queue.job(job.jobId()).duplicates()).containsExactly(11, 12);
+		TranslationJobQueue.Duplicate duplicate = queue.takeDuplicate();
+		assertThat(duplicate.issueNumber()).isIn(11, 12);
+		assertThat(duplicate.originalIssueNumber()).isEqualTo(10);
+		queue.removeDuplicate(duplicate);
+		int remaining = duplicate.issueNumber() == 11 ? 12 : 11;
+		// crash before closing the other one
+		TranslationJobQueue restarted = new TranslationJobQueue(props(journalFile), this.objectMapper, new JobEvents());
+		assertThat(restarted.job(job.jobId()).duplicates()).containsExactly(remaining);
+		assertThat(restarted.takeDuplicate().issueNumber()).isEqualTo(remaining);
+		queue.destroy();
+		restarted.destroy();
+	}
+
+	@Test
+	void journalDuplicatesOfConcurrentRequestsAfterTheirJob(@TempDir Path directory) throws Exception {
+		Path journalFile = directory.resolve("jobs.journal");
+		TranslationJobQueue queue = new TranslationJobQueue(props(journalFile), this.objectMapper, new JobEvents());
+		List<Thread> threads = new ArrayList<>();
+		CountDownLatch start = new CountDownLatch(1);
+		for (int i = 0; i < 16; i++) {
+			int issueNumber = 10 + i;
+			threads.add(Thread.ofVirtual().start(() -> {
+				try {
+					start.await();
+				}
+				catch (InterruptedException e) {
+					throw new IllegalStateException(e);
+				}
+				queue.enqueue(1L, issueNumber);
+			}));
+		}
+		start.countDown();
+		for (Thread thread : threads) {
+			thread.join();
+		}
+		TranslationJob job = queue.jobOfEntry(1L);
+		assertThat(job.duplicates()).hasSize(15);
+		// crash without closing the journal
+		TranslationJobQueue restarted = new TranslationJobQueue(props(journalFile), this.objectMapper, new JobEvents());
+		assertThat(restarted.jobs()).hasSize(1);
+		assertThat(restarted.job(job.jobId()).duplicates()).containsExactlyInAnyOrderElementsOf(job.duplicates());
+		queue.destroy();
+		restarted.destroy();
+	}
+
+	@Test
+	void retryAfterDelay(@TempDir Path directory) throws Exception {
+		TranslationJobQueue queue = new TranslationJobQueue(props(directory.resolve("jobs.journal")), this.objectMapper,
+				new JobEvents());
+		TranslationJob job = queue.enqueue(1L, 10).job();
+		TranslationJob taken = queue.take();
+		long start = System.nanoTime();
+		TranslationJob retried = queue.retry(taken, "error", Duration.ofMillis(200));
+		assertThat(retried.attempts()).isEqualTo(1);
+		assertThat(queue.take().jobId()).isEqualTo(job.jobId());
+		assertThat(Duration.ofNanos(System.nanoTime() - start)).isGreaterThanOrEqualTo(Duration.ofMillis(200));
+		queue.destroy();
+	}
+
+	@Test
+	void doNotQueueJobThatCannotBeJournaled(@TempDir Path directory) throws Exception {
+		TranslationJobQueue queue = new TranslationJobQueue(props(directory.resolve("jobs.journal")), this.objectMapper,
+				new JobEvents());
+		// appending to a closed journal fails
+		queue.destroy();
+		assertThatThrownBy(() -> queue.enqueue(1L, 10)).isInstanceOf(IllegalStateException.class);
+		assertThat(queue.jobs()).isEmpty();
+		assertThat(queue.jobOfEntry(1L)).isNull();
+		assertThat(queue.queued()).isZero();
+	}
+
+}
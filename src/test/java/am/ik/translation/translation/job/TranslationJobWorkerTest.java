@@ -0,0 +1,166 @@
+package am.ik.translation.translation.job;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.OffsetDateTime;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import am.ik.translation.entry.Author;
+import am.ik.translation.entry.Entry;
+import am.ik.translation.entry.FrontMatter;
+import am.ik.translation.github.CreatePullResponse;
+import am.ik.translation.translation.TestTranslationProps;
+import am.ik.translation.translation.TranslationMetrics;
+import am.ik.translation.translation.TranslationProps;
+import am.ik.translation.translation.TranslationPropsBuilder;
+import am.ik.translation.translation.TranslationService;
+import am.ik.translation.translation.scheduler.FairScheduler;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.json.JsonMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import org.springframework.util.unit.DataSize;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+
+class TranslationJobWorkerTest {
+
+	static final TranslationProps.Language EN = new TranslationProps.Language("en", "English", "making/ik.am_en", 8);
+
+	static final TranslationProps.Language ZH = new TranslationProps.Language("zh", "Chinese", "making/ik.am_zh", 8);
+
+	static final TranslationProps.Language KO = new TranslationProps.Language("ko", "Korean", "making/ik.am_ko", 8);
+
+	ObjectMapper objectMapper = JsonMapper.builder().findAndAddModules().build();
+
+	TranslationService translationService = mock(TranslationService.class);
+
+	Entry entry = new Entry(100L, new FrontMatter("タイトル", "要約", List.of(), List.of()), "こんにちは",
+			new Author("making", OffsetDateTime.parse("2025-01-01T00:00:00Z")),
+			new Author("making", OffsetDateTime.parse("2025-01-01T00:00:00Z")));
+
+	TranslationProps props(Path directory) {
+		return TranslationPropsBuilder.from(TestTranslationProps.defaults())
+			.job(new TranslationProps.Job(directory.resolve("jobs.journal"), 0, 3, Duration.ofSeconds(30), false,
+					DataSize.ofMegabytes(16)))
+			.languages(List.of(EN, ZH, KO))
+			.build();
+	}
+
+	TranslationJobWorker worker(TranslationProps props, TranslationJobQueue queue) {
+		return new TranslationJobWorker(queue, this.translationService, props,
+				new TranslationMetrics(new SimpleMeterRegistry()), new FairScheduler(props, new SimpleMeterRegistry()),
+				new JobEvents());
+	}
+
+	TranslationService.Translated translated(TranslationProps.Language language) {
+		return new TranslationService.Translated(this.entry, "gpt-4.1-mini", language);
+	}
+
+	TranslationService.Outcome succeeded(TranslationProps.Language language) {
+		return new TranslationService.Outcome(language, translated(language), null);
+	}
+
+	@Test
+	void publishPrimaryFirstThenOthersConcurrently(@TempDir Path directory) throws Exception {
+		TranslationProps props = props(directory);
+		TranslationJobQueue queue = new TranslationJobQueue(props, this.objectMapper, new JobEvents());
+		TranslationJob job = queue.enqueue(100L, 10).job();
+		given(this.translationService.fetchEntry(100L)).willReturn(this.entry);
+		given(this.translationService.translate(eq(this.entry), eq(List.of(EN, ZH, KO)), any()))
+			.willReturn(List.of(succeeded(EN), succeeded(ZH), succeeded(KO)));
+		List<String> order = new CopyOnWriteArrayList<>();
+		// the other languages wait for each other, so they are published concurrently
+		CountDownLatch others = new CountDownLatch(2);
+		given(this.translationService.sendPullRequest(any(), eq(10), eq(job.jobId()))).willAnswer(invocation -> {
+			TranslationService.Translated translated = invocation.getArgument(0);
+			String code = translated.language().code();
+			order.add(code);
+			if (!code.equals("en")) {
+				others.countDown();
+				assertThat(others.await(5, TimeUnit.SECONDS)).isTrue();
+			}
+			if (code.equals("ko")) {
+				throw new IllegalStateException("Unprocessable Entity");
+			}
+			return new CreatePullResponse("https://github.com/making/ik.am_%s/pull/1".formatted(code));
+		});
+		worker(props, queue).process(queue.take());
+		assertThat(order.getFirst()).isEqualTo("en");
+		assertThat(order).containsExactlyInAnyOrder("en", "zh", "ko");
+		TranslationJob finished = queue.job(job.jobId());
+		assertThat(finished.state()).isEqualTo(JobState.PR_CREATED);
+		assertThat(finished.message()).isEqualTo("https://github.com/making/ik.am_en/pull/1, "
+				+ "https://github.com/making/ik.am_zh/pull/1, ko failed: Unprocessable Entity");
+		assertThat(finished.pulls()).containsOnlyKeys("en", "zh");
+		assertThat(finished.model()).isEqualTo("en: gpt-4.1-mini; zh: gpt-4.1-mini; ko: gpt-4.1-mini");
+		verify(this.translationService).sendComment(10);
+		queue.destroy();
+	}
+
+	@Test
+	void publishOthersWhenTranslationOfOneFails(@TempDir Path directory) throws Exception {
+		TranslationProps props = props(directory);
+		TranslationJobQueue queue = new TranslationJobQueue(props, this.objectMapper, new JobEvents());
+		TranslationJob job = queue.enqueue(100L, 10).job();
+		given(this.translationService.fetchEntry(100L)).willReturn(this.entry);
+		given(this.translationService.translate(eq(this.entry), eq(List.of(EN, ZH, KO)), any()))
+			.willReturn(List.of(succeeded(EN), succeeded(ZH),
+					new TranslationService.Outcome(KO, null, new IllegalStateException("Too Many Requests"))));
+		given(this.translationService.sendPullRequest(any(), eq(10), eq(job.jobId()))).willAnswer(invocation -> {
+			TranslationService.Translated translated = invocation.getArgument(0);
+			return new CreatePullResponse(
+					"https://github.com/making/ik.am_%s/pull/1".formatted(translated.language().code()));
+		});
+		worker(props, queue).process(queue.take());
+		TranslationJob finished = queue.job(job.jobId());
+		assertThat(finished.state()).isEqualTo(JobState.PR_CREATED);
+		assertThat(finished.message()).isEqualTo("https://github.com/making/ik.am_en/pull/1, "
+				+ "https://github.com/making/ik.am_zh/pull/1, ko failed: Too Many Requests");
+		assertThat(finished.pulls()).containsOnlyKeys("en", "zh");
+		assertThat(finished.model()).isEqualTo("en: gpt-4.1-mini; zh: gpt-4.1-mini");
+		verify(this.translationService, never()).sendPullRequest(eq(translated(KO)), anyInt(), anyString());
+		queue.destroy();
+	}
+
+	@Test
+	void skipLanguagesPublishedBeforeRestart(@TempDir Path directory) throws Exception {
+		TranslationProps props = props(directory);
+		TranslationJobQueue queue = new TranslationJobQueue(props, this.objectMapper, new JobEvents());
+		TranslationJob job = queue.enqueue(100L, 10).job();
+		queue.transition(queue.take().withModel("gpt-4.1-mini"), JobState.PUBLISHING, null);
+		queue.recordPull(job.jobId(), "en", "https://github.com/making/ik.am_en/pull/1");
+		queue.recordPull(job.jobId(), "ko", "https://github.com/making/ik.am_ko/pull/1");
+		// crash while publishing zh
+		TranslationJobQueue restarted = new TranslationJobQueue(props, this.objectMapper, new JobEvents());
+		given(this.translationService.fetchEntry(100L)).willReturn(this.entry);
+		given(this.translationService.translate(eq(this.entry), eq(List.of(ZH)), any()))
+			.willReturn(List.of(succeeded(ZH)));
+		given(this.translationService.sendPullRequest(any(), eq(10), eq(job.jobId())))
+			.willReturn(new CreatePullResponse("https://github.com/making/ik.am_zh/pull/1"));
+		worker(props, restarted).process(restarted.take());
+		TranslationJob finished = restarted.job(job.jobId());
+		assertThat(finished.state()).isEqualTo(JobState.PR_CREATED);
+		assertThat(finished.message()).isEqualTo("https://github.com/making/ik.am_en/pull/1, "
+				+ "https://github.com/making/ik.am_zh/pull/1, https://github.com/making/ik.am_ko/pull/1");
+		verify(this.translationService).sendPullRequest(translated(ZH), 10, job.jobId());
+		verify(this.translationService, never()).sendPullRequest(eq(translated(EN)), anyInt(), anyString());
+		verify(this.translationService, never()).sendComment(anyInt());
+		queue.destroy();
+		restarted.destroy();
+	}
+
+}
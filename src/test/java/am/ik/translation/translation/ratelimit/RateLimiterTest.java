@@ -0,0 +1,85 @@
+package am.ik.translation.translation.ratelimit;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import am.ik.translation.translation.TestTranslationProps;
+import am.ik.translation.translation.TranslationProps;
+import am.ik.translation.translation.TranslationPropsBuilder;
+import org.junit.jupiter.api.Test;
+
+import org.springframework.http.HttpHeaders;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class RateLimiterTest {
+
+	static TranslationProps props(int concurrency, int requestsPerMinute, int tokensPerMinute) {
+		return TranslationPropsBuilder.from(TestTranslationProps.defaults())
+			.chunkConcurrency(concurrency)
+			.rateLimit(new TranslationProps.RateLimit(requestsPerMinute, tokensPerMinute))
+			.build();
+	}
+
+	@Test
+	void blockWhenConcurrencyLimitIsReached() throws Exception {
+		RateLimiter rateLimiter = new RateLimiter(props(1, 600, 100_000));
+		RateLimiter.Permit permit = rateLimiter.acquire(100);
+		CompletableFuture<RateLimiter.Permit> second = CompletableFuture.supplyAsync(() -> {
+			try {
+				return rateLimiter.acquire(100);
+			}
+			catch (InterruptedException e) {
+				throw new IllegalStateException(e);
+			}
+		});
+		Thread.sleep(100);
+		assertThat(second).isNotDone();
+		assertThat(rateLimiter.waiting()).isEqualTo(1);
+		permit.release(true, 100);
+		assertThat(second.get(1, TimeUnit.SECONDS)).isNotNull();
+	}
+
+	@Test
+	void refundUnusedTokens() throws Exception {
+		RateLimiter rateLimiter = new RateLimiter(props(4, 600, 1_000));
+		RateLimiter.Permit permit = rateLimiter.acquire(800);
+		assertThat(rateLimiter.availableTokens()).isLessThan(201);
+		permit.release(true, 300);
+		assertThat(rateLimiter.availableTokens()).isGreaterThanOrEqualTo(700);
+	}
+
+	@Test
+	void halveConcurrencyLimitOnTooManyRequests() throws Exception {
+		RateLimiter rateLimiter = new RateLimiter(props(8, 600, 100_000));
+		HttpHeaders headers = new HttpHeaders();
+		headers.add("x-ratelimit-reset-requests", "200ms");
+		rateLimiter.update(429, headers);
+		assertThat(rateLimiter.concurrencyLimit()).isEqualTo(4);
+		long start = System.nanoTime();
+		RateLimiter.Permit permit = rateLimiter.acquire(100);
+		assertThat(Duration.ofNanos(System.nanoTime() - start)).isGreaterThanOrEqualTo(Duration.ofMillis(150));
+		permit.release(true, 100);
+		assertThat(rateLimiter.concurrencyLimit()).isEqualTo(4.25);
+	}
+
+	@Test
+	void followRateLimitHeaders() {
+		RateLimiter rateLimiter = new RateLimiter(props(8, 600, 100_000));
+		HttpHeaders headers = new HttpHeaders();
+		headers.add("x-ratelimit-limit-tokens", "50000");
+		headers.add("x-ratelimit-remaining-tokens", "1000");
+		rateLimiter.update(200, headers);
+		assertThat(rateLimiter.availableTokens()).isBetween(1000.0, 1100.0);
+	}
+
+	@Test
+	void parseDuration() {
+		assertThat(RateLimiter.parseDuration("6m0s")).isEqualTo(Duration.ofMinutes(6));
+		assertThat(RateLimiter.parseDuration("1.5s")).isEqualTo(Duration.ofMillis(1500));
+		assertThat(RateLimiter.parseDuration("20ms")).isEqualTo(Duration.ofMillis(20));
+		assertThat(RateLimiter.parseDuration(null)).isZero();
+	}
+
+}
@@ -0,0 +1,177 @@
+package am.ik.translation.translation.scheduler;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import am.ik.translation.translation.TestTranslationProps;
+import am.ik.translation.translation.TranslationProps;
+import am.ik.translation.translation.TranslationPropsBuilder;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class FairSchedulerTest {
+
+	@Test
+	void runInOrderOfWeightedFinishTags() throws Exception {
+		SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+		FairScheduler scheduler = new FairScheduler(TranslationPropsBuilder.from(TestTranslationProps.defaults())
+			.scheduler(new TranslationProps.Scheduler(1,
+					Map.of(Priority.NEW, 8, Priority.UPDATE, 4, Priority.BACKFILL, 1)))
+			.build(), meterRegistry);
+		CountDownLatch blocker = new CountDownLatch(1);
+		List<String> order = new CopyOnWriteArrayList<>();
+		List<Thread> threads = new CopyOnWriteArrayList<>();
+		threads.add(Thread.ofVirtual().start(() -> scheduler.run(Priority.BACKFILL, 1, "running", () -> {
+			try {
+				blocker.await();
+			}
+			catch (InterruptedException e) {
+				throw new IllegalStateException(e);
+			}
+			return null;
+		})));
+		awaitState(scheduler, 1, 0);
+		String[] labels = { "backfill-1", "backfill-2", "backfill-3", "new", "update" };
+		Priority[] priorities = { Priority.BACKFILL, Priority.BACKFILL, Priority.BACKFILL, Priority.NEW,
+				Priority.UPDATE };
+		for (int i = 0; i < labels.length; i++) {
+			String label = labels[i];
+			Priority priority = priorities[i];
+			threads.add(Thread.ofVirtual().start(() -> scheduler.run(priority, 1000, label, () -> order.add(label))));
+			awaitState(scheduler, 1, i + 1);
+		}
+		assertThat(scheduler.snapshot().waiting()).extracting(FairScheduler.Ticket::label)
+			.containsExactly("new", "update", "backfill-1", "backfill-2", "backfill-3");
+		blocker.countDown();
+		for (Thread thread : threads) {
+			thread.join();
+		}
+		assertThat(order).containsExactly("new", "update", "backfill-1", "backfill-2", "backfill-3");
+		assertThat(scheduler.snapshot().running()).isEmpty();
+		assertThat(meterRegistry.get("translation.scheduler.wait").tag("priority", "backfill").timer().count())
+			.isEqualTo(4);
+		assertThat(meterRegistry.get("translation.scheduler.wait").tag("priority", "new").timer().count()).isEqualTo(1);
+		assertThat(meterRegistry.get("translation.scheduler.wait")
+			.tag("priority", "update")
+			.timer()
+			.max(TimeUnit.NANOSECONDS)).isPositive();
+	}
+
+	@Test
+	void runShortBeforeLongInSameClass() throws Exception {
+		FairScheduler scheduler = new FairScheduler(TranslationPropsBuilder.from(TestTranslationProps.defaults())
+			.scheduler(new TranslationProps.Scheduler(1, Map.of(Priority.BACKFILL, 1)))
+			.build(), new SimpleMeterRegistry());
+		CountDownLatch blocker = new CountDownLatch(1);
+		List<String> order = new CopyOnWriteArrayList<>();
+		List<Thread> threads = new CopyOnWriteArrayList<>();
+		threads.add(Thread.ofVirtual().start(() -> scheduler.run(Priority.BACKFILL, 1, "running", () -> {
+			try {
+				blocker.await();
+			}
+			catch (InterruptedException e) {
+				throw new IllegalStateException(e);
+			}
+			return null;
+		})));
+		awaitState(scheduler, 1, 0);
+		String[] labels = { "long", "short" };
+		long[] costs = { 10_000, 100 };
+		for (int i = 0; i < labels.length; i++) {
+			String label = labels[i];
+			long cost = costs[i];
+			Runnable task = () -> scheduler.run(Priority.BACKFILL, cost, label, () -> order.add(label));
+			threads.add(Thread.ofVirtual().start(task));
+			awaitState(scheduler, 1, i + 1);
+		}
+		blocker.countDown();
+		for (Thread thread : threads) {
+			thread.join();
+		}
+		assertThat(order).containsExactly("short", "long");
+	}
+
+	@Test
+	void runNewBetweenEntriesOfBackfillBatch() throws Exception {
+		FairScheduler scheduler = new FairScheduler(TranslationPropsBuilder.from(TestTranslationProps.defaults())
+			.scheduler(new TranslationProps.Scheduler(1, Map.of(Priority.NEW, 8, Priority.BACKFILL, 1)))
+			.build(), new SimpleMeterRegistry());
+		CountDownLatch blocker = new CountDownLatch(1);
+		List<String> order = new CopyOnWriteArrayList<>();
+		List<Thread> threads = new CopyOnWriteArrayList<>();
+		threads.add(Thread.ofVirtual().start(() -> scheduler.run(Priority.BACKFILL, 1, "running", () -> {
+			try {
+				blocker.await();
+			}
+			catch (InterruptedException e) {
+				throw new IllegalStateException(e);
+			}
+			return null;
+		})));
+		awaitState(scheduler, 1, 0);
+		for (int i = 0; i < 5; i++) {
+			String entry = "entry-" + i;
+			Runnable task = () -> scheduler.run(Priority.BACKFILL, 1000, "batch-1", () -> order.add(entry));
+			threads.add(Thread.ofVirtual().start(task));
+			awaitState(scheduler, 1, i + 1);
+		}
+		// tagged after the first entry of the batch, but before the rest of it
+		threads
+			.add(Thread.ofVirtual().start(() -> scheduler.run(Priority.NEW, 10_000, "job-1", () -> order.add("new"))));
+		awaitState(scheduler, 1, 6);
+		blocker.countDown();
+		for (Thread thread : threads) {
+			thread.join();
+		}
+		assertThat(order).containsExactly("entry-0", "new", "entry-1", "entry-2", "entry-3", "entry-4");
+	}
+
+	@Test
+	void rollBackTagOfInterruptedTicket() throws Exception {
+		FairScheduler scheduler = new FairScheduler(TranslationPropsBuilder.from(TestTranslationProps.defaults())
+			.scheduler(new TranslationProps.Scheduler(1, Map.of(Priority.BACKFILL, 1)))
+			.build(), new SimpleMeterRegistry());
+		CountDownLatch blocker = new CountDownLatch(1);
+		Thread running = Thread.ofVirtual().start(() -> scheduler.run(Priority.BACKFILL, 1, "running", () -> {
+			try {
+				blocker.await();
+			}
+			catch (InterruptedException e) {
+				throw new IllegalStateException(e);
+			}
+			return null;
+		}));
+		awaitState(scheduler, 1, 0);
+		Thread interrupted = Thread.ofVirtual().start(() -> {
+			try {
+				scheduler.run(Priority.BACKFILL, 1000, "job-1", () -> null);
+			}
+			catch (IllegalStateException ignored) {
+			}
+		});
+		awaitState(scheduler, 1, 1);
+		double finishTag = scheduler.snapshot().waiting().getFirst().finishTag();
+		interrupted.interrupt();
+		interrupted.join();
+		awaitState(scheduler, 1, 0);
+		Thread retried = Thread.ofVirtual().start(() -> scheduler.run(Priority.BACKFILL, 1000, "job-1", () -> null));
+		awaitState(scheduler, 1, 1);
+		// not queued behind the interrupted one
+		assertThat(scheduler.snapshot().waiting().getFirst().finishTag()).isEqualTo(finishTag);
+		blocker.countDown();
+		running.join();
+		retried.join();
+	}
+
+	static void awaitState(FairScheduler scheduler, int running, int waiting) throws InterruptedException {
+		while (scheduler.snapshot().running().size() != running || scheduler.snapshot().waiting().size() != waiting) {
+			Thread.sleep(10);
+		}
+	}
+
+}
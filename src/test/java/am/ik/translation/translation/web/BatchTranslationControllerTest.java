@@ -0,0 +1,151 @@
+package am.ik.translation.translation.web;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.stream.LongStream;
+
+import am.ik.translation.translation.TestTranslationProps;
+import am.ik.translation.translation.batch.Batch;
+import am.ik.translation.translation.batch.BatchState;
+import am.ik.translation.translation.batch.BatchTranslator;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.server.LocalServerPort;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.test.context.bean.override.mockito.MockitoBean;
+import org.springframework.web.client.RestClient;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT,
+		properties = { "github.webhook-secret=opensesami", "logging.logback.ecs-encoder.enabled=false",
+				"spring.ai.openai.api-key=dummy", "translation.job.workers=0",
+				"translation.job.journal-file=target/test-translation-jobs.journal",
+				"translation.batch.token=batchtoken" })
+class BatchTranslationControllerTest {
+
+	@MockitoBean
+	BatchTranslator batchTranslator;
+
+	@Autowired
+	RestClient.Builder restClientBuilder;
+
+	@LocalServerPort
+	int port;
+
+	RestClient restClient;
+
+	@BeforeEach
+	void init() {
+		if (this.restClient == null) {
+			this.restClient = this.restClientBuilder.baseUrl("http://localhost:%d".formatted(port))
+				.defaultStatusHandler(__ -> true, (req, res) -> {
+				})
+				.build();
+		}
+	}
+
+	Batch batch(List<Long> entryIds) {
+		return new Batch("batch-1", entryIds, BatchState.RUNNING, List.of(), List.of(), List.of(), null, Instant.now(),
+				Instant.now());
+	}
+
+	ResponseEntity<String> post(String authorization, String body) {
+		return this.restClient.post()
+			.uri("/batch")
+			.header(HttpHeaders.AUTHORIZATION, authorization)
+			.contentType(MediaType.APPLICATION_JSON)
+			.body(body)
+			.retrieve()
+			.toEntity(String.class);
+	}
+
+	@Test
+	void submitEntryIds() {
+		given(this.batchTranslator.submit(List.of(1L, 3L))).willReturn(batch(List.of(1L, 3L)));
+		ResponseEntity<String> response = post("Bearer batchtoken", """
+				{"entryIds": [1, 3, 1]}
+				""");
+		assertThat(response.getStatusCode()).isEqualTo(HttpStatus.ACCEPTED);
+		assertThat(response.getBody()).contains("\"batchId\":\"batch-1\"").contains("\"state\":\"RUNNING\"");
+		verify(this.batchTranslator).submit(List.of(1L, 3L));
+	}
+
+	@Test
+	void submitRange() {
+		List<Long> entryIds = LongStream.rangeClosed(1, 1000).boxed().toList();
+		given(this.batchTranslator.submit(entryIds)).willReturn(batch(entryIds));
+		ResponseEntity<String> response = post("Bearer batchtoken", """
+				{"from": 1, "to": 1000}
+				""");
+		assertThat(response.getStatusCode()).isEqualTo(HttpStatus.ACCEPTED);
+		verify(this.batchTranslator).submit(entryIds);
+	}
+
+	@Test
+	void rejectInvalidEntries() {
+		String tooMany = LongStream.rangeClosed(1, 1001)
+			.mapToObj(Long::toString)
+			.reduce((a, b) -> a + "," + b)
+			.orElseThrow();
+		for (String body : List.of("{}", "{\"entryIds\": []}", "{\"from\": 1}", "{\"from\": 2, \"to\": 1}",
+				"{\"from\": 1, \"to\": 1001}", "{\"entryIds\": [%s]}".formatted(tooMany))) {
+			ResponseEntity<String> response = post("Bearer batchtoken", body);
+			assertThat(response.getStatusCode()).as(body).isEqualTo(HttpStatus.BAD_REQUEST);
+			assertThat(response.getBody()).isEqualTo("Specify 1 to 1000 entries with entryIds or from and to");
+		}
+		verify(this.batchTranslator, never()).submit(any());
+	}
+
+	@Test
+	void rejectInvalidToken() {
+		for (String authorization : List.of("Bearer wrong", "batchtoken")) {
+			ResponseEntity<String> response = post(authorization, """
+					{"entryIds": [1]}
+					""");
+			assertThat(response.getStatusCode()).isEqualTo(HttpStatus.UNAUTHORIZED);
+		}
+		ResponseEntity<String> response = this.restClient.get().uri("/batch/batch-1").retrieve().toEntity(String.class);
+		assertThat(response.getStatusCode()).isEqualTo(HttpStatus.UNAUTHORIZED);
+		verify(this.batchTranslator, never()).submit(any());
+		verify(this.batchTranslator, never()).get(any());
+	}
+
+	@Test
+	void getBatch() {
+		given(this.batchTranslator.get("batch-1")).willReturn(batch(List.of(1L)));
+		ResponseEntity<String> response = this.restClient.get()
+			.uri("/batch/batch-1")
+			.header(HttpHeaders.AUTHORIZATION, "Bearer batchtoken")
+			.retrieve()
+			.toEntity(String.class);
+		assertThat(response.getStatusCode()).isEqualTo(HttpStatus.OK);
+		assertThat(response.getBody()).contains("\"batchId\":\"batch-1\"");
+		ResponseEntity<String> notFound = this.restClient.get()
+			.uri("/batch/batch-2")
+			.header(HttpHeaders.AUTHORIZATION, "Bearer batchtoken")
+			.retrieve()
+			.toEntity(String.class);
+		assertThat(notFound.getStatusCode()).isEqualTo(HttpStatus.NOT_FOUND);
+	}
+
+	@Test
+	void disabledWithoutToken() {
+		BatchTranslationController controller = new BatchTranslationController(mock(BatchTranslator.class),
+				TestTranslationProps.defaults());
+		assertThat(controller.batch("Bearer batchtoken", "batch-1").getStatusCode()).isEqualTo(HttpStatus.FORBIDDEN);
+		assertThat(controller.authorize(null).getStatusCode()).isEqualTo(HttpStatus.FORBIDDEN);
+	}
+
+}
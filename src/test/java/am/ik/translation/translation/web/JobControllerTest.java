@@ -0,0 +1,127 @@
+package am.ik.translation.translation.web;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+
+import am.ik.translation.translation.job.JobEvents;
+import am.ik.translation.translation.job.JobState;
+import am.ik.translation.translation.job.TranslationJob;
+import am.ik.translation.translation.job.TranslationJobQueue;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.server.LocalServerPort;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.test.context.bean.override.mockito.MockitoBean;
+import org.springframework.web.client.RestClient;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.BDDMockito.given;
+
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT,
+		properties = { "github.webhook-secret=opensesami", "logging.logback.ecs-encoder.enabled=false",
+				"spring.ai.openai.api-key=dummy", "translation.job.workers=0",
+				"translation.job.journal-file=target/test-translation-jobs.journal" })
+class JobControllerTest {
+
+	@MockitoBean
+	TranslationJobQueue jobQueue;
+
+	@Autowired
+	JobEvents jobEvents;
+
+	@Autowired
+	RestClient.Builder restClientBuilder;
+
+	@LocalServerPort
+	int port;
+
+	RestClient restClient;
+
+	@BeforeEach
+	void init() {
+		if (this.restClient == null) {
+			this.restClient = this.restClientBuilder.baseUrl("http://localhost:%d".formatted(port))
+				.defaultStatusHandler(__ -> true, (req, res) -> {
+				})
+				.build();
+		}
+	}
+
+	@Test
+	void job() {
+		given(this.jobQueue.jobOfEntry(787L)).willReturn(new TranslationJob("job-1", 787L, 1, JobState.TRANSLATING, 0,
+				Instant.now(), Instant.now(), null, null, Map.of(), List.of()));
+		ResponseEntity<String> response = this.restClient.get()
+			.uri("/entries/787/job")
+			.retrieve()
+			.toEntity(String.class);
+		assertThat(response.getStatusCode()).isEqualTo(HttpStatus.OK);
+		assertThat(response.getBody()).contains("\"jobId\":\"job-1\"").contains("\"state\":\"TRANSLATING\"");
+		ResponseEntity<String> notFound = this.restClient.get().uri("/jobs/job-2").retrieve().toEntity(String.class);
+		assertThat(notFound.getStatusCode()).isEqualTo(HttpStatus.NOT_FOUND);
+	}
+
+	@Test
+	void jobEvents() {
+		TranslationJob job = new TranslationJob("job-3", 788L, 1, JobState.TRANSLATING, 0, Instant.now(), Instant.now(),
+				null, null, Map.of(), List.of());
+		given(this.jobQueue.job("job-3")).willReturn(job);
+		this.jobEvents.publishState(job);
+		this.jobEvents.publishProgress("job-4", 789L, 10, 0, 1);
+		this.jobEvents.publishProgress("job-3", 788L, 50, 1, 2);
+		this.jobEvents.publishState(job.transition(JobState.PR_CREATED, "https://github.com/making/ik.am_en/pull/1"));
+		// the stream replays the buffered events and completes with the terminal state
+		ResponseEntity<String> response = this.restClient.get()
+			.uri("/jobs/job-3/events")
+			.accept(MediaType.TEXT_EVENT_STREAM)
+			.retrieve()
+			.toEntity(String.class);
+		assertThat(response.getStatusCode()).isEqualTo(HttpStatus.OK);
+		String body = response.getBody();
+		assertThat(body).contains("event:state", "event:progress", "\"tokens\":50", "\"chunksDone\":1",
+				"\"state\":\"PR_CREATED\"");
+		assertThat(body).doesNotContain("job-4");
+		assertThat(body.indexOf("\"tokens\":50")).isLessThan(body.indexOf("PR_CREATED"));
+	}
+
+	@Test
+	void entryEventsOfCurrentJob() {
+		TranslationJob earlier = new TranslationJob("job-5", 790L, 1, JobState.PR_CREATED, 0, Instant.now(),
+				Instant.now(), "https://github.com/making/ik.am_en/pull/2", null, Map.of(), List.of());
+		TranslationJob current = new TranslationJob("job-6", 790L, 2, JobState.TRANSLATING, 0, Instant.now(),
+				Instant.now(), null, null, Map.of(), List.of());
+		given(this.jobQueue.jobOfEntry(790L)).willReturn(current);
+		this.jobEvents.publishState(earlier);
+		this.jobEvents.publishState(current);
+		this.jobEvents.publishState(current.transition(JobState.FAILED, "error"));
+		// the terminal event of the earlier job does not complete the stream
+		ResponseEntity<String> response = this.restClient.get()
+			.uri("/entries/790/job/events")
+			.accept(MediaType.TEXT_EVENT_STREAM)
+			.retrieve()
+			.toEntity(String.class);
+		assertThat(response.getStatusCode()).isEqualTo(HttpStatus.OK);
+		assertThat(response.getBody()).contains("\"jobId\":\"job-6\"", "\"state\":\"FAILED\"").doesNotContain("job-5");
+	}
+
+	@Test
+	void completeEventsOfFinishedJob() {
+		// the events of the job have left the ring buffer
+		given(this.jobQueue.job("job-7")).willReturn(new TranslationJob("job-7", 791L, 1, JobState.PR_CREATED, 0,
+				Instant.now(), Instant.now(), "https://github.com/making/ik.am_en/pull/3", null, Map.of(), List.of()));
+		ResponseEntity<String> response = this.restClient.get()
+			.uri("/jobs/job-7/events")
+			.accept(MediaType.TEXT_EVENT_STREAM)
+			.retrieve()
+			.toEntity(String.class);
+		assertThat(response.getStatusCode()).isEqualTo(HttpStatus.OK);
+		assertThat(response.getBody()).isNullOrEmpty();
+	}
+
+}
@@ -1,9 +1,17 @@
 package am.ik.translation.translation.web;
 
+import java.io.IOException;
 import java.io.InputStream;
+import java.io.UncheckedIOException;
 import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
 
 import am.ik.translation.translation.TranslationService;
+import am.ik.translation.translation.job.JobState;
+import am.ik.translation.translation.job.TranslationJob;
+import am.ik.translation.translation.job.TranslationJobQueue;
 import am.ik.webhook.WebhookHttpHeaders;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
@@ -22,14 +30,20 @@ import org.springframework.web.client.RestClient;
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.mockito.ArgumentMatchers.anyInt;
 import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.BDDMockito.given;
 import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 
 @SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT,
 		properties = { "github.webhook-secret=opensesami", "logging.logback.ecs-encoder.enabled=false",
-				"spring.ai.openai.api-key=dummy" })
+				"spring.ai.openai.api-key=dummy", "translation.job.workers=0",
+				"translation.job.journal-file=target/test-translation-jobs.journal" })
 class TranslationControllerTest {
 
+	@MockitoBean
+	TranslationJobQueue jobQueue;
+
 	@MockitoBean
 	TranslationService translationService;
 
@@ -54,6 +68,8 @@ class TranslationControllerTest {
 
 	@Test
 	void webhookOK() throws Exception {
+		given(this.jobQueue.enqueue(787L, 1)).willReturn(new TranslationJobQueue.Enqueued(new TranslationJob("job-1",
+				787L, 1, JobState.QUEUED, 0, Instant.now(), Instant.now(), null, null, Map.of(), List.of()), false));
 		try (InputStream stream = new ClassPathResource("test-payload.json").getInputStream()) {
 			String requestBody = StreamUtils.copyToString(stream, StandardCharsets.UTF_8);
 			ResponseEntity<String> response = this.restClient.post()
@@ -66,7 +82,88 @@ class TranslationControllerTest {
 				.toEntity(String.class);
 			assertThat(response.getStatusCode()).isEqualTo(HttpStatus.OK);
 			assertThat(response.getBody()).isEqualTo("Translation is requested for 787");
-			verify(this.translationService).translateAndSendPullRequest(787L, 1);
+			verify(this.jobQueue).enqueue(787L, 1);
+		}
+	}
+
+	@Test
+	void webhookCoalesced() throws Exception {
+		TranslationJob job = new TranslationJob("job-1", 787L, 2, JobState.TRANSLATING, 0, Instant.now(), Instant.now(),
+				null, null, Map.of(), List.of());
+		given(this.jobQueue.enqueue(787L, 1)).willReturn(new TranslationJobQueue.Enqueued(job, true));
+		try (InputStream stream = new ClassPathResource("test-payload.json").getInputStream()) {
+			String requestBody = StreamUtils.copyToString(stream, StandardCharsets.UTF_8);
+			ResponseEntity<String> response = this.restClient.post()
+				.uri("/webhook")
+				.body(requestBody)
+				.header(WebhookHttpHeaders.X_HUB_SIGNATURE_256,
+						"sha256=c16be7733c9701d7a4645d608f91db9237acc95e5bac5820321cef6c64bfe417")
+				.contentType(MediaType.APPLICATION_JSON)
+				.retrieve()
+				.toEntity(String.class);
+			assertThat(response.getStatusCode()).isEqualTo(HttpStatus.OK);
+			assertThat(response.getBody()).isEqualTo("Translation is already in progress for 787 (issue #2)");
+			// the issue is closed by a worker, not by the webhook
+			verify(this.translationService, never()).closeDuplicate(anyInt(), anyLong(), anyInt());
+		}
+	}
+
+	@Test
+	void webhookRedelivery() throws Exception {
+		given(this.jobQueue.enqueue(787L, 1)).willReturn(new TranslationJobQueue.Enqueued(new TranslationJob("job-1",
+				787L, 1, JobState.QUEUED, 0, Instant.now(), Instant.now(), null, null, Map.of(), List.of()), false));
+		try (InputStream stream = new ClassPathResource("test-payload.json").getInputStream()) {
+			String requestBody = StreamUtils.copyToString(stream, StandardCharsets.UTF_8);
+			for (int i = 0; i < 2; i++) {
+				ResponseEntity<String> response = this.restClient.post()
+					.uri("/webhook")
+					.body(requestBody)
+					.header(WebhookHttpHeaders.X_HUB_SIGNATURE_256,
+							"sha256=c16be7733c9701d7a4645d608f91db9237acc95e5bac5820321cef6c64bfe417")
+					.header("X-GitHub-Delivery", "delivery-787")
+					.contentType(MediaType.APPLICATION_JSON)
+					.retrieve()
+					.toEntity(String.class);
+				if (i == 0) {
+					assertThat(response.getStatusCode()).isEqualTo(HttpStatus.OK);
+				}
+				else {
+					assertThat(response.getStatusCode()).isEqualTo(HttpStatus.ACCEPTED);
+					assertThat(response.getBody()).isEqualTo("Ignored redelivery: delivery-787");
+				}
+			}
+			verify(this.jobQueue, times(1)).enqueue(787L, 1);
+		}
+	}
+
+	@Test
+	void webhookRedeliveryAfterFailure() throws Exception {
+		given(this.jobQueue.enqueue(787L, 1)).willThrow(new UncheckedIOException(new IOException("disk full")))
+			.willReturn(new TranslationJobQueue.Enqueued(new TranslationJob("job-1", 787L, 1, JobState.QUEUED, 0,
+					Instant.now(), Instant.now(), null, null, Map.of(), List.of()), false));
+		// without the retries of the application's builder
+		RestClient restClient = RestClient.builder()
+			.baseUrl("http://localhost:%d".formatted(port))
+			.defaultHeader("X-GitHub-Event", "issues")
+			.defaultStatusHandler(__ -> true, (req, res) -> {
+			})
+			.build();
+		try (InputStream stream = new ClassPathResource("test-payload.json").getInputStream()) {
+			String requestBody = StreamUtils.copyToString(stream, StandardCharsets.UTF_8);
+			for (int i = 0; i < 2; i++) {
+				ResponseEntity<String> response = restClient.post()
+					.uri("/webhook")
+					.body(requestBody)
+					.header(WebhookHttpHeaders.X_HUB_SIGNATURE_256,
+							"sha256=c16be7733c9701d7a4645d608f91db9237acc95e5bac5820321cef6c64bfe417")
+					.header("X-GitHub-Delivery", "delivery-787-failure")
+					.contentType(MediaType.APPLICATION_JSON)
+					.retrieve()
+					.toEntity(String.class);
+				assertThat(response.getStatusCode())
+					.isEqualTo(i == 0 ? HttpStatus.INTERNAL_SERVER_ERROR : HttpStatus.OK);
+			}
+			verify(this.jobQueue, times(2)).enqueue(787L, 1);
 		}
 	}
 
@@ -85,7 +182,7 @@ class TranslationControllerTest {
 			.toEntity(String.class);
 		assertThat(response.getStatusCode()).isEqualTo(HttpStatus.ACCEPTED);
 		assertThat(response.getBody()).isEqualTo("Ignored action: closed");
-		verify(this.translationService, never()).translateAndSendPullRequest(anyLong(), anyInt());
+		verify(this.jobQueue, never()).enqueue(anyLong(), anyInt());
 	}
 
 	@Test
@@ -103,7 +200,7 @@ class TranslationControllerTest {
 			.toEntity(String.class);
 		assertThat(response.getStatusCode()).isEqualTo(HttpStatus.BAD_REQUEST);
 		assertThat(response.getBody()).isEqualTo("Invalid request: test");
-		verify(this.translationService, never()).translateAndSendPullRequest(anyLong(), anyInt());
+		verify(this.jobQueue, never()).enqueue(anyLong(), anyInt());
 	}
 
 	@Test
@@ -121,7 +218,7 @@ class TranslationControllerTest {
 			.toEntity(String.class);
 		assertThat(response.getStatusCode()).isEqualTo(HttpStatus.ACCEPTED);
 		assertThat(response.getBody()).isEqualTo("Ignored title: foo");
-		verify(this.translationService, never()).translateAndSendPullRequest(anyLong(), anyInt());
+		verify(this.jobQueue, never()).enqueue(anyLong(), anyInt());
 	}
 
 }
\ No newline at end of file